@@ -77,9 +77,16 @@ public class CallbackCounterContainer extends CounterContainer {
         maybeNotify();
     }
 
+    /**
+     * Reserves an id without notifying the callback, as a reserve does no I/O by itself.  A node cache inserts objects
+     * by reserving an id first, the object is then written and I/O-accounted as an insertion by a later update.
+     *
+     * @param getObject a function returning the object to reserve the id for
+     * @return the reserved id
+     */
     @Override
     public Object reserve(Function getObject) {
-        throw new UnsupportedOperationException("Reserves are not I/O-accounted!");
+        return super.reserve(getObject);
     }
 
     @Override
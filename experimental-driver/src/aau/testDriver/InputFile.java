@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2007, 2008, 2009, 2011 Laurynas Biveinis
+     Copyright (C) 2007, 2008, 2009, 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -18,48 +18,40 @@
 */
 package aau.testDriver;
 
-import aau.workload.WorkloadOperation;
+import aau.workload.MutableWorkloadOperation;
+import aau.workload.WorkloadFiles;
+import aau.workload.WorkloadReader;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 
 /**
- * Reads the file and returns it line by line
+ * Reads the workload file, either text or binary, and returns it operation by operation
  */
 class InputFile {
     
     final private String name;
     
-    private String line = null;
-
-    private int lineNumber = 0;
-    
-    private final BufferedReader input;
-
-    private static final int BUFFER_SIZE = 1024 * 1024;
+    private final WorkloadReader input;
 
     InputFile(final String name) throws IOException {
         this.name = name;
-        input = new BufferedReader(new FileReader(name), BUFFER_SIZE);
+        input = WorkloadFiles.openReader(name);
     }
 
     boolean hasNextOperation() throws IOException {
-        line = input.readLine();
-        return line != null;
+        return input.hasNextOperation();
     }
 
     int getLineNumber() {
-        return lineNumber;
+        return input.getOperationNumber();
     }
     
     String getName() {
         return name;
     }
     
-    WorkloadOperation getNextOperation() {
-        lineNumber++;
-        return new WorkloadOperation(line);
+    boolean readNextOperation(final MutableWorkloadOperation result) throws IOException {
+        return input.readNextOperation(result);
     }
 
     void close() throws IOException {
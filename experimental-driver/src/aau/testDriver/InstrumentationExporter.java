@@ -0,0 +1,130 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.testDriver;
+
+import aau.bufferedIndexes.LatencyHistogram;
+import aau.bufferedIndexes.instrumentation.HistogramInstrumentation;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the RR-tree instrumentation histograms in a machine-readable format
+ */
+final class InstrumentationExporter {
+
+    public enum Format { JSON, PROMETHEUS }
+
+    private static final double[] PERCENTILES = { 50.0D, 90.0D, 99.0D, 99.9D };
+
+    private static final String[] JSON_PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    private static final String[] PROMETHEUS_QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+    private static final double NANOS_PER_SECOND = 1.0e9D;
+
+    private InstrumentationExporter() { }
+
+    /**
+     * Writes the instrumentation histograms.
+     *
+     * @param instrumentation the instrumentation to write
+     * @param format          the output format
+     * @param output          the output writer
+     */
+    static void write(final HistogramInstrumentation instrumentation, final Format format, final PrintWriter output) {
+        switch (format) {
+            case JSON:
+                writeJson(instrumentation, output);
+                break;
+            case PROMETHEUS:
+                writePrometheus(instrumentation, output);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static void writeJson(final HistogramInstrumentation instrumentation, final PrintWriter output) {
+        output.println("{");
+        output.println("  \"allocationsMeasured\": " + instrumentation.measuresAllocations() + ',');
+        output.print("  \"events\": [");
+        boolean first = true;
+        for (final Instrumentation.Event event : Instrumentation.Event.values()) {
+            for (final Map.Entry<Integer, HistogramInstrumentation.Measurements> level
+                    : instrumentation.getMeasurements(event).entrySet()) {
+                output.println(first ? "" : ",");
+                first = false;
+                output.println("    {");
+                output.println("      \"event\": \"" + event.name() + "\",");
+                output.println("      \"level\": " + level.getKey() + ',');
+                output.print("      \"durationNanos\": ");
+                writeJsonHistogram(level.getValue().getDurations(), output);
+                output.println(",");
+                output.print("      \"allocatedBytes\": ");
+                writeJsonHistogram(level.getValue().getAllocations(), output);
+                output.println();
+                output.print("    }");
+            }
+        }
+        output.println();
+        output.println("  ]");
+        output.println("}");
+    }
+
+    private static void writeJsonHistogram(final LatencyHistogram histogram, final PrintWriter output) {
+        output.print("{\"count\": " + histogram.getCount() + ", \"sum\": " + histogram.getSum() + ", \"mean\": "
+                + String.format(Locale.ROOT, "%.1f", histogram.getMean()) + ", \"min\": " + histogram.getMinimum());
+        for (int i = 0; i < PERCENTILES.length; i++)
+            output.print(", \"" + JSON_PERCENTILE_NAMES[i] + "\": " + histogram.getValueAtPercentile(PERCENTILES[i]));
+        output.print(", \"max\": " + histogram.getMaximum() + '}');
+    }
+
+    private static void writePrometheus(final HistogramInstrumentation instrumentation, final PrintWriter output) {
+        output.println("# HELP rrtree_operation_duration_seconds Wall-clock duration of the RR-tree operations");
+        output.println("# TYPE rrtree_operation_duration_seconds summary");
+        for (final Instrumentation.Event event : Instrumentation.Event.values())
+            for (final Map.Entry<Integer, HistogramInstrumentation.Measurements> level
+                    : instrumentation.getMeasurements(event).entrySet())
+                writePrometheusSummary("rrtree_operation_duration_seconds", event, level.getKey(),
+                        level.getValue().getDurations(), NANOS_PER_SECOND, output);
+        if (!instrumentation.measuresAllocations())
+            return;
+        output.println("# HELP rrtree_operation_allocated_bytes Memory allocated by the RR-tree operations");
+        output.println("# TYPE rrtree_operation_allocated_bytes summary");
+        for (final Instrumentation.Event event : Instrumentation.Event.values())
+            for (final Map.Entry<Integer, HistogramInstrumentation.Measurements> level
+                    : instrumentation.getMeasurements(event).entrySet())
+                writePrometheusSummary("rrtree_operation_allocated_bytes", event, level.getKey(),
+                        level.getValue().getAllocations(), 1.0D, output);
+    }
+
+    private static void writePrometheusSummary(final String name, final Instrumentation.Event event, final int level,
+                                               final LatencyHistogram histogram, final double divisor,
+                                               final PrintWriter output) {
+        final String labels = "event=\"" + event.name().toLowerCase(Locale.ROOT) + "\",level=\"" + level + '"';
+        for (int i = 0; i < PERCENTILES.length; i++)
+            output.println(name + '{' + labels + ",quantile=\"" + PROMETHEUS_QUANTILES[i] + "\"} "
+                    + histogram.getValueAtPercentile(PERCENTILES[i]) / divisor);
+        output.println(name + "_sum{" + labels + "} " + histogram.getSum() / divisor);
+        output.println(name + "_count{" + labels + "} " + histogram.getCount());
+    }
+}
@@ -0,0 +1,322 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.testDriver;
+
+import aau.bufferedIndexes.LatencyHistogram;
+import aau.workload.MutableWorkloadOperation;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A closed-loop load generator: a number of client threads issue the workload operations against a shared tree, each
+ * waiting for its previous operation to complete, and optionally thinking, before issuing the next one.  Every
+ * workload is served by its own group of clients.  The updates are partitioned between the clients of a group by
+ * object id, so that the operations on every object are issued in the workload order, the rest of the operations are
+ * distributed round-robin.  The latencies are recorded per operation type, together with the latencies of the
+ * operations that triggered buffer emptying.
+ *
+ * The trees are not thread-safe, thus the operations are serialized by a single lock, and the lock wait is a part of
+ * the latency.
+ */
+final class LoadGenerator {
+
+    /**
+     * Executes a single workload operation against the tree
+     */
+    interface OperationExecutor {
+
+        /**
+         * Executes an operation.  Called with the tree lock held.
+         *
+         * @param operation the operation to execute
+         * @return <code>true</code> if the operation caused buffer emptying
+         * @throws Exception on any error, which stops the load generation
+         */
+        boolean execute(final MutableWorkloadOperation operation) throws Exception;
+    }
+
+    /**
+     * The operation classes the latencies are reported for
+     */
+    enum LatencyClass {
+        INSERT          ("insertions"),
+        DELETE          ("deletions"),
+        QUERY           ("queries"),
+        EMPTY_BUFFER    ("explicit buffer emptyings"),
+        BUFFER_EMPTYING ("updates that triggered buffer emptying");
+
+        private final String description;
+
+        LatencyClass(final String description) {
+            this.description = description;
+        }
+
+        static LatencyClass of(final MutableWorkloadOperation operation) {
+            if (operation.isInsert() || operation.isDeletingInsert())
+                return INSERT;
+            if (operation.isKindOfDelete())
+                return DELETE;
+            if (operation.isQuery())
+                return QUERY;
+            if (operation.isEmptyBuffer())
+                return EMPTY_BUFFER;
+            throw new IllegalStateException("Unknown operation type " + operation.getOperationType());
+        }
+    }
+
+    /**
+     * The operations queued for every client
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * The end-of-workload marker in the client queues
+     */
+    private static final MutableWorkloadOperation END = new MutableWorkloadOperation();
+
+    private final long thinkTimeNanos;
+
+    private final Object treeLock = new Object();
+
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private final List<Feeder> feeders = new ArrayList<>();
+
+    private final List<Client> clients = new ArrayList<>();
+
+    private final Map<LatencyClass, LatencyHistogram> latencies = new EnumMap<>(LatencyClass.class);
+
+    private long elapsedNanos;
+
+    /**
+     * Creates a new load generator.
+     *
+     * @param thinkTimeNanos the time every client waits between its operations, in nanoseconds
+     */
+    LoadGenerator(final long thinkTimeNanos) {
+        this.thinkTimeNanos = thinkTimeNanos;
+        for (final LatencyClass latencyClass : LatencyClass.values())
+            latencies.put(latencyClass, new LatencyHistogram());
+    }
+
+    /**
+     * Adds a workload to be issued by a new group of clients.
+     *
+     * @param input    the workload
+     * @param count    the number of clients for the workload, positive
+     * @param executor the executor of the workload operations against the tree
+     */
+    void addWorkload(final InputFile input, final int count, final OperationExecutor executor) {
+        if (count < 1)
+            throw new IllegalArgumentException("At least one client is required for " + input.getName());
+        final List<Client> group = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Client client = new Client(input.getName() + " client " + i, executor);
+            group.add(client);
+            clients.add(client);
+        }
+        feeders.add(new Feeder(input, group));
+    }
+
+    /**
+     * Runs the load against the tree until all the workloads are exhausted.
+     *
+     * @throws Exception the first error raised by an executor or an input
+     */
+    void run() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        for (final Feeder feeder : feeders)
+            threads.add(new Thread(feeder, feeder.input.getName() + " feeder"));
+        for (final Client client : clients)
+            threads.add(new Thread(client, client.name));
+
+        final long start = System.nanoTime();
+        for (final Thread thread : threads)
+            thread.start();
+        for (final Thread thread : threads)
+            thread.join();
+        elapsedNanos = System.nanoTime() - start;
+
+        for (final Client client : clients)
+            for (final LatencyClass latencyClass : LatencyClass.values())
+                latencies.get(latencyClass).add(client.latencies.get(latencyClass));
+
+        final Throwable t = error.get();
+        if (t instanceof Exception)
+            throw (Exception)t;
+        if (t instanceof Error)
+            throw (Error)t;
+        if (t != null)
+            throw new IllegalStateException(t);
+    }
+
+    /**
+     * Returns the latency histogram of an operation class, in nanoseconds.  Valid after {@link #run}.
+     *
+     * @param latencyClass the operation class
+     * @return the latency histogram
+     */
+    LatencyHistogram getLatencies(final LatencyClass latencyClass) {
+        return latencies.get(latencyClass);
+    }
+
+    /**
+     * Prints the throughput and the latency percentiles to System.out.
+     */
+    void printStats() {
+        final double elapsedSeconds = elapsedNanos / 1.0e9D;
+        long total = 0;
+        for (final LatencyClass latencyClass : LatencyClass.values())
+            if (latencyClass != LatencyClass.BUFFER_EMPTYING)
+                total += latencies.get(latencyClass).getCount();
+        System.out.println();
+        System.out.println("Load generator clients: " + clients.size() + ", think time: "
+                + TimeUnit.NANOSECONDS.toMicros(thinkTimeNanos) + " us");
+        System.out.println("Elapsed time: " + elapsedSeconds + " s, operations: " + total + ", throughput: "
+                + total / elapsedSeconds + " ops/s");
+        System.out.println("Latencies in us: count, throughput (ops/s), mean, p50, p90, p99, p99.9, max");
+        for (final LatencyClass latencyClass : LatencyClass.values()) {
+            final LatencyHistogram h = latencies.get(latencyClass);
+            if (h.getCount() == 0)
+                continue;
+            System.out.println(latencyClass.description + ": " + h.getCount() + ", "
+                    + h.getCount() / elapsedSeconds + ", " + h.getMean() / 1000.0D + ", "
+                    + micros(h.getValueAtPercentile(50.0D)) + ", " + micros(h.getValueAtPercentile(90.0D)) + ", "
+                    + micros(h.getValueAtPercentile(99.0D)) + ", " + micros(h.getValueAtPercentile(99.9D)) + ", "
+                    + micros(h.getMaximum()));
+        }
+    }
+
+    private static double micros(final long nanos) {
+        return nanos / 1000.0D;
+    }
+
+    /**
+     * Reads a workload and distributes its operations between the clients
+     */
+    private final class Feeder implements Runnable {
+
+        private final InputFile input;
+
+        private final List<Client> targets;
+
+        Feeder(final InputFile input, final List<Client> targets) {
+            this.input = input;
+            this.targets = targets;
+        }
+
+        public void run() {
+            try {
+                long sequenceNumber = 0;
+                while (error.get() == null) {
+                    final MutableWorkloadOperation operation = new MutableWorkloadOperation();
+                    if (!input.readNextOperation(operation))
+                        break;
+                    final int target;
+                    if (operation.isUpdate())
+                        target = (operation.getId() & Integer.MAX_VALUE) % targets.size();
+                    else
+                        //noinspection NumericCastThatLosesPrecision
+                        target = (int)(sequenceNumber % targets.size());
+                    targets.get(target).queue.put(operation);
+                    sequenceNumber++;
+                }
+            }
+            catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            finally {
+                for (final Client client : targets) {
+                    try {
+                        client.queue.put(END);
+                    }
+                    catch (InterruptedException e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A single closed-loop client
+     */
+    private final class Client implements Runnable {
+
+        private final String name;
+
+        private final OperationExecutor executor;
+
+        private final BlockingQueue<MutableWorkloadOperation> queue
+                = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        private final Map<LatencyClass, LatencyHistogram> latencies = new EnumMap<>(LatencyClass.class);
+
+        Client(final String name, final OperationExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+            for (final LatencyClass latencyClass : LatencyClass.values())
+                latencies.put(latencyClass, new LatencyHistogram());
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final MutableWorkloadOperation operation = queue.take();
+                    if (operation == END)
+                        break;
+                    // After an error keep draining the queue so that the feeder does not block
+                    if (error.get() != null)
+                        continue;
+                    if (thinkTimeNanos > 0)
+                        TimeUnit.NANOSECONDS.sleep(thinkTimeNanos);
+                    try {
+                        execute(operation);
+                    }
+                    catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                error.compareAndSet(null, e);
+            }
+        }
+
+        private void execute(final MutableWorkloadOperation operation) throws Exception {
+            final LatencyClass latencyClass = LatencyClass.of(operation);
+            final long start = System.nanoTime();
+            final boolean bufferEmptied;
+            synchronized (treeLock) {
+                bufferEmptied = executor.execute(operation);
+            }
+            final long latency = System.nanoTime() - start;
+            latencies.get(latencyClass).record(latency);
+            if (bufferEmptied && latencyClass != LatencyClass.EMPTY_BUFFER)
+                latencies.get(LatencyClass.BUFFER_EMPTYING).record(latency);
+        }
+    }
+}
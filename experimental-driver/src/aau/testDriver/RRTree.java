@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2007, 2008, 2009, 2010, 2011 Laurynas Biveinis
+     Copyright (C) 2007, 2008, 2009, 2010, 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -19,11 +19,16 @@
 package aau.testDriver;
 
 import aau.bufferedIndexes.AggregateStats;
+import aau.bufferedIndexes.BufferLog;
 import aau.bufferedIndexes.OpLifetimeStats;
+import aau.bufferedIndexes.RRTreeGroupSplitter;
 import aau.bufferedIndexes.RRTreeStats;
 import aau.bufferedIndexes.StatisticalData;
+import aau.bufferedIndexes.TreeSnapshot;
+import aau.bufferedIndexes.UpdateTree;
 import aau.bufferedIndexes.diskTrees.*;
 import aau.bufferedIndexes.diskTrees.visitors.RRDiskTreeInvariantChecker;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.objectTracers.ObjectTracer;
 import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
 import aau.bufferedIndexes.pushDownStrategies.PushDownGroupsStrategy;
@@ -36,6 +41,7 @@ import xxl.core.indexStructures.Tree;
 import xxl.core.io.Convertable;
 import xxl.core.io.converters.Converter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
@@ -47,7 +53,7 @@ import java.util.Set;
  */
 public final class RRTree<E extends Convertable> implements TreeDriver<E> {
 
-    public enum TreeType { DATA_TREE, UPDATE_TREE }
+    public enum TreeType { DATA_TREE, UPDATE_TREE, HILBERT_TREE }
 
     private final aau.bufferedIndexes.RRTree<E> tree;
     private boolean bufferEmptied;
@@ -64,6 +70,18 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
 
     private final AggregateStats ebCostStat = new AggregateStats();
 
+    private BufferLog<E> bufferLog = null;
+
+    /**
+     * The buffer log page writes already registered as the persistence I/O
+     */
+    private long registeredLogPageWrites = 0;
+
+    /**
+     * The leaf location index lookups already registered as reads
+     */
+    private int registeredLookups = 0;
+
     /**
      * Creates a new RRTree for the driver
      *
@@ -75,6 +93,8 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
             diskTree = new RRDiskDataTree<>();
         else if (treeType == TreeType.UPDATE_TREE)
             diskTree = new RRDiskUpdateTree<>();
+        else if (treeType == TreeType.HILBERT_TREE)
+            diskTree = new RRDiskHilbertTree<>();
         else
             throw new IllegalArgumentException("Unknown tree type!");
         tree = new aau.bufferedIndexes.RRTree<>(diskTree);
@@ -252,6 +272,9 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
         System.out.println("EmptyBuffer cost mean: " + ebCostStat.average());
         System.out.println("EmptyBuffer cost standard deviation: " + ebCostStat.deviation());
 
+        if (bufferLog != null)
+            System.out.println("Buffer log: " + bufferLog.getForces() + " forces, " + bufferLog.getPageWrites()
+                    + " page writes, " + bufferLog.getBytesWritten() + " bytes");
         System.out.println("I>D Annihilations: " + tree.getNumOfIDAnnihilations());
         System.out.println("D>I Annihilations: " + tree.getNumOfDIAnnihilations());
         final RRTreeStats stats = tree.getStats();
@@ -378,6 +401,28 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
         bufferEmptied = tree.wasBufferEmptied();
     }
 
+    /**
+     * Checks if the tree can move a data object by a single buffer operation.
+     *
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     * @return <code>true</code> if the move is a single buffer operation
+     */
+    public boolean canMove(final E oldDatum, final E newDatum) {
+        return tree.canMove(oldDatum, newDatum);
+    }
+
+    /**
+     * Moves a data object in the tree as a single buffer operation.
+     *
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     */
+    public void update(final E oldDatum, final E newDatum) {
+        tree.update(oldDatum, newDatum);
+        bufferEmptied = tree.wasBufferEmptied();
+    }
+
     /**
      * Enables or disables piggybacking, if applicable to the tree used.
      *
@@ -427,6 +472,23 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
         for (final Map.Entry<Integer, Integer> splits : deletionSplits.entrySet()) {
             System.out.println("Split size: " + splits.getKey() + ", number of splits: " + splits.getValue());
         }
+        final LeafLocationIndex<E> leafLocationIndex = tree.getLeafLocationIndex();
+        if (leafLocationIndex != null)
+            System.out.println("Leaf location index: " + leafLocationIndex.size() + " items, "
+                    + leafLocationIndex.memorySize() + " bytes, " + leafLocationIndex.getLookups() + " lookups, "
+                    + leafLocationIndex.getRoutedDeletions() + " routed deletions, "
+                    + leafLocationIndex.getUnroutedDeletions() + " unrouted deletions");
+        final RRTreeStats<E> stats = tree.getStats();
+        if (stats.getNodeBufferParkings() > 0)
+            System.out.println("Node buffers: " + stats.getNodeBufferParkings() + " parked, "
+                    + stats.getNodeBufferTakeOvers() + " taken over, " + stats.getNodeBufferOverflows()
+                    + " overflows, " + stats.getNodeBufferDrains() + " drained, " + tree.getNodeBufferSize()
+                    + " parked at finish");
+        if (tree.getBufferBytes() > 0)
+            System.out.println("Buffer memory at finish: " + tree.getBufferBytes() + " bytes");
+        if ((stats.getDivergedMoves() > 0) || (stats.getInPlaceMoves() > 0))
+            System.out.println("Moves split in place, diverged: " + stats.getInPlaceMoves() + ", "
+                    + stats.getDivergedMoves());
     }
 
     private void printBackToBufferGroupStatistics() {
@@ -520,6 +582,11 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
         }
     }
 
+    @Override
+    public int defragment(final int maxIos) {
+        return tree.defragment(maxIos);
+    }
+
     /**
      * Makes the tree to do full buffer emptying the next time buffer becomes full, regardless of the default buffer
      * emptying strategy, if applicable.
@@ -540,6 +607,107 @@ public final class RRTree<E extends Convertable> implements TreeDriver<E> {
 
     @Override
     public void registerPersistenceIo(TestIO ioSystem) {
-        ioSystem.registerPersistenceIO();
+        if (bufferLog == null) {
+            ioSystem.registerPersistenceIO();
+            return;
+        }
+        final long logPageWrites = bufferLog.getPageWrites();
+        //noinspection NumericCastThatLosesPrecision
+        ioSystem.addPersistenceIO((int)(logPageWrites - registeredLogPageWrites));
+        registeredLogPageWrites = logPageWrites;
+    }
+
+    @Override
+    public void registerAuxiliaryIo(final TestIO ioSystem) {
+        final LeafLocationIndex<E> leafLocationIndex = tree.getLeafLocationIndex();
+        if (leafLocationIndex == null)
+            return;
+        ioSystem.addReads(leafLocationIndex.getLookups() - registeredLookups);
+        registeredLookups = leafLocationIndex.getLookups();
+    }
+
+    @Override
+    public void setInstrumentation(final Instrumentation instrumentation) {
+        tree.setInstrumentation(instrumentation);
+    }
+
+    @Override
+    public void setGroupSplitter(final RRTreeGroupSplitter groupSplitter) {
+        tree.setGroupSplitter(groupSplitter);
+    }
+
+    @Override
+    public void enableLeafLocationIndex() {
+        tree.enableLeafLocationIndex();
+    }
+
+    @Override
+    public void enableNodeBuffers(final int capacity) {
+        tree.enableNodeBuffers(capacity);
+    }
+
+    @Override
+    public void setBufferMemoryBudget(final long maxBufferBytes) {
+        tree.setBufferMemoryBudget(maxBufferBytes);
+    }
+
+    @Override
+    public void enableFloatIndexMBRs() {
+        tree.enableFloatIndexMBRs();
+    }
+
+    @Override
+    public void setIndexNodeCapacities(final int minCapacity, final int maxCapacity) {
+        tree.setIndexNodeCapacities(minCapacity, maxCapacity);
+    }
+
+    @Override
+    public void enableCompressedLeaves(final int nodeBytes) {
+        tree.enableCompressedLeaves(nodeBytes);
+    }
+
+    @Override
+    public void enableClusteredAllocation() {
+        tree.enableClusteredAllocation();
+    }
+
+    @Override
+    public void setLeafNodeCapacities(final int minCapacity, final int maxCapacity) {
+        tree.setLeafNodeCapacities(minCapacity, maxCapacity);
+    }
+
+    @Override
+    public void enableWriteCoalescing() {
+        tree.enableWriteCoalescing();
+    }
+
+    @Override
+    public int getCoalescedWrites() {
+        return tree.getCoalescedWrites();
+    }
+
+    @Override
+    public int setBufferLog(final BufferLog<E> bufferLog) throws IOException {
+        this.bufferLog = bufferLog;
+        return tree.setBufferLog(bufferLog);
+    }
+
+    @Override
+    public void checkpoint() {
+        tree.checkpoint();
+    }
+
+    @Override
+    public void setSnapshotFile(final File file, final boolean includeBuffer,
+                                final Converter<UpdateTree.Entry<E>> entryConverter) {
+        tree.setSnapshotFile(file, includeBuffer, entryConverter);
+    }
+
+    @Override
+    public void restoreSnapshot(final File file, final Converter<UpdateTree.Entry<E>> entryConverter)
+            throws IOException {
+        //noinspection unchecked
+        tree.restoreSnapshot(TreeSnapshot.read(file, tree.getDiskTree().container().objectIdConverter(),
+                entryConverter));
     }
 }
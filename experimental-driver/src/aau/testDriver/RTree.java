@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2007, 2008, 2009, 2010, 2011 Laurynas Biveinis
+     Copyright (C) 2007, 2008, 2009, 2010, 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -18,8 +18,12 @@
 */
 package aau.testDriver;
 
+import aau.bufferedIndexes.BufferLog;
+import aau.bufferedIndexes.RRTreeGroupSplitter;
 import aau.bufferedIndexes.StatisticalData;
+import aau.bufferedIndexes.UpdateTree;
 import aau.bufferedIndexes.diskTrees.TreeClearIOState;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.objectTracers.ObjectTracer;
 import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
 import aau.bufferedIndexes.pushDownStrategies.PushDownGroupsStrategy;
@@ -32,6 +36,8 @@ import xxl.core.indexStructures.Tree;
 import xxl.core.io.Convertable;
 import xxl.core.io.converters.Converter;
 
+import java.io.File;
+
 /**
  * An R-tree for the experimental driver
  */
@@ -211,6 +217,28 @@ public final class RTree<E extends Convertable> implements TreeDriver<E> {
         tree.remove(datum);
     }
 
+    /**
+     * Checks if the tree can move a data object by a single update operation.  Never for the R-tree.
+     *
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     * @return <code>false</code>
+     */
+    public boolean canMove(final E oldDatum, final E newDatum) {
+        return false;
+    }
+
+    /**
+     * Moves a data object in the tree by removing the old object and inserting the new one.
+     *
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     */
+    public void update(final E oldDatum, final E newDatum) {
+        tree.remove(oldDatum);
+        tree.insert(newDatum);
+    }
+
     /**
      * Enables or disables piggybacking, if applicable to the tree used.
      *
@@ -257,6 +285,14 @@ public final class RTree<E extends Convertable> implements TreeDriver<E> {
         return new TreeClearIOState(0, 0);
     }
 
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public int defragment(final int maxIos) {
+        throw new UnsupportedOperationException("R-tree defragmentation is not supported");
+    }
+
     @Override
     public int getTmpGcReads() {
         return 0;
@@ -277,4 +313,149 @@ public final class RTree<E extends Convertable> implements TreeDriver<E> {
     public void registerPersistenceIo(TestIO ioSystem) {
         // The R-tree is persistent by default
     }
+
+    /**
+     * Ignored, the R-tree has no auxiliary structures.
+     */
+    @Override
+    public void registerAuxiliaryIo(final TestIO ioSystem) {
+    }
+
+    /**
+     * Ignored.
+     */
+    @Override
+    public void setInstrumentation(final Instrumentation instrumentation) {
+    }
+
+    /**
+     * Ignored, the R-tree splits nodes one at a time.
+     *
+     * @param groupSplitter the GroupSplit algorithm
+     */
+    @Override
+    public void setGroupSplitter(final RRTreeGroupSplitter groupSplitter) {
+    }
+
+    /**
+     * Ignored, the R-tree deletions descend by their MBR.
+     */
+    @Override
+    public void enableLeafLocationIndex() {
+    }
+
+    /**
+     * Ignored, the R-tree has no buffers.
+     *
+     * @param capacity the maximum number of operations parked at a single level
+     */
+    @Override
+    public void enableNodeBuffers(final int capacity) {
+    }
+
+    /**
+     * Ignored, the R-tree has no buffer.
+     *
+     * @param maxBufferBytes the buffer memory budget in bytes
+     */
+    @Override
+    public void setBufferMemoryBudget(final long maxBufferBytes) {
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void enableFloatIndexMBRs() {
+        throw new UnsupportedOperationException("Float R-tree MBRs are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     *
+     * @param minCapacity the minimum capacity of an index node
+     * @param maxCapacity the maximum capacity of an index node
+     */
+    @Override
+    public void setIndexNodeCapacities(final int minCapacity, final int maxCapacity) {
+        throw new UnsupportedOperationException("Separate R-tree index node capacities are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     *
+     * @param nodeBytes the maximum size of a leaf node in bytes
+     */
+    @Override
+    public void enableCompressedLeaves(final int nodeBytes) {
+        throw new UnsupportedOperationException("Compressed R-tree leaves are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void enableClusteredAllocation() {
+        throw new UnsupportedOperationException("R-tree clustered allocation is not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     *
+     * @param minCapacity the minimum capacity of a leaf node
+     * @param maxCapacity the maximum capacity of a leaf node
+     */
+    @Override
+    public void setLeafNodeCapacities(final int minCapacity, final int maxCapacity) {
+        throw new UnsupportedOperationException("Separate R-tree leaf node capacities are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void enableWriteCoalescing() {
+        throw new UnsupportedOperationException("R-tree write coalescing is not supported");
+    }
+
+    @Override
+    public int getCoalescedWrites() {
+        return 0;
+    }
+
+    /**
+     * Ignored, the R-tree has no buffer to log.
+     *
+     * @param bufferLog the buffer log
+     * @return 0
+     */
+    @Override
+    public int setBufferLog(final BufferLog<E> bufferLog) {
+        return 0;
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void checkpoint() {
+        throw new UnsupportedOperationException("R-tree checkpoints are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void setSnapshotFile(final File file, final boolean includeBuffer,
+                                final Converter<UpdateTree.Entry<E>> entryConverter) {
+        throw new UnsupportedOperationException("R-tree snapshots are not supported");
+    }
+
+    /**
+     * Not supported for the R-tree.
+     */
+    @Override
+    public void restoreSnapshot(final File file, final Converter<UpdateTree.Entry<E>> entryConverter) {
+        throw new UnsupportedOperationException("R-tree snapshots are not supported");
+    }
 }
@@ -20,14 +20,18 @@ package aau.testDriver;
 
 import aau.bufferedIndexes.*;
 import aau.bufferedIndexes.RRTree;
+import aau.bufferedIndexes.BufferLog;
 import aau.bufferedIndexes.diskTrees.TreeClearIOState;
+import aau.bufferedIndexes.instrumentation.HistogramInstrumentation;
 import aau.bufferedIndexes.objectTracers.ObjectTracer;
 import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
 import aau.bufferedIndexes.operationGroupMakers.DeletionsAsInsertionsGroupMaker;
+import aau.bufferedIndexes.operationGroupMakers.HilbertOperationGroupMaker;
 import aau.bufferedIndexes.operationGroupMakers.InsertionsOnlyGroupMaker;
 import aau.bufferedIndexes.operationGroupMakers.TrivialOperationGroupMaker;
 import aau.bufferedIndexes.pushDownStrategies.*;
 import aau.workload.DataID;
+import aau.workload.MutableWorkloadOperation;
 import aau.workload.WorkloadOperation;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -35,16 +39,20 @@ import joptsimple.OptionSpec;
 import xxl.core.cursors.Cursor;
 import xxl.core.functions.Function;
 import xxl.core.indexStructures.Descriptor;
+import xxl.core.indexStructures.ORTree;
 import xxl.core.indexStructures.Tree;
 import xxl.core.io.converters.ConvertableConverter;
 import xxl.core.io.converters.Converter;
 import xxl.core.spatial.KPE;
 import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.Rectangle;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The command-line driven test driver
@@ -64,8 +72,17 @@ final class TestDriver {
     private static final int LEAF_ENTRY_SIZE = Math.max(DATA_LEAF_ENTRY_SIZE, UPDATE_LEAF_ENTRY_SIZE);
     // We use an unified entry size (40 bytes currently)
     private static final int ENTRY_SIZE = Math.max(INDEX_ENTRY_SIZE, LEAF_ENTRY_SIZE);
+    // Hilbert index node entry: index node entry + 2 * 2 * 8 bytes (double) Hilbert key range = 72 bytes
+    private static final int HILBERT_INDEX_ENTRY_SIZE = INDEX_ENTRY_SIZE + 32;
+    // Index node entry with float MBRs: 8 bytes (long) id + 4 * 4 bytes (float) Rectangle = 24 bytes
+    private static final int FLOAT_INDEX_ENTRY_SIZE = 24;
+    private static final int HILBERT_FLOAT_INDEX_ENTRY_SIZE = FLOAT_INDEX_ENTRY_SIZE + 32;
     // Node overhead: 2 bytes (short) level + 4 bytes (size) = 6 bytes
     private static final int NODE_OVERHEAD = 6;
+    // Compressed leaf node overhead: node overhead + 1 byte coordinate mode = 7 bytes
+    private static final int COMPRESSED_LEAF_OVERHEAD = NODE_OVERHEAD + 1;
+    // Smallest compressed leaf entry: 1 byte operation type + 1 byte id delta + 4 * 1 byte coordinate XOR = 6 bytes
+    private static final int MIN_COMPRESSED_LEAF_ENTRY_SIZE = 6;
 
     private static final Descriptor sampleQuery = new DoublePointRectangle(
             new double[]{27194.0, 64799.0},
@@ -84,6 +101,18 @@ final class TestDriver {
     private static final OptionSpec<Integer> cacheOption
             = optParser.accepts("cache").withRequiredArg().ofType(Integer.class).defaultsTo(0);
     @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> cacheStripesOption
+            = optParser.accepts("cachestripes").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Long> bufBytesOption
+            = optParser.accepts("bufbytes").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Long> memBudgetOption
+            = optParser.accepts("membudget").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> memBalanceWindowOption
+            = optParser.accepts("membalancewindow").withRequiredArg().ofType(Integer.class).defaultsTo(10);
+    @SuppressWarnings("unchecked")
     private static final OptionSpec<PushDownStrategyType> pushDownStrategyOption
             = optParser.accepts("pushdown").withRequiredArg().ofType(PushDownStrategyType.class)
                 .defaultsTo(PushDownStrategyType.EVERYTHING);
@@ -97,6 +126,9 @@ final class TestDriver {
     @SuppressWarnings("unchecked")
     private static final OptionSpec<Double> groupSizeCoefficientOption
             = optParser.accepts("groupsizecoeff").withRequiredArg().ofType(Double.class).defaultsTo(1.0D);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> adaptiveWindowOption
+            = optParser.accepts("adaptivewindow").withRequiredArg().ofType(Integer.class).defaultsTo(5);
     private static final OptionSpec<Void> disableQueryPiggybackingOption
             = optParser.accepts("disablequerypiggybacking");
     private static final OptionSpec<Void> disableUpdateIndexPiggybackingOption
@@ -112,8 +144,40 @@ final class TestDriver {
     @SuppressWarnings("unchecked")
     private static final OptionSpec<Boolean> persistentOption
             = optParser.accepts("persistent").withRequiredArg().ofType(Boolean.class).defaultsTo(Boolean.FALSE);
+    private static final OptionSpec<String> bufferLogOption
+            = optParser.accepts("wal").withRequiredArg().ofType(String.class);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> groupCommitOption
+            = optParser.accepts("walgroupcommit").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+    private static final OptionSpec<String> storageOption
+            = optParser.accepts("storage").withRequiredArg().ofType(String.class);
+    private static final OptionSpec<Void> snapshotBufferOption
+            = optParser.accepts("snapshotbuffer");
+    private static final OptionSpec<Void> freshStorageOption
+            = optParser.accepts("fresh");
+    private static final OptionSpec<Void> leafLocationIndexOption
+            = optParser.accepts("leaflocationindex");
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> nodeBuffersOption
+            = optParser.accepts("nodebuffers").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    private static final OptionSpec<Void> floatIndexOption
+            = optParser.accepts("floatindex");
+    private static final OptionSpec<Void> compressedLeavesOption
+            = optParser.accepts("compressedleaves");
+    private static final OptionSpec<Void> coalesceWritesOption
+            = optParser.accepts("coalescewrites");
+    private static final OptionSpec<Void> clusteredAllocationOption
+            = optParser.accepts("clusteredallocation");
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> defragIosOption
+            = optParser.accepts("defragios").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> defragIntervalOption
+            = optParser.accepts("defraginterval").withRequiredArg().ofType(Integer.class).defaultsTo(1);
     private static final OptionSpec<Void> countObjectsOption
             = optParser.accepts("countobjects");
+    private static final OptionSpec<Void> movesOption
+            = optParser.accepts("moves");
     @SuppressWarnings("unchecked")
     private static final OptionSpec<Double> piggybackingEpsilonOption
             = optParser.accepts("piggybackingepsilon").withRequiredArg().ofType(Double.class).defaultsTo(0.0D);
@@ -126,7 +190,18 @@ final class TestDriver {
     
     private static final OptionSpec<Integer> updateIOQueryRatioOption
             = optParser.accepts("queryratio").withRequiredArg().ofType(Integer.class);
-    
+
+    /* Load generator options */
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> clientsOption
+            = optParser.accepts("clients").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Integer> queryClientsOption
+            = optParser.accepts("queryclients").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<Long> thinkTimeOption
+            = optParser.accepts("thinktime").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+
     /* Garbage collection options */
     @SuppressWarnings("unchecked")
     private static final OptionSpec<GcStrategyType> gcOption
@@ -155,6 +230,12 @@ final class TestDriver {
             = optParser.accepts("opgroupmaker").withRequiredArg().ofType(OperationGroupMakerType.class)
                 .defaultsTo(OperationGroupMakerType.DEFAULT);
 
+    /* GroupSplit option */
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<GroupSplitterType> groupSplitterOption
+            = optParser.accepts("groupsplit").withRequiredArg().ofType(GroupSplitterType.class)
+                .defaultsTo(GroupSplitterType.TWO_WAY);
+
     /* Tracing and debugging options */
     private static final OptionSpec<Void> verifyAlwaysOption
             = optParser.accepts("verifyalways");
@@ -173,6 +254,12 @@ final class TestDriver {
     @SuppressWarnings("unchecked")
     private static final OptionSpec<Integer> notifyOnLineOption
             = optParser.accepts("notifyonline").withRequiredArg().ofType(Integer.class).defaultsTo(-1);
+    private static final OptionSpec<String> instrumentationOutOption
+            = optParser.accepts("instrumentation").withRequiredArg().ofType(String.class);
+    @SuppressWarnings("unchecked")
+    private static final OptionSpec<InstrumentationExporter.Format> instrumentationFormatOption
+            = optParser.accepts("instrumentationformat").withRequiredArg()
+                .ofType(InstrumentationExporter.Format.class).defaultsTo(InstrumentationExporter.Format.JSON);
     private static final OptionSpec<ObjectTracer.TraceClass> tracingOption
             = optParser.accepts("trace").withOptionalArg().ofType(ObjectTracer.TraceClass.class)
                 .withValuesSeparatedBy(',');
@@ -199,6 +286,19 @@ final class TestDriver {
                 return new ConvertableConverter<>(UPDATE_LEAFENTRY_FACTORY);
             }
         },
+        HILBERT_RR_TREE {
+            TreeDriver<KPE> makeTreeDriver() {
+                return new aau.testDriver.RRTree<>(aau.testDriver.RRTree.TreeType.HILBERT_TREE);
+            }
+
+            OperationGroupMakerType defaultOperationGroupMakerType() { return OperationGroupMakerType.HILBERT; }
+
+            Converter<?> getLeafConverter() { return new ConvertableConverter<>(DATA_LEAFENTRY_FACTORY); }
+
+            int indexEntrySize() { return HILBERT_INDEX_ENTRY_SIZE; }
+
+            int floatIndexEntrySize() { return HILBERT_FLOAT_INDEX_ENTRY_SIZE; }
+        },
         R_TREE {
             TreeDriver<KPE> makeTreeDriver() {
                 return new RTree<>();
@@ -213,6 +313,10 @@ final class TestDriver {
         abstract OperationGroupMakerType defaultOperationGroupMakerType();
         abstract Converter<?> getLeafConverter();
 
+        int indexEntrySize() { return INDEX_ENTRY_SIZE; }
+
+        int floatIndexEntrySize() { return FLOAT_INDEX_ENTRY_SIZE; }
+
         private static final Function<Object, KPE> DATA_LEAFENTRY_FACTORY = new Function<Object, KPE> () {
             public KPE invoke () {
                 return new KPE(new DataID(), new DoublePointRectangle(2), WorkloadOperation.getConverter());
@@ -239,7 +343,8 @@ final class TestDriver {
         BUF_LARGEST_DIV_BY_FANOUT   ("largest groups in the buffer, divided by node fanout below root"),
         BUF_THRESHOLD_DIV_BY_CONST  ("threshold at the root level, divided by global fanout below root"),
         BUF_THRESHOLD_DIV_BY_FANOUT ("threshold at the root level, divided by node fanout below root"),
-        LEAF_THRESHOLD_TIMES_FANOUT ("threshold at one above leaf level, multiplied by global fanout above");
+        LEAF_THRESHOLD_TIMES_FANOUT ("threshold at one above leaf level, multiplied by global fanout above"),
+        ADAPTIVE_THRESHOLD          ("threshold at the root level, tuned online by operations pushed per node");
 
         private final String description;
 
@@ -260,7 +365,8 @@ final class TestDriver {
         DEFAULT   ("default for the tree type"),
         TRIVIAL   ("trivial (i by ChooseSubtree, d by splitting into all overlaps)"),
         DELSASINS ("deletions as insertions (i and d by ChooseSubtree)"),
-        INSONLY   ("insertions only (i by ChooseSubtree, d never happens)");
+        INSONLY   ("insertions only (i by ChooseSubtree, d never happens)"),
+        HILBERT   ("Hilbert key ranges (i and d by binary search over the child key ranges)");
 
         private final String description;
 
@@ -273,10 +379,36 @@ final class TestDriver {
         }
     }
 
+    public enum GroupSplitterType {
+        TWO_WAY ("recursive R*-tree two-way split"),
+        STR     ("single pass Sort-Tile-Recursive partitioning"),
+        HILBERT ("single pass Hilbert order partitioning");
+
+        private final String description;
+
+        GroupSplitterType(final String description) {
+            this.description = description;
+        }
+
+        String getDescription() {
+            return description;
+        }
+
+        RRTreeGroupSplitter makeGroupSplitter() {
+            switch (this) {
+                case TWO_WAY: return new RecursiveTwoWaySplitter();
+                case STR:     return new SortTileRecursiveSplitter();
+                case HILBERT: return new HilbertSplitter();
+                default: throw new IllegalStateException();
+            }
+        }
+    }
+
     // Command line arg values
     private static int trackObjId;
     private static int verifyLineNumber;
     private static OperationGroupMakerType operationGroupMakerType;
+    private static GroupSplitterType groupSplitterType;
     private static TreeType treeType;
 
     /**
@@ -293,11 +425,19 @@ final class TestDriver {
     private static String groupSizesFileName = "";
     private static String rootGroupSizesFileName = "";
     private static int cacheSize;
+
+    private static int cacheStripes;
     private static PushDownStrategyType pushDownStrategyType;
     private static boolean groupSizeByInsertions;
     private static int groupSizeThreshold;
     private static double groupSizeCoefficient;
+    private static int adaptiveWindow;
     private static int bufferSize;
+    private static long bufferBytes = 0;
+    /**
+     * Rebalances the memory budget between the buffer and the LRU cache, <code>null</code> for a static split
+     */
+    private static MemoryBudgetBalancer memoryBalancer = null;
     private static boolean doQueryPiggybacking = false;
     private static boolean doUpdateIndexPiggybacking = false;
     private static boolean doUpdateLeafPiggybacking = false;
@@ -306,9 +446,52 @@ final class TestDriver {
     private static boolean verifyOnIO = false;
     private static boolean assertInvariants = false;
     private static boolean persistent;
+
+    /**
+     * The buffer write-ahead log file, or <code>null</code> if the buffer is not logged
+     */
+    private static String bufferLogFileName = null;
+
+    private static int groupCommitSize;
+
+    /**
+     * The prefix of the kept tree storage files, or <code>null</code> if the tree is built from scratch and deleted
+     * at the end
+     */
+    private static String storagePrefix = null;
+
+    private static boolean snapshotBuffer = false;
+
+    /**
+     * Flag indicating if any existing tree storage and its saved state are overwritten by a new tree
+     */
+    private static boolean freshStorage = false;
+
+    private static boolean leafLocationIndex = false;
+    private static int nodeBufferCapacity = 0;
+    private static boolean floatIndexMBRs = false;
+    private static boolean compressedLeaves = false;
+    private static boolean coalesceWrites = false;
+    private static boolean clusteredAllocation = false;
+    /**
+     * The container I/O budget of a single defragmentation, 0 for no defragmentation
+     */
+    private static int defragIoBudget = 0;
+    /**
+     * The number of the buffer emptyings between the defragmentations
+     */
+    private static int defragInterval = 1;
     private static boolean countObjects = false;
+    private static boolean moves = false;
     private static GcStrategyType gcStrategyType;
 
+    /**
+     * The deletion held back to be paired with an insertion of the same object on the next input line into a move
+     */
+    private static final MutableWorkloadOperation pendingDeletion = new MutableWorkloadOperation();
+
+    private static boolean deletionPending = false;
+
     /**
      * The type of the chosen garbage collection invocation option.
      */
@@ -347,6 +530,30 @@ final class TestDriver {
 
     private static EnumSet<ObjectTracer.TraceClass> traceMask;
 
+    /**
+     * The file to write the operation time and allocation histograms to, or <code>null</code> if the tree should not
+     * be instrumented
+     */
+    private static String instrumentationFileName = null;
+
+    private static InstrumentationExporter.Format instrumentationFormat;
+
+    /**
+     * The number of closed-loop load generator clients for the main input file, or 0 to replay the workload
+     * sequentially
+     */
+    private static int clients;
+
+    /**
+     * The number of load generator clients for the query input file
+     */
+    private static int queryClients;
+
+    /**
+     * The load generator client think time between operations, in microseconds
+     */
+    private static long thinkTime;
+
     // Main data variables
     private static TreeDriver<KPE> tree = null;
     private static TreeVerifier<KPE> treeVerifier = null;
@@ -361,6 +568,11 @@ final class TestDriver {
      */
     private static InputFile queryInputFile = null;
 
+    /**
+     * The reused record for the operations read from the query input file
+     */
+    private static final MutableWorkloadOperation queryRecord = new MutableWorkloadOperation();
+
     private static PushDownGroupsStrategy<KPE> pushDownStrategy = null;
 
     // Statistical counters
@@ -387,11 +599,27 @@ final class TestDriver {
     private static int gcWrites = 0;
 
     private static int garbageCleanedCount = 0;
+
+    /**
+     * Reads caused by defragmentation.
+     */
+    private static int defragReads = 0;
+
+    /**
+     * Writes caused by defragmentation.
+     */
+    private static int defragWrites = 0;
+
+    private static int defragRelocatedNodes = 0;
     private static final AggregateStats diskDataRatioBeforeGCStat = new AggregateStats();
     private static final AggregateStats diskDataRatioAfterGCStat = new AggregateStats();
 
     private static TestIO testIO = null;
 
+    private static int ebCount = 0;
+
+    private static boolean performGcAfterNextEb = false;
+
     private TestDriver() { }
 
     public static void main(final String[] args) {
@@ -408,8 +636,11 @@ final class TestDriver {
             switch (treeType) {
                 case RR_TREE:
                 case UPDATE_RR_TREE:
-                    if (bufferSize == -1)
+                case HILBERT_RR_TREE:
+                    if ((bufferSize == -1) && (bufferBytes == 0))
                         throw new IllegalArgumentException("Unspecified buffer size for the RR-tree!");
+                    if (bufferSize == -1)
+                        bufferSize = Integer.MAX_VALUE;
                     pushDownStrategy = preparePushDownStrategy();
                     if (operationGroupMakerType == OperationGroupMakerType.DEFAULT)
                         operationGroupMakerType = treeType.defaultOperationGroupMakerType();
@@ -425,17 +656,57 @@ final class TestDriver {
                 case TRIVIAL:   operationGroupMaker = new TrivialOperationGroupMaker(); break;
                 case DELSASINS: operationGroupMaker = new DeletionsAsInsertionsGroupMaker(); break;
                 case INSONLY:   operationGroupMaker = new InsertionsOnlyGroupMaker(); break;
+                case HILBERT:   operationGroupMaker = new HilbertOperationGroupMaker(); break;
                 default: throw new IllegalStateException();
             }
 
-            final int maxCapacity = (containerBlockSize - NODE_OVERHEAD) / ENTRY_SIZE;
+            // With float index MBRs or Hilbert index entries the leaf and index nodes have their own capacities
+            final int indexEntrySize = floatIndexMBRs ? treeType.floatIndexEntrySize() : treeType.indexEntrySize();
+            final boolean ownIndexCapacities = (indexEntrySize != INDEX_ENTRY_SIZE);
+            final int maxCapacity = (containerBlockSize - NODE_OVERHEAD)
+                    / (ownIndexCapacities ? LEAF_ENTRY_SIZE : ENTRY_SIZE);
             @SuppressWarnings({"NumericCastThatLosesPrecision"})
             final int minCapacity = (int)Math.floor((double) maxCapacity * DEFAULT_MIN_FANOUT);
+            final int maxIndexCapacity = (containerBlockSize - NODE_OVERHEAD) / indexEntrySize;
+            @SuppressWarnings({"NumericCastThatLosesPrecision"})
+            final int minIndexCapacity = (int)Math.floor((double) maxIndexCapacity * DEFAULT_MIN_FANOUT);
+            // A compressed leaf holds as many entries as fit, the minimum fanout is kept for the incompressible ones
+            final int maxCompressedCapacity
+                    = (containerBlockSize - COMPRESSED_LEAF_OVERHEAD) / MIN_COMPRESSED_LEAF_ENTRY_SIZE;
+            @SuppressWarnings({"NumericCastThatLosesPrecision"})
+            final int minCompressedCapacity = (int)Math.floor(
+                    (double)(containerBlockSize - COMPRESSED_LEAF_OVERHEAD) / LEAF_ENTRY_SIZE * DEFAULT_MIN_FANOUT);
+
+            // With the write-ahead log, the tree state at the last checkpoint is recovered from the log
+            final File snapshotFile = ((storagePrefix != null) && (bufferLogFileName == null))
+                    ? new File(storagePrefix + ".snapshot") : null;
+            final File stateFile = (snapshotFile != null) ? snapshotFile
+                    : (bufferLogFileName != null) ? new File(bufferLogFileName) : null;
+            final boolean reopen = (storagePrefix != null) && !freshStorage && TestIO.storageExists(storagePrefix);
+            if (stateFile != null) {
+                if (freshStorage) {
+                    if (stateFile.exists() && !stateFile.delete())
+                        throw new IOException("Failed to delete " + stateFile);
+                }
+                // Never overwrite a stored tree without a state to reopen it from, nor pair a state with a new tree
+                else if (reopen != (stateFile.length() > 0))
+                    throw new IllegalStateException("The tree storage " + storagePrefix
+                            + (reopen ? " exists without " : " does not exist for ") + stateFile
+                            + ", specify --fresh to start a new tree");
+            }
 
+            if (floatIndexMBRs)
+                tree.enableFloatIndexMBRs();
+            if (compressedLeaves)
+                tree.enableCompressedLeaves(containerBlockSize);
+            if (coalesceWrites)
+                tree.enableWriteCoalescing();
+            if (clusteredAllocation)
+                tree.enableClusteredAllocation();
             final Converter<?> c = treeType.getLeafConverter();
-            testIO = new TestIO (containerBlockSize, cacheSize, persistent,
+            testIO = new TestIO (containerBlockSize, cacheSize, cacheStripes, persistent,
                     (tree.asTree() instanceof aau.bufferedIndexes.RRTree), tree.nodeConverter(c, 2),
-                    updateIOQueryRatio);
+                    updateIOQueryRatio, storagePrefix, reopen);
 
             // Function that returns the ID of a given KPE data object.
             final Function<KPE, DataID> GET_ID = new Function<KPE, DataID>() {
@@ -454,99 +725,88 @@ final class TestDriver {
             tree.initialize(GET_ID, GET_DESCRIPTOR, testIO.get(), minCapacity, maxCapacity, bufferSize,
                     operationGroupMaker, doUpdateIndexPiggybacking, doUpdateLeafPiggybacking, piggybackingEpsilon,
                     gcIndexCacheSize, gcInitialScratchMemSize, doQueryPiggybacking, pushDownStrategy, objectTracer);
+            if (ownIndexCapacities)
+                tree.setIndexNodeCapacities(minIndexCapacity, maxIndexCapacity);
+            if (compressedLeaves)
+                tree.setLeafNodeCapacities(minCompressedCapacity, maxCompressedCapacity);
+            tree.setGroupSplitter(groupSplitterType.makeGroupSplitter());
+            if (leafLocationIndex)
+                tree.enableLeafLocationIndex();
+            if (nodeBufferCapacity > 0)
+                tree.enableNodeBuffers(nodeBufferCapacity);
+            if (bufferBytes > 0)
+                tree.setBufferMemoryBudget(bufferBytes);
+
+            final HistogramInstrumentation instrumentation
+                    = (instrumentationFileName != null) ? new HistogramInstrumentation() : null;
+            if (instrumentation != null)
+                tree.setInstrumentation(instrumentation);
+
+            final Converter<UpdateTree.Entry<KPE>> entryConverter
+                    = new ConvertableConverter<>(TreeType.UPDATE_LEAFENTRY_FACTORY);
+            if (reopen && (snapshotFile != null)) {
+                tree.restoreSnapshot(snapshotFile, entryConverter);
+                System.out.println("Reopened the tree from " + storagePrefix);
+            }
+            if (snapshotFile != null)
+                tree.setSnapshotFile(snapshotFile, snapshotBuffer, entryConverter);
+
+            BufferLog<KPE> bufferLog = null;
+            if (bufferLogFileName != null) {
+                //noinspection unchecked
+                bufferLog = new BufferLog<>(new File(bufferLogFileName), testIO.get().objectIdConverter(),
+                        entryConverter, groupCommitSize, containerBlockSize);
+                System.out.println("Buffer log records replayed: " + tree.setBufferLog(bufferLog));
+                if (reopen) {
+                    if (bufferLog.getReplayedCheckpoint() == null)
+                        throw new IllegalStateException("The write-ahead log " + bufferLogFileName
+                                + " has no checkpoint of the tree storage " + storagePrefix
+                                + ", specify --fresh to start a new tree");
+                    System.out.println("Recovered the tree from " + storagePrefix);
+                }
+            }
 
             treeVerifier = new TreeVerifier<>(tree, verifyOnFinish || verifyAlways || verifyOnIO
                     || (verifyLineNumber != -1));
 
-            WorkloadOperation query = getNextQuery();
             final Set<Integer> seenIDs = countObjects ? new HashSet<Integer>() : null;
-            int ebCount = 0;
-            boolean performGcAfterNextEb = false;
              // Statistics of query latency, i.e. number of update I/Os passed from query issue time until the query
              // is answered
             final AggregateStats ioLatencyStat = new AggregateStats();
 
-            while (inputFile.hasNextOperation()) {
-
-                if (inputFile.getLineNumber() == notifyOnLine)
-                    System.err.println("Input line = " + notifyOnLine + " reached");
-
-                if (testIO.wasQueryIssued())
-                    throw new IllegalStateException("Unhandled query!");
-                
-                final WorkloadOperation operation = inputFile.getNextOperation();
-
-                if (countObjects && operation.isUpdate())
-                    seenIDs.add(operation.getId());
-
-                if (operation.isEmptyBuffer())
-                    tree.emptyBuffer();
-                else if (operation.isInsert() || operation.isDeletingInsert()) {
-                    doInsert(operation);
-                    tree.registerPersistenceIo(testIO);
-                } else if (operation.isKindOfDelete()) {
-                    doDelete(operation);
-                    tree.registerPersistenceIo(testIO);
-                } else if (operation.isQuery()) {
-                    if (queryInputFile == null)
-                        doQuery(operation);
-                    else {
-                        // TODO: currently let's ignore queries in the main query input file, because we use
-                        // previously-generated datasets where they exist
-                        //throw new IllegalStateException("With query input file used, a query found in the main input "
-                        //        + inputFile.getLineNumber());
-                    }
-                } else
-                    System.err.println("Unknown operation, line " + inputFile.getLineNumber());
-
-                if (inputFile.getLineNumber() == notifyOnLine) {
-                    System.err.println("Operation on input line = " + notifyOnLine + " executed");
-                    performSampleQuery();
-                }
-
-                if (tree.wasBufferEmptied()) {
-                    ebCount++;
-                    if (performGcAfterNextEb) {
-                        performGcAfterNextEb = false;
-                        cleanGarbage();
-                    }
-                    else if (shouldDoGC(ebCount)) {
-                        if (gcFullEb) {
-                            tree.onNextEbForceFullEmptying();
-                            performGcAfterNextEb = true;
-                        }
-                        else
-                            cleanGarbage();
-                    }
-                }
-
-                if (testIO.wasQueryIssued()) {
-                    final Iterator<IOStatsState> iosAtQueryTimeItr = testIO.getIoSnapshotsAtQueryTime();
-                    testIO.disableIoIntervalNotifications();
-                    while (iosAtQueryTimeItr.hasNext() && (query != null)) {
-                        final IOStatsState iosAtQueryTime = iosAtQueryTimeItr.next();
-                        final IOStatsState iosPreQuery = testIO.statsSnapshot();
-                        doQuery(query);
-                        ioLatencyStat.registerValue(iosAtQueryTime.getDelta());
-                        testIO.revert(iosPreQuery);
-                        query = getNextQuery();
-                    }
-                    testIO.enableIoIntervalNotifications();
-                }
+            if (clients > 0)
+                runLoadGenerator(seenIDs);
+            else
+                replayWorkload(seenIDs, ioLatencyStat);
 
-                if (assertInvariants)
-                    tree.checkTreeStructure();
-            }
             inputFile.close();
+            if (queryInputFile != null)
+                queryInputFile.close();
+            if (bufferLog != null) {
+                tree.checkpoint();
+                bufferLog.close();
+                tree.registerPersistenceIo(testIO);
+            }
             tree.registerBufferLifetimes();
             printStats(seenIDs, ioLatencyStat);
             outputStatisticalData(groupSizesFileName, tree.getGlobalGroupSizes());
             outputStatisticalData(rootGroupSizesFileName, tree.getRootGroupSizes());
+            if (instrumentation != null) {
+                final PrintWriter instrumentationOutput = new PrintWriter(instrumentationFileName);
+                InstrumentationExporter.write(instrumentation, instrumentationFormat, instrumentationOutput);
+                instrumentationOutput.close();
+            }
             if (verifyOnFinish) {
                 System.out.print("Performing final verification...");
                 verify();
                 System.out.println("done");
             }
+            if (snapshotFile != null) {
+                // Without the buffer in the snapshot, it has to go to the disk tree
+                if (!snapshotBuffer)
+                    tree.emptyBuffer();
+                tree.checkpoint();
+            }
         }
         catch (FileNotFoundException e) {
             System.err.println(e);
@@ -559,10 +819,202 @@ final class TestDriver {
             System.exit(1);
         } finally {
             if (testIO != null)
-                testIO.closeAndDelete();
+                testIO.close();
         }
     }
 
+    /**
+     * Replays the main input file operation by operation, issuing the queries from the query input file, if any,
+     * every time enough update I/O has happened.
+     *
+     * @param seenIDs       the set to collect the updated object ids in, or <code>null</code>
+     * @param ioLatencyStat the statistics of query latency in update I/Os
+     */
+    private static void replayWorkload(final Set<Integer> seenIDs, final AggregateStats ioLatencyStat)
+            throws IOException, TreeVerifier.FailedVerificationException {
+        MutableWorkloadOperation query = getNextQuery();
+        final MutableWorkloadOperation operation = new MutableWorkloadOperation();
+
+        while (inputFile.hasNextOperation()) {
+            boolean operationExecuted = true;
+
+            if (inputFile.getLineNumber() == notifyOnLine)
+                System.err.println("Input line = " + notifyOnLine + " reached");
+
+            if (testIO.wasQueryIssued())
+                throw new IllegalStateException("Unhandled query!");
+            
+            inputFile.readNextOperation(operation);
+
+            if (countObjects && operation.isUpdate())
+                seenIDs.add(operation.getId());
+
+            if (operation.isQuery() && (queryInputFile != null)) {
+                // TODO: currently let's ignore queries in the main query input file, because we use
+                // previously-generated datasets where they exist
+                //throw new IllegalStateException("With query input file used, a query found in the main input "
+                //        + inputFile.getLineNumber());
+            }
+            else if (moves)
+                operationExecuted = executeOrPairIntoMove(operation);
+            else
+                executeOperation(operation);
+
+            if (inputFile.getLineNumber() == notifyOnLine) {
+                System.err.println("Operation on input line = " + notifyOnLine + " executed");
+                performSampleQuery();
+            }
+
+            if (operationExecuted && tree.wasBufferEmptied())
+                onBufferEmptied();
+
+            if (testIO.wasQueryIssued()) {
+                final Iterator<IOStatsState> iosAtQueryTimeItr = testIO.getIoSnapshotsAtQueryTime();
+                testIO.disableIoIntervalNotifications();
+                while (iosAtQueryTimeItr.hasNext() && (query != null)) {
+                    final IOStatsState iosAtQueryTime = iosAtQueryTimeItr.next();
+                    final IOStatsState iosPreQuery = testIO.statsSnapshot();
+                    doQuery(query);
+                    ioLatencyStat.registerValue(iosAtQueryTime.getDelta());
+                    testIO.revert(iosPreQuery);
+                    query = getNextQuery();
+                }
+                testIO.enableIoIntervalNotifications();
+            }
+
+            if (assertInvariants)
+                tree.checkTreeStructure();
+        }
+        executePendingDeletion();
+    }
+
+    /**
+     * Executes an operation, except that a deletion is held back until the next operation.  If that is an insertion
+     * of the same object, both are executed as a single move.
+     *
+     * @param operation the operation
+     * @return <code>true</code> if the operation was executed, <code>false</code> if it was held back
+     */
+    private static boolean executeOrPairIntoMove(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
+        if (deletionPending && operation.isInsert() && (operation.getId() == pendingDeletion.getId())
+                && tree.canMove(pendingDeletion.getObject(), operation.getObject())) {
+            deletionPending = false;
+            doMove(pendingDeletion, operation);
+            tree.registerPersistenceIo(testIO);
+            return true;
+        }
+        executePendingDeletion();
+        if (!operation.isKindOfDelete()) {
+            executeOperation(operation);
+            return true;
+        }
+        pendingDeletion.set(operation.getOperationType(), operation.getId(), operation.x1(), operation.y1(),
+                operation.x2(), operation.y2());
+        deletionPending = true;
+        return false;
+    }
+
+    private static void executePendingDeletion() throws TreeVerifier.FailedVerificationException {
+        if (!deletionPending)
+            return;
+        deletionPending = false;
+        executeOperation(pendingDeletion);
+        if (tree.wasBufferEmptied())
+            onBufferEmptied();
+    }
+
+    /**
+     * Runs the main input file, and the query input file, if any, with closed-loop load generator clients and
+     * prints the throughput and latencies.
+     *
+     * @param seenIDs the set to collect the updated object ids in, or <code>null</code>
+     */
+    private static void runLoadGenerator(final Set<Integer> seenIDs) throws Exception {
+        final LoadGenerator loadGenerator = new LoadGenerator(TimeUnit.MICROSECONDS.toNanos(thinkTime));
+        loadGenerator.addWorkload(inputFile, clients, new LoadGenerator.OperationExecutor() {
+            public boolean execute(final MutableWorkloadOperation operation) throws Exception {
+                // Same as in the sequential mode, the queries are taken from the query input file only, if any
+                if (operation.isQuery() && (queryInputFile != null))
+                    return false;
+                if (countObjects && operation.isUpdate())
+                    seenIDs.add(operation.getId());
+                return executeAndHandleBufferEmptying(operation);
+            }
+        });
+        if (queryInputFile != null) {
+            loadGenerator.addWorkload(queryInputFile, queryClients, new LoadGenerator.OperationExecutor() {
+                public boolean execute(final MutableWorkloadOperation operation) throws Exception {
+                    if (!operation.isQuery())
+                        throw new IllegalStateException("Non-query found in the query file "
+                                + queryInputFile.getName());
+                    return executeAndHandleBufferEmptying(operation);
+                }
+            });
+        }
+        loadGenerator.run();
+        loadGenerator.printStats();
+    }
+
+    private static boolean executeAndHandleBufferEmptying(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
+        executeOperation(operation);
+        final boolean bufferEmptied = tree.wasBufferEmptied();
+        if (bufferEmptied)
+            onBufferEmptied();
+        if (assertInvariants)
+            tree.checkTreeStructure();
+        return bufferEmptied;
+    }
+
+    private static void executeOperation(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
+        if (operation.isEmptyBuffer())
+            tree.emptyBuffer();
+        else if (operation.isInsert() || operation.isDeletingInsert()) {
+            doInsert(operation);
+            tree.registerPersistenceIo(testIO);
+        } else if (operation.isKindOfDelete()) {
+            doDelete(operation);
+            tree.registerPersistenceIo(testIO);
+        } else if (operation.isQuery())
+            doQuery(operation);
+        else
+            System.err.println("Unknown operation, line " + inputFile.getLineNumber());
+    }
+
+    private static void onBufferEmptied() throws TreeVerifier.FailedVerificationException {
+        ebCount++;
+        // The leaf location index is used by the buffer emptying only
+        tree.registerAuxiliaryIo(testIO);
+        if (performGcAfterNextEb) {
+            performGcAfterNextEb = false;
+            cleanGarbage();
+        }
+        else if (shouldDoGC(ebCount)) {
+            if (gcFullEb) {
+                tree.onNextEbForceFullEmptying();
+                performGcAfterNextEb = true;
+            }
+            else
+                cleanGarbage();
+        }
+        if ((defragIoBudget > 0) && (ebCount % defragInterval == 0))
+            defragment();
+        if ((memoryBalancer != null) && memoryBalancer.emptyingFinished(testIO.cacheRequests(), testIO.reads(),
+                testIO.writes(), insertions + deletions)) {
+            testIO.setCacheCapacity(memoryBalancer.getCachePages());
+            tree.setBufferMemoryBudget(memoryBalancer.getBufferBytes());
+        }
+    }
+
+    private static void defragment() {
+        final IOStatsState ioStatsState = testIO.statsSnapshot();
+        defragRelocatedNodes += tree.defragment(defragIoBudget);
+        defragReads += ioStatsState.getReadDelta();
+        defragWrites += ioStatsState.getWriteDelta();
+    }
+
     private static void printStats(final Set<Integer> seenIDs, final AggregateStats ioLatencyStat) {
         final int containerWrites = testIO.writes();
         final int containerAccesses = testIO.total();
@@ -588,14 +1040,28 @@ final class TestDriver {
         System.out.println("Container updates by queries: " + queryWrites);
         System.out.println("Container reads by GC: " + gcReads);
         System.out.println("Container writes by GC: " + gcWrites);
+        if (coalesceWrites)
+            System.out.println("Container writes coalesced: " + tree.getCoalescedWrites());
+        if (defragIoBudget > 0) {
+            System.out.println("Container reads by defragmentation: " + defragReads);
+            System.out.println("Container writes by defragmentation: " + defragWrites);
+            System.out.println("Nodes relocated by defragmentation: " + defragRelocatedNodes);
+        }
         System.out.println("Average query latency in I/Os: " + ioLatencyStat.average());
         System.out.println("Maximum query latency in I/Os: " + ioLatencyStat.maximum());
         System.out.println("Standard deviation of query latency in I/Os: " + ioLatencyStat.deviation());
         System.out.println("Final tree height: " + tree.getHeight());
         System.out.println("Final disk tree size in pages: " + testIO.sizeOnDiskInPages());
+        System.out.println("Final disk file size in pages: " + testIO.fileSizeInPages());
         System.out.println("Mean I/O per update, workload total: " + avgIOPerUpdate);
         System.out.println("Average I/O per op: " + avgIOPerOp);
         printThresholdStats();
+        if (memoryBalancer != null) {
+            System.out.println("LRU cache size every " + memoryBalancer.getWindowSize() + " emptyings: "
+                    + memoryBalancer.getCachePagesHistory());
+            System.out.println("Final LRU cache size: " + memoryBalancer.getCachePages()
+                    + ", buffer memory budget: " + memoryBalancer.getBufferBytes() + " bytes");
+        }
         System.out.println("Number of equal largest groups: " + equalLargestGroups);
         printTreeFanoutStatistics();
         System.out.println("Objects returned by queries: " + queriedObjects);
@@ -659,10 +1125,10 @@ final class TestDriver {
                 || ((gcEmptyBufferInterval > 0) && (ebCount % gcEmptyBufferInterval == 0));
     }
 
-    private static WorkloadOperation getNextQuery() throws IOException {
-        WorkloadOperation query = null;
-        if ((queryInputFile != null) && (queryInputFile.hasNextOperation())) {
-            query = queryInputFile.getNextOperation();
+    private static MutableWorkloadOperation getNextQuery() throws IOException {
+        MutableWorkloadOperation query = null;
+        if ((queryInputFile != null) && (queryInputFile.readNextOperation(queryRecord))) {
+            query = queryRecord;
             if (!query.isQuery())
                 throw new IllegalStateException("Non-query found in the query file, line = "
                         + queryInputFile.getLineNumber());
@@ -710,6 +1176,12 @@ final class TestDriver {
                     + satisfactions + " (" + satRatio + "), " + unsatisfactions + " (" + unsatRatio + "), "
                     + (satisfactions + unsatisfactions));
         }
+        if (pushDownStrategy instanceof PushDownAdaptiveThreshold) {
+            final PushDownAdaptiveThreshold adaptiveStrategy = (PushDownAdaptiveThreshold)pushDownStrategy;
+            System.out.println("Adaptive threshold every " + adaptiveStrategy.getWindowSize()
+                    + " emptyings or after a failed one: " + adaptiveStrategy.getThresholdHistory());
+            System.out.println("Final adaptive threshold: " + adaptiveStrategy.getCurrentThreshold());
+        }
     }
 
     private static PushDownGroupsStrategy<KPE> preparePushDownStrategy() {
@@ -758,6 +1230,10 @@ final class TestDriver {
                     throw new IllegalArgumentException("Unspecified group size threshold!");
                 return new PushDownThresholdTimesFanout<>(rrtree.getDiskTree(), groupSizeThreshold,
                         groupSizeByInsertions);
+            case ADAPTIVE_THRESHOLD:
+                // Without a given threshold start from pushing everything and let the strategy climb
+                return new PushDownAdaptiveThreshold<>(rrtree.getDiskTree(), rrtree.getStats(),
+                        groupSizeThreshold == -1 ? 1 : groupSizeThreshold, adaptiveWindow, groupSizeByInsertions);
             default: throw new IllegalStateException();
         }
     }
@@ -771,25 +1247,59 @@ final class TestDriver {
         assert assertionsEnabled();
         System.out.println("Tree: "+treeType+' ');
         System.out.println("Operation group maker: " + operationGroupMakerType.getDescription());
+        if (treeType != TreeType.R_TREE)
+            System.out.println("GroupSplit: " + groupSplitterType.getDescription());
         System.out.println("Buffer emptying strategy: " + pushDownStrategyType.getDescription());
         if (groupSizeThreshold != -1)
             System.out.println("Group size threshold: " + groupSizeThreshold);
         System.out.println("Group size coefficient: " + groupSizeCoefficient);
+        if (pushDownStrategyType == PushDownStrategyType.ADAPTIVE_THRESHOLD)
+            System.out.println("Adaptive threshold window: " + adaptiveWindow + " emptyings");
         if (groupSizeByInsertions)
             System.out.println("Considering only insertions for group size threshold");
         else
             System.out.println("Considering all ops for group size threshold");
         if (bufferSize != -1)
             System.out.println("Buffer size: "+ bufferSize);
+        if (bufferBytes > 0)
+            System.out.println("Buffer memory budget: " + bufferBytes + " bytes");
         if (cacheSize > 0)
-            System.out.println("LRU cache: " + cacheSize);
+            System.out.println((cacheStripes == 0) ? "LRU cache: " + cacheSize
+                    : "Striped cache: " + cacheSize + ", stripes: " + cacheStripes);
+        if (memoryBalancer != null)
+            System.out.println("Rebalancing the buffer and the LRU cache every " + memoryBalancer.getWindowSize()
+                    + " emptyings");
         System.out.println("Input: " + inputFile.getName());
         if (queryInputFile != null) {
             System.out.println("Query input file: " + queryInputFile.getName());
-            System.out.println("Update-IO/Query ratio: " + updateIOQueryRatio);
+            if (clients == 0)
+                System.out.println("Update-IO/Query ratio: " + updateIOQueryRatio);
         }
         if (persistent)
             System.out.println("Persistent setting assumed");
+        if (bufferLogFileName != null)
+            System.out.println("Buffer write-ahead log: " + bufferLogFileName + ", group commit size "
+                    + groupCommitSize);
+        if (storagePrefix != null)
+            System.out.println("Tree storage: " + storagePrefix + (snapshotBuffer ? ", buffer snapshotted" : "")
+                    + (freshStorage ? ", overwritten" : ""));
+        if (leafLocationIndex)
+            System.out.println("Routing deletions by the leaf location index");
+        if (nodeBufferCapacity > 0)
+            System.out.println("Node buffers of " + nodeBufferCapacity + " operations at the internal levels");
+        if (floatIndexMBRs)
+            System.out.println("Index entry MBRs stored as floats");
+        if (compressedLeaves)
+            System.out.println("Leaf nodes stored compressed");
+        if (coalesceWrites)
+            System.out.println("Coalescing the node writes of each buffer emptying");
+        if (clusteredAllocation)
+            System.out.println("Allocating the new nodes near their siblings");
+        if (defragIoBudget > 0)
+            System.out.println("Defragmenting after every " + defragInterval + " buffer emptyings, up to "
+                    + defragIoBudget + " I/Os");
+        if (moves)
+            System.out.println("Executing deletions followed by insertions of the same object as moves");
         if (countObjects)
             System.out.println("Counting objects");
         System.out.println("Piggybacking epsilon: " + piggybackingEpsilon);
@@ -839,18 +1349,37 @@ final class TestDriver {
         if (notifyOnLine != -1)
             System.out.println("Notifying on line = " + notifyOnLine);
         System.out.println("Tracing: " + traceMask.toString());
+        if (instrumentationFileName != null)
+            System.out.println("Instrumentation: " + instrumentationFormat + " to " + instrumentationFileName);
+        if (clients > 0) {
+            System.out.print("Load generator clients: " + clients);
+            if (queryInputFile != null)
+                System.out.print(", query clients: " + queryClients);
+            System.out.println(", think time: " + thinkTime + " us");
+        }
     }
 
     private static void processOptions(final OptionSet options) throws IOException {
         treeType = options.valueOf(treeOption);
         operationGroupMakerType = options.valueOf(operationGroupMakerOption);
+        groupSplitterType = options.valueOf(groupSplitterOption);
+        if ((treeType == TreeType.HILBERT_RR_TREE) && !options.has(groupSplitterOption))
+            groupSplitterType = GroupSplitterType.HILBERT;
+        if ((operationGroupMakerType == OperationGroupMakerType.HILBERT) && (treeType != TreeType.HILBERT_RR_TREE))
+            throw new IllegalArgumentException("The Hilbert operation group maker requires the Hilbert RR-tree!");
+        if ((treeType == TreeType.R_TREE) && (groupSplitterType != GroupSplitterType.TWO_WAY))
+            throw new IllegalArgumentException("The R-tree does not perform GroupSplit!");
         if (options.has(groupSizesOutOption)) groupSizesFileName = options.valueOf(groupSizesOutOption);
         if (options.has(rootGroupSizesOutOption)) rootGroupSizesFileName = options.valueOf(rootGroupSizesOutOption);
         containerBlockSize = options.valueOf(nodeSizeOption);
         cacheSize = options.valueOf(cacheOption);
+        cacheStripes = options.valueOf(cacheStripesOption);
+        if ((cacheStripes > 0) && (cacheSize == 0))
+            throw new IllegalArgumentException("Cache stripes require a cache!");
         pushDownStrategyType = options.valueOf(pushDownStrategyOption);
         groupSizeThreshold = options.valueOf(minGroupSizeOption);
         groupSizeCoefficient = options.valueOf(groupSizeCoefficientOption);
+        adaptiveWindow = options.valueOf(adaptiveWindowOption);
         bufferSize = options.valueOf(bufSizeOption);
         groupSizeByInsertions = options.valueOf(groupSizeByOption);
         doQueryPiggybacking = !options.has(disableQueryPiggybackingOption);
@@ -864,12 +1393,46 @@ final class TestDriver {
         assertInvariants = options.has(assertInvariantsOption);
         notifyOnLine = options.valueOf(notifyOnLineOption);
         countObjects = options.has(countObjectsOption);
+        leafLocationIndex = options.has(leafLocationIndexOption);
+        if (leafLocationIndex && (treeType != TreeType.RR_TREE) && (treeType != TreeType.HILBERT_RR_TREE))
+            throw new IllegalArgumentException("The leaf location index is only supported for the RR-tree "
+                    + "with the data disk tree!");
+        nodeBufferCapacity = options.valueOf(nodeBuffersOption);
+        if ((nodeBufferCapacity > 0) && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Node buffers are only supported for the RR-tree!");
+        floatIndexMBRs = options.has(floatIndexOption);
+        if (floatIndexMBRs && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Float index MBRs are only supported for the RR-tree!");
+        compressedLeaves = options.has(compressedLeavesOption);
+        if (compressedLeaves && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Compressed leaves are only supported for the RR-tree!");
+        coalesceWrites = options.has(coalesceWritesOption);
+        if (coalesceWrites && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Write coalescing is only supported for the RR-tree!");
+        clusteredAllocation = options.has(clusteredAllocationOption);
+        if (clusteredAllocation && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Clustered allocation is only supported for the RR-tree!");
+        defragIoBudget = options.valueOf(defragIosOption);
+        if (defragIoBudget < 0)
+            throw new IllegalArgumentException("Negative defragmentation I/O budget!");
+        if ((defragIoBudget > 0) && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("Defragmentation is only supported for the RR-tree!");
+        defragInterval = options.valueOf(defragIntervalOption);
+        if (defragInterval <= 0)
+            throw new IllegalArgumentException("Non-positive defragmentation interval!");
+        moves = options.has(movesOption);
+        if (moves && (options.valueOf(clientsOption) > 0))
+            throw new IllegalArgumentException("Moves are not supported by the load generator!");
         inputFile = new InputFile(options.valueOf(inputOption));
         if (options.has(inputQueriesOption)) {
             queryInputFile = new InputFile(options.valueOf(inputQueriesOption));
-            if (options.has(updateIOQueryRatioOption))
+            if (options.has(updateIOQueryRatioOption)) {
+                if (options.valueOf(clientsOption) > 0)
+                    throw new IllegalArgumentException("The update I/O:query ratio is not supported by the load "
+                            + "generator!");
                 updateIOQueryRatio = options.valueOf(updateIOQueryRatioOption);
-            else
+            }
+            else if (options.valueOf(clientsOption) == 0)
                 throw new IllegalArgumentException("Specified query input file but not the update I/O:query ratio!");
         } else if (options.has(updateIOQueryRatioOption))
             throw new IllegalArgumentException("Specified update I/O:query ratio but not the query input file!");
@@ -881,7 +1444,51 @@ final class TestDriver {
         gcMaximumDiskSizeRatio = options.valueOf(gcDiskSizeOption);
         gcIndexCacheSize = options.valueOf(gcIndexCacheSizeOption);
         gcInitialScratchMemSize = options.valueOf(gcInitialScratchMemOption);
+        bufferBytes = options.valueOf(bufBytesOption);
+        final long memoryBudget = options.valueOf(memBudgetOption);
+        if (memoryBudget > 0) {
+            if (bufferBytes > 0)
+                throw new IllegalArgumentException("Specified both the buffer and the total memory budgets!");
+            // The buffer gets what is left after the node cache and the GC scratch memory
+            bufferBytes = memoryBudget - (long)cacheSize * containerBlockSize - gcInitialScratchMemSize;
+            if (bufferBytes <= 0)
+                throw new IllegalArgumentException("The memory budget of " + memoryBudget
+                        + " bytes leaves no room for the buffer!");
+            // The GC scratch memory is taken only when a GC starts, so it stays out of the rebalancing
+            final int memBalanceWindow = options.valueOf(memBalanceWindowOption);
+            if ((memBalanceWindow > 0) && (cacheSize > 0) && (cacheStripes == 0))
+                memoryBalancer = new MemoryBudgetBalancer(memoryBudget - gcInitialScratchMemSize,
+                        containerBlockSize, cacheSize, memBalanceWindow);
+        }
+        if ((bufferBytes > 0) && (treeType == TreeType.R_TREE))
+            throw new IllegalArgumentException("The R-tree has no buffer to budget!");
         gcFullEb = options.has(gcFullEbOption);
+        if (options.has(instrumentationOutOption))
+            instrumentationFileName = options.valueOf(instrumentationOutOption);
+        instrumentationFormat = options.valueOf(instrumentationFormatOption);
+        if (options.has(bufferLogOption))
+            bufferLogFileName = options.valueOf(bufferLogOption);
+        groupCommitSize = options.valueOf(groupCommitOption);
+        if (options.has(storageOption)) {
+            if (treeType == TreeType.R_TREE)
+                throw new IllegalArgumentException("Keeping the tree storage is not supported for the R-tree!");
+            storagePrefix = options.valueOf(storageOption);
+        }
+        // The logged buffer is useless for recovery without the disk tree it belongs to
+        if ((bufferLogFileName != null) && (storagePrefix == null))
+            throw new IllegalArgumentException("Specified the write-ahead log but not the tree storage!");
+        snapshotBuffer = options.has(snapshotBufferOption);
+        if (snapshotBuffer && (storagePrefix == null))
+            throw new IllegalArgumentException("Specified buffer snapshotting but not the tree storage!");
+        if (snapshotBuffer && (bufferLogFileName != null))
+            throw new IllegalArgumentException("The buffer is restored from the write-ahead log, "
+                    + "cannot snapshot it too!");
+        freshStorage = options.has(freshStorageOption);
+        if (freshStorage && (storagePrefix == null))
+            throw new IllegalArgumentException("Specified a fresh tree storage but not the tree storage!");
+        clients = options.valueOf(clientsOption);
+        queryClients = options.valueOf(queryClientsOption);
+        thinkTime = options.valueOf(thinkTimeOption);
         if (options.has(tracingOption)) {
             if (options.hasArgument(tracingOption))
                 traceMask = EnumSet.copyOf(options.valuesOf(tracingOption));
@@ -908,7 +1515,8 @@ final class TestDriver {
         }
     }
 
-    private static void doInsert(final WorkloadOperation operation) throws TreeVerifier.FailedVerificationException {
+    private static void doInsert(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
         if (operation.isDeletingInsert()) {
             ((RRTree)tree.asTree()).setInsertionRemovesOldInsertion();
         }
@@ -923,7 +1531,8 @@ final class TestDriver {
             verify();
     }
 
-    private static void doDelete(final WorkloadOperation operation) throws TreeVerifier.FailedVerificationException {
+    private static void doDelete(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
         final KPE datum = operation.getObject();
         maybeTraceObject(operation.getId(), datum, "delete: ");
         deletions++;
@@ -935,7 +1544,25 @@ final class TestDriver {
             verify();
     }
 
-    private static void doQuery(final WorkloadOperation operation) throws TreeVerifier.FailedVerificationException {
+    private static void doMove(final MutableWorkloadOperation deletion, final MutableWorkloadOperation insertion)
+            throws TreeVerifier.FailedVerificationException {
+        final KPE oldDatum = deletion.getObject();
+        final KPE newDatum = insertion.getObject();
+        maybeTraceObject(deletion.getId(), oldDatum, "move from: ");
+        maybeTraceObject(insertion.getId(), newDatum, "move to: ");
+        deletions++;
+        insertions++;
+        tree.update(oldDatum, newDatum);
+        tree.updateSpecificStats(inputFile.getLineNumber(), getUpdateAccesses(), insertions, deletions);
+        treeVerifier.remove(oldDatum);
+        treeVerifier.insert(newDatum);
+        if ((inputFile.getLineNumber() == verifyLineNumber) || (insertion.getId() == trackObjId) || verifyAlways
+                || (verifyOnIO && tree.wasBufferEmptied()))
+            verify();
+    }
+
+    private static void doQuery(final MutableWorkloadOperation operation)
+            throws TreeVerifier.FailedVerificationException {
         final IOStatsState ioStatsState = testIO.statsSnapshot();
         final KPE queryDatum = operation.getQueryRectangle();
         queries++;
@@ -970,8 +1597,11 @@ final class TestDriver {
 
     private static void printTreeFanoutStatistics() {
         final List<AggregateStats> entryAndNodeStats = new ArrayList<>(tree.getHeight());
-        for (int i = 0; i < tree.getHeight(); i++)
+        final List<AggregateStats> overlapStats = new ArrayList<>(tree.getHeight());
+        for (int i = 0; i < tree.getHeight(); i++) {
             entryAndNodeStats.add(new AggregateStats());
+            overlapStats.add(new AggregateStats());
+        }
         final Stack<Tree.IndexEntry> toProcess = new Stack<>();
         if (tree.getRootEntry() != null)
             toProcess.push(tree.getRootEntry());
@@ -982,8 +1612,13 @@ final class TestDriver {
             if (node.level() > 0) {
                 //noinspection unchecked
                 final Iterator<Tree.IndexEntry> i = node.entries();
-                while (i.hasNext())
-                    toProcess.push(i.next());
+                final List<Rectangle> childMbrs = new ArrayList<>(node.number());
+                while (i.hasNext()) {
+                    final Tree.IndexEntry child = i.next();
+                    childMbrs.add((Rectangle)((ORTree.IndexEntry)child).descriptor());
+                    toProcess.push(child);
+                }
+                overlapStats.get(node.level()).registerValue(pairwiseOverlap(childMbrs));
             }
         }
         for (int i = 0; i < entryAndNodeStats.size(); i++) {
@@ -991,6 +1626,18 @@ final class TestDriver {
                     + ", entries: " + entryAndNodeStats.get(i).totalInt()
                     + ", avg entries per node: " + entryAndNodeStats.get(i).average());
         }
+        for (int i = 1; i < overlapStats.size(); i++) {
+            System.out.println ("Level: " + i + ", avg child overlap area per node: " + overlapStats.get(i).average()
+                    + ", max: " + overlapStats.get(i).maximum());
+        }
+    }
+
+    private static double pairwiseOverlap(final List<Rectangle> mbrs) {
+        double result = 0.0;
+        for (int i = 0; i < mbrs.size(); i++)
+            for (int j = i + 1; j < mbrs.size(); j++)
+                result += mbrs.get(i).overlap(mbrs.get(j));
+        return result;
     }
 
     private static void outputStatisticalData(final String fileName, final StatisticalData data) 
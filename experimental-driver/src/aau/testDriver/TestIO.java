@@ -18,11 +18,14 @@
 */
 package aau.testDriver;
 
+import aau.bufferedIndexes.StripedBuffer;
 import xxl.core.collections.containers.Container;
 import xxl.core.collections.containers.CounterContainer;
+import xxl.core.collections.containers.SynchronizedContainer;
 import xxl.core.collections.containers.io.BlockFileContainer;
 import xxl.core.collections.containers.io.BufferedContainer;
 import xxl.core.collections.containers.io.ConverterContainer;
+import xxl.core.io.Buffer;
 import xxl.core.io.LRUBuffer;
 import xxl.core.io.converters.Converter;
 
@@ -43,8 +46,18 @@ public class TestIO implements IOIntervalEvent {
 
     final private CounterContainer logicalStatContainer;
 
+    /**
+     * The node cache, <code>null</code> if there is none
+     */
+    final private Buffer cache;
+
     final private boolean persistent;
 
+    /**
+     * If <code>true</code>, the container files are kept after closing
+     */
+    final private boolean keepStorage;
+
     private int persistenceIO = 0;
 
     /**
@@ -52,20 +65,49 @@ public class TestIO implements IOIntervalEvent {
      */
     private List<IOStatsState> iosAtQueryIssueTime;
 
-    public TestIO(final int containerBlockSize, final int cacheSize, final boolean persistent,
-                  final boolean cacheClonesObjects, final Converter<?> converter, final int updateIOQueryRatio) 
+    /**
+     * Creates the I/O system.
+     *
+     * @param containerBlockSize the container block size
+     * @param cacheSize          the node cache size, 0 for no cache
+     * @param cacheStripes       the number of the lock stripes in the node cache, 0 for a single-threaded LRU cache
+     * @param persistent         if <code>true</code>, the cache writes through and the persistence I/O is
+     *                           registered
+     * @param cacheClonesObjects if <code>true</code>, the cache returns object copies, which share the entries with
+     *                           the cached RR-tree nodes until modified
+     * @param converter          the node converter
+     * @param updateIOQueryRatio the number of update I/Os between the queries
+     * @param storagePrefix      the container file name prefix to keep the container in, or <code>null</code> for a
+     *                           temporary container
+     * @param reopen             if <code>true</code>, the existing container files at the storage prefix are opened
+     * @throws IOException if the temporary container cannot be created
+     */
+    public TestIO(final int containerBlockSize, final int cacheSize, final int cacheStripes, final boolean persistent,
+                  final boolean cacheClonesObjects, final Converter<?> converter, final int updateIOQueryRatio,
+                  final String storagePrefix, final boolean reopen)
             throws IOException {
-        fileContainer = prepareFileContainer(containerBlockSize);
+        fileContainer = (storagePrefix == null) ? prepareFileContainer(containerBlockSize)
+                : openFileContainer(storagePrefix, containerBlockSize, reopen);
+        keepStorage = (storagePrefix != null);
         statContainer = new CallbackCounterContainer(new ConverterContainer(fileContainer, converter),
                 updateIOQueryRatio, this);
-        final Container cacheContainer = addCache(cacheSize, persistent, cacheClonesObjects, statContainer);
+        cache = (cacheSize == 0) ? null
+                : (cacheStripes == 0) ? new LRUBuffer(cacheSize) : new StripedBuffer(cacheSize, cacheStripes);
+        final Container cacheContainer = addCache(cache, cacheStripes, persistent, cacheClonesObjects, statContainer);
         logicalStatContainer = new CounterContainer(cacheContainer);
         iosAtQueryIssueTime = new ArrayList<>();
         this.persistent = persistent;
     }
 
-    public void closeAndDelete() {
-        if (fileContainer != null)
+    /**
+     * Closes the container, deleting its files unless it is a kept storage.
+     */
+    public void close() {
+        if (fileContainer == null)
+            return;
+        if (keepStorage)
+            fileContainer.close();
+        else
             fileContainer.delete();
     }
 
@@ -86,6 +128,16 @@ public class TestIO implements IOIntervalEvent {
             persistenceIO++;
     }
 
+    /**
+     * Registers the actual I/Os done to persist the tree, e.g. by the buffer log, regardless of the persistent
+     * setting.
+     *
+     * @param ios the number of I/Os
+     */
+    public void addPersistenceIO(final int ios) {
+        persistenceIO += ios;
+    }
+
     public void addReads(final int r) {
         statContainer.gets += r;
     }
@@ -133,10 +185,43 @@ public class TestIO implements IOIntervalEvent {
         return fileContainer.size();
     }
 
+    /**
+     * Returns the length of the container file, including the free blocks.
+     *
+     * @return the number of the blocks up to the last used one
+     */
+    public int fileSizeInPages() {
+        long lastOffset = -1;
+        final Iterator<?> ids = fileContainer.ids();
+        while (ids.hasNext())
+            lastOffset = Math.max(lastOffset, ((Number)ids.next()).longValue());
+        return (lastOffset < 0) ? 0 : (int)(lastOffset / fileContainer.blockSize() + 1);
+    }
+
     public int reads() {
         return statContainer.gets;
     }
 
+    /**
+     * Returns the number of node requests to the cache, or to the storage if there is no cache.
+     *
+     * @return the number of node requests
+     */
+    public int cacheRequests() {
+        return logicalStatContainer.gets;
+    }
+
+    /**
+     * Resizes the node cache, writing out the displaced dirty nodes.
+     *
+     * @param capacity the new number of cache pages
+     */
+    public void setCacheCapacity(final int capacity) {
+        if (cache == null)
+            throw new IllegalStateException("There is no node cache to resize");
+        cache.setCapacity(capacity);
+    }
+
     public int writes() {
         return persistenceIO + statContainer.inserts + statContainer.updates + statContainer.removes;
     }
@@ -190,10 +275,36 @@ public class TestIO implements IOIntervalEvent {
         return new BlockFileContainer(tmpFileName, containerBlockSize);
     }
 
-    private static Container addCache(final int cacheSize, final boolean persistent, final boolean cacheClonesObjects,
-                                      final Container storage) {
-        return cacheSize == 0
-                ? storage
-                : new BufferedContainer(storage, new LRUBuffer(cacheSize), !persistent, cacheClonesObjects);
+    /**
+     * Checks if a container is kept at a file name prefix.
+     *
+     * @param storagePrefix the container file name prefix
+     * @return <code>true</code> if the container files exist
+     */
+    public static boolean storageExists(final String storagePrefix) {
+        return new File(storagePrefix + BlockFileContainer.EXTENSIONS[BlockFileContainer.MTD_FILE]).exists();
+    }
+
+    private static BlockFileContainer openFileContainer(final String prefix, final int containerBlockSize,
+                                                        final boolean reopen) {
+        if (!reopen)
+            return new BlockFileContainer(prefix, containerBlockSize);
+        final BlockFileContainer result = new BlockFileContainer(prefix);
+        if (result.blockSize() != containerBlockSize) {
+            result.close();
+            throw new IllegalArgumentException("Stored container block size " + result.blockSize()
+                    + " does not match the node size " + containerBlockSize);
+        }
+        return result;
+    }
+
+    private static Container addCache(final Buffer cache, final int cacheStripes, final boolean persistent,
+                                      final boolean cacheClonesObjects, final Container storage) {
+        if (cache == null)
+            return storage;
+        if (cacheStripes == 0)
+            return new BufferedContainer(storage, cache, !persistent, cacheClonesObjects);
+        // The striped buffer stripes reach the storage concurrently on their misses
+        return new BufferedContainer(new SynchronizedContainer(storage), cache, !persistent, cacheClonesObjects);
     }
 }
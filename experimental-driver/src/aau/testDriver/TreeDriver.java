@@ -18,8 +18,12 @@
 */
 package aau.testDriver;
 
+import aau.bufferedIndexes.BufferLog;
+import aau.bufferedIndexes.RRTreeGroupSplitter;
 import aau.bufferedIndexes.StatisticalData;
+import aau.bufferedIndexes.UpdateTree;
 import aau.bufferedIndexes.diskTrees.TreeClearIOState;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.objectTracers.ObjectTracer;
 import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
 import aau.bufferedIndexes.pushDownStrategies.PushDownGroupsStrategy;
@@ -31,6 +35,9 @@ import xxl.core.indexStructures.Descriptor;
 import xxl.core.io.Convertable;
 import xxl.core.io.converters.Converter;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Interface that the tested tree must implement
  */
@@ -165,6 +172,21 @@ interface TreeDriver<E extends Convertable> {
      */
     void remove(final E datum);
 
+    /**
+     * Checks if the tree can move a data object by a single update operation.
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     * @return <code>true</code> if {@link #update} is a single operation for these objects.
+     */
+    boolean canMove(final E oldDatum, final E newDatum);
+
+    /**
+     * Moves a data object in the tree, i.e. removes the old object and inserts the new one.
+     * @param oldDatum the object to remove.
+     * @param newDatum the object to insert.
+     */
+    void update(final E oldDatum, final E newDatum);
+
     /**
      * Enables or disables piggybacking, if applicable to the tree used.
      * @param enablePiggybacking new value of piggybacking flag.
@@ -204,6 +226,15 @@ interface TreeDriver<E extends Convertable> {
      */
     TreeClearIOState cleanGarbage(boolean rebuildTree);
 
+    /**
+     * Relocates the next part of the disk tree nodes into the depth-first order of the tree within an I/O budget, if
+     * applicable.
+     *
+     * @param maxIos the maximum number of container reads, writes and removes to spend
+     * @return the number of the relocated nodes
+     */
+    int defragment(int maxIos);
+
     /**
      * Makes the tree to do full buffer emptying the next time buffer becomes full, regardless of the default buffer
      * emptying strategy, if applicable.
@@ -220,4 +251,127 @@ interface TreeDriver<E extends Convertable> {
      * @param ioSystem the I/O system to register I/Os in
      */
     void registerPersistenceIo(final TestIO ioSystem);
+
+    /**
+     * Registers the reads of the auxiliary disk-based structures of the tree, e.g. the leaf location index, done since
+     * the last registration, if applicable.
+     *
+     * @param ioSystem the I/O system to register I/Os in
+     */
+    void registerAuxiliaryIo(final TestIO ioSystem);
+
+    /**
+     * Sets the time and allocation instrumentation of the tree operations, if applicable.
+     *
+     * @param instrumentation the instrumentation to use
+     */
+    void setInstrumentation(final Instrumentation instrumentation);
+
+    /**
+     * Sets the GroupSplit algorithm for the overflowing nodes, if applicable.
+     *
+     * @param groupSplitter the GroupSplit algorithm
+     */
+    void setGroupSplitter(final RRTreeGroupSplitter groupSplitter);
+
+    /**
+     * Starts routing the deletions to their leaf nodes by a secondary index, if applicable.
+     */
+    void enableLeafLocationIndex();
+
+    /**
+     * Attaches bounded buffers to the internal tree levels, if applicable.
+     * @param capacity the maximum number of operations parked at a single level
+     */
+    void enableNodeBuffers(final int capacity);
+
+    /**
+     * Bounds the buffer by a memory budget in addition to its maximum number of operations, if applicable.
+     * @param maxBufferBytes the buffer memory budget in bytes
+     */
+    void setBufferMemoryBudget(final long maxBufferBytes);
+
+    /**
+     * Stores the index entry MBRs as single precision floats, rounded outwards.  Must be called before
+     * {@link #nodeConverter}.
+     */
+    void enableFloatIndexMBRs();
+
+    /**
+     * Sets different node capacities for the index nodes than for the leaf nodes.  Must be called right after
+     * {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of an index node
+     * @param maxCapacity the maximum capacity of an index node
+     */
+    void setIndexNodeCapacities(final int minCapacity, final int maxCapacity);
+
+    /**
+     * Stores the leaf nodes compressed, holding as many entries as fit into the given number of bytes.  Must be
+     * called before {@link #nodeConverter}.
+     *
+     * @param nodeBytes the maximum size of a leaf node in bytes
+     */
+    void enableCompressedLeaves(final int nodeBytes);
+
+    /**
+     * Allocates the new tree nodes near their siblings in the container.
+     */
+    void enableClusteredAllocation();
+
+    /**
+     * Sets different node capacities for the leaf nodes than given on initialization.  Must be called right after
+     * {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of a leaf node
+     * @param maxCapacity the maximum capacity of a leaf node
+     */
+    void setLeafNodeCapacities(final int minCapacity, final int maxCapacity);
+
+    /**
+     * Coalesces the node writes of each buffer emptying and writes them at its end in the block order.  Must be
+     * called before {@link #initialize}.
+     */
+    void enableWriteCoalescing();
+
+    /**
+     * Returns the number of the node writes saved by the write coalescing, if applicable.
+     *
+     * @return the number of the coalesced node writes
+     */
+    int getCoalescedWrites();
+
+    /**
+     * Starts logging the buffer changes to a write-ahead log after recovering the tree from its existing contents, if
+     * applicable.  If set, the persistence I/Os are the actual log page writes.
+     *
+     * @param bufferLog the buffer log
+     * @return the number of replayed log records
+     * @throws IOException if the log cannot be read
+     */
+    int setBufferLog(final BufferLog<E> bufferLog) throws IOException;
+
+    /**
+     * Flushes the tree to its container and checkpoints its state in the write-ahead log or the snapshot file.
+     */
+    void checkpoint();
+
+    /**
+     * Keeps a snapshot of the tree for reopening it later, rewritten at every checkpoint.
+     *
+     * @param file           the snapshot file
+     * @param includeBuffer  if <code>true</code>, the buffer contents are saved too
+     * @param entryConverter the converter for the buffer entries
+     */
+    void setSnapshotFile(final File file, final boolean includeBuffer,
+                         final Converter<UpdateTree.Entry<E>> entryConverter);
+
+    /**
+     * Reopens the tree from its container and a snapshot.  Must be called right after {@link #initialize}.
+     *
+     * @param file           the snapshot file
+     * @param entryConverter the converter for the buffer entries
+     * @throws IOException if the snapshot cannot be read
+     */
+    void restoreSnapshot(final File file, final Converter<UpdateTree.Entry<E>> entryConverter) throws IOException;
 }
@@ -446,6 +446,14 @@ public abstract class AbstractContainer implements Container {
 	*/
 	public abstract Object reserve (Function getObject);
 
+	/**
+	 * {@inheritDoc}<br>
+	 * This implementation ignores the hint and calls reserve.
+	*/
+	public Object reserveNear (Function getObject, Object nearId) {
+		return reserve(getObject);
+	}
+
 	/**
 	 * Returns the number of elements of the container.
 	 *
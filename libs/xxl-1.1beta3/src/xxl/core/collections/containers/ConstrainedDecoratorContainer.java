@@ -286,6 +286,13 @@ public abstract class ConstrainedDecoratorContainer extends AbstractContainer {
 		return container.reserve(getObject);
 	}
 
+	/**
+	 * {@inheritDoc}
+	*/
+	public Object reserveNear (Function getObject, Object nearId) {
+		return container.reserveNear(getObject, nearId);
+	}
+
 	/**
 	 * Returns the number of elements of the container.
 	 *
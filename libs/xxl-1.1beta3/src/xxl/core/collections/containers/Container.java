@@ -335,6 +335,19 @@ public interface Container {
 	 * @return the reserved id.
 	*/
 	Object reserve(Function getObject);
+
+	/**
+	 * Reserves an id for subsequent use, preferably close to a given id.
+	 * The hint lets a container place related objects, such as the
+	 * sibling nodes of a tree, near each other on the storage. The
+	 * container may ignore it.
+	 *
+	 * @param getObject A parameterless function providing the object for
+	 * 			that an id should be reserved.
+	 * @param nearId an id in use, close to which the new id should be.
+	 * @return the reserved id.
+	*/
+	Object reserveNear(Function getObject, Object nearId);
 	
 	/**
 	 * Returns the number of elements of the container.
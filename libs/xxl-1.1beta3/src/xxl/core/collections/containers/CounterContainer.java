@@ -37,8 +37,10 @@ package xxl.core.collections.containers;
 
 import xxl.core.functions.Function;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class decorates a container with a counter functionality and
@@ -53,6 +55,12 @@ import java.util.NoSuchElementException;
  * The numbers of calls are stored in public fields and can be reset by
  * the reset method.<p>
  *
+ * The first update of an id reserved through this container stores a
+ * new object, thus it is counted as an insert and not as an update.
+ * This way an insertion is counted the same, whether it is done by a
+ * single insert call or by a reserve call followed by an update, as a
+ * buffered container does it.<p>
+ *
  * Usage example (1).
  * <pre>
  *     // create a new counter container decorating an empty map container
@@ -127,7 +135,8 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	 * The number of times an insert method is called on this container
 	 * since the last reset. This number is identical to the number of
 	 * elements that are inserted since the last reset because the
-	 * insertAll method calls for every element the insert method.
+	 * insertAll method calls for every element the insert method. The
+	 * first updates of the reserved ids are counted here too.
 	 */
 	public int inserts = 0;
 
@@ -161,6 +170,12 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	 */
 	public int reserves = 0;
 
+	/**
+	 * The ids reserved through this container that have not been
+	 * updated or removed yet.
+	 */
+	protected Set<Object> unwrittenReservedIds = new HashSet<Object>();
+
 	/**
 	 * Constructes a new CounterContainer that decorates the specified
 	 * container.
@@ -237,6 +252,7 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	 */
 	public void remove (Object id) throws NoSuchElementException {
 		super.remove(id);
+		unwrittenReservedIds.remove(id);
 		removes++;
 	}
 
@@ -253,6 +269,18 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	public Object reserve (Function getObject) {
 		Object id = super.reserve(getObject);
 
+		unwrittenReservedIds.add(id);
+		reserves++;
+		return id;
+	}
+
+	/**
+	 * {@inheritDoc}
+	*/
+	public Object reserveNear (Function getObject, Object nearId) {
+		Object id = super.reserveNear(getObject, nearId);
+
+		unwrittenReservedIds.add(id);
 		reserves++;
 		return id;
 	}
@@ -260,7 +288,8 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	/**
 	 * Overwrites an existing (id,*)-element by (id, object). This method
 	 * throws an exception if an object with an identifier <tt>id</tt>
-	 * does not exist in the container.
+	 * does not exist in the container. The first update of a reserved id
+	 * is counted as an insert.
 	 *
 	 * @param id identifier of the element.
 	 * @param object the new object that should be associated to
@@ -272,7 +301,18 @@ public class CounterContainer extends ConstrainedDecoratorContainer {
 	 */
 	public void update (Object id, Object object, boolean unfix) throws NoSuchElementException {
 		super.update(id, object, unfix);
-		updates++;
+		if (unwrittenReservedIds.remove(id))
+			inserts++;
+		else
+			updates++;
+	}
+
+	/**
+	 * Removes all elements from the container.
+	 */
+	public void clear () {
+		super.clear();
+		unwrittenReservedIds.clear();
 	}
 
 	/**
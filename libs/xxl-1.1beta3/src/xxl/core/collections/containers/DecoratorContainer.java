@@ -427,6 +427,13 @@ public abstract class DecoratorContainer implements Container {
 		return container.reserve(getObject);
 	}
 
+	/**
+	 * {@inheritDoc}
+	*/
+	public Object reserveNear (Function getObject, Object nearId) {
+		return container.reserveNear(getObject, nearId);
+	}
+
 	/**
 	 * Returns the number of elements of the container.
 	 *
@@ -357,6 +357,13 @@ public class SynchronizedContainer implements Container {
 		return container.reserve(getObject);
 	}
 
+	/**
+	 * {@inheritDoc}
+	*/
+	public synchronized Object reserveNear (Function getObject, Object nearId) {
+		return container.reserveNear(getObject, nearId);
+	}
+
 	/**
 	 * Returns the number of elements of the container.
 	 *
@@ -296,6 +296,12 @@ public class BlockFileContainer extends AbstractContainer {
 	 */
 	protected byte idType=4;
 
+	/**
+	 * The maximum distance in blocks from the block of the id given to
+	 * reserveNear, within which a free block is searched for.
+	 */
+	public static final int NEAR_BLOCKS = 64;
+
 	/**
 	 * Constructs an empty BlockFileContainer that is able to store blocks
 	 * with a maximum size of <tt>blockSize</tt> bytes. The given
@@ -534,6 +540,29 @@ public class BlockFileContainer extends AbstractContainer {
 			}
 	}
 
+	/**
+	 * Makes the container contents durable. The values of the fields
+	 * <tt>size</tt> and <tt>blockSize</tt> are written to the meta file and
+	 * all the files of the container are forced to the disk, so that the
+	 * container may be reopened in its current state after a crash.
+	 */
+	public void flush () {
+		if (this.container!=null)
+			try {
+				metaData.seek(0);
+				metaData.writeInt(blockSize);
+				metaData.writeInt(size);
+				container.getChannel().force(false);
+				reservedBitMap.getChannel().force(false);
+				updatedBitMap.getChannel().force(false);
+				freeList.getChannel().force(false);
+				metaData.getChannel().force(false);
+			}
+			catch (IOException ie) {
+				throw new WrappingRuntimeException(ie);
+			}
+	}
+
 	/**
 	 * Returns <tt>true</tt> if the container contains a block for the identifier
 	 * <tt>id</tt>.<br>
@@ -706,7 +735,9 @@ public class BlockFileContainer extends AbstractContainer {
 	/**
 	 * Reserves an id for subsequent use.
 	 * This implementation sets in the reservedBitMap file the
-	 * appropriate bit for the id returned by this method.
+	 * appropriate bit for the id returned by this method. The offsets
+	 * in the freeList file of the blocks reserved by reserveNear are
+	 * skipped.
 	 *
 	 * @param getObject A parameterless function providing the object for
 	 * 			that an id should be reserved. Not used by this
@@ -728,7 +759,7 @@ public class BlockFileContainer extends AbstractContainer {
 				freeList.seek(freeList.length()-8);
 				offset = freeList.readLong();
 				freeList.setLength(freeList.length()-8);
-				if (offset+blockSize<=container.length())
+				if (offset+blockSize<=container.length() && !isUsed(Long.valueOf(offset)))
 					break;
 			}
 			reservedBitMap.seek(offset/blockSize/8);
@@ -743,19 +774,73 @@ public class BlockFileContainer extends AbstractContainer {
 				reservedBitMap.write(b|(1<<(offset/blockSize%8)));
 			}
 			size++;
-			
-			switch (idType) {
-			case 1: return Byte.valueOf((byte) offset);
-			case 2: return Short.valueOf((short) offset);
-			case 3: return Integer.valueOf((int) offset);
-			default: return Long.valueOf(offset);
+			return createId(offset);
+		}
+		catch (IOException ie) {
+			throw new WrappingRuntimeException(ie);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * This implementation searches the reservedBitMap file for the free
+	 * block nearest to the block of <tt>nearId</tt>, at most
+	 * <tt>NEAR_BLOCKS</tt> blocks away, trying the following block first
+	 * at each distance. The offset of the found block is left in the
+	 * freeList file, where reserve skips it. If there is no such free
+	 * block, reserve is called.
+	 *
+	 * @param getObject A parameterless function providing the object for
+	 * 			that an id should be reserved. Not used by this
+	 *			implementation.
+	*/
+	public Object reserveNear (Function getObject, Object nearId) {
+		open();
+		try {
+			long nearBlock = ((Number)nearId).longValue()/blockSize;
+			long first = Math.max(nearBlock-NEAR_BLOCKS, 0);
+			long last = Math.min(nearBlock+NEAR_BLOCKS, Math.min(container.length()/blockSize, reservedBitMap.length()*8)-1);
+
+			if (first<=last) {
+				byte [] bits = new byte[(int)(last/8-first/8+1)];
+
+				reservedBitMap.seek(first/8);
+				reservedBitMap.readFully(bits);
+				for (long distance = 1; distance<=NEAR_BLOCKS; distance++)
+					for (long block = nearBlock+distance; block>=nearBlock-distance; block -= 2*distance) {
+						if (block<first || block>last)
+							continue;
+						int b = bits[(int)(block/8-first/8)];
+						if ((b&(1<<(block%8)))==0) {
+							reservedBitMap.seek(block/8);
+							reservedBitMap.write(b|(1<<(block%8)));
+							size++;
+							return createId(block*blockSize);
+						}
+					}
 			}
+			return reserve(getObject);
 		}
 		catch (IOException ie) {
 			throw new WrappingRuntimeException(ie);
 		}
 	}
 
+	/**
+	 * Creates an id of the type determined by idType for a block offset.
+	 *
+	 * @param offset the offset of a block in the container file.
+	 * @return the id of the block.
+	 */
+	protected Object createId (long offset) {
+		switch (idType) {
+		case 1: return Byte.valueOf((byte) offset);
+		case 2: return Short.valueOf((short) offset);
+		case 3: return Integer.valueOf((int) offset);
+		default: return Long.valueOf(offset);
+		}
+	}
+
 	/**
 	 * Returns the number of elements of the container. In other words,
 	 * the number of set bits in the updatedBitMap file.
@@ -176,7 +176,9 @@ public class BufferedContainer extends ConstrainedDecoratorContainer {
 	 * 	the underlying container.
 	 * @param cloneObjects determines if every object is cloned before storing
 	 *		and before returning it. The clone mode is a lot slower, because
-	 *		reflection is needed to call the protected clone Method.
+	 *		reflection is needed to call the protected clone Method. The
+	 *		{@link xxl.core.util.CopyOnWrite} objects are not cloned but
+	 *		shared with their copies until either is modified.
 	 */
 	public BufferedContainer (Container container, Buffer buffer, boolean writeBack, boolean cloneObjects) {
 		super(container);
@@ -313,7 +315,7 @@ public class BufferedContainer extends ConstrainedDecoratorContainer {
 			unfix
 		);
 		if (cloneObjects)
-			return XXLSystem.cloneObject(object);
+			return XXLSystem.copyObject(object);
 		else
 			return object;
 	}
@@ -363,7 +365,7 @@ public class BufferedContainer extends ConstrainedDecoratorContainer {
 	 */
 	public Object insert (Object object, boolean unfix) {
 		if (cloneObjects)
-			object = XXLSystem.cloneObject(object);
+			object = XXLSystem.copyObject(object);
 		
 		Object id = reserve(new Constant(object));
 
@@ -441,7 +443,7 @@ public class BufferedContainer extends ConstrainedDecoratorContainer {
 	 */
 	public void update (Object id, Object object, boolean unfix) throws NoSuchElementException {
 		if (cloneObjects)
-			object = XXLSystem.cloneObject(object);
+			object = XXLSystem.copyObject(object);
 		
 		buffer.update(this, id, object,
 			!writeBack ?
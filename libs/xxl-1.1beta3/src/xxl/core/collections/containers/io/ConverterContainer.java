@@ -239,13 +239,31 @@ public class ConverterContainer extends ConstrainedDecoratorContainer {
 	 * @return the reserved id.
 	*/
 	public Object reserve (final Function getObject) {
-		return super.reserve(
-			new Function () {
-				public Object invoke () {
-					return new Block(Converters.toByteArray(converter, getObject.invoke()));
-				}
+		return super.reserve(convertingFunction(getObject));
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * This implementation wraps the function getObject by converting
+	 * the object when invoking the function.
+	*/
+	public Object reserveNear (final Function getObject, Object nearId) {
+		return super.reserveNear(convertingFunction(getObject), nearId);
+	}
+
+	/**
+	 * Wraps a function providing an object by converting the object to a
+	 * block.
+	 *
+	 * @param getObject A parameterless function providing an object.
+	 * @return a parameterless function providing the converted object.
+	 */
+	private Function convertingFunction (final Function getObject) {
+		return new Function () {
+			public Object invoke () {
+				return new Block(Converters.toByteArray(converter, getObject.invoke()));
 			}
-		);
+		};
 	}
 
 	/**
@@ -34,13 +34,12 @@ without subject and the word "subscribe" in the message body.
 */
 package xxl.core.indexStructures;
 
-import xxl.core.cursors.Cursors;
-import xxl.core.cursors.mappers.Mapper;
-import xxl.core.cursors.sources.Enumerator;
 import xxl.core.functions.Function;
 import xxl.core.io.converters.ConvertableConverter;
 import xxl.core.io.converters.Converter;
+import xxl.core.spatial.points.Point;
 import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.DoubleRectangles;
 import xxl.core.spatial.rectangles.Rectangle;
 
 import java.util.*;
@@ -78,41 +77,24 @@ public class RTree extends ORTree {
 		return new Node().initialize(level, new ArrayList());
 	}
 
-    private static final Function<List<Distribution>, Double> MARGIN_ACCUMULATOR
-            = new Function() {
-                public Object invoke (final Object dists) {
-                    final List<Distribution> distributions = (List<Distribution>)dists;
-                    double marginValue = 0.0;
-                    for (final Distribution distribution : distributions)
-                        marginValue += distribution.marginValue();
-                    return marginValue;
-                }
-            };
-
-    private static final Function<Distribution, Double> OVERLAP_GETTER
-            = new Function<Distribution, Double> () {
-                public Double invoke (final Distribution distribution) {
-                    return distribution.overlapValue();
-                }
-            };
-
-    private static final Function<Distribution, Double> AREA_GETTER
-            = new Function<Distribution, Double> () {
-                public Double invoke (final Distribution distribution) {
-                    return distribution.areaValue();
-                }
-            };
-
     public static int compareRectangles(final Rectangle r1, final Rectangle r2, final boolean rightCorner,
                                         final int dimension) {
-        final double v1 = r1.getCorner(rightCorner).getValue(dimension);
-        final double v2 = r2.getCorner(rightCorner).getValue(dimension);
+        final double v1 = coordinate(r1, rightCorner, dimension);
+        final double v2 = coordinate(r2, rightCorner, dimension);
         if (v1 < v2) return -1;
         if (v1 > v2) return 1;
         // Do not have to handle NaNs
         return 0;
     }
 
+    private static double coordinate(final Rectangle r, final boolean rightCorner, final int dimension) {
+        if (r instanceof DoublePointRectangle) {
+            final DoublePointRectangle d = (DoublePointRectangle)r;
+            return rightCorner ? DoubleRectangles.highs(d)[dimension] : DoubleRectangles.lows(d)[dimension];
+        }
+        return r.getCorner(rightCorner).getValue(dimension);
+    }
+
     private static final Comparator<Rectangle> leftXSorter = new Comparator<Rectangle>() {
         public int compare (final Rectangle r1, final Rectangle r2) {
             return compareRectangles(r1, r2, false, 0);
@@ -140,7 +122,8 @@ public class RTree extends ORTree {
     private static final Comparator[] sorters = new Comparator[] {leftXSorter, leftYSorter, rightXSorter, rightYSorter};
 
     /**
-     * Splits an R-tree node according to a standard R*-tree node split algorithm.
+     * Splits an R-tree node according to a standard R*-tree node split algorithm.  The candidate distributions are
+     * evaluated over primitive bounding rectangle coordinates, and only the chosen one is materialized.
      *
      * @param node Node to split
      * @param entries Collection to put split-off entries to
@@ -164,68 +147,58 @@ public class RTree extends ORTree {
             i++;
         }
 
-        // For each dimension generate a list of all possible distributions
-        final Iterator<List<Distribution>> distributionLists = new Mapper<Integer, List<Distribution>>(
-            new Function<Integer, List<Distribution>> () {
-                int sorteri = 0;
-                public List<Distribution> invoke (final Integer dim) {
-                    // list of distributions for this dimension
-                    final List<Distribution> distributionList
-                            = new ArrayList<Distribution>(2*(maxEntries-minEntries+1));
-                    final Rectangle [][] rectangles = new Rectangle[2][];
-
-                    // Consider the entries sorted by left or right borders
-                    for (int i=0; i<2; i++) {
-
-                        final Rectangle[] rectArray = Arrays.copyOf(rects, rects.length);
-
-                        // Sort the entries by left or right border in the actual dimension
-                        //noinspection unchecked
-                        Arrays.sort(rectArray, sorters[sorteri]);
-                        sorteri++;
-
-                        // Calculation of descriptors for all distributions (linear!)
-                        for (int k = 0; k<2; k++) {
-                            int e = k == 0 ? 0 : rectArray.length - 1;
-                            final int direction = k == 0 ? +1 : -1;
-
-                            Rectangle rectangle = new DoublePointRectangle(rectArray[e]);
-                            e += direction;
-
-                            for (int l = (k==0? minEntries: node.number()-maxEntries); --l>0;) {
-                                rectangle.union(rectArray[e]);
-                                e += direction;
-                            }
-                            (rectangles[k] = new Rectangle[maxEntries-minEntries+1])[0] = rectangle;
-                            for (int j=1; j<=maxEntries-minEntries; rectangles[k][j++] = rectangle) {
-                                rectangle = Descriptors.union(rectangle, rectArray[e]);
-                                e += direction;
-                            }
-                        }
-                        // Creation of the distributions for this dimension
-                        for (int j = minEntries; j<=maxEntries; j++) {
-                            distributionList.add(new Distribution(rectArray, j, rectangles[0][j-minEntries], rectangles[1][maxEntries-j], dim));
-                        }
+        final SplitBounds bounds = new SplitBounds(maxEntries - minEntries + 1, dimensions);
+        final Rectangle[] sorted = new Rectangle[rects.length];
+
+        // For each dimension consider the entries sorted by the two sorters of the dimension.  Choose the dimension
+        // for which the margin-sum of all of its distributions is minimal, and the distribution of that dimension
+        // with minimal overlap and then minimal area
+        double minMarginSum = Double.POSITIVE_INFINITY;
+        int bestSorter = -1;
+        int bestSecondStart = -1;
+        for (int dim = 0; dim < dimensions; dim++) {
+            double marginSum = 0.0;
+            double minOverlap = Double.POSITIVE_INFINITY;
+            double minArea = Double.POSITIVE_INFINITY;
+            int dimBestSorter = -1;
+            int dimBestSecondStart = -1;
+            for (int s = 2 * dim; s < 2 * dim + 2; s++) {
+                System.arraycopy(rects, 0, sorted, 0, rects.length);
+                //noinspection unchecked
+                Arrays.sort(sorted, sorters[s]);
+                bounds.compute(sorted, minEntries, maxEntries);
+                for (int j = minEntries; j <= maxEntries; j++) {
+                    final int first = (j - minEntries) * dimensions;
+                    final int second = (maxEntries - j) * dimensions;
+                    marginSum += DoubleRectangles.margin(bounds.firstLows, bounds.firstHighs, first, dimensions)
+                            + DoubleRectangles.margin(bounds.secondLows, bounds.secondHighs, second, dimensions);
+                    final double overlap = DoubleRectangles.overlap(bounds.firstLows, bounds.firstHighs, first,
+                            bounds.secondLows, bounds.secondHighs, second, dimensions);
+                    if (overlap > minOverlap)
+                        continue;
+                    final double area
+                            = DoubleRectangles.area(bounds.firstLows, bounds.firstHighs, first, dimensions)
+                            + DoubleRectangles.area(bounds.secondLows, bounds.secondHighs, second, dimensions);
+                    if ((overlap < minOverlap) || (area < minArea)) {
+                        minOverlap = overlap;
+                        minArea = area;
+                        dimBestSorter = s;
+                        dimBestSecondStart = j;
                     }
-                    return distributionList;
                 }
             }
-        ,new Enumerator(dimensions));
-
-        // Return the distributionList of the dimension for which the margin-sum of all
-        // of its distributions is minimal (i.e. choose the dimension)
-        List<Distribution> distributionList = Cursors.minima(distributionLists, MARGIN_ACCUMULATOR).getFirst();
-
-        // Choose the distributions of the chosen dimension with minimal overlap
-        distributionList = Cursors.minima(distributionList.iterator(), OVERLAP_GETTER);
-
-        // If still more than one distribution has to be considered, choose one
-        // with minimal area
-        if ((distributionList.size() > 1)
-                && (distributionList.get(0).overlapValue() == distributionList.get(1).overlapValue()))
-            distributionList = Cursors.minima(distributionList.iterator(), AREA_GETTER);
+            if (marginSum < minMarginSum) {
+                minMarginSum = marginSum;
+                bestSorter = dimBestSorter;
+                bestSecondStart = dimBestSecondStart;
+            }
+        }
 
-        final Distribution distribution = distributionList.get(0);
+        //noinspection unchecked
+        Arrays.sort(rects, sorters[bestSorter]);
+        final Distribution distribution = new Distribution(rects, bestSecondStart,
+                boundingRectangle(rects, 0, bestSecondStart), boundingRectangle(rects, bestSecondStart, rects.length),
+                bestSorter / 2);
 
         node.entries.clear(); // TODO: size properly
         for (final Rectangle r : distribution.entries(false)) {
@@ -241,6 +214,124 @@ public class RTree extends ORTree {
         return distribution;
     }
 
+    /**
+     * Computes the bounding rectangle of a range of rectangles of any type as a {@link DoublePointRectangle}.
+     *
+     * @param rects the rectangles
+     * @param from the first rectangle of the range
+     * @param to the end of the range, exclusive
+     * @return the bounding rectangle
+     */
+    private static Rectangle boundingRectangle(final Rectangle[] rects, final int from, final int to) {
+        final int dimensions = rects[from].dimensions();
+        final double[] lows = new double[dimensions];
+        final double[] highs = new double[dimensions];
+        final double[] cornerLows = new double[dimensions];
+        final double[] cornerHighs = new double[dimensions];
+        copyCorners(rects[from], lows, highs, dimensions);
+        for (int i = from + 1; i < to; i++) {
+            copyCorners(rects[i], cornerLows, cornerHighs, dimensions);
+            DoubleRectangles.union(lows, highs, 0, cornerLows, cornerHighs, 0, dimensions);
+        }
+        return new DoublePointRectangle(lows, highs);
+    }
+
+    /**
+     * Copies the corner coordinates of a rectangle of any type.
+     *
+     * @param rectangle the rectangle
+     * @param lows the array to copy the lower corner coordinates to
+     * @param highs the array to copy the upper corner coordinates to
+     * @param dimensions the number of dimensions
+     */
+    private static void copyCorners(final Rectangle rectangle, final double[] lows, final double[] highs,
+                                    final int dimensions) {
+        if (rectangle instanceof DoublePointRectangle) {
+            final DoublePointRectangle r = (DoublePointRectangle)rectangle;
+            System.arraycopy(DoubleRectangles.lows(r), 0, lows, 0, dimensions);
+            System.arraycopy(DoubleRectangles.highs(r), 0, highs, 0, dimensions);
+            return;
+        }
+        final Point low = rectangle.getCorner(false);
+        final Point high = rectangle.getCorner(true);
+        for (int d = 0; d < dimensions; d++) {
+            lows[d] = low.getValue(d);
+            highs[d] = high.getValue(d);
+        }
+    }
+
+    /**
+     * The bounding rectangles of both partitions of all the distributions of sorted node entries, packed into
+     * primitive coordinate arrays and reused between the sorts.  The bounds of the first partition with
+     * <tt>j</tt> entries are at <tt>j - minEntries</tt>, the bounds of the matching second partition at
+     * <tt>maxEntries - j</tt>.  The coordinates of rectangles other than {@link DoublePointRectangle} are copied
+     * through their corners.
+     */
+    private static final class SplitBounds {
+
+        final double[] firstLows;
+        final double[] firstHighs;
+        final double[] secondLows;
+        final double[] secondHighs;
+
+        private final int dimensions;
+
+        private final double[] cornerLows;
+        private final double[] cornerHighs;
+
+        SplitBounds(final int distributions, final int dimensions) {
+            this.dimensions = dimensions;
+            cornerLows = new double[dimensions];
+            cornerHighs = new double[dimensions];
+            firstLows = new double[distributions * dimensions];
+            firstHighs = new double[distributions * dimensions];
+            secondLows = new double[distributions * dimensions];
+            secondHighs = new double[distributions * dimensions];
+        }
+
+        /**
+         * Calculates the bounds for all distributions of the sorted entries (linear!).
+         *
+         * @param sorted the sorted entry rectangles
+         * @param minEntries Minimum allowed number of entries in a node
+         * @param maxEntries Maximum allowed number of entries in a node
+         */
+        void compute(final Rectangle[] sorted, final int minEntries, final int maxEntries) {
+            accumulate(sorted, 0, +1, minEntries, maxEntries - minEntries, firstLows, firstHighs);
+            accumulate(sorted, sorted.length - 1, -1, sorted.length - maxEntries, maxEntries - minEntries,
+                    secondLows, secondHighs);
+        }
+
+        private void accumulate(final Rectangle[] sorted, int e, final int direction, final int initialEntries,
+                                final int steps, final double[] lows, final double[] highs) {
+            copyCorners(sorted[e], lows, highs, dimensions);
+            e += direction;
+            for (int l = initialEntries; --l > 0;) {
+                unionInto(lows, highs, 0, sorted[e]);
+                e += direction;
+            }
+            for (int j = 1; j <= steps; j++) {
+                System.arraycopy(lows, (j - 1) * dimensions, lows, j * dimensions, dimensions);
+                System.arraycopy(highs, (j - 1) * dimensions, highs, j * dimensions, dimensions);
+                unionInto(lows, highs, j * dimensions, sorted[e]);
+                e += direction;
+            }
+        }
+
+        private void unionInto(final double[] lows, final double[] highs, final int offset,
+                               final Rectangle rectangle) {
+            if (rectangle instanceof DoublePointRectangle) {
+                final DoublePointRectangle r = (DoublePointRectangle)rectangle;
+                DoubleRectangles.union(lows, highs, offset, DoubleRectangles.lows(r), DoubleRectangles.highs(r), 0,
+                        dimensions);
+            }
+            else {
+                copyCorners(rectangle, cornerLows, cornerHighs, dimensions);
+                DoubleRectangles.union(lows, highs, offset, cornerLows, cornerHighs, 0, dimensions);
+            }
+        }
+    }
+
 
 	/** <tt>Node</tt> is the class used to represent leaf- and non-leaf nodes of <tt>RTree</tt>.
 	 *	Nodes are stored in containers.
@@ -287,6 +378,9 @@ public class RTree extends ORTree {
 		}
 
 		protected ORTree.IndexEntry chooseSubtreeByDescriptor(Descriptor descriptor) {
+            if (descriptor instanceof DoublePointRectangle)
+                return chooseSubtreeByRectangle((DoublePointRectangle)descriptor);
+
             boolean containingFound = false;
 
             IndexEntry minAreaEntry = null;
@@ -317,6 +411,49 @@ public class RTree extends ORTree {
             return containingFound ? minAreaEntry : minAreaEnlargementEntry;
 		}
 
+        /**
+         * Chooses the subtree for a rectangle as {@link #chooseSubtreeByDescriptor} does, computing the containment
+         * and the area enlargements over the rectangle coordinates without allocating the enlarged rectangles.
+         *
+         * @param descriptor the rectangle to choose the subtree for
+         * @return the entry of the chosen subtree
+         */
+        private ORTree.IndexEntry chooseSubtreeByRectangle(final DoublePointRectangle descriptor) {
+            final double[] lows = DoubleRectangles.lows(descriptor);
+            final double[] highs = DoubleRectangles.highs(descriptor);
+            final int dimensions = lows.length;
+
+            boolean containingFound = false;
+
+            IndexEntry minAreaEntry = null;
+            double minArea = Double.MAX_VALUE;
+            IndexEntry minAreaEnlargementEntry = null;
+            double minAreaEnlargement = Double.MAX_VALUE;
+
+            for (final IndexEntry e : (Collection<IndexEntry>)entries) {
+                final DoublePointRectangle rect = (DoublePointRectangle)rectangle(e);
+                final double[] rectLows = DoubleRectangles.lows(rect);
+                final double[] rectHighs = DoubleRectangles.highs(rect);
+                final double area = DoubleRectangles.area(rectLows, rectHighs, 0, dimensions);
+                if (DoubleRectangles.contains(rectLows, rectHighs, 0, lows, highs, 0, dimensions)) {
+                    containingFound = true;
+                    if (area < minArea) {
+                        minArea = area;
+                        minAreaEntry = e;
+                    }
+                }
+                else if (!containingFound) {
+                    final double areaEnlargement
+                            = DoubleRectangles.unionArea(rectLows, rectHighs, 0, lows, highs, 0, dimensions) - area;
+                    if (areaEnlargement < minAreaEnlargement) {
+                        minAreaEnlargement = areaEnlargement;
+                        minAreaEnlargementEntry = e;
+                    }
+                }
+            }
+            return containingFound ? minAreaEntry : minAreaEnlargementEntry;
+        }
+
 
 		/* (non-Javadoc)
 		 * @see xxl.core.indexStructures.Tree.Node#split(java.util.Stack)
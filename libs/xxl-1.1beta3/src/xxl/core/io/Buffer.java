@@ -427,6 +427,34 @@ public abstract class Buffer<O, I, E> {
 		return slots.size();
 	}
 
+	/**
+	 * Changes the capacity of this buffer. New empty slots are added when
+	 * the capacity grows. When it shrinks, the <i>next</i> slots to
+	 * displace are displaced until the remaining objects fit, and the
+	 * empty slots above the new capacity are dropped.
+	 *
+	 * @param capacity the new number of slots in this buffer.
+	 * @throws IllegalArgumentException if the capacity is not positive.
+	 * @throws IllegalStateException when too many slots are fixed to
+	 *         shrink the buffer.
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Buffer capacity must be positive: " + capacity);
+		while (size() > capacity) {
+			if (fixedSlots == size())
+				throw new IllegalStateException("Buffer overflow. Too many slots fixed.");
+			Slot vic = victim();
+			sizeBytes -= vic.sizeBytes;
+			vic.displace();
+		}
+		// The occupied slots have the lowest indices
+		if (capacity < slots.size())
+			slots.subList(capacity, slots.size()).clear();
+		for (int i = slots.size(); i < capacity; i++)
+			slots.add(newSlot(i));
+	}
+
 	/**
 	 * Returns the number bytes used in this buffer.
 	 *
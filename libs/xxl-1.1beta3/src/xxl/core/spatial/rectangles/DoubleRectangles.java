@@ -0,0 +1,191 @@
+/* XXL: The eXtensible and fleXible Library for data processing
+
+Copyright (C) 2000-2006 Prof. Dr. Bernhard Seeger
+                        Head of the Database Research Group
+                        Department of Mathematics and Computer Science
+                        University of Marburg
+                        Germany
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307,
+USA
+
+	http://www.xxl-library.de
+
+bugs, requests for enhancements: request@xxl-library.de
+
+If you want to be informed on new versions of XXL you can
+subscribe to our mailing-list. Send an email to
+
+	xxl-request@lists.uni-marburg.de
+
+without subject and the word "subscribe" in the message body.
+*/
+package xxl.core.spatial.rectangles;
+
+/**
+ * Allocation-free rectangle arithmetic over primitive coordinates.  A rectangle is given by an array of its lower
+ * corner coordinates, an array of its upper corner coordinates and the offset of its first coordinate in both, so
+ * that many rectangles can be packed into the same pair of arrays.  The computations are done in the same order as
+ * in {@link DoublePointRectangle}, so that their results are identical to those of the corresponding rectangle
+ * methods.
+ */
+public abstract class DoubleRectangles {
+
+    /**
+     * The default constructor has private access in order to ensure
+     * non-instantiability.
+     */
+    private DoubleRectangles() {}
+
+    /** Returns the lower corner coordinates of a rectangle.  The array is the rectangle's own coordinate array, not
+     * a copy: it reflects later changes to the rectangle, and writing to it changes the rectangle.  Callers must treat
+     * it as read-only and must not keep it beyond the current computation.
+     *
+     * @param rectangle the rectangle
+     * @return the lower corner coordinates
+     */
+    public static double[] lows(final DoublePointRectangle rectangle) {
+        return rectangle.leftCorner;
+    }
+
+    /** Returns the upper corner coordinates of a rectangle.  The array is aliased in the same way as the one
+     * returned by {@link #lows}.
+     *
+     * @param rectangle the rectangle
+     * @return the upper corner coordinates
+     */
+    public static double[] highs(final DoublePointRectangle rectangle) {
+        return rectangle.rightCorner;
+    }
+
+    /** Calculates the area of a rectangle, as {@link DoublePointRectangle#area}.
+     *
+     * @param lows the lower corner coordinates
+     * @param highs the upper corner coordinates
+     * @param offset the offset of the rectangle coordinates
+     * @param dimensions the number of dimensions
+     * @return the area
+     */
+    public static double area(final double[] lows, final double[] highs, final int offset, final int dimensions) {
+        double area = 1.0;
+        for (int i = dimensions; --i >= 0;)
+            area *= highs[offset + i] - lows[offset + i];
+        return area;
+    }
+
+    /** Calculates the margin of a rectangle, as {@link DoublePointRectangle#margin}.
+     *
+     * @param lows the lower corner coordinates
+     * @param highs the upper corner coordinates
+     * @param offset the offset of the rectangle coordinates
+     * @param dimensions the number of dimensions
+     * @return the margin
+     */
+    public static double margin(final double[] lows, final double[] highs, final int offset, final int dimensions) {
+        double margin = 0.0;
+        for (int i = dimensions; --i >= 0;)
+            margin += 2 * (highs[offset + i] - lows[offset + i]);
+        return margin;
+    }
+
+    /** Calculates the area of the bounding rectangle of two rectangles without computing the rectangle itself.
+     *
+     * @param lows1 the lower corner coordinates of the first rectangle
+     * @param highs1 the upper corner coordinates of the first rectangle
+     * @param offset1 the offset of the first rectangle coordinates
+     * @param lows2 the lower corner coordinates of the second rectangle
+     * @param highs2 the upper corner coordinates of the second rectangle
+     * @param offset2 the offset of the second rectangle coordinates
+     * @param dimensions the number of dimensions
+     * @return the area of the union
+     */
+    public static double unionArea(final double[] lows1, final double[] highs1, final int offset1,
+                                   final double[] lows2, final double[] highs2, final int offset2,
+                                   final int dimensions) {
+        double area = 1.0;
+        for (int i = dimensions; --i >= 0;) {
+            final double low = (lows1[offset1 + i] > lows2[offset2 + i]) ? lows2[offset2 + i] : lows1[offset1 + i];
+            final double high
+                    = (highs1[offset1 + i] < highs2[offset2 + i]) ? highs2[offset2 + i] : highs1[offset1 + i];
+            area *= high - low;
+        }
+        return area;
+    }
+
+    /** Calculates the area of overlap of two rectangles, as {@link DoublePointRectangle#overlap}.
+     *
+     * @param lows1 the lower corner coordinates of the first rectangle
+     * @param highs1 the upper corner coordinates of the first rectangle
+     * @param offset1 the offset of the first rectangle coordinates
+     * @param lows2 the lower corner coordinates of the second rectangle
+     * @param highs2 the upper corner coordinates of the second rectangle
+     * @param offset2 the offset of the second rectangle coordinates
+     * @param dimensions the number of dimensions
+     * @return the overlap area or 0 if the rectangles do not overlap
+     */
+    public static double overlap(final double[] lows1, final double[] highs1, final int offset1,
+                                 final double[] lows2, final double[] highs2, final int offset2,
+                                 final int dimensions) {
+        double overlap = 1.0;
+        for (int i = dimensions; --i >= 0;) {
+            overlap *= Math.min(highs1[offset1 + i], highs2[offset2 + i])
+                    - Math.max(lows1[offset1 + i], lows2[offset2 + i]);
+            if (!(overlap > 0))
+                break;
+        }
+        return overlap < 0d ? 0d : overlap;
+    }
+
+    /** Checks whether the first rectangle contains the second one, as {@link DoublePointRectangle#contains}.
+     *
+     * @param lows1 the lower corner coordinates of the first rectangle
+     * @param highs1 the upper corner coordinates of the first rectangle
+     * @param offset1 the offset of the first rectangle coordinates
+     * @param lows2 the lower corner coordinates of the second rectangle
+     * @param highs2 the upper corner coordinates of the second rectangle
+     * @param offset2 the offset of the second rectangle coordinates
+     * @param dimensions the number of dimensions
+     * @return <tt>true</tt> if the first rectangle contains the second one
+     */
+    public static boolean contains(final double[] lows1, final double[] highs1, final int offset1,
+                                   final double[] lows2, final double[] highs2, final int offset2,
+                                   final int dimensions) {
+        for (int i = dimensions; --i >= 0;)
+            if (lows1[offset1 + i] > lows2[offset2 + i] || highs2[offset2 + i] > highs1[offset1 + i])
+                return false;
+        return true;
+    }
+
+    /** Sets a rectangle to the bounding rectangle of itself and another one, as {@link DoublePointRectangle#union}.
+     *
+     * @param lows the lower corner coordinates of the rectangle to enlarge
+     * @param highs the upper corner coordinates of the rectangle to enlarge
+     * @param offset the offset of the rectangle to enlarge
+     * @param otherLows the lower corner coordinates of the other rectangle
+     * @param otherHighs the upper corner coordinates of the other rectangle
+     * @param otherOffset the offset of the other rectangle
+     * @param dimensions the number of dimensions
+     */
+    public static void union(final double[] lows, final double[] highs, final int offset,
+                             final double[] otherLows, final double[] otherHighs, final int otherOffset,
+                             final int dimensions) {
+        for (int i = dimensions; --i >= 0;) {
+            if (lows[offset + i] > otherLows[otherOffset + i])
+                lows[offset + i] = otherLows[otherOffset + i];
+            if (highs[offset + i] < otherHighs[otherOffset + i])
+                highs[offset + i] = otherHighs[otherOffset + i];
+        }
+    }
+}
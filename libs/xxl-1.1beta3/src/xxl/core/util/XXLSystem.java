@@ -386,6 +386,18 @@ public class XXLSystem {
 		}
 	}
 
+	/**
+	 * Copies an object. A {@link CopyOnWrite} object is copied by sharing its
+	 * state with the copy, any other object is cloned by {@link #cloneObject}.
+	 * @param o to be copied.
+	 * @return the copied Object.
+	 */
+	public static Object copyObject(Object o) {
+		if (o instanceof CopyOnWrite)
+			return ((CopyOnWrite)o).share();
+		return cloneObject(o);
+	}
+
 	/**
 	 * Clones an object wheather or not the clone method is protected (via reflection).
 	 * If a clone is not possible, then a RuntimeException is thrown.
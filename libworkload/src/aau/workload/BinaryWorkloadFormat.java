@@ -0,0 +1,86 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+/**
+ * The constants and operation type encoding of the binary workload file format.  A binary workload file consists of
+ * a header (a magic number followed by a format version, both 4-byte big-endian integers) followed by fixed-width
+ * operation records.  Each record is an operation type byte, a 4-byte object id (undefined for non-update
+ * operations) and four 8-byte doubles x1, y1, x2, y2.  The number of operations is implied by the file size.
+ */
+final class BinaryWorkloadFormat {
+
+    /**
+     * "RRWB" in ASCII
+     */
+    static final int MAGIC = 0x52525742;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+
+    static final int TYPE_OFFSET = 0;
+    static final int ID_OFFSET = 1;
+    static final int X1_OFFSET = 5;
+    static final int Y1_OFFSET = 13;
+    static final int X2_OFFSET = 21;
+    static final int Y2_OFFSET = 29;
+
+    static final int RECORD_SIZE = 37;
+
+    private BinaryWorkloadFormat() {
+    }
+
+    /**
+     * Encodes an operation type to its binary format code.  Explicit codes are used so that the format does not
+     * depend on the declaration order of the enum constants.
+     *
+     * @param type operation type
+     * @return the binary code of the type
+     */
+    static byte encode(final WorkloadOperation.OperationType type) {
+        switch (type) {
+            case EMPTY: return 0;
+            case QUERY: return 1;
+            case INSERT: return 2;
+            case DELETE: return 3;
+            case FINAL_DELETE: return 4;
+            case DELETING_INSERT: return 5;
+        }
+        throw new IllegalArgumentException("Unknown operation type " + type);
+    }
+
+    /**
+     * Decodes an operation type from its binary format code.
+     *
+     * @param code the binary code of the type
+     * @return operation type
+     */
+    static WorkloadOperation.OperationType decode(final byte code) {
+        switch (code) {
+            case 0: return WorkloadOperation.OperationType.EMPTY;
+            case 1: return WorkloadOperation.OperationType.QUERY;
+            case 2: return WorkloadOperation.OperationType.INSERT;
+            case 3: return WorkloadOperation.OperationType.DELETE;
+            case 4: return WorkloadOperation.OperationType.FINAL_DELETE;
+            case 5: return WorkloadOperation.OperationType.DELETING_INSERT;
+        }
+        throw new IllegalArgumentException("Invalid operation type code " + code + " in binary workload file");
+    }
+}
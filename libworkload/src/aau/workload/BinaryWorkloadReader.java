@@ -0,0 +1,205 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static aau.workload.BinaryWorkloadFormat.*;
+
+/**
+ * Reads workload operations from a memory-mapped binary workload file.  Besides returning complete
+ * {@link WorkloadOperation} objects, the reader acts as a flyweight over the current record: after
+ * {@link #advance()} the fields of the current operation can be accessed directly in the mapped file, without any
+ * allocation.  Files larger than a single mapping are mapped in consecutive windows.
+ */
+public final class BinaryWorkloadReader implements WorkloadReader {
+
+    /**
+     * The default number of operation records mapped at once, about 1GB.
+     */
+    private static final int DEFAULT_WINDOW_OPERATIONS = (1 << 30) / RECORD_SIZE;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long totalOperations;
+
+    private final int windowOperations;
+
+    private MappedByteBuffer window = null;
+
+    /**
+     * The number of the first operation in the current window
+     */
+    private long windowStart = 0;
+
+    /**
+     * The number of the operations in the current window
+     */
+    private int windowSize = 0;
+
+    /**
+     * The offset of the current record in the current window
+     */
+    private int recordOffset = -1;
+
+    private long operationNumber = 0;
+
+    /**
+     * Opens a binary workload file for reading.
+     *
+     * @param fileName the name of the workload file
+     * @throws IOException on I/O error or if the file is not a valid binary workload file
+     */
+    public BinaryWorkloadReader(final String fileName) throws IOException {
+        this(fileName, DEFAULT_WINDOW_OPERATIONS);
+    }
+
+    /**
+     * Opens a binary workload file for reading with a given mapping window size.
+     *
+     * @param fileName         the name of the workload file
+     * @param windowOperations the number of operation records to map at once
+     * @throws IOException on I/O error or if the file is not a valid binary workload file
+     */
+    BinaryWorkloadReader(final String fileName, final int windowOperations) throws IOException {
+        if (windowOperations <= 0)
+            throw new IllegalArgumentException("windowOperations must be positive");
+        this.windowOperations = windowOperations;
+        file = new RandomAccessFile(fileName, "r");
+        channel = file.getChannel();
+        try {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || file.readInt() != MAGIC)
+                throw new IOException(fileName + " is not a binary workload file");
+            final int version = file.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported binary workload file version " + version + " in " + fileName);
+            if ((fileSize - HEADER_SIZE) % RECORD_SIZE != 0)
+                throw new IOException("Truncated binary workload file " + fileName);
+            totalOperations = (fileSize - HEADER_SIZE) / RECORD_SIZE;
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the total number of operations in the file.
+     *
+     * @return the total number of operations
+     */
+    public long getTotalOperations() {
+        return totalOperations;
+    }
+
+    public boolean hasNextOperation() {
+        return operationNumber < totalOperations;
+    }
+
+    /**
+     * Makes the next record in the file current without materializing it.
+     *
+     * @throws IOException on I/O error
+     */
+    public void advance() throws IOException {
+        if (!hasNextOperation())
+            throw new IllegalStateException("No more operations in the workload file");
+        if (operationNumber == windowStart + windowSize)
+            mapWindow(operationNumber);
+        recordOffset = (int)(operationNumber - windowStart) * RECORD_SIZE;
+        operationNumber++;
+    }
+
+    private void mapWindow(final long firstOperation) throws IOException {
+        windowStart = firstOperation;
+        windowSize = (int)Math.min(windowOperations, totalOperations - firstOperation);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstOperation * RECORD_SIZE,
+                (long)windowSize * RECORD_SIZE);
+    }
+
+    /**
+     * Returns the type of the current operation.
+     *
+     * @return the operation type
+     */
+    public WorkloadOperation.OperationType getOperationType() {
+        assert recordOffset >= 0;
+        return decode(window.get(recordOffset + TYPE_OFFSET));
+    }
+
+    /**
+     * Returns the object id of the current operation, undefined for non-update operations.
+     *
+     * @return the object id
+     */
+    public int getId() {
+        assert recordOffset >= 0;
+        return window.getInt(recordOffset + ID_OFFSET);
+    }
+
+    public double x1() {
+        assert recordOffset >= 0;
+        return window.getDouble(recordOffset + X1_OFFSET);
+    }
+
+    public double y1() {
+        assert recordOffset >= 0;
+        return window.getDouble(recordOffset + Y1_OFFSET);
+    }
+
+    public double x2() {
+        assert recordOffset >= 0;
+        return window.getDouble(recordOffset + X2_OFFSET);
+    }
+
+    public double y2() {
+        assert recordOffset >= 0;
+        return window.getDouble(recordOffset + Y2_OFFSET);
+    }
+
+    public WorkloadOperation getNextOperation() throws IOException {
+        advance();
+        return new WorkloadOperation(getOperationType(), getId(), new SpatialExtent(x1(), y1(), x2(), y2()));
+    }
+
+    public boolean readNextOperation(final MutableWorkloadOperation result) throws IOException {
+        if (!hasNextOperation())
+            return false;
+        advance();
+        result.set(getOperationType(), getId(), x1(), y1(), x2(), y2());
+        return true;
+    }
+
+    public int getOperationNumber() {
+        return (int)operationNumber;
+    }
+
+    public void close() throws IOException {
+        //noinspection AssignmentToNull
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static aau.workload.BinaryWorkloadFormat.*;
+
+/**
+ * Writes workload operations to a binary workload file.
+ */
+public final class BinaryWorkloadWriter implements WorkloadWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final DataOutputStream output;
+
+    /**
+     * Creates a new binary workload file and writes its header.
+     *
+     * @param fileName the name of the workload file
+     * @throws IOException on I/O error
+     */
+    public BinaryWorkloadWriter(final String fileName) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+    }
+
+    public void write(final WorkloadOperation op) throws IOException {
+        final SpatialExtent extent = op.getSpatialExtent();
+        output.writeByte(encode(op.getOperationType()));
+        output.writeInt(op.objectId());
+        output.writeDouble(extent.x1());
+        output.writeDouble(extent.y1());
+        output.writeDouble(extent.x2());
+        output.writeDouble(extent.y2());
+    }
+
+    public void close() throws IOException {
+        output.close();
+    }
+}
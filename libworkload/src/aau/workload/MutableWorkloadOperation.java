@@ -0,0 +1,158 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import xxl.core.math.Maths;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.points.DoublePoint;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+
+/**
+ * A reusable, mutable counterpart of {@link WorkloadOperation}.  Workload readers fill it in place, so that
+ * replaying a workload does not allocate anything per operation until the XXL data object or query rectangle is
+ * actually requested.
+ */
+public final class MutableWorkloadOperation {
+
+    private WorkloadOperation.OperationType operationType = WorkloadOperation.OperationType.EMPTY;
+
+    private int objectId = WorkloadOperation.UNDEFINED_OBJECT_ID;
+
+    private double x1 = -1.0;
+    private double y1 = -1.0;
+    private double x2 = -1.0;
+    private double y2 = -1.0;
+
+    /**
+     * Overwrites this operation.
+     *
+     * @param operationType the operation type
+     * @param objectId      the object id if operation is an update, otherwise ignored
+     * @param x1            lower left x of the object or the query range
+     * @param y1            lower left y of the object or the query range
+     * @param x2            upper right x of the object or the query range
+     * @param y2            upper right y of the object or the query range
+     */
+    public void set(final WorkloadOperation.OperationType operationType, final int objectId,
+                    final double x1, final double y1, final double x2, final double y2) {
+        this.operationType = operationType;
+        this.objectId = isUpdate() ? objectId : WorkloadOperation.UNDEFINED_OBJECT_ID;
+        if (operationType == WorkloadOperation.OperationType.EMPTY) {
+            this.x1 = this.y1 = this.x2 = this.y2 = -1.0;
+        }
+        else {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+    }
+
+    public WorkloadOperation.OperationType getOperationType() {
+        return operationType;
+    }
+
+    /**
+     * For an update operation, returns the object id.
+     *
+     * @return the object id of operation
+     */
+    public int getId() {
+        assert isUpdate();
+        return objectId;
+    }
+
+    public double x1() {
+        return x1;
+    }
+
+    public double y1() {
+        return y1;
+    }
+
+    public double x2() {
+        return x2;
+    }
+
+    public double y2() {
+        return y2;
+    }
+
+    /**
+     * For an update operation, creates the data object (of XXL library KPE type) involved.
+     *
+     * @return the data object of operation
+     */
+    public KPE getObject() {
+        assert isUpdate();
+        return new KPE(new DataID(objectId), makeRectangle(), WorkloadOperation.getConverter());
+    }
+
+    /**
+     * For a query operation, creates the query rectangle (of XXL library KPE type).
+     *
+     * @return the query rectangle
+     */
+    public KPE getQueryRectangle() {
+        assert isQuery();
+        return new KPE(Maths.ZERO, makeRectangle(), WorkloadOperation.getConverter());
+    }
+
+    private DoublePointRectangle makeRectangle() {
+        return new DoublePointRectangle(new DoublePoint(new double[]{x1, y1}), new DoublePoint(new double[]{x2, y2}));
+    }
+
+    /**
+     * Creates an immutable copy of this operation.
+     *
+     * @return the immutable workload operation
+     */
+    public WorkloadOperation toWorkloadOperation() {
+        return new WorkloadOperation(operationType, objectId, new SpatialExtent(x1, y1, x2, y2));
+    }
+
+    public boolean isKindOfDelete() {
+        return (operationType == WorkloadOperation.OperationType.DELETE)
+                || (operationType == WorkloadOperation.OperationType.FINAL_DELETE);
+    }
+
+    public boolean isEmptyBuffer() {
+        return operationType == WorkloadOperation.OperationType.EMPTY;
+    }
+
+    public boolean isInsert() {
+        return operationType == WorkloadOperation.OperationType.INSERT;
+    }
+
+    public boolean isQuery() {
+        return operationType == WorkloadOperation.OperationType.QUERY;
+    }
+
+    public boolean isDeletingInsert() {
+        return operationType == WorkloadOperation.OperationType.DELETING_INSERT;
+    }
+
+    public boolean isUpdate() {
+        return isKindOfDelete() || isInsert() || isDeletingInsert();
+    }
+
+    public String toString() {
+        return operationType + " " + objectId + " " + x1 + ' ' + y1 + ' ' + x2 + ' ' + y2;
+    }
+}
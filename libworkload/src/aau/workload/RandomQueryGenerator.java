@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2007, 2009 Laurynas Biveinis
+     Copyright (C) 2007, 2009, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -18,6 +18,7 @@
 */
 package aau.workload;
 
+import java.io.IOException;
 import java.util.Random;
 
 /**
@@ -64,6 +65,18 @@ public class RandomQueryGenerator {
                 new SpatialExtent(queryLowerLeft, queryUpperRight));
     }
 
+    /**
+     * Generates a number of queries and writes them to a workload.
+     *
+     * @param queryNumber the number of queries to generate
+     * @param output      the workload writer to write the queries to
+     * @throws IOException on I/O error
+     */
+    public void writeQueries(final int queryNumber, final WorkloadWriter output) throws IOException {
+        for (int i = 0; i < queryNumber; i++)
+            output.write(generateQuery());
+    }
+
     /**
      * Returns a random double value that is between lowerBound and lowerBound + length.
      *
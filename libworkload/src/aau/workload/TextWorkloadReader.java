@@ -0,0 +1,185 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads workload operations from a text workload file, one operation per line.  Lines are scanned in place in a
+ * reused byte buffer by {@link TextWorkloadScanner}.  Blank lines are rejected as malformed, except at the end of the
+ * file, so that the operation numbers are the line numbers.
+ */
+public final class TextWorkloadReader implements WorkloadReader {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileInputStream inputStream;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private boolean endOfFile = false;
+
+    private final TextWorkloadScanner scanner = new TextWorkloadScanner();
+
+    /**
+     * The record used by {@link #getNextOperation()}
+     */
+    private final MutableWorkloadOperation record = new MutableWorkloadOperation();
+
+    private int operationNumber = 0;
+
+    /**
+     * The number of the line at the buffer position
+     */
+    private int lineNumber = 1;
+
+    /**
+     * <code>true</code> if the line at the buffer position has had an operation
+     */
+    private boolean lineHasOperation = false;
+
+    /**
+     * The number of the first blank line skipped before the next operation, 0 if none
+     */
+    private int blankLine = 0;
+
+    /**
+     * Opens a text workload file for reading.
+     *
+     * @param fileName the name of the workload file
+     * @throws IOException on I/O error
+     */
+    public TextWorkloadReader(final String fileName) throws IOException {
+        this(fileName, BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a text workload file for reading with a given buffer size.
+     *
+     * @param fileName   the name of the workload file
+     * @param bufferSize the size of the read buffer, must be larger than the longest line
+     * @throws IOException on I/O error
+     */
+    TextWorkloadReader(final String fileName, final int bufferSize) throws IOException {
+        inputStream = new FileInputStream(fileName);
+        channel = inputStream.getChannel();
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    /**
+     * Reads more data from the file, keeping the unprocessed data in the buffer.
+     *
+     * @return <code>true</code> if any new data was read
+     * @throws IOException on I/O error
+     */
+    private boolean fill() throws IOException {
+        if (endOfFile)
+            return false;
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            buffer.flip();
+            throw new IOException("Workload line " + lineNumber + " longer than the read buffer");
+        }
+        final int read = channel.read(buffer);
+        buffer.flip();
+        if (read == -1) {
+            endOfFile = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if a blank line precedes the next operation
+     */
+    public boolean hasNextOperation() throws IOException {
+        do {
+            while (buffer.hasRemaining()) {
+                final byte c = buffer.get(buffer.position());
+                if (!TextWorkloadScanner.isSpace(c)) {
+                    if (blankLine != 0)
+                        throw TextWorkloadScanner.atLine(new IllegalArgumentException("Blank line"), blankLine);
+                    return true;
+                }
+                if (c == '\n') {
+                    if (!lineHasOperation && (blankLine == 0))
+                        blankLine = lineNumber;
+                    lineNumber++;
+                    lineHasOperation = false;
+                }
+                buffer.position(buffer.position() + 1);
+            }
+        } while (fill());
+        return false;
+    }
+
+    public boolean readNextOperation(final MutableWorkloadOperation result) throws IOException {
+        if (!hasNextOperation())
+            return false;
+        int lineEnd = findLineEnd(buffer.position());
+        while (lineEnd == -1) {
+            final int scanned = buffer.remaining();
+            if (!fill()) {
+                lineEnd = buffer.limit();
+                break;
+            }
+            lineEnd = findLineEnd(buffer.position() + scanned);
+        }
+        try {
+            scanner.parseLine(buffer, buffer.position(), lineEnd, result);
+        }
+        catch (IllegalArgumentException e) {
+            throw TextWorkloadScanner.atLine(e, lineNumber);
+        }
+        buffer.position(lineEnd);
+        lineHasOperation = true;
+        operationNumber++;
+        return true;
+    }
+
+    private int findLineEnd(final int from) {
+        for (int i = from; i < buffer.limit(); i++)
+            if (buffer.get(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    public WorkloadOperation getNextOperation() throws IOException {
+        if (!readNextOperation(record))
+            throw new IllegalStateException("No more operations in the workload file");
+        return record.toWorkloadOperation();
+    }
+
+    public int getOperationNumber() {
+        return operationNumber;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+        inputStream.close();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A hand-written parser of text workload lines in an ASCII byte buffer.  It parses the operation type, object id and
+ * coordinates directly into a {@link MutableWorkloadOperation}, without the regex split, token strings and boxed
+ * extent objects of {@link WorkloadOperation#WorkloadOperation(String)}.  Malformed lines, including lines with
+ * tokens after the last expected one and object ids out of the int range, are rejected.  The callers add the line
+ * number to the error with {@link #atLine}.
+ */
+final class TextWorkloadScanner {
+
+    private static final byte[] EMPTY = {'e', 'm', 'p', 't', 'y'};
+    private static final byte[] QUERY = {'q', 'u', 'e', 'r', 'y'};
+    private static final byte[] INSERT = {'i', 'n', 's', 'e', 'r', 't'};
+    private static final byte[] DELETE = {'d', 'e', 'l', 'e', 't', 'e'};
+    private static final byte[] FINAL_DELETE = {'f', 'i', 'n', 'a', 'l', 'd', 'e', 'l', 'e', 't', 'e'};
+    private static final byte[] DELETING_INSERT
+            = {'d', 'e', 'l', 'e', 't', 'i', 'n', 'g', 'i', 'n', 's', 'e', 'r', 't'};
+
+    /**
+     * The largest mantissa that is exactly representable as a double
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Powers of ten that are exactly representable as doubles
+     */
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Scratch space for the numbers that cannot be converted exactly on the fast path
+     */
+    private final char[] slowPathChars = new char[64];
+
+    private ByteBuffer buffer;
+
+    private int pos;
+
+    private int end;
+
+    /**
+     * Parses a single workload line.
+     *
+     * @param buffer     the buffer holding the line
+     * @param start      the offset of the line start in the buffer
+     * @param end        the offset of the line end (exclusive, not including the line terminator)
+     * @param result     the operation to parse into
+     * @throws IllegalArgumentException if the line is malformed, a {@link NumberFormatException} if one of its
+     *                                  numbers is
+     */
+    void parseLine(final ByteBuffer buffer, final int start, final int end, final MutableWorkloadOperation result) {
+        this.buffer = buffer;
+        this.pos = start;
+        this.end = end;
+
+        skipSpaces();
+        final int keywordStart = pos;
+        while (pos < end && !isSpace(buffer.get(pos)))
+            pos++;
+        final WorkloadOperation.OperationType opType = parseOperationType(keywordStart, pos);
+
+        int id = WorkloadOperation.UNDEFINED_OBJECT_ID;
+        double x1 = -1.0, y1 = -1.0, x2 = -1.0, y2 = -1.0;
+        if (opType != WorkloadOperation.OperationType.EMPTY) {
+            if (opType != WorkloadOperation.OperationType.QUERY) {
+                id = parseInt();
+                assert id != WorkloadOperation.UNDEFINED_OBJECT_ID;
+            }
+            x1 = parseDouble();
+            y1 = parseDouble();
+            x2 = parseDouble();
+            y2 = parseDouble();
+        }
+        skipSpaces();
+        if (pos < end)
+            throw new IllegalArgumentException("Trailing tokens");
+        result.set(opType, id, x1, y1, x2, y2);
+        //noinspection AssignmentToNull
+        this.buffer = null;
+    }
+
+    private WorkloadOperation.OperationType parseOperationType(final int start, final int end) {
+        switch (end - start) {
+            case 5:
+                if (keywordEquals(start, EMPTY))
+                    return WorkloadOperation.OperationType.EMPTY;
+                if (keywordEquals(start, QUERY))
+                    return WorkloadOperation.OperationType.QUERY;
+                break;
+            case 6:
+                if (keywordEquals(start, INSERT))
+                    return WorkloadOperation.OperationType.INSERT;
+                if (keywordEquals(start, DELETE))
+                    return WorkloadOperation.OperationType.DELETE;
+                break;
+            case 11:
+                if (keywordEquals(start, FINAL_DELETE))
+                    return WorkloadOperation.OperationType.FINAL_DELETE;
+                break;
+            case 14:
+                if (keywordEquals(start, DELETING_INSERT))
+                    return WorkloadOperation.OperationType.DELETING_INSERT;
+                break;
+        }
+        throw new IllegalArgumentException("Invalid operation type");
+    }
+
+    private boolean keywordEquals(final int start, final byte[] keyword) {
+        for (int i = 0; i < keyword.length; i++)
+            if (buffer.get(start + i) != keyword[i])
+                return false;
+        return true;
+    }
+
+    private int parseInt() {
+        skipSpaces();
+        final boolean negative = pos < end && buffer.get(pos) == '-';
+        if (negative)
+            pos++;
+        final int digitsStart = pos;
+        // Accumulated negatively to reach Integer.MIN_VALUE without overflow
+        final int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        while (pos < end) {
+            final byte c = buffer.get(pos);
+            if (c < '0' || c > '9')
+                break;
+            if ((result < limit / 10) || (result * 10 < limit + (c - '0')))
+                throw new NumberFormatException("Object id out of range");
+            result = result * 10 - (c - '0');
+            pos++;
+        }
+        if (pos == digitsStart || (pos < end && !isSpace(buffer.get(pos))))
+            throw new NumberFormatException("Invalid object id");
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses a double.  Numbers whose decimal mantissa and exponent allow a single correctly-rounded multiplication or
+     * division are converted directly, the rest fall back to {@link Double#parseDouble(String)}.
+     *
+     * @return the parsed value
+     */
+    private double parseDouble() {
+        skipSpaces();
+        final int start = pos;
+        boolean negative = false;
+        if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean exact = true;
+        while (pos < end) {
+            final byte c = buffer.get(pos);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || c != '0')
+                    significantDigits++;
+                if (significantDigits <= 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (seenPoint)
+                        exponent--;
+                }
+                else {
+                    exact = false;
+                    if (!seenPoint)
+                        exponent++;
+                }
+            }
+            else if (c == '.' && !seenPoint)
+                seenPoint = true;
+            else
+                break;
+            pos++;
+        }
+        if (pos < end && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+                negativeExponent = buffer.get(pos) == '-';
+                pos++;
+            }
+            int explicitExponent = 0;
+            final int exponentStart = pos;
+            while (pos < end && buffer.get(pos) >= '0' && buffer.get(pos) <= '9') {
+                if (explicitExponent < 10000)
+                    explicitExponent = explicitExponent * 10 + (buffer.get(pos) - '0');
+                pos++;
+            }
+            if (pos == exponentStart)
+                exact = false;
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        while (pos < end && !isSpace(buffer.get(pos))) {
+            exact = false;
+            pos++;
+        }
+        if (exact && seenDigit && mantissa <= MAX_EXACT_MANTISSA
+                && exponent >= -22 && exponent <= 22) {
+            final double result = exponent < 0 ? mantissa / EXACT_POWERS_OF_TEN[-exponent]
+                                               : mantissa * EXACT_POWERS_OF_TEN[exponent];
+            return negative ? -result : result;
+        }
+        return parseDoubleSlowPath(start, pos);
+    }
+
+    private double parseDoubleSlowPath(final int start, final int end) {
+        if (end == start)
+            throw new NumberFormatException("Missing coordinate");
+        if (end - start > slowPathChars.length)
+            throw new NumberFormatException("Too long coordinate");
+        final int length = end - start;
+        for (int i = 0; i < length; i++)
+            slowPathChars[i] = (char)buffer.get(start + i);
+        final String coordinate = new String(slowPathChars, 0, length);
+        try {
+            return Double.parseDouble(coordinate);
+        }
+        catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid coordinate " + coordinate);
+        }
+    }
+
+    /**
+     * Adds the workload line number to a malformed line error, keeping a {@link NumberFormatException} as such.
+     *
+     * @param e          the error thrown by {@link #parseLine} or by the caller for a malformed line
+     * @param lineNumber the number of the malformed line in the workload file
+     * @return the error with the line number
+     */
+    static IllegalArgumentException atLine(final IllegalArgumentException e, final long lineNumber) {
+        final String message = e.getMessage() + " at workload line " + lineNumber;
+        if (e instanceof NumberFormatException) {
+            final NumberFormatException result = new NumberFormatException(message);
+            result.initCause(e);
+            return result;
+        }
+        return new IllegalArgumentException(message, e);
+    }
+
+    private void skipSpaces() {
+        while (pos < end && isSpace(buffer.get(pos)))
+            pos++;
+    }
+
+    static boolean isSpace(final byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f' || c == 0x0B;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes workload operations to a text workload file, one operation per line.
+ */
+public final class TextWorkloadWriter implements WorkloadWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final PrintWriter output;
+
+    /**
+     * Creates a new text workload file.
+     *
+     * @param fileName the name of the workload file
+     * @throws IOException on I/O error
+     */
+    public TextWorkloadWriter(final String fileName) throws IOException {
+        output = new PrintWriter(new BufferedWriter(new FileWriter(fileName), BUFFER_SIZE));
+    }
+
+    public void write(final WorkloadOperation op) throws IOException {
+        op.write(output);
+        output.println();
+    }
+
+    public void close() throws IOException {
+        output.close();
+        if (output.checkError())
+            throw new IOException("Error writing text workload file");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Helpers for opening workload files of either format.
+ */
+public final class WorkloadFiles {
+
+    private WorkloadFiles() {
+    }
+
+    /**
+     * Tells if a given file is a binary workload file by checking its magic number.
+     *
+     * @param fileName the name of the file
+     * @return <code>true</code> if the file is in the binary workload format
+     * @throws IOException on I/O error
+     */
+    public static boolean isBinary(final String fileName) throws IOException {
+        final DataInputStream input = new DataInputStream(new FileInputStream(fileName));
+        try {
+            return input.available() >= BinaryWorkloadFormat.HEADER_SIZE
+                    && input.readInt() == BinaryWorkloadFormat.MAGIC;
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Opens a workload file for reading, detecting its format.
+     *
+     * @param fileName the name of the workload file
+     * @return a reader for the file
+     * @throws IOException on I/O error
+     */
+    public static WorkloadReader openReader(final String fileName) throws IOException {
+        return isBinary(fileName) ? new BinaryWorkloadReader(fileName) : new TextWorkloadReader(fileName);
+    }
+
+    /**
+     * Creates a new workload file for writing.
+     *
+     * @param fileName the name of the workload file
+     * @param binary   if <code>true</code>, the file is written in the binary format, otherwise in the text one
+     * @return a writer for the file
+     * @throws IOException on I/O error
+     */
+    public static WorkloadWriter openWriter(final String fileName, final boolean binary) throws IOException {
+        return binary ? new BinaryWorkloadWriter(fileName) : new TextWorkloadWriter(fileName);
+    }
+}
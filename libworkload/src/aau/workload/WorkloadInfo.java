@@ -0,0 +1,165 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Workload summary information: the world extent and the number of updates.  Can be accumulated over operations,
+ * merged from several partial summaries, and written to and read from the workload .info file.
+ */
+public final class WorkloadInfo {
+
+    private double x1;
+    private double y1;
+    private double x2;
+    private double y2;
+
+    private long updates = 0;
+
+    /**
+     * Creates an empty workload summary.
+     */
+    public WorkloadInfo() {
+        final SpatialExtent minimum = SpatialExtent.minimum();
+        x1 = minimum.x1();
+        y1 = minimum.y1();
+        x2 = minimum.x2();
+        y2 = minimum.y2();
+    }
+
+    /**
+     * Returns the .info file name for a given workload file name.
+     *
+     * @param workloadFileName the name of the workload file
+     * @return the name of the info file
+     */
+    public static String infoFileName(final String workloadFileName) {
+        final int extensionStart = workloadFileName.lastIndexOf('.');
+        final String baseName = (extensionStart > workloadFileName.lastIndexOf('/'))
+                ? workloadFileName.substring(0, extensionStart) : workloadFileName;
+        return baseName.concat(".info");
+    }
+
+    /**
+     * Accounts for an operation in the summary.
+     *
+     * @param op the operation
+     */
+    public void register(final WorkloadOperation op) {
+        if (op.isUpdate())
+            updates++;
+        final SpatialExtent extent = op.getSpatialExtent();
+        x1 = Math.min(x1, Math.min(extent.x1(), extent.x2()));
+        y1 = Math.min(y1, Math.min(extent.y1(), extent.y2()));
+        x2 = Math.max(x2, Math.max(extent.x1(), extent.x2()));
+        y2 = Math.max(y2, Math.max(extent.y1(), extent.y2()));
+    }
+
+    /**
+     * Adds another summary to this one.
+     *
+     * @param other the summary to add
+     */
+    public void merge(final WorkloadInfo other) {
+        updates += other.updates;
+        x1 = Math.min(x1, other.x1);
+        y1 = Math.min(y1, other.y1);
+        x2 = Math.max(x2, other.x2);
+        y2 = Math.max(y2, other.y2);
+    }
+
+    /**
+     * Merges a list of partial summaries into a new summary.
+     *
+     * @param parts the partial summaries
+     * @return the total summary
+     */
+    public static WorkloadInfo merge(final List<WorkloadInfo> parts) {
+        final WorkloadInfo result = new WorkloadInfo();
+        for (final WorkloadInfo part : parts)
+            result.merge(part);
+        return result;
+    }
+
+    public SpatialExtent getWorldExtent() {
+        return new SpatialExtent(x1, y1, x2, y2);
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Tells if the world extent became negative, which indicates corrupted data.
+     *
+     * @return <code>true</code> if any of the world extent coordinates is negative
+     */
+    public boolean isNegative() {
+        return x1 < 0 || y1 < 0 || x2 < 0 || y2 < 0;
+    }
+
+    /**
+     * Writes the summary to an .info file.
+     *
+     * @param infoFileName     the name of the info file
+     * @param workloadFileName the name of the workload file this summary is for
+     * @throws IOException on I/O error
+     */
+    public void write(final String infoFileName, final String workloadFileName) throws IOException {
+        final PrintWriter output = new PrintWriter(infoFileName);
+        try {
+            output.println(workloadFileName.substring(workloadFileName.lastIndexOf('/') + 1,
+                    workloadFileName.length()));
+            output.println("World extent (x1 y1 x2 y2): ");
+            output.println("" + x1 + ' ' + y1 + ' ' + x2 + ' ' + y2);
+            output.println("Number of updates: ");
+            output.println(updates);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the world extent from an .info file.
+     *
+     * @param infoFileName the name of the info file
+     * @return the world extent
+     * @throws IOException on I/O error
+     */
+    public static SpatialExtent readWorldExtent(final String infoFileName) throws IOException {
+        final BufferedReader input = new BufferedReader(new FileReader(infoFileName));
+        try {
+            // Eat the 1st line: file name
+            input.readLine();
+            // Eat the 2nd line: "World extent (x1 y1 x2 y2):"
+            input.readLine();
+            // Read the actual extent on the 3rd line
+            return new SpatialExtent(input.readLine());
+        }
+        finally {
+            input.close();
+        }
+    }
+}
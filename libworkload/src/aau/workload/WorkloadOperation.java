@@ -46,7 +46,7 @@ public final class WorkloadOperation {
 
     private final OperationType operationType;
 
-    private static final int UNDEFINED_OBJECT_ID = -1;
+    static final int UNDEFINED_OBJECT_ID = -1;
 
     /**
      * If this operation represents an update operation, then object id of the object involved, otherwise undefined.
@@ -168,6 +168,24 @@ public final class WorkloadOperation {
         return objectId;
     }
 
+    /**
+     * Returns the object id of this operation without checking that it is an update operation.
+     *
+     * @return the object id or <code>UNDEFINED_OBJECT_ID</code>
+     */
+    int objectId() {
+        return objectId;
+    }
+
+    /**
+     * Returns the type of this operation.
+     *
+     * @return the operation type
+     */
+    public OperationType getOperationType() {
+        return operationType;
+    }
+
     /**
      * The converter for I/O of KPE, which is part of WorkloadOperation.
      */
@@ -0,0 +1,685 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A streaming, parallel workload preprocessing pipeline.  The input file, text or binary, is read in large chunks by
+ * the calling thread.  Each chunk is parsed in parallel, split into as many ranges as there are partitions.  Then the
+ * operations are routed to the partition transforms: the updates by object id, the other operations round-robin.
+ * Finally a writer thread collects the transform outputs and writes them in the input order.  Every partition has a
+ * dedicated thread that runs both its parse and transform tasks in the chunk order, so a transform never sees its
+ * operations out of order nor concurrently.
+ */
+public final class WorkloadPipeline {
+
+    /**
+     * The sink for the operations produced by a {@link WorkloadTransform}
+     */
+    public interface Output {
+
+        /**
+         * Emits an output operation.
+         *
+         * @param op the output operation
+         */
+        void emit(WorkloadOperation op);
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The maximum number of chunks in flight per partition, bounding the memory used
+     */
+    private static final int CHUNKS_PER_PARTITION = 2;
+
+    private final int chunkSize;
+
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private volatile boolean stopped = false;
+
+    private long operationsRead = 0;
+
+    private long operationsWritten = 0;
+
+    /**
+     * The output collected by one partition for one chunk, with the chunk index of the input operation for every
+     * output operation
+     */
+    private static final class PartitionOutput implements Output {
+
+        private int[] inputIndexes = new int[64];
+
+        private final List<WorkloadOperation> ops = new ArrayList<>();
+
+        private int currentInputIndex;
+
+        public void emit(final WorkloadOperation op) {
+            if (ops.size() == inputIndexes.length)
+                inputIndexes = Arrays.copyOf(inputIndexes, inputIndexes.length * 2);
+            inputIndexes[ops.size()] = currentInputIndex;
+            ops.add(op);
+        }
+    }
+
+    /**
+     * A chunk of the input file as it goes through the pipeline
+     */
+    private static final class Chunk {
+
+        final byte[] data;
+
+        /**
+         * The offset of the chunk data in the input file
+         */
+        final long fileOffset;
+
+        /**
+         * The boundaries of the parse ranges, one range per partition
+         */
+        final int[] rangeStarts;
+
+        final List<WorkloadOperation>[] parsed;
+
+        /**
+         * The offsets of the first blank lines at the ends of the parse ranges, -1 for the ranges that do not end with
+         * a blank line
+         */
+        final int[] blankTails;
+
+        final PartitionOutput[] outputs;
+
+        final CountDownLatch parsedLatch;
+
+        final CountDownLatch transformedLatch;
+
+        /**
+         * The previous chunk, needed until the sequence number of the first operation in this chunk is known
+         */
+        private Chunk previous;
+
+        private long firstSequenceNumber = -1;
+
+        private int size = -1;
+
+        /**
+         * The file offset of the first blank line not followed by an operation up to the end of this chunk, -1 if none
+         */
+        private long pendingBlankLine = -1;
+
+        @SuppressWarnings("unchecked")
+        Chunk(final byte[] data, final long fileOffset, final int[] rangeStarts, final Chunk previous) {
+            this.data = data;
+            this.fileOffset = fileOffset;
+            this.rangeStarts = rangeStarts;
+            this.previous = previous;
+            final int partitions = rangeStarts.length - 1;
+            parsed = new List[partitions];
+            blankTails = new int[partitions];
+            Arrays.fill(blankTails, -1);
+            outputs = new PartitionOutput[partitions];
+            parsedLatch = new CountDownLatch(partitions);
+            transformedLatch = new CountDownLatch(partitions);
+        }
+
+        /**
+         * Computes the size and the first operation sequence number of this chunk and checks for the blank lines that
+         * end one range and are followed by an operation in a later one.  May be called only after the whole chunk
+         * has been parsed and this method has been called for the previous chunk.
+         *
+         * @throws MalformedLineException if a blank line precedes an operation
+         */
+        synchronized void resolveSequenceNumbers() {
+            if (firstSequenceNumber != -1)
+                return;
+            long blankLine = (previous == null) ? -1 : previous.pendingBlankLine;
+            for (int i = 0; i < parsed.length; i++) {
+                if (!parsed[i].isEmpty()) {
+                    if (blankLine != -1)
+                        throw new MalformedLineException(blankLine, new IllegalArgumentException("Blank line"));
+                    blankLine = -1;
+                }
+                if (blankLine == -1 && blankTails[i] != -1)
+                    blankLine = fileOffset + blankTails[i];
+            }
+            pendingBlankLine = blankLine;
+            int totalSize = 0;
+            for (final List<WorkloadOperation> rangeOps : parsed)
+                totalSize += rangeOps.size();
+            size = totalSize;
+            firstSequenceNumber = (previous == null) ? 0 : previous.firstSequenceNumber + previous.size;
+            //noinspection AssignmentToNull
+            previous = null;
+        }
+    }
+
+    /**
+     * The end-of-input marker for the writer
+     */
+    private static final Chunk END = new Chunk(new byte[0], 0, new int[1], null);
+
+    /**
+     * A malformed text line found by a pipeline task, which knows its file offset but not its line number
+     */
+    private static final class MalformedLineException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        final long fileOffset;
+
+        MalformedLineException(final long fileOffset, final IllegalArgumentException cause) {
+            super(cause);
+            this.fileOffset = fileOffset;
+        }
+    }
+
+    /**
+     * Creates a new pipeline with the default chunk size.
+     */
+    public WorkloadPipeline() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new pipeline with a given chunk size.
+     *
+     * @param chunkSize the size of the input chunks, must be larger than the longest text line
+     */
+    WorkloadPipeline(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the recommended number of partitions for this machine.
+     *
+     * @return the number of available processors
+     */
+    public static int defaultPartitions() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Stops the pipeline early.  May be called from any thread, including the transforms and the output writer.  The
+     * operations already in flight may still be transformed, but no further output is written.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the number of input operations that went through the pipeline.  Valid after {@link #run}.
+     *
+     * @return the number of input operations
+     */
+    public long getOperationsRead() {
+        return operationsRead;
+    }
+
+    /**
+     * Returns the number of operations written to the output.  Valid after {@link #run}.
+     *
+     * @return the number of written operations
+     */
+    public long getOperationsWritten() {
+        return operationsWritten;
+    }
+
+    /**
+     * Runs the pipeline over a workload file.  Returns when the whole input has been processed and written, or the
+     * pipeline has been stopped.
+     *
+     * @param inputFileName the name of the input workload file, text or binary
+     * @param partitions    the transforms, one per partition
+     * @param output        the writer for the output operations, or <code>null</code> if the output should be
+     *                      discarded.  It is not closed by the pipeline.
+     * @throws IOException on I/O error
+     */
+    public void run(final String inputFileName, final List<? extends WorkloadTransform> partitions,
+                    final WorkloadWriter output) throws IOException {
+        if (partitions.isEmpty())
+            throw new IllegalArgumentException("At least one partition is required");
+        final boolean binary = WorkloadFiles.isBinary(inputFileName);
+        final int partitionCount = partitions.size();
+
+        final ExecutorService[] partitionExecutors = new ExecutorService[partitionCount];
+        for (int i = 0; i < partitionCount; i++)
+            partitionExecutors[i] = Executors.newSingleThreadExecutor();
+        final BlockingQueue<Chunk> writerQueue = new LinkedBlockingQueue<>();
+        final Semaphore chunksInFlight = new Semaphore(partitionCount * CHUNKS_PER_PARTITION);
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                writeOutput(writerQueue, chunksInFlight, output);
+            }
+        }, "Workload pipeline writer");
+        writer.start();
+
+        final FileInputStream inputStream = new FileInputStream(inputFileName);
+        try {
+            final FileChannel input = inputStream.getChannel();
+            if (binary)
+                readBinaryHeader(input, inputFileName);
+            final TextWorkloadScanner[] scanners = new TextWorkloadScanner[partitionCount];
+            final MutableWorkloadOperation[] records = new MutableWorkloadOperation[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                scanners[i] = new TextWorkloadScanner();
+                records[i] = new MutableWorkloadOperation();
+            }
+
+            byte[] carry = new byte[0];
+            long chunkOffset = binary ? BinaryWorkloadFormat.HEADER_SIZE : 0;
+            Chunk previous = null;
+            boolean endOfFile = false;
+            while (!endOfFile && !stopped && error.get() == null) {
+                final ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+                buffer.put(carry);
+                while (buffer.hasRemaining()) {
+                    if (input.read(buffer) == -1) {
+                        endOfFile = true;
+                        break;
+                    }
+                }
+                final byte[] data = buffer.array();
+                final int length = buffer.position();
+                final int usable = binary ? usableBinaryLength(length, endOfFile, inputFileName)
+                                          : usableTextLength(data, length, endOfFile);
+                carry = Arrays.copyOfRange(data, usable, length);
+                if (usable == 0)
+                    continue;
+
+                chunksInFlight.acquire();
+                final Chunk chunk = new Chunk(data, chunkOffset, splitRanges(data, usable, partitionCount, binary),
+                        previous);
+                previous = chunk;
+                chunkOffset += usable;
+                writerQueue.put(chunk);
+                for (int i = 0; i < partitionCount; i++) {
+                    partitionExecutors[i].execute(new ParseTask(chunk, i, binary, scanners[i], records[i]));
+                }
+                for (int i = 0; i < partitionCount; i++) {
+                    partitionExecutors[i].execute(new TransformTask(chunk, i, partitions.get(i)));
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            error.compareAndSet(null, e);
+        }
+        catch (InterruptedException e) {
+            error.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            inputStream.close();
+            finish(writer, writerQueue, partitionExecutors);
+        }
+
+        final Throwable failure = error.get();
+        if (failure instanceof MalformedLineException) {
+            final MalformedLineException malformed = (MalformedLineException)failure;
+            throw TextWorkloadScanner.atLine((IllegalArgumentException)malformed.getCause(),
+                    lineNumberAt(inputFileName, malformed.fileOffset));
+        }
+        if (failure instanceof IOException)
+            throw (IOException)failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+        if (failure instanceof Error)
+            throw (Error)failure;
+        if (failure != null)
+            throw new IllegalStateException("Workload pipeline failed", failure);
+    }
+
+    private void finish(final Thread writer, final BlockingQueue<Chunk> writerQueue,
+                        final ExecutorService[] partitionExecutors) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writerQueue.put(END);
+                writer.join();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (final ExecutorService executor : partitionExecutors)
+            executor.shutdown();
+        for (final ExecutorService executor : partitionExecutors) {
+            while (true) {
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Finds the number of a text line by counting the lines before it.  Used only to report a malformed line, so that
+     * the parse tasks do not have to count the lines in the ranges before theirs.
+     *
+     * @param inputFileName the name of the input workload file
+     * @param fileOffset    the offset of the line start in the file
+     * @return the line number, starting from 1
+     * @throws IOException on I/O error
+     */
+    private static long lineNumberAt(final String inputFileName, final long fileOffset) throws IOException {
+        long lineNumber = 1;
+        final byte[] buffer = new byte[64 * 1024];
+        final FileInputStream inputStream = new FileInputStream(inputFileName);
+        try {
+            long remaining = fileOffset;
+            while (remaining > 0) {
+                final int read = inputStream.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (read == -1)
+                    break;
+                for (int i = 0; i < read; i++)
+                    if (buffer[i] == '\n')
+                        lineNumber++;
+                remaining -= read;
+            }
+        }
+        finally {
+            inputStream.close();
+        }
+        return lineNumber;
+    }
+
+    private static void readBinaryHeader(final FileChannel input, final String inputFileName) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(BinaryWorkloadFormat.HEADER_SIZE);
+        while (header.hasRemaining() && input.read(header) != -1) { }
+        header.flip();
+        if (header.remaining() < BinaryWorkloadFormat.HEADER_SIZE || header.getInt() != BinaryWorkloadFormat.MAGIC)
+            throw new IOException(inputFileName + " is not a binary workload file");
+        final int version = header.getInt();
+        if (version != BinaryWorkloadFormat.VERSION)
+            throw new IOException("Unsupported binary workload file version " + version + " in " + inputFileName);
+    }
+
+    private static int usableBinaryLength(final int length, final boolean endOfFile, final String inputFileName)
+            throws IOException {
+        final int usable = length - length % BinaryWorkloadFormat.RECORD_SIZE;
+        if (endOfFile && usable != length)
+            throw new IOException("Truncated binary workload file " + inputFileName);
+        return usable;
+    }
+
+    private static int usableTextLength(final byte[] data, final int length, final boolean endOfFile)
+            throws IOException {
+        if (endOfFile)
+            return length;
+        for (int i = length - 1; i >= 0; i--)
+            if (data[i] == '\n')
+                return i + 1;
+        throw new IOException("Workload line longer than the pipeline chunk");
+    }
+
+    /**
+     * Splits the usable part of a chunk into roughly equal ranges that start at line or record boundaries.
+     *
+     * @param data       the chunk data
+     * @param length     the usable length of the chunk
+     * @param partitions the number of ranges
+     * @param binary     if <code>true</code>, the chunk contains binary records, otherwise text lines
+     * @return the range boundaries, <code>partitions + 1</code> of them
+     */
+    private static int[] splitRanges(final byte[] data, final int length, final int partitions, final boolean binary) {
+        final int[] rangeStarts = new int[partitions + 1];
+        for (int i = 1; i < partitions; i++) {
+            int start = Math.max((int)((long)length * i / partitions), rangeStarts[i - 1]);
+            if (binary)
+                start -= start % BinaryWorkloadFormat.RECORD_SIZE;
+            else {
+                while (start < length && start > 0 && data[start - 1] != '\n')
+                    start++;
+            }
+            rangeStarts[i] = start;
+        }
+        rangeStarts[partitions] = length;
+        return rangeStarts;
+    }
+
+    /**
+     * Parses one range of a chunk
+     */
+    private final class ParseTask implements Runnable {
+
+        private final Chunk chunk;
+        private final int range;
+        private final boolean binary;
+        private final TextWorkloadScanner scanner;
+        private final MutableWorkloadOperation record;
+
+        ParseTask(final Chunk chunk, final int range, final boolean binary, final TextWorkloadScanner scanner,
+                  final MutableWorkloadOperation record) {
+            this.chunk = chunk;
+            this.range = range;
+            this.binary = binary;
+            this.scanner = scanner;
+            this.record = record;
+        }
+
+        public void run() {
+            final List<WorkloadOperation> ops = new ArrayList<>();
+            try {
+                if (error.get() == null) {
+                    final ByteBuffer data = ByteBuffer.wrap(chunk.data);
+                    final int start = chunk.rangeStarts[range];
+                    final int end = chunk.rangeStarts[range + 1];
+                    if (binary)
+                        parseBinary(data, start, end, ops);
+                    else
+                        chunk.blankTails[range] = parseText(data, start, end, ops);
+                }
+            }
+            catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            finally {
+                chunk.parsed[range] = ops;
+                chunk.parsedLatch.countDown();
+            }
+        }
+
+        private void parseBinary(final ByteBuffer data, final int start, final int end,
+                                 final List<WorkloadOperation> ops) {
+            for (int offset = start; offset < end; offset += BinaryWorkloadFormat.RECORD_SIZE) {
+                record.set(BinaryWorkloadFormat.decode(data.get(offset + BinaryWorkloadFormat.TYPE_OFFSET)),
+                        data.getInt(offset + BinaryWorkloadFormat.ID_OFFSET),
+                        data.getDouble(offset + BinaryWorkloadFormat.X1_OFFSET),
+                        data.getDouble(offset + BinaryWorkloadFormat.Y1_OFFSET),
+                        data.getDouble(offset + BinaryWorkloadFormat.X2_OFFSET),
+                        data.getDouble(offset + BinaryWorkloadFormat.Y2_OFFSET));
+                ops.add(record.toWorkloadOperation());
+            }
+        }
+
+        /**
+         * Parses the text lines of a range, rejecting the blank lines followed by an operation in the same range.
+         *
+         * @return the offset of the first blank line at the range end, -1 if the range does not end with a blank line
+         * @throws MalformedLineException if a line is malformed
+         */
+        private int parseText(final ByteBuffer data, final int start, final int end,
+                              final List<WorkloadOperation> ops) {
+            int position = start;
+            int lineStart = start;
+            boolean lineHasOperation = false;
+            int blankLine = -1;
+            while (true) {
+                while (position < end && TextWorkloadScanner.isSpace(data.get(position))) {
+                    if (data.get(position) == '\n') {
+                        if (!lineHasOperation && blankLine == -1)
+                            blankLine = lineStart;
+                        lineStart = position + 1;
+                        lineHasOperation = false;
+                    }
+                    position++;
+                }
+                if (position == end)
+                    return blankLine;
+                if (blankLine != -1)
+                    throw new MalformedLineException(chunk.fileOffset + blankLine,
+                            new IllegalArgumentException("Blank line"));
+                int lineEnd = position;
+                while (lineEnd < end && data.get(lineEnd) != '\n')
+                    lineEnd++;
+                try {
+                    scanner.parseLine(data, position, lineEnd, record);
+                }
+                catch (IllegalArgumentException e) {
+                    throw new MalformedLineException(chunk.fileOffset + lineStart, e);
+                }
+                ops.add(record.toWorkloadOperation());
+                lineHasOperation = true;
+                position = lineEnd;
+            }
+        }
+    }
+
+    /**
+     * Runs the transform of one partition over a chunk
+     */
+    private final class TransformTask implements Runnable {
+
+        private final Chunk chunk;
+        private final int partition;
+        private final WorkloadTransform transform;
+
+        TransformTask(final Chunk chunk, final int partition, final WorkloadTransform transform) {
+            this.chunk = chunk;
+            this.partition = partition;
+            this.transform = transform;
+        }
+
+        public void run() {
+            final PartitionOutput output = new PartitionOutput();
+            try {
+                chunk.parsedLatch.await();
+                if (error.get() != null)
+                    return;
+                chunk.resolveSequenceNumbers();
+                final int partitions = chunk.outputs.length;
+                long sequenceNumber = chunk.firstSequenceNumber;
+                int inputIndex = 0;
+                for (final List<WorkloadOperation> rangeOps : chunk.parsed) {
+                    for (final WorkloadOperation op : rangeOps) {
+                        if (partitionOf(op, sequenceNumber, partitions) == partition) {
+                            output.currentInputIndex = inputIndex;
+                            transform.process(op, sequenceNumber, output);
+                        }
+                        sequenceNumber++;
+                        inputIndex++;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                error.compareAndSet(null, e);
+            }
+            catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            finally {
+                chunk.outputs[partition] = output;
+                chunk.transformedLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Determines the partition of an operation.
+     *
+     * @param op             the operation
+     * @param sequenceNumber the sequence number of the operation
+     * @param partitions     the total number of partitions
+     * @return the partition of the operation
+     */
+    static int partitionOf(final WorkloadOperation op, final long sequenceNumber, final int partitions) {
+        if (op.isUpdate())
+            return (op.objectId() & Integer.MAX_VALUE) % partitions;
+        //noinspection NumericCastThatLosesPrecision
+        return (int)(sequenceNumber % partitions);
+    }
+
+    /**
+     * The writer thread body: merges the partition outputs of every chunk in the input order and writes them.
+     */
+    private void writeOutput(final BlockingQueue<Chunk> writerQueue, final Semaphore chunksInFlight,
+                             final WorkloadWriter output) {
+        while (true) {
+            final Chunk chunk;
+            try {
+                chunk = writerQueue.take();
+            }
+            catch (InterruptedException e) {
+                error.compareAndSet(null, e);
+                continue;
+            }
+            if (chunk == END)
+                return;
+            try {
+                chunk.transformedLatch.await();
+                if (error.get() == null && !stopped) {
+                    operationsRead += chunk.size;
+                    writeChunk(chunk, output);
+                }
+            }
+            catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            finally {
+                chunksInFlight.release();
+            }
+        }
+    }
+
+    private void writeChunk(final Chunk chunk, final WorkloadWriter output) throws IOException {
+        final PartitionOutput[] outputs = chunk.outputs;
+        final int[] positions = new int[outputs.length];
+        while (!stopped) {
+            int next = -1;
+            for (int i = 0; i < outputs.length; i++) {
+                if (positions[i] < outputs[i].ops.size()
+                        && (next == -1
+                            || outputs[i].inputIndexes[positions[i]] < outputs[next].inputIndexes[positions[next]]))
+                    next = i;
+            }
+            if (next == -1)
+                return;
+            if (output != null)
+                output.write(outputs[next].ops.get(positions[next]));
+            operationsWritten++;
+            positions[next]++;
+        }
+    }
+}
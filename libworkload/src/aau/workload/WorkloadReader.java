@@ -0,0 +1,69 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import java.io.IOException;
+
+/**
+ * A sequential reader of workload operations, independent of the underlying workload file format.
+ */
+public interface WorkloadReader {
+
+    /**
+     * Tells if there are more operations to read.  May be called repeatedly without advancing the reader.
+     *
+     * @return <code>true</code> if {@link #getNextOperation()} will return an operation
+     * @throws IOException on I/O error
+     */
+    boolean hasNextOperation() throws IOException;
+
+    /**
+     * Returns the next operation and advances the reader.  Must be preceded by a successful
+     * {@link #hasNextOperation()} call.
+     *
+     * @return the next workload operation
+     * @throws IOException on I/O error
+     */
+    WorkloadOperation getNextOperation() throws IOException;
+
+    /**
+     * Reads the next operation into a reusable record and advances the reader.  Unlike
+     * {@link #getNextOperation()}, does not allocate anything per operation.
+     *
+     * @param result the record to read the operation into
+     * @return <code>true</code> if an operation was read, <code>false</code> if there are no more operations
+     * @throws IOException on I/O error
+     */
+    boolean readNextOperation(MutableWorkloadOperation result) throws IOException;
+
+    /**
+     * Returns the number of operations read so far, which is the same as the line number of the last read
+     * operation for the text format.
+     *
+     * @return the number of operations read so far
+     */
+    int getOperationNumber();
+
+    /**
+     * Closes the reader and releases the underlying file.
+     *
+     * @throws IOException on I/O error
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,37 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+/**
+ * A stage of {@link WorkloadPipeline} that transforms input operations into zero or more output operations.  The
+ * pipeline creates no transforms itself: it is given one transform per partition, and each transform is only ever
+ * invoked from a single thread at a time, with the operations of its partition in the input order.  All the updates
+ * of a given object id go to the same partition, so a transform may keep per-object state without synchronization.
+ */
+public interface WorkloadTransform {
+
+    /**
+     * Processes a single input operation.
+     *
+     * @param op             the input operation
+     * @param sequenceNumber the zero-based number of the operation in the input
+     * @param output         the output to emit the resulting operations to, in order
+     */
+    void process(WorkloadOperation op, long sequenceNumber, WorkloadPipeline.Output output);
+}
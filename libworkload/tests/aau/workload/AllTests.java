@@ -23,9 +23,14 @@ import org.junit.runners.Suite;
 
 @SuppressWarnings({"ClassMayBeInterface", "EmptyClass"})
 @RunWith(Suite.class)
-@Suite.SuiteClasses({CoordsTest.class,
+@Suite.SuiteClasses({BinaryWorkloadReaderTest.class,
+        CoordsTest.class,
         DataIDTest.class,
+        MutableWorkloadOperationTest.class,
         RandomQueryGeneratorTest.class,
         SpatialExtentTest.class,
-        WorkloadOperationTest.class})
+        TextWorkloadReaderTest.class,
+        WorkloadFilesTest.class,
+        WorkloadOperationTest.class,
+        WorkloadPipelineTest.class})
 public class AllTests { }
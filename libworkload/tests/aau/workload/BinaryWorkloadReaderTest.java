@@ -0,0 +1,127 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testsuite for the BinaryWorkloadReader and BinaryWorkloadWriter classes
+ */
+public class BinaryWorkloadReaderTest {
+
+    private static final WorkloadOperation[] ops = {
+            new WorkloadOperation("insert 5 1.0 2.0 3.0 4.0"),
+            new WorkloadOperation("query 4.0 3.0 2.0 1.0"),
+            new WorkloadOperation("delete 5 1.0 2.0 3.0 4.0"),
+            new WorkloadOperation("empty"),
+            new WorkloadOperation("deletinginsert 7 1.5 2.5 3.5 4.5"),
+            new WorkloadOperation("finaldelete 7 1.5 2.5 3.5 4.5")
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("workload", ".bin");
+        final BinaryWorkloadWriter writer = new BinaryWorkloadWriter(file.getPath());
+        for (final WorkloadOperation op : ops)
+            writer.write(op);
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final BinaryWorkloadReader reader = new BinaryWorkloadReader(file.getPath());
+        assertEquals(ops.length, reader.getTotalOperations());
+        for (final WorkloadOperation op : ops) {
+            assertTrue(reader.hasNextOperation());
+            assertEquals(op, reader.getNextOperation());
+        }
+        assertFalse(reader.hasNextOperation());
+        assertEquals(ops.length, reader.getOperationNumber());
+        reader.close();
+    }
+
+    @Test
+    public void flyweightAccess() throws IOException {
+        final BinaryWorkloadReader reader = new BinaryWorkloadReader(file.getPath());
+        reader.advance();
+        assertEquals(WorkloadOperation.OperationType.INSERT, reader.getOperationType());
+        assertEquals(5, reader.getId());
+        assertEquals(1.0, reader.x1(), 0.0);
+        assertEquals(2.0, reader.y1(), 0.0);
+        assertEquals(3.0, reader.x2(), 0.0);
+        assertEquals(4.0, reader.y2(), 0.0);
+        reader.advance();
+        assertEquals(WorkloadOperation.OperationType.QUERY, reader.getOperationType());
+        assertEquals(WorkloadOperation.UNDEFINED_OBJECT_ID, reader.getId());
+        reader.close();
+    }
+
+    @Test
+    public void smallWindows() throws IOException {
+        final BinaryWorkloadReader reader = new BinaryWorkloadReader(file.getPath(), 4);
+        for (final WorkloadOperation op : ops)
+            assertEquals(op, reader.getNextOperation());
+        assertFalse(reader.hasNextOperation());
+        reader.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readPastEnd() throws IOException {
+        final BinaryWorkloadReader reader = new BinaryWorkloadReader(file.getPath());
+        try {
+            for (int i = 0; i <= ops.length; i++)
+                reader.getNextOperation();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFile() throws IOException {
+        final RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.setLength(f.length() - 1);
+        f.close();
+        new BinaryWorkloadReader(file.getPath());
+    }
+
+    @Test(expected = IOException.class)
+    public void notBinaryFile() throws IOException {
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write("insert 5 1.0 2.0 3.0 4.0\n".getBytes("US-ASCII"));
+        output.close();
+        new BinaryWorkloadReader(file.getPath());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testsuite for the MutableWorkloadOperation class
+ */
+public class MutableWorkloadOperationTest {
+
+    @Test
+    public void sameAsImmutable() {
+        final MutableWorkloadOperation op = new MutableWorkloadOperation();
+        op.set(WorkloadOperation.OperationType.INSERT, 5, 1.0, 2.0, 3.0, 4.0);
+        final WorkloadOperation immutableOp = new WorkloadOperation("insert 5 1.0 2.0 3.0 4.0");
+        assertEquals(immutableOp, op.toWorkloadOperation());
+        assertEquals(immutableOp.getObject(), op.getObject());
+        assertTrue(op.isInsert());
+        assertTrue(op.isUpdate());
+        assertEquals(5, op.getId());
+    }
+
+    @Test
+    public void reuse() {
+        final MutableWorkloadOperation op = new MutableWorkloadOperation();
+        op.set(WorkloadOperation.OperationType.INSERT, 5, 1.0, 2.0, 3.0, 4.0);
+        op.set(WorkloadOperation.OperationType.QUERY, 5, 4.0, 3.0, 2.0, 1.0);
+        assertTrue(op.isQuery());
+        assertFalse(op.isUpdate());
+        assertEquals(new WorkloadOperation("query 4.0 3.0 2.0 1.0").getQueryRectangle(), op.getQueryRectangle());
+        op.set(WorkloadOperation.OperationType.EMPTY, 5, 4.0, 3.0, 2.0, 1.0);
+        assertEquals(new WorkloadOperation("empty"), op.toWorkloadOperation());
+    }
+
+    @Test
+    public void getNotUpdateObject() {
+        final MutableWorkloadOperation op = new MutableWorkloadOperation();
+        op.set(WorkloadOperation.OperationType.QUERY, 0, 4.0, 3.0, 2.0, 1.0);
+        try {
+            op.getObject();
+            fail();
+        }
+        catch (AssertionError ignored) { }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testsuite for the TextWorkloadReader and TextWorkloadScanner classes
+ */
+public class TextWorkloadReaderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("workload", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    private void writeFile(final String contents) throws IOException {
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write(contents.getBytes("US-ASCII"));
+        output.close();
+    }
+
+    private void checkSameAsStringParsing(final String[] lines, final String separator, final int bufferSize)
+            throws IOException {
+        final StringBuilder contents = new StringBuilder();
+        for (final String line : lines)
+            contents.append(line).append(separator);
+        writeFile(contents.toString());
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath(), bufferSize);
+        final MutableWorkloadOperation op = new MutableWorkloadOperation();
+        for (final String line : lines) {
+            assertTrue(reader.readNextOperation(op));
+            assertEquals(new WorkloadOperation(line), op.toWorkloadOperation());
+        }
+        assertFalse(reader.readNextOperation(op));
+        assertEquals(lines.length, reader.getOperationNumber());
+        reader.close();
+    }
+
+    private static final String[] lines = {
+            "insert\t5 \t1.0\t2.0 3.0\t4.0",
+            "query \t61279.79769789974\t10638.430329058183 71114.1852231836\t20806.669047464162",
+            "delete 6 5.0 6.0 7.0 8.0",
+            "empty",
+            "finaldelete 7 -10.5 1.0E7 1.2345E-5 13",
+            "deletinginsert 7 1.0 2.0 3.0 4.0"
+    };
+
+    @Test
+    public void parseAllOperations() throws IOException {
+        checkSameAsStringParsing(lines, "\n", 1024);
+    }
+
+    @Test
+    public void parseCrLf() throws IOException {
+        checkSameAsStringParsing(lines, "\r\n", 1024);
+    }
+
+    @Test
+    public void parseAcrossBufferRefills() throws IOException {
+        checkSameAsStringParsing(lines, "\n", 100);
+    }
+
+    @Test
+    public void lastLineWithoutNewline() throws IOException {
+        writeFile("insert 5 1.0 2.0 3.0 4.0\nempty");
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        assertEquals(new WorkloadOperation("insert 5 1.0 2.0 3.0 4.0"), reader.getNextOperation());
+        assertTrue(reader.hasNextOperation());
+        assertEquals(new WorkloadOperation("empty"), reader.getNextOperation());
+        assertFalse(reader.hasNextOperation());
+        reader.close();
+    }
+
+    @Test
+    public void exactDoubles() throws IOException {
+        final Random random = new Random(42);
+        final StringBuilder contents = new StringBuilder();
+        final double[] values = new double[4000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (random.nextDouble() - 0.1) * Math.pow(10, random.nextInt(12) - 3);
+        }
+        for (int i = 0; i < values.length; i += 4) {
+            contents.append("query ").append(values[i]).append(' ').append(values[i + 1]).append(' ')
+                    .append(values[i + 2]).append(' ').append(values[i + 3]).append('\n');
+        }
+        writeFile(contents.toString());
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        final MutableWorkloadOperation op = new MutableWorkloadOperation();
+        for (int i = 0; i < values.length; i += 4) {
+            assertTrue(reader.readNextOperation(op));
+            assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(op.x1()));
+            assertEquals(Double.doubleToLongBits(values[i + 1]), Double.doubleToLongBits(op.y1()));
+            assertEquals(Double.doubleToLongBits(values[i + 2]), Double.doubleToLongBits(op.x2()));
+            assertEquals(Double.doubleToLongBits(values[i + 3]), Double.doubleToLongBits(op.y2()));
+        }
+        reader.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOperation() throws IOException {
+        writeFile("invalidop blah blah 1.0\n");
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        try {
+            reader.getNextOperation();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidId() throws IOException {
+        writeFile("insert 5x 1.0 2.0 3.0 4.0\n");
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        try {
+            reader.getNextOperation();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void idRange() throws IOException {
+        writeFile("insert 2147483647 1.0 2.0 3.0 4.0\ndelete -2147483648 1.0 2.0 3.0 4.0\n");
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        assertEquals(Integer.MAX_VALUE, reader.getNextOperation().getId());
+        assertEquals(Integer.MIN_VALUE, reader.getNextOperation().getId());
+        reader.close();
+    }
+
+    @Test
+    public void idOverflow() throws IOException {
+        checkMalformed("empty\ninsert 2147483648 1.0 2.0 3.0 4.0\n", 2);
+        checkMalformed("delete -2147483649 1.0 2.0 3.0 4.0\n", 1);
+        checkMalformed("delete 99999999999999999999 1.0 2.0 3.0 4.0\n", 1);
+    }
+
+    @Test
+    public void trailingTokens() throws IOException {
+        checkMalformed("insert 5 1.0 2.0 3.0 4.0\ndelete 5 1.0 2.0 3.0 4.0 5.0\n", 2);
+        checkMalformed("empty 1\n", 1);
+    }
+
+    @Test
+    public void missingAndInvalidCoordinates() throws IOException {
+        checkMalformed("empty\nempty\nquery 1.0 2.0 3.0\n", 3);
+        checkMalformed("query 1.0 2.0 3.0 4.0x\n", 1);
+    }
+
+    @Test
+    public void blankLine() throws IOException {
+        checkMalformed("empty\nempty\n\nempty\n", 3);
+        checkMalformed(" \t\nempty\n", 1);
+        checkMalformed("empty\r\n\r\n\r\nempty\r\n", 2);
+    }
+
+    @Test
+    public void trailingWhitespace() throws IOException {
+        writeFile("  insert 5 1.0 2.0 3.0 4.0  \t\nempty \n\n \n");
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        assertEquals(new WorkloadOperation("insert 5 1.0 2.0 3.0 4.0"), reader.getNextOperation());
+        assertEquals(new WorkloadOperation("empty"), reader.getNextOperation());
+        assertFalse(reader.hasNextOperation());
+        assertEquals(2, reader.getOperationNumber());
+        reader.close();
+    }
+
+    /**
+     * Reads a workload until its malformed line and checks that the error reports the line number.
+     */
+    private void checkMalformed(final String contents, final int lineNumber) throws IOException {
+        writeFile(contents);
+        final TextWorkloadReader reader = new TextWorkloadReader(file.getPath());
+        try {
+            for (int i = 1; i < lineNumber; i++)
+                reader.getNextOperation();
+            reader.getNextOperation();
+            fail("Malformed line " + lineNumber + " accepted");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("line " + lineNumber));
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
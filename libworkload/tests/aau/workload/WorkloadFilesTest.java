@@ -0,0 +1,91 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testsuite for the WorkloadFiles and TextWorkloadReader classes
+ */
+public class WorkloadFilesTest {
+
+    private static final WorkloadOperation insertOp = new WorkloadOperation("insert 5 1.0 2.0 3.0 4.0");
+    private static final WorkloadOperation queryOp = new WorkloadOperation("query 4.0 3.0 2.0 1.0");
+
+    private File textFile;
+    private File binaryFile;
+
+    @Before
+    public void setUp() throws IOException {
+        textFile = File.createTempFile("workload", ".txt");
+        final PrintWriter output = new PrintWriter(textFile);
+        insertOp.write(output);
+        output.println();
+        queryOp.write(output);
+        output.println();
+        output.close();
+
+        binaryFile = File.createTempFile("workload", ".bin");
+        final BinaryWorkloadWriter writer = new BinaryWorkloadWriter(binaryFile.getPath());
+        writer.write(insertOp);
+        writer.write(queryOp);
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(textFile.delete());
+        assertTrue(binaryFile.delete());
+    }
+
+    @Test
+    public void isBinary() throws IOException {
+        assertFalse(WorkloadFiles.isBinary(textFile.getPath()));
+        assertTrue(WorkloadFiles.isBinary(binaryFile.getPath()));
+    }
+
+    @Test
+    public void openText() throws IOException {
+        checkReader(WorkloadFiles.openReader(textFile.getPath()));
+    }
+
+    @Test
+    public void openBinary() throws IOException {
+        checkReader(WorkloadFiles.openReader(binaryFile.getPath()));
+    }
+
+    private static void checkReader(final WorkloadReader reader) throws IOException {
+        assertTrue(reader.hasNextOperation());
+        assertTrue(reader.hasNextOperation());
+        assertEquals(insertOp, reader.getNextOperation());
+        assertEquals(1, reader.getOperationNumber());
+        assertEquals(queryOp, reader.getNextOperation());
+        assertFalse(reader.hasNextOperation());
+        assertEquals(2, reader.getOperationNumber());
+        reader.close();
+    }
+}
@@ -0,0 +1,339 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.workload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testsuite for the WorkloadPipeline class
+ */
+public class WorkloadPipelineTest {
+
+    private static final int OPERATIONS = 2000;
+
+    private static final int OBJECTS = 37;
+
+    private static final int CHUNK_SIZE = 512;
+
+    private static final int PARTITIONS = 3;
+
+    private final List<WorkloadOperation> operations = new ArrayList<>();
+
+    private File textFile;
+    private File binaryFile;
+
+    @Before
+    public void setUp() throws IOException {
+        final boolean[] inserted = new boolean[OBJECTS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            final double x = i % 100;
+            final double y = i / 100;
+            final SpatialExtent extent = new SpatialExtent(x, y, x + 0.5, y + 0.25);
+            if (i % 5 == 4) {
+                operations.add(new WorkloadOperation(WorkloadOperation.OperationType.QUERY,
+                        WorkloadOperation.UNDEFINED_OBJECT_ID, extent));
+                continue;
+            }
+            final int id = i % OBJECTS;
+            operations.add(new WorkloadOperation(inserted[id] ? WorkloadOperation.OperationType.DELETE
+                    : WorkloadOperation.OperationType.INSERT, id, extent));
+            inserted[id] = !inserted[id];
+        }
+
+        textFile = File.createTempFile("workload", ".txt");
+        final TextWorkloadWriter textWriter = new TextWorkloadWriter(textFile.getPath());
+        binaryFile = File.createTempFile("workload", ".bin");
+        final BinaryWorkloadWriter binaryWriter = new BinaryWorkloadWriter(binaryFile.getPath());
+        for (final WorkloadOperation op : operations) {
+            textWriter.write(op);
+            binaryWriter.write(op);
+        }
+        textWriter.close();
+        binaryWriter.close();
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(textFile.delete());
+        assertTrue(binaryFile.delete());
+    }
+
+    /**
+     * Passes every operation through unchanged
+     */
+    private static final class IdentityTransform implements WorkloadTransform {
+        public void process(final WorkloadOperation op, final long sequenceNumber,
+                            final WorkloadPipeline.Output output) {
+            output.emit(op);
+        }
+    }
+
+    /**
+     * Drops the queries and duplicates the insertions
+     */
+    private static final class DropAndDuplicateTransform implements WorkloadTransform {
+        public void process(final WorkloadOperation op, final long sequenceNumber,
+                            final WorkloadPipeline.Output output) {
+            if (op.isQuery())
+                return;
+            output.emit(op);
+            if (op.isInsert())
+                output.emit(op);
+        }
+    }
+
+    /**
+     * Collects the written operations
+     */
+    private static class CollectingWriter implements WorkloadWriter {
+
+        final List<WorkloadOperation> ops = new ArrayList<>();
+
+        public void write(final WorkloadOperation op) {
+            ops.add(op);
+        }
+
+        public void close() { }
+    }
+
+    private static List<WorkloadTransform> identityTransforms() {
+        final List<WorkloadTransform> result = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++)
+            result.add(new IdentityTransform());
+        return result;
+    }
+
+    private List<WorkloadOperation> runIdentity(final String fileName) throws IOException {
+        final WorkloadPipeline pipeline = new WorkloadPipeline(CHUNK_SIZE);
+        final CollectingWriter writer = new CollectingWriter();
+        pipeline.run(fileName, identityTransforms(), writer);
+        assertEquals(OPERATIONS, pipeline.getOperationsRead());
+        assertEquals(OPERATIONS, pipeline.getOperationsWritten());
+        return writer.ops;
+    }
+
+    @Test
+    public void identityText() throws IOException {
+        assertEquals(operations, runIdentity(textFile.getPath()));
+    }
+
+    @Test
+    public void identityBinary() throws IOException {
+        assertEquals(operations, runIdentity(binaryFile.getPath()));
+    }
+
+    @Test
+    public void singlePartition() throws IOException {
+        final CollectingWriter writer = new CollectingWriter();
+        new WorkloadPipeline(CHUNK_SIZE).run(textFile.getPath(),
+                Collections.singletonList(new IdentityTransform()), writer);
+        assertEquals(operations, writer.ops);
+    }
+
+    @Test
+    public void dropAndDuplicate() throws IOException {
+        final List<WorkloadOperation> expected = new ArrayList<>();
+        for (final WorkloadOperation op : operations) {
+            if (op.isQuery())
+                continue;
+            expected.add(op);
+            if (op.isInsert())
+                expected.add(op);
+        }
+
+        final List<WorkloadTransform> transforms = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++)
+            transforms.add(new DropAndDuplicateTransform());
+        final WorkloadPipeline pipeline = new WorkloadPipeline(CHUNK_SIZE);
+        final CollectingWriter writer = new CollectingWriter();
+        pipeline.run(binaryFile.getPath(), transforms, writer);
+        assertEquals(expected, writer.ops);
+        assertEquals(expected.size(), pipeline.getOperationsWritten());
+    }
+
+    @Test
+    public void updatesOfObjectInOrderInOnePartition() throws IOException {
+        final Map<Integer, Integer> objectPartitions = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+        final List<WorkloadTransform> transforms = new ArrayList<>();
+        final List<List<Long>> seen = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            final int partition = i;
+            final List<Long> partitionSeen = new ArrayList<>();
+            seen.add(partitionSeen);
+            transforms.add(new WorkloadTransform() {
+                public void process(final WorkloadOperation op, final long sequenceNumber,
+                                    final WorkloadPipeline.Output output) {
+                    if (op.isUpdate()) {
+                        final Integer previous = objectPartitions.put(op.getId(), partition);
+                        assertTrue(previous == null || previous == partition);
+                    }
+                    assertEquals(operations.get((int)sequenceNumber), op);
+                    partitionSeen.add(sequenceNumber);
+                }
+            });
+        }
+        final WorkloadPipeline pipeline = new WorkloadPipeline(CHUNK_SIZE);
+        pipeline.run(textFile.getPath(), transforms, null);
+        assertEquals(0, pipeline.getOperationsWritten());
+
+        int total = 0;
+        for (final List<Long> partitionSeen : seen) {
+            for (int i = 1; i < partitionSeen.size(); i++)
+                assertTrue(partitionSeen.get(i - 1) < partitionSeen.get(i));
+            total += partitionSeen.size();
+        }
+        assertEquals(OPERATIONS, total);
+        assertEquals(OBJECTS, objectPartitions.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void transformErrorPropagates() throws IOException {
+        final List<WorkloadTransform> transforms = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            transforms.add(new WorkloadTransform() {
+                public void process(final WorkloadOperation op, final long sequenceNumber,
+                                    final WorkloadPipeline.Output output) {
+                    if (sequenceNumber == OPERATIONS / 2)
+                        throw new IllegalStateException("Failing transform");
+                    output.emit(op);
+                }
+            });
+        }
+        new WorkloadPipeline(CHUNK_SIZE).run(textFile.getPath(), transforms, new CollectingWriter());
+    }
+
+    @Test
+    public void stopFromWriter() throws IOException {
+        final int limit = 100;
+        final WorkloadPipeline pipeline = new WorkloadPipeline(CHUNK_SIZE);
+        final CollectingWriter writer = new CollectingWriter() {
+            @Override
+            public void write(final WorkloadOperation op) {
+                super.write(op);
+                if (ops.size() == limit)
+                    pipeline.stop();
+            }
+        };
+        pipeline.run(binaryFile.getPath(), identityTransforms(), writer);
+        assertEquals(operations.subList(0, limit), writer.ops);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noPartitions() throws IOException {
+        new WorkloadPipeline(CHUNK_SIZE).run(textFile.getPath(), new ArrayList<WorkloadTransform>(), null);
+    }
+
+    @Test
+    public void malformedLineNumber() throws IOException {
+        final List<String> lines = textLines();
+        for (int line = 0; line < OPERATIONS; line += 199)
+            checkMalformed(lines, line, false);
+        checkMalformed(lines, OPERATIONS - 1, false);
+    }
+
+    @Test
+    public void blankLineNumber() throws IOException {
+        // Small steps place the blank line at the range and chunk boundaries too
+        final List<String> lines = textLines();
+        for (int line = 0; line < OPERATIONS; line += 13)
+            checkMalformed(lines, line, true);
+    }
+
+    @Test
+    public void trailingBlankLines() throws IOException {
+        final StringBuilder contents = new StringBuilder();
+        for (final String line : textLines())
+            contents.append(line).append('\n');
+        for (int i = 0; i < CHUNK_SIZE; i++)
+            contents.append(" \n");
+        writeText(contents.toString());
+        assertEquals(operations, runIdentity(textFile.getPath()));
+    }
+
+    /**
+     * Runs the pipeline over the text workload with a malformed line and checks that the error reports its number.
+     *
+     * @param lines the lines of the well-formed text workload
+     * @param line  the zero-based index of the operation to make malformed
+     * @param blank if <code>true</code>, a blank line is inserted before the operation, otherwise a token is appended
+     *              to it
+     */
+    private void checkMalformed(final List<String> lines, final int line, final boolean blank) throws IOException {
+        final StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i == line && blank)
+                contents.append('\n');
+            contents.append(lines.get(i));
+            if (i == line && !blank)
+                contents.append(" 1");
+            contents.append('\n');
+        }
+        writeText(contents.toString());
+        try {
+            new WorkloadPipeline(CHUNK_SIZE).run(textFile.getPath(), identityTransforms(), new CollectingWriter());
+            fail("Malformed line " + (line + 1) + " accepted");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("line " + (line + 1)));
+        }
+    }
+
+    private List<String> textLines() throws IOException {
+        return Files.readAllLines(textFile.toPath(), StandardCharsets.US_ASCII);
+    }
+
+    private void writeText(final String contents) throws IOException {
+        final FileOutputStream output = new FileOutputStream(textFile);
+        output.write(contents.getBytes(StandardCharsets.US_ASCII));
+        output.close();
+    }
+
+    @Test
+    public void workloadInfoMerge() {
+        final WorkloadInfo first = new WorkloadInfo();
+        final WorkloadInfo second = new WorkloadInfo();
+        final WorkloadInfo all = new WorkloadInfo();
+        for (int i = 0; i < operations.size(); i++) {
+            (i % 2 == 0 ? first : second).register(operations.get(i));
+            all.register(operations.get(i));
+        }
+        final List<WorkloadInfo> parts = new ArrayList<>();
+        parts.add(first);
+        parts.add(second);
+        final WorkloadInfo merged = WorkloadInfo.merge(parts);
+        assertEquals(all.getUpdates(), merged.getUpdates());
+        assertEquals(all.getWorldExtent(), merged.getWorldExtent());
+        assertFalse(merged.isNegative());
+    }
+}
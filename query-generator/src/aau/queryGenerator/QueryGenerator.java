@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2011 Laurynas Biveinis
+     Copyright (C) 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -20,15 +20,14 @@ package aau.queryGenerator;
 
 import aau.workload.RandomQueryGenerator;
 import aau.workload.SpatialExtent;
-import aau.workload.WorkloadOperation;
+import aau.workload.TextWorkloadWriter;
+import aau.workload.WorkloadInfo;
+import aau.workload.WorkloadWriter;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 
 /**
  * Generates queries with given parameters for a given data files
@@ -94,26 +93,16 @@ public class QueryGenerator {
 
     private static void generate (final String infoFileName, final double queryRegionSize, final int queryNumber,
                                   final String outputFileName) throws IOException {
-        // Read the world size
-        String s;
-        final BufferedReader infoInput = new BufferedReader(new FileReader(infoFileName));
-        // Eat the 1st line: file name
-        infoInput.readLine();
-        // Eat the 2nd line: "World extent (x1 y1 x2 y2):"
-        infoInput.readLine();
-        // Read the actual extent on the 3rd line
-        s = infoInput.readLine();
-        final SpatialExtent worldExtent = new SpatialExtent(s);
-        infoInput.close();
+        final SpatialExtent worldExtent = WorkloadInfo.readWorldExtent(infoFileName);
 
         final RandomQueryGenerator rndQGen = new RandomQueryGenerator(queryRegionSize, worldExtent);
-        final PrintWriter output = new PrintWriter(outputFileName);
-        for (int i = 0; i < queryNumber; i++) {
-            final WorkloadOperation query = rndQGen.generateQuery();
-            query.write(output);
-            output.println();
+        final WorkloadWriter output = new TextWorkloadWriter(outputFileName);
+        try {
+            rndQGen.writeQueries(queryNumber, output);
+        }
+        finally {
+            output.close();
         }
-        output.close();
     }
 
 }
@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2007, 2010, 2011 Laurynas Biveinis
+     Copyright (C) 2007, 2010, 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -21,17 +21,21 @@ package aau.queryPostprocessor;
 
 import aau.workload.RandomQueryGenerator;
 import aau.workload.SpatialExtent;
+import aau.workload.TextWorkloadWriter;
+import aau.workload.WorkloadInfo;
 import aau.workload.WorkloadOperation;
+import aau.workload.WorkloadPipeline;
+import aau.workload.WorkloadTransform;
+import aau.workload.WorkloadWriter;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Postprocesses workloads to include queries
@@ -134,106 +138,138 @@ final class Postprocessor {
         System.out.println("done.");
     }
 
-    private static void doPostprocessing(final String inputFileName, final String outputFileName,
-                                         final int queryRatio, final int updateRatio, final double queryRegionSize,
-                                         final int numOperations, final int initialInsertions) throws IOException {
-        PrintWriter output = null;
-        try {
-            BufferedReader input = new BufferedReader(new FileReader(inputFileName));
-
-            output = new PrintWriter(outputFileName);
-
-            // TODO: copy paste with workload-analyzer
-            int maxUpdates = 0;
-            SpatialExtent worldExtent = SpatialExtent.minimum();
-            if (queryRatio > 0) {
-                // First pass: calculate world boundaries
-                String s;
-                while ((s = input.readLine()) != null) {
-                    final WorkloadOperation op = new WorkloadOperation(s);
-                    if (op.isUpdate())
-                        maxUpdates++;
-
-                    worldExtent = worldExtent.include(op.getSpatialExtent());
-                    /* To help to clean the SPF dataset */
-                    if (worldExtent.x1() < 0 || worldExtent.y1() < 0 || worldExtent.x2() < 0 || worldExtent.y2() < 0) {
-                        System.err.println("Became negative! maxUpdates = " + maxUpdates);
-                        System.err.println("wordExtent = " + worldExtent.toString());
-                        System.err.println("op = " + op.toString());
-                        System.err.println("s = " + s);
-                    }
-                }
-                input.close();
-                input = new BufferedReader(new FileReader(inputFileName));
-            }
-
-            System.out.println(" maximum possible operations: " + maxUpdates);
-            if (maxUpdates + maxUpdates % queryRatio < numOperations) {
-                throw new IllegalArgumentException("Requested more operations than possible with this dataset!");
-            }
-            System.out.println("World boundaries: " + worldExtent.toString());
-
-            if (queryRatio == 0)
-                return;
-
-            // TODO: copy-paste with QueryGenerator
-            final RandomQueryGenerator rndQGen = new RandomQueryGenerator(queryRegionSize, worldExtent);
-
-            final Collection<Integer> activeIds = new HashSet<Integer>(initialInsertions);
+    /**
+     * Copies the ordered operations from the pipeline to the output, checking object ids, limiting the number of
+     * operations and interleaving them with random queries.
+     */
+    private static final class QueryInterleaver implements WorkloadWriter {
+
+        private final WorkloadWriter output;
+        private final WorkloadPipeline pipeline;
+        private final RandomQueryGenerator rndQGen;
+        private final int queryRatio;
+        private final int updateRatio;
+        private final int numOperations;
+        private final int initialInsertions;
+
+        private final Collection<Integer> activeIds;
+
+        private int lineNumber = 0;
+        private int seenInsertions = 0;
+        private int seenOthers = 0;
+        private int generatedOps = 0;
+        private int queries = 0;
+
+        QueryInterleaver(final WorkloadWriter output, final WorkloadPipeline pipeline,
+                         final RandomQueryGenerator rndQGen, final int queryRatio, final int updateRatio,
+                         final int numOperations, final int initialInsertions) {
+            this.output = output;
+            this.pipeline = pipeline;
+            this.rndQGen = rndQGen;
+            this.queryRatio = queryRatio;
+            this.updateRatio = updateRatio;
+            this.numOperations = numOperations;
+            this.initialInsertions = initialInsertions;
+            activeIds = new HashSet<>(initialInsertions);
+        }
 
-            int lineNumber = 0;
-            int seenInsertions = 0;
-            int seenOthers = 0;
-            String s;
-            System.out.print("Initial insertions... ");
+        public void write(final WorkloadOperation op) throws IOException {
+            lineNumber++;
             // Initial insertions do not count towards the total operations
-            while (((s = input.readLine()) != null) && (seenInsertions < initialInsertions))
-            {
-                lineNumber++;
-                final WorkloadOperation op = new WorkloadOperation(s);
+            if (seenInsertions < initialInsertions) {
                 checkObjectId(activeIds, lineNumber, op);
-
                 if (op.isInsert())
                     seenInsertions++;
                 else
                     seenOthers++;
-                op.write(output);
-                output.println();
+                output.write(op);
+                return;
             }
-            System.out.println("insertions: " + seenInsertions + ", others: " + seenOthers);
 
-            int generatedOps = 0;
-            int queries = 0;
+            if ((numOperations != -1) && (generatedOps >= numOperations)) {
+                pipeline.stop();
+                return;
+            }
+            checkObjectId(activeIds, lineNumber, op);
+            output.write(op);
+            generatedOps++;
+
+            if (lineNumber % queryRatio == 0) {
+                int k = 0;
+                while (k < updateRatio)
+                {
+                    queries++;
+                    generatedOps++;
+                    output.write(rndQGen.generateQuery());
+                    k++;
+                }
+            }
+        }
 
-            System.out.print("Updates and queries... ");
-            while ((s != null) && ((numOperations == -1) || (generatedOps < numOperations))) {
-                lineNumber++;
-                final WorkloadOperation op = new WorkloadOperation(s);
-                checkObjectId(activeIds, lineNumber, op);
-                op.write(output);
-                output.println();
-                generatedOps++;
+        public void close() throws IOException {
+            output.close();
+        }
+    }
 
-                if (lineNumber % queryRatio == 0) {
-                    int k = 0;
-                    while (k < updateRatio)
-                    {
-                        queries++;
-                        generatedOps++;
-                        final WorkloadOperation queryOp = rndQGen.generateQuery();
-                        queryOp.write(output);
-                        output.println();
-                        k++;
+    private static void doPostprocessing(final String inputFileName, final String outputFileName,
+                                         final int queryRatio, final int updateRatio, final double queryRegionSize,
+                                         final int numOperations, final int initialInsertions) throws IOException {
+        // First pass: calculate world boundaries
+        final WorkloadInfo info = new WorkloadInfo();
+        if (queryRatio > 0) {
+            final List<WorkloadTransform> analyzers = new ArrayList<>();
+            final List<WorkloadInfo> partialInfos = new ArrayList<>();
+            for (int i = 0; i < WorkloadPipeline.defaultPartitions(); i++) {
+                final WorkloadInfo partialInfo = new WorkloadInfo();
+                partialInfos.add(partialInfo);
+                analyzers.add(new WorkloadTransform() {
+                    public void process(final WorkloadOperation op, final long sequenceNumber,
+                                        final WorkloadPipeline.Output output) {
+                        partialInfo.register(op);
                     }
-                }
-                s = input.readLine();
+                });
+            }
+            new WorkloadPipeline().run(inputFileName, analyzers, null);
+            info.merge(WorkloadInfo.merge(partialInfos));
+            /* To help to clean the SPF dataset */
+            if (info.isNegative())
+                System.err.println("Became negative! wordExtent = " + info.getWorldExtent());
+        }
+        final long maxUpdates = info.getUpdates();
+        final SpatialExtent worldExtent = info.getWorldExtent();
+
+        System.out.println(" maximum possible operations: " + maxUpdates);
+        if (maxUpdates + maxUpdates % queryRatio < numOperations) {
+            throw new IllegalArgumentException("Requested more operations than possible with this dataset!");
+        }
+        System.out.println("World boundaries: " + worldExtent.toString());
+
+        final WorkloadWriter output = new TextWorkloadWriter(outputFileName);
+        try {
+            if (queryRatio == 0)
+                return;
+
+            // Second pass: parse in parallel, check and interleave with queries in order
+            final RandomQueryGenerator rndQGen = new RandomQueryGenerator(queryRegionSize, worldExtent);
+            final List<WorkloadTransform> copiers = new ArrayList<>();
+            for (int i = 0; i < WorkloadPipeline.defaultPartitions(); i++) {
+                copiers.add(new WorkloadTransform() {
+                    public void process(final WorkloadOperation op, final long sequenceNumber,
+                                        final WorkloadPipeline.Output output) {
+                        output.emit(op);
+                    }
+                });
             }
-            input.close();
-            System.out.println("queries generated: " + queries);
+            final WorkloadPipeline pipeline = new WorkloadPipeline();
+            final QueryInterleaver interleaver = new QueryInterleaver(output, pipeline, rndQGen, queryRatio,
+                    updateRatio, numOperations, initialInsertions);
+            pipeline.run(inputFileName, copiers, interleaver);
+            System.out.println("Initial insertions... insertions: " + interleaver.seenInsertions + ", others: "
+                    + interleaver.seenOthers);
+            System.out.println("Updates and queries... queries generated: " + interleaver.queries);
         }
         finally {
-            if (output != null)
-                output.close();
+            output.close();
         }
     }
 
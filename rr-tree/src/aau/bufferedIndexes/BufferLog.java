@@ -0,0 +1,419 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import xxl.core.io.Convertable;
+import xxl.core.io.converters.Converter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead log of the RR-tree buffer changes.  The buffer insertions, deletions and moves are logged
+ * as they happen, and are made durable in groups: a single file force commits up to a configured number of
+ * operations.  The operations that are not yet committed are lost on a crash.
+ * <p>
+ * A buffer emptying writes a checkpoint record holding a {@link TreeSnapshot} with the whole remaining buffer
+ * contents, replacing the previous log contents atomically.  Thus the log never grows beyond one checkpoint plus the
+ * operations since it.  The caller flushes the disk tree container before the checkpoint, so that the snapshot root
+ * entry and the container make up a durable tree state to recover from.  As the container is updated in place, the
+ * first change to the disk tree after a checkpoint is preceded by a forced dirty record, and a log with a dirty record
+ * after its checkpoint cannot be recovered from.
+ * <p>
+ * Every record is a type byte, a payload length, the payload, and a CRC32 checksum.  Recovery stops at the first
+ * incomplete or corrupted record, i.e. at a torn write at the log tail, and truncates the log there.
+ */
+public final class BufferLog<E extends Convertable> implements Closeable {
+
+    /**
+     * A buffer insertion or deletion, performed with annihilation
+     */
+    private static final byte OPERATION_RECORD = 0;
+
+    /**
+     * An exact buffer entry removal after it was completed outside the buffer emptying, i.e. by query piggybacking
+     */
+    private static final byte COMPLETION_RECORD = 1;
+
+    /**
+     * The tree snapshot with the complete buffer contents
+     */
+    private static final byte CHECKPOINT_RECORD = 2;
+
+    /**
+     * A buffer move, performed with annihilation
+     */
+    private static final byte MOVE_RECORD = 3;
+
+    /**
+     * The disk tree is about to change after the last checkpoint
+     */
+    private static final byte DIRTY_RECORD = 4;
+
+    /**
+     * A growable byte array that may be written out without copying
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        void updateChecksum(final CRC32 checksum) {
+            checksum.update(buf, 0, count);
+        }
+    }
+
+    private final File file;
+
+    private final Converter<Object> idConverter;
+
+    private final Converter<UpdateTree.Entry<E>> entryConverter;
+
+    private final int groupCommitSize;
+
+    private final int pageSize;
+
+    private FileChannel channel;
+
+    /**
+     * The serialized records waiting for the next group commit
+     */
+    private final RecordBuffer pendingRecords = new RecordBuffer();
+
+    private final DataOutputStream pendingOutput = new DataOutputStream(pendingRecords);
+
+    private int pendingRecordCount = 0;
+
+    /**
+     * The payload of the record being serialized
+     */
+    private final RecordBuffer payload = new RecordBuffer();
+
+    private final DataOutputStream payloadOutput = new DataOutputStream(payload);
+
+    private final CRC32 checksum = new CRC32();
+
+    private long forces = 0;
+
+    private long pageWrites = 0;
+
+    private long bytesWritten = 0;
+
+    /**
+     * The tree snapshot of the last replayed checkpoint, <code>null</code> if none
+     */
+    private TreeSnapshot<E> replayedCheckpoint = null;
+
+    /**
+     * Opens a new or existing log.  The existing log contents should be replayed with {@link #replay} before
+     * logging anything new.
+     *
+     * @param file            the log file
+     * @param idConverter     the converter for the disk tree container ids
+     * @param entryConverter  the converter for the buffer entries
+     * @param groupCommitSize the number of operations to commit together, 1 for committing every operation
+     * @param pageSize        the disk page size in bytes for the I/O accounting
+     * @throws IOException if the log file cannot be opened
+     */
+    public BufferLog(final File file, final Converter<Object> idConverter,
+                     final Converter<UpdateTree.Entry<E>> entryConverter, final int groupCommitSize, final int pageSize)
+            throws IOException {
+        if (groupCommitSize < 1)
+            throw new IllegalArgumentException("Group commit size must be positive, got " + groupCommitSize);
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be positive, got " + pageSize);
+        this.file = file;
+        this.idConverter = idConverter;
+        this.entryConverter = entryConverter;
+        this.groupCommitSize = groupCommitSize;
+        this.pageSize = pageSize;
+        channel = openChannel(file);
+    }
+
+    private static FileChannel openChannel(final File file) throws IOException {
+        final FileChannel result = new RandomAccessFile(file, "rw").getChannel();
+        result.position(result.size());
+        return result;
+    }
+
+    /**
+     * Replays the log into a buffer, discarding any incomplete log tail.  Afterwards new records are appended after
+     * the replayed ones.  The disk tree state of the replayed checkpoint is available from
+     * {@link #getReplayedCheckpoint}.
+     *
+     * @param buffer the buffer to replay the log into, should be empty
+     * @return the number of replayed records
+     * @throws IOException if the log cannot be read
+     * @throws IllegalStateException if the disk tree was changed after the last checkpoint, thus its container is not
+     *                               in the checkpoint state anymore
+     */
+    public int replay(final RRTreeBuffer<E> buffer) throws IOException {
+        if (pendingRecordCount != 0)
+            throw new IllegalStateException("Replaying a log with uncommitted records");
+        channel.position(0);
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        final long size = channel.size();
+        long validEnd = 0;
+        int result = 0;
+        byte[] recordPayload = new byte[0];
+        while (validEnd < size) {
+            final byte type;
+            final int length;
+            final int recordChecksum;
+            try {
+                type = input.readByte();
+                length = input.readInt();
+                if ((length < 0) || (length > size - validEnd))
+                    break;
+                if (recordPayload.length < length)
+                    recordPayload = new byte[length];
+                input.readFully(recordPayload, 0, length);
+                recordChecksum = input.readInt();
+            }
+            catch (EOFException ignored) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(type);
+            checksum.update(recordPayload, 0, length);
+            //noinspection NumericCastThatLosesPrecision
+            if ((int)checksum.getValue() != recordChecksum)
+                break;
+            applyRecord(type, new DataInputStream(new ByteArrayInputStream(recordPayload, 0, length)), buffer);
+            validEnd += recordSize(length);
+            result++;
+        }
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return result;
+    }
+
+    private void applyRecord(final byte type, final DataInput input, final RRTreeBuffer<E> buffer)
+            throws IOException {
+        switch (type) {
+            case OPERATION_RECORD:
+                final UpdateTree.Entry<E> operation = entryConverter.read(input);
+                if (operation.isInsertion())
+                    buffer.insertWithAnnihilation(operation.getData());
+                else
+                    buffer.removeWithAnnihilation(operation.getData());
+                break;
+            case COMPLETION_RECORD:
+                buffer.removeExactEntry(entryConverter.read(input));
+                break;
+            case CHECKPOINT_RECORD:
+                replayedCheckpoint = TreeSnapshot.read(input, idConverter, entryConverter);
+                buffer.clear();
+                for (final UpdateTree.Entry<E> entry : replayedCheckpoint.getBufferContents())
+                    buffer.insertEntry(entry);
+                break;
+            case MOVE_RECORD:
+                final UpdateTree.Entry<E> move = UpdateTree.readEntry(entryConverter, input);
+                buffer.moveWithAnnihilation(move.getReplaced(), move.getData());
+                break;
+            case DIRTY_RECORD:
+                throw new IllegalStateException("The disk tree was changed after the last checkpoint of the buffer log "
+                        + file + ", its container cannot be recovered");
+            default:
+                throw new IOException("Unknown buffer log record type " + type);
+        }
+    }
+
+    private static int recordSize(final int payloadLength) {
+        return 1 + 4 + payloadLength + 4;
+    }
+
+    /**
+     * Logs a buffer insertion or deletion.  Commits it together with any earlier uncommitted operations if the group
+     * commit size is reached.
+     *
+     * @param data          the inserted or deleted object
+     * @param operationType the operation type
+     * @throws IOException if the log cannot be written
+     */
+    public void logOperation(final E data, final OperationType operationType) throws IOException {
+        payload.reset();
+        entryConverter.write(payloadOutput, new UpdateTree.Entry<>(data, operationType));
+        appendRecord(OPERATION_RECORD);
+    }
+
+    /**
+     * Logs a buffer move.  Commits it together with any earlier uncommitted operations if the group commit size is
+     * reached.
+     *
+     * @param oldData the deleted object
+     * @param newData the inserted object
+     * @throws IOException if the log cannot be written
+     */
+    public void logMove(final E oldData, final E newData) throws IOException {
+        payload.reset();
+        UpdateTree.writeEntry(entryConverter, payloadOutput, new UpdateTree.Entry<>(newData, oldData));
+        appendRecord(MOVE_RECORD);
+    }
+
+    /**
+     * Logs removing a completed operation from the buffer outside the buffer emptying.  Commits it together with any
+     * earlier uncommitted operations if the group commit size is reached.
+     *
+     * @param operation the completed operation
+     * @throws IOException if the log cannot be written
+     */
+    public void logCompletion(final UpdateTree.Entry<E> operation) throws IOException {
+        payload.reset();
+        entryConverter.write(payloadOutput, operation);
+        appendRecord(COMPLETION_RECORD);
+    }
+
+    private void appendRecord(final byte type) throws IOException {
+        serializeRecord(type);
+        pendingRecordCount++;
+        if (pendingRecordCount >= groupCommitSize)
+            commit();
+    }
+
+    private void serializeRecord(final byte type) throws IOException {
+        checksum.reset();
+        checksum.update(type);
+        payload.updateChecksum(checksum);
+        pendingOutput.writeByte(type);
+        pendingOutput.writeInt(payload.size());
+        payload.writeTo(pendingOutput);
+        //noinspection NumericCastThatLosesPrecision
+        pendingOutput.writeInt((int)checksum.getValue());
+    }
+
+    /**
+     * Makes all the logged operations durable.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void commit() throws IOException {
+        if (pendingRecordCount == 0)
+            return;
+        final long start = channel.position();
+        final ByteBuffer records = pendingRecords.asByteBuffer();
+        while (records.hasRemaining())
+            channel.write(records);
+        channel.force(false);
+        registerWrite(start, pendingRecords.size());
+        pendingRecords.reset();
+        pendingRecordCount = 0;
+    }
+
+    /**
+     * Makes a record that the disk tree is about to change after the last checkpoint durable.  Must precede any write
+     * to the disk tree container after a checkpoint.  Commits any earlier uncommitted operations too.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void markDirty() throws IOException {
+        payload.reset();
+        serializeRecord(DIRTY_RECORD);
+        pendingRecordCount++;
+        commit();
+    }
+
+    /**
+     * Replaces the log with a checkpoint record of the tree state.  Any uncommitted operations are discarded as they
+     * are already reflected in the buffer contents.
+     *
+     * @param snapshot the tree snapshot with the buffer contents, taken after flushing the disk tree container
+     * @throws IOException if the log cannot be written
+     */
+    public void checkpoint(final TreeSnapshot<E> snapshot) throws IOException {
+        if (snapshot.getBufferContents() == null)
+            throw new IllegalArgumentException("A buffer log checkpoint needs a snapshot with the buffer contents");
+        payload.reset();
+        snapshot.write(payloadOutput, idConverter, entryConverter);
+        pendingRecords.reset();
+        pendingRecordCount = 0;
+        serializeRecord(CHECKPOINT_RECORD);
+
+        // Write the checkpoint to a new file and atomically replace the old log with it
+        final File checkpointFile = new File(file.getPath() + ".checkpoint");
+        final FileOutputStream checkpointOutput = new FileOutputStream(checkpointFile);
+        try {
+            final FileChannel checkpointChannel = checkpointOutput.getChannel();
+            final ByteBuffer records = pendingRecords.asByteBuffer();
+            while (records.hasRemaining())
+                checkpointChannel.write(records);
+            checkpointChannel.force(false);
+        }
+        finally {
+            checkpointOutput.close();
+        }
+        channel.close();
+        TreeSnapshot.replaceDurably(checkpointFile, file);
+        channel = openChannel(file);
+        registerWrite(0, pendingRecords.size());
+        pendingRecords.reset();
+    }
+
+    private void registerWrite(final long start, final int length) {
+        forces++;
+        bytesWritten += length;
+        pageWrites += (start + length - 1) / pageSize - start / pageSize + 1;
+    }
+
+    /**
+     * Commits the pending operations and closes the log.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    /**
+     * Returns the number of file forces, i.e. synchronous writes, done so far.
+     *
+     * @return the number of file forces
+     */
+    public long getForces() {
+        return forces;
+    }
+
+    /**
+     * Returns the number of disk pages written so far, counting a page once per force.
+     *
+     * @return the number of written pages
+     */
+    public long getPageWrites() {
+        return pageWrites;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the tree state recorded by the last checkpoint found by {@link #replay}.
+     *
+     * @return the tree snapshot of the replayed checkpoint, <code>null</code> if the log had no checkpoint
+     */
+    public TreeSnapshot<E> getReplayedCheckpoint() {
+        return replayedCheckpoint;
+    }
+}
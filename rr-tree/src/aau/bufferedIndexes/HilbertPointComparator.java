@@ -25,7 +25,7 @@ import java.util.Comparator;
 /**
  * A Comparator for 2D points that uses Hilbert curve
  */
-class HilbertPointComparator implements Comparator<Point> {
+public class HilbertPointComparator implements Comparator<Point> {
 
     private HilbertPointComparator() { }
 
@@ -0,0 +1,125 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.IRRDiskTree;
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.RRDiskHilbertTree;
+import xxl.core.io.Convertable;
+import xxl.core.spatial.points.Point;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An implementation of the GroupSplit algorithm that partitions an overflowing node into the minimum number of nodes
+ * in a single pass along the Hilbert order.  The entries are sorted by their Hilbert keys and cut into consecutive
+ * runs that differ in size by at most one entry.  For the Hilbert disk tree the keys are the ones it routes by, thus
+ * the resulting siblings have disjoint key ranges.  For the other trees the key is the lower left corner of the entry
+ * MBR.
+ */
+public class HilbertSplitter implements RRTreeGroupSplitter {
+
+    /**
+     * An entry of the node being split together with its Hilbert key.
+     */
+    private static final class KeyedEntry {
+        final Object entry;
+        final Point key;
+
+        KeyedEntry(final Object entry, final Point key) {
+            this.entry = entry;
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<KeyedEntry> KEY_ORDER = new Comparator<KeyedEntry>() {
+        public int compare(final KeyedEntry o1, final KeyedEntry o2) {
+            return HilbertPointComparator.INSTANCE.compare(o1.key, o2.key);
+        }
+    };
+
+    public <E extends Convertable> List<IRRTreeDiskNode<E>> groupSplit(final IRRTreeDiskNode<E> node,
+                                                                       final IRRDiskTree<E> tree) {
+        final List<IRRTreeDiskNode<E>> result = new ArrayList<>();
+        if (!node.overflows()) {
+            result.add(node);
+            return result;
+        }
+
+        final int entryCount = node.number();
+        final int maxCapacity = tree.getMaxNodeCapacity(node.level());
+        int nodeCount = Math.max((entryCount + maxCapacity - 1) / maxCapacity,
+                (int)Math.ceil(tree.compressedPageFill(node.level(), node.getEntries())));
+
+        final List<KeyedEntry> entries = new ArrayList<>(entryCount);
+        for (final Object entry : node.getEntries())
+            entries.add(new KeyedEntry(entry, key(entry, tree)));
+        Collections.sort(entries, KEY_ORDER);
+
+        // With the compressed leaves a partition may still be too large in bytes, then split into one node more
+        List<List<Object>> partitions;
+        do {
+            partitions = partition(entries, nodeCount);
+            nodeCount++;
+        } while (tree.compressedLeavesOverflow(node.level(), partitions));
+
+        node.getModifiableEntries().clear();
+        // The first partition stays in the original node
+        for (final Object entry : partitions.get(0))
+            node.grow(entry);
+        result.add(node);
+        for (int i = 1; i < partitions.size(); i++)
+            result.add(tree.createNode(node.level(), partitions.get(i)));
+
+        assert checkSplits(result);
+        return result;
+    }
+
+    private static List<List<Object>> partition(final List<KeyedEntry> entries, final int nodeCount) {
+        final List<List<Object>> result = new ArrayList<>(nodeCount);
+        final int entryCount = entries.size();
+        for (int i = 0; i < nodeCount; i++) {
+            final int from = (int)((long)entryCount * i / nodeCount);
+            final int to = (int)((long)entryCount * (i + 1) / nodeCount);
+            final List<Object> partition = new ArrayList<>(to - from);
+            for (final KeyedEntry e : entries.subList(from, to))
+                partition.add(e.entry);
+            result.add(partition);
+        }
+        return result;
+    }
+
+    private static <E extends Convertable> Point key(final Object entry, final IRRDiskTree<E> tree) {
+        if (tree instanceof RRDiskHilbertTree)
+            return ((RRDiskHilbertTree<E>)tree).hilbertKey(entry);
+        return ((Rectangle)tree.descriptor(entry)).getCorner(false);
+    }
+
+    private static <E extends Convertable> boolean checkSplits(final Iterable<IRRTreeDiskNode<E>> splits) {
+        for (final IRRTreeDiskNode<E> s : splits) {
+            assert !s.overflows();
+            assert s.number() >= s.splitMinNumber();
+        }
+        return true;
+    }
+}
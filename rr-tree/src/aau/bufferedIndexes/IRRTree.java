@@ -35,6 +35,11 @@ public interface IRRTree<E extends Convertable> {
      */
     public void completeOperation(final UpdateTree.Entry<E> op);
 
+    /**
+     * Announces that the disk tree is about to be changed in its container.
+     */
+    public void beginDiskTreeChange();
+
     /**
      * Cleans garbage from the tree, if applicable.
      *
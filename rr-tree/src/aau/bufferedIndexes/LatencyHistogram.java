@@ -0,0 +1,172 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+/**
+ * A log-linear histogram of non-negative long values such as latencies in nanoseconds, in the spirit of
+ * HdrHistogram.  The values below 128 are counted exactly, the larger ones are counted in 64 linear sub-buckets per
+ * power of two, giving a relative error below 1.6% with a fixed footprint and constant time recording.  Not
+ * thread-safe: use one histogram per thread and {@link #add} them.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The values below this are counted exactly
+     */
+    private static final int EXACT_LIMIT = 2 * SUB_BUCKETS;
+
+    private static final int EXACT_LIMIT_MAGNITUDE = SUB_BUCKET_BITS + 1;
+
+    private static final int BUCKETS = EXACT_LIMIT + (Long.SIZE - 1 - EXACT_LIMIT_MAGNITUDE) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count = 0;
+
+    private long sum = 0;
+
+    private long minimum = Long.MAX_VALUE;
+
+    private long maximum = 0;
+
+    /**
+     * Records a value.
+     *
+     * @param value the value to record, must be non-negative
+     */
+    public void record(final long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value < minimum)
+            minimum = value;
+        if (value > maximum)
+            maximum = value;
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+    }
+
+    /**
+     * Discards all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = 0;
+        count = 0;
+        sum = 0;
+        minimum = Long.MAX_VALUE;
+        maximum = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the smallest value, or 0 if nothing has been recorded
+     */
+    public long getMinimum() {
+        return count == 0 ? 0 : minimum;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0.0D : (double)sum / count;
+    }
+
+    /**
+     * Returns the value at a given percentile, i.e. the largest value that is equivalent, within the histogram
+     * precision, to the value that the given percentage of the recorded values do not exceed.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0.0D || percentile > 100.0D)
+            throw new IllegalArgumentException("Percentile " + percentile + " out of range");
+        if (count == 0)
+            return 0;
+        //noinspection NumericCastThatLosesPrecision
+        final long rank = Math.max(1, (long)Math.ceil(percentile / 100.0D * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestEquivalentValue(i), maximum);
+        }
+        throw new IllegalStateException();
+    }
+
+    static int bucketOf(final long value) {
+        if (value < EXACT_LIMIT)
+            //noinspection NumericCastThatLosesPrecision
+            return (int)value;
+        final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        //noinspection NumericCastThatLosesPrecision
+        final int subBucket = (int)(value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return EXACT_LIMIT + (magnitude - EXACT_LIMIT_MAGNITUDE) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestEquivalentValue(final int bucket) {
+        if (bucket < EXACT_LIMIT)
+            return bucket;
+        final int magnitude = EXACT_LIMIT_MAGNITUDE + (bucket - EXACT_LIMIT) / SUB_BUCKETS;
+        final long subBucket = SUB_BUCKETS + (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+        return subBucket << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    static long highestEquivalentValue(final int bucket) {
+        if (bucket < EXACT_LIMIT)
+            return bucket;
+        final int magnitude = EXACT_LIMIT_MAGNITUDE + (bucket - EXACT_LIMIT) / SUB_BUCKETS;
+        return lowestEquivalentValue(bucket) + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a memory budget between the RR-tree buffer and the node cache and rebalances it online.  Over a window of
+ * buffer emptyings it measures the I/Os per update, which are the cache misses and the writes, and the cache hit rate.
+ * After each window it moves a part of the cache pages to the buffer or back, in the direction that decreased the I/Os
+ * per update, reversing the direction when they increase.  The cache stops growing when the last growth did not raise
+ * its hit rate, and the first move goes to the buffer if the cache had no hits.
+ */
+public class MemoryBudgetBalancer {
+
+    /**
+     * The memory budget shared by the buffer and the cache
+     */
+    private final long totalBytes;
+
+    /**
+     * The memory size of a cache page
+     */
+    private final int pageBytes;
+
+    /**
+     * Number of buffer emptyings between the rebalancings
+     */
+    private final int windowSize;
+
+    /**
+     * The largest number of cache pages, leaving at least a page worth of memory to the buffer
+     */
+    private final int maxCachePages;
+
+    /**
+     * The current number of cache pages
+     */
+    private int cachePages;
+
+    /**
+     * The direction of the next move, 1 to grow the cache or -1 to grow the buffer, 0 before the first move
+     */
+    private int direction = 0;
+
+    private int emptyingsInWindow = 0;
+
+    private long windowStartRequests = 0;
+
+    private long windowStartMisses = 0;
+
+    private long windowStartWrites = 0;
+
+    private long windowStartUpdates = 0;
+
+    /**
+     * I/Os per update in the previous window, negative if there is no previous window
+     */
+    private double lastWindowCost = -1.0;
+
+    /**
+     * The cache hit rate in the previous window, negative if there is no previous window
+     */
+    private double lastWindowHitRate = -1.0;
+
+    /**
+     * The numbers of cache pages chosen at the end of each window
+     */
+    private final List<Integer> cachePagesHistory = new ArrayList<>();
+
+    /**
+     * Creates a new balancer.
+     *
+     * @param totalBytes the memory budget shared by the buffer and the cache
+     * @param pageBytes the memory size of a cache page
+     * @param initialCachePages the number of cache pages to start with
+     * @param windowSize number of buffer emptyings between the rebalancings
+     */
+    public MemoryBudgetBalancer(final long totalBytes, final int pageBytes, final int initialCachePages,
+                                final int windowSize) {
+        if (pageBytes < 1)
+            throw new IllegalArgumentException("Page size must be positive: " + pageBytes);
+        if (windowSize < 1)
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        if (initialCachePages < 1)
+            throw new IllegalArgumentException("The cache must have at least one page: " + initialCachePages);
+        if (totalBytes - (long)initialCachePages * pageBytes < pageBytes)
+            throw new IllegalArgumentException("The memory budget of " + totalBytes + " bytes leaves less than a page "
+                    + "to the buffer with " + initialCachePages + " cache pages");
+        this.totalBytes = totalBytes;
+        this.pageBytes = pageBytes;
+        this.windowSize = windowSize;
+        maxCachePages = (int)Math.min(Integer.MAX_VALUE, totalBytes / pageBytes - 1);
+        cachePages = initialCachePages;
+    }
+
+    /**
+     * Notifies the balancer that a buffer emptying has completed.  All the arguments are running totals.
+     *
+     * @param cacheRequests the number of node requests to the cache
+     * @param cacheMisses the number of node requests that the cache passed to the disk
+     * @param writes the number of node writes
+     * @param updates the number of executed updates
+     * @return <code>true</code> if the split has changed and has to be applied to the buffer and the cache
+     */
+    public boolean emptyingFinished(final long cacheRequests, final long cacheMisses, final long writes,
+                                    final long updates) {
+        emptyingsInWindow++;
+        if (emptyingsInWindow < windowSize)
+            return false;
+        final long requests = cacheRequests - windowStartRequests;
+        final long misses = cacheMisses - windowStartMisses;
+        final long windowWrites = writes - windowStartWrites;
+        final long windowUpdates = updates - windowStartUpdates;
+        final double cost = (windowUpdates > 0) ? (double)(misses + windowWrites) / windowUpdates : 0.0;
+        final double hitRate = (requests > 0) ? (double)(requests - misses) / requests : 0.0;
+        if (direction == 0)
+            direction = (hitRate > 0.0) ? 1 : -1;
+        else if (cost > lastWindowCost)
+            direction = -direction;
+        else if ((direction > 0) && (hitRate <= lastWindowHitRate))
+            direction = -1;
+        lastWindowCost = cost;
+        lastWindowHitRate = hitRate;
+
+        emptyingsInWindow = 0;
+        windowStartRequests = cacheRequests;
+        windowStartMisses = cacheMisses;
+        windowStartWrites = writes;
+        windowStartUpdates = updates;
+
+        final int step = Math.max(1, cachePages / 4);
+        final int newCachePages = Math.max(1, Math.min(cachePages + direction * step, maxCachePages));
+        cachePagesHistory.add(newCachePages);
+        if (newCachePages == cachePages)
+            return false;
+        cachePages = newCachePages;
+        return true;
+    }
+
+    /**
+     * Returns the current number of cache pages
+     * @return the number of cache pages
+     */
+    public int getCachePages() {
+        return cachePages;
+    }
+
+    /**
+     * Returns the current memory budget of the buffer: the total budget without the cache pages
+     * @return the buffer memory budget in bytes
+     */
+    public long getBufferBytes() {
+        return totalBytes - (long)cachePages * pageBytes;
+    }
+
+    /**
+     * Returns the numbers of cache pages chosen at the end of each window
+     * @return the list of chosen numbers of cache pages, oldest first
+     */
+    public List<Integer> getCachePagesHistory() {
+        return Collections.unmodifiableList(cachePagesHistory);
+    }
+
+    /**
+     * Returns the number of buffer emptyings between the rebalancings
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+}
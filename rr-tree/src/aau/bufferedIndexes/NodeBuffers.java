@@ -0,0 +1,316 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.cursors.Cursor;
+import xxl.core.cursors.unions.Sequentializer;
+import xxl.core.functions.Function;
+import xxl.core.indexStructures.Descriptor;
+import xxl.core.io.Convertable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Bounded buffers attached to the internal disk tree levels below the root.  The operations that reached a level
+ * during a buffer emptying but were not pushed further are parked at that level instead of being returned to the
+ * main buffer and routed from the root again.  A node at that level takes over the parked operations that are
+ * contained in its MBR whenever the buffer emptying reaches it.  All nodes of a level share a single buffer, so that
+ * the parked operations do not depend on the node identities, which change with splits and merges.
+ *
+ * At most one buffered entry exists for any data object in the main buffer and all the node buffers together.  New
+ * operations for a parked object annihilate with its parked entry.  No moves are parked, they are split beforehand.
+ *
+ * A level whose buffer had no room for the operations to park is marked full, and its parked operations are drained
+ * through {@link #takeFull} at the end of the buffer emptying.
+ */
+public class NodeBuffers<E extends Convertable> {
+
+    /**
+     * The buffers indexed by their disk tree level
+     */
+    private final Map<Integer, RRTreeBuffer<E>> levelBuffers = new TreeMap<>();
+
+    /**
+     * The levels whose buffers had no room for the operations to park since the last {@link #takeFull}
+     */
+    private final Set<Integer> fullLevels = new TreeSet<>();
+
+    private final Function<E, Descriptor> getDescriptor;
+
+    private final int minNodeCapacity;
+
+    private final int maxNodeCapacity;
+
+    /**
+     * The maximum number of operations parked at a single level
+     */
+    private final int capacity;
+
+    private int annihilationsID = 0;
+
+    private int annihilationsDI = 0;
+
+    /**
+     * Creates empty node buffers.
+     *
+     * @param getDescriptor   the function returning the descriptor of the data
+     * @param minNodeCapacity the minimum node capacity of the node buffer update trees
+     * @param maxNodeCapacity the maximum node capacity of the node buffer update trees
+     * @param capacity        the maximum number of operations parked at a single level
+     */
+    public NodeBuffers(final Function<E, Descriptor> getDescriptor, final int minNodeCapacity,
+                       final int maxNodeCapacity, final int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Node buffer capacity must be positive: " + capacity);
+        this.getDescriptor = getDescriptor;
+        this.minNodeCapacity = minNodeCapacity;
+        this.maxNodeCapacity = maxNodeCapacity;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Checks if a number of operations can be parked at a level without exceeding the buffer capacity.
+     *
+     * @param level the disk tree level
+     * @param ops   the number of operations
+     * @return <code>true</code> if the operations fit
+     */
+    public boolean hasRoomFor(final int level, final int ops) {
+        final RRTreeBuffer<E> levelBuffer = levelBuffers.get(level);
+        return ((levelBuffer == null) ? 0 : levelBuffer.getCurrentSize()) + ops <= capacity;
+    }
+
+    /**
+     * Marks the buffer of a level full, so that its parked operations are drained.
+     *
+     * @param level the disk tree level
+     */
+    public void markFull(final int level) {
+        fullLevels.add(level);
+    }
+
+    /**
+     * Removes and returns all the operations parked at the levels marked full, and clears the marks.
+     *
+     * @return the removed operations
+     */
+    public OperationGroup<E> takeFull() {
+        final OperationGroup<E> result = new OperationGroup<>();
+        for (final Integer level : fullLevels) {
+            final RRTreeBuffer<E> levelBuffer = levelBuffers.remove(level);
+            if (levelBuffer != null)
+                for (final UpdateTree.Entry<E> op : levelBuffer.flatten())
+                    result.add(op);
+        }
+        fullLevels.clear();
+        return result;
+    }
+
+    /**
+     * Parks an operation at a level.
+     *
+     * @param level the disk tree level
+     * @param op    the operation, not a move
+     */
+    public void park(final int level, final UpdateTree.Entry<E> op) {
+        if (op.isMove())
+            throw new IllegalArgumentException("Moves cannot be parked: " + op);
+        RRTreeBuffer<E> levelBuffer = levelBuffers.get(level);
+        if (levelBuffer == null) {
+            levelBuffer = new RRTreeBuffer<>();
+            levelBuffer.initialize(getDescriptor, new MapContainer(), minNodeCapacity, maxNodeCapacity, capacity);
+            levelBuffers.put(level, levelBuffer);
+        }
+        assert levelBuffer.findAnyEntry(op.getData()) == null;
+        levelBuffer.insertEntry(op);
+    }
+
+    /**
+     * Removes and returns the operations parked at a level that are contained in a node MBR.
+     *
+     * @param level          the disk tree level of the node
+     * @param nodeDescriptor the node MBR
+     * @return the operations taken over by the node
+     */
+    public List<UpdateTree.Entry<E>> takeContained(final int level, final Descriptor nodeDescriptor) {
+        final RRTreeBuffer<E> levelBuffer = levelBuffers.get(level);
+        if ((levelBuffer == null) || (levelBuffer.getCurrentSize() == 0) || (nodeDescriptor == null))
+            return new ArrayList<>(0);
+        final List<UpdateTree.Entry<E>> result = new ArrayList<>();
+        final Cursor<UpdateTree.Entry<E>> candidates = levelBuffer.copyQueryAllOps(nodeDescriptor);
+        while (candidates.hasNext()) {
+            final UpdateTree.Entry<E> candidate = candidates.next();
+            if (nodeDescriptor.contains(getDescriptor.invoke(candidate.getData())))
+                result.add(candidate);
+        }
+        candidates.close();
+        for (final UpdateTree.Entry<E> op : result) {
+            final UpdateTree.Entry<E> removed = levelBuffer.removeExactEntry(op);
+            assert removed != null;
+        }
+        return result;
+    }
+
+    /**
+     * Removes and returns all the operations parked at the given level and above.
+     *
+     * @param level the lowest disk tree level to empty
+     * @return the removed operations
+     */
+    public OperationGroup<E> takeAllFrom(final int level) {
+        final OperationGroup<E> result = new OperationGroup<>();
+        final Iterator<Map.Entry<Integer, RRTreeBuffer<E>>> itr = levelBuffers.entrySet().iterator();
+        while (itr.hasNext()) {
+            final Map.Entry<Integer, RRTreeBuffer<E>> levelBuffer = itr.next();
+            if (levelBuffer.getKey() < level)
+                continue;
+            for (final UpdateTree.Entry<E> op : levelBuffer.getValue().flatten())
+                result.add(op);
+            itr.remove();
+            fullLevels.remove(levelBuffer.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Annihilates a new operation with the parked entry for its data, if there is one.
+     *
+     * @param data          the data of the new operation
+     * @param operationType the type of the new operation
+     * @return the annihilated parked entry or <code>null</code> if nothing was parked for the data
+     */
+    public UpdateTree.Entry<E> annihilate(final E data, final OperationType operationType) {
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values()) {
+            final UpdateTree.Entry<E> parked = levelBuffer.removeAnyEntry(data);
+            if (parked != null) {
+                assert parked.getOperationType() == operationType.opposite();
+                if (operationType == OperationType.INSERTION)
+                    annihilationsID++;
+                else
+                    annihilationsDI++;
+                return parked;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an entry of any type is parked for the data.
+     *
+     * @param data the data
+     * @return <code>true</code> if there is a parked entry for the data
+     */
+    public boolean contains(final E data) {
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values()) {
+            if (levelBuffer.findAnyEntry(data) != null)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queries the parked operations at all the levels.
+     *
+     * @param queryDescriptor the query descriptor
+     * @return a cursor over the parked operations overlapping the descriptor
+     */
+    public Cursor<UpdateTree.Entry<E>> query(final Descriptor queryDescriptor) {
+        final Collection<Cursor<UpdateTree.Entry<E>>> cursors = new ArrayList<>(levelBuffers.size());
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values())
+            cursors.add(levelBuffer.queryEntryOfAnyType(queryDescriptor));
+        return new Sequentializer<>(cursors.iterator());
+    }
+
+    /**
+     * Returns the MBR of the parked operations at all the levels.
+     *
+     * @return the MBR or <code>null</code> if nothing is parked
+     */
+    public Descriptor rootDescriptor() {
+        Descriptor result = null;
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values()) {
+            final Descriptor levelDescriptor = levelBuffer.rootDescriptor();
+            if (levelDescriptor == null)
+                continue;
+            if (result == null)
+                result = (Descriptor)levelDescriptor.clone();
+            else
+                result.union(levelDescriptor);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all the parked operations.
+     *
+     * @return the parked operations
+     */
+    public OperationGroup<E> flatten() {
+        final OperationGroup<E> result = new OperationGroup<>(size());
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values())
+            for (final UpdateTree.Entry<E> op : levelBuffer.flatten())
+                result.add(op);
+        return result;
+    }
+
+    /**
+     * Returns the number of parked operations at all the levels.
+     *
+     * @return the number of parked operations
+     */
+    public int size() {
+        int result = 0;
+        for (final RRTreeBuffer<E> levelBuffer : levelBuffers.values())
+            result += levelBuffer.getCurrentSize();
+        return result;
+    }
+
+    /**
+     * Returns the maximum number of operations parked at a single level.
+     *
+     * @return the node buffer capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns number of times new insertions annihilated parked deletions
+     * @return number of times new insertions annihilated parked deletions
+     */
+    public int getNumOfIDAnnihilations() {
+        return annihilationsID;
+    }
+
+    /**
+     * Returns number of times new deletions annihilated parked insertions
+     * @return number of times new deletions annihilated parked insertions
+     */
+    public int getNumOfDIAnnihilations() {
+        return annihilationsDI;
+    }
+}
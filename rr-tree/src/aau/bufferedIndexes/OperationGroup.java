@@ -20,55 +20,113 @@ package aau.bufferedIndexes;
 
 import xxl.core.io.Convertable;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 /**
- * Operation group class
+ * Operation group class.  Keeps the operations in their addition order and indexes them by equality, so that
+ * membership checks and removals take constant time.  Equal operations may not be added twice.
  * @param <E> type of entry of operations
  */
 public class OperationGroup<E extends Convertable> implements Iterable<UpdateTree.Entry<E>> {
 
+    /**
+     * The operations in their addition order, with <code>null</code> in place of the removed ones until the next
+     * compaction
+     */
     private final List<UpdateTree.Entry<E>> ops;
 
+    /**
+     * The positions of the operations in {@link #ops}
+     */
+    private final Map<UpdateTree.Entry<E>, Integer> positions;
+
+    private int insertions = 0;
+
+    /**
+     * The number of times {@link #ops} was compacted, to detect it under an iterator
+     */
+    private int compactions = 0;
+
     public OperationGroup() {
         ops = new ArrayList<>();
+        positions = new HashMap<>();
     }
 
     public OperationGroup(final int capacity) {
         ops = new ArrayList<>(capacity);
+        positions = new HashMap<>(capacity);
     }
 
     public OperationGroup(final Collection<UpdateTree.Entry<E>> other) {
-        ops = new ArrayList<>(other);
+        this(other.size());
+        for (final UpdateTree.Entry<E> op : other)
+            add(op);
     }
 
     // TODO: javadoc, test
     public void clear() {
         ops.clear();
+        positions.clear();
+        insertions = 0;
     }
 
     public void add(final UpdateTree.Entry<E> op) {
+        assert !positions.containsKey(op);
+        if (ops.size() - positions.size() > positions.size())
+            compact();
+        positions.put(op, ops.size());
         ops.add(op);
+        if (op.isInsertion())
+            insertions++;
     }
 
     public boolean contains(final UpdateTree.Entry<E> op) {
-        return ops.contains(op);
+        return positions.containsKey(op);
     }
 
     /**
-     * Returns an iterator over a set of elements of type T.
+     * Returns an iterator over the operations in their addition order.  The iterator supports removal.
      *
      * @return an Iterator.
      */
     public Iterator<UpdateTree.Entry<E>> iterator() {
-        return ops.iterator();
+        return new Iterator<UpdateTree.Entry<E>>() {
+
+            private final int expectedCompactions = compactions;
+
+            private int next = 0;
+
+            private int current = -1;
+
+            public boolean hasNext() {
+                if (expectedCompactions != compactions)
+                    throw new ConcurrentModificationException();
+                while ((next < ops.size()) && (ops.get(next) == null))
+                    next++;
+                return next < ops.size();
+            }
+
+            public UpdateTree.Entry<E> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                current = next;
+                next++;
+                return ops.get(current);
+            }
+
+            public void remove() {
+                if (current == -1)
+                    throw new IllegalStateException();
+                if (expectedCompactions != compactions)
+                    throw new ConcurrentModificationException();
+                removeAt(current);
+                current = -1;
+            }
+        };
     }
 
     public int size() {
-        return ops.size();
+        return positions.size();
     }
 
     /**
@@ -76,13 +134,7 @@ public class OperationGroup<E extends Convertable> implements Iterable<UpdateTre
      * @return number of insertion operations in this group
      */
     public int sizeInInsertions() {
-        // TODO: if shows up in performance profile, eagerly calculate this on add
-        int result = 0;
-        for (final UpdateTree.Entry<E> e : ops) {
-            if (e.isInsertion())
-                result++;
-        }
-        return result;
+        return insertions;
     }
 
     public int sizeInSignificantOps(final boolean onlyInsertionsSignificant) {
@@ -94,18 +146,55 @@ public class OperationGroup<E extends Convertable> implements Iterable<UpdateTre
      * @return <code>true</code> if this group contains only insertions or is empty
      */
     public boolean isInsertionOnly() {
-        boolean insertionOnlyGroup = true;
-        for (final UpdateOperation entry: ops) {
-            if (entry.isDeletion()) {
-                insertionOnlyGroup = false;
-                break;
-            }
-        }
-        return insertionOnlyGroup;
+        return insertions == size();
     }
 
     // TODO: javadoc, test
     public boolean remove(final UpdateTree.Entry<E> op) {
-        return ops.remove(op);
+        final Integer position = positions.get(op);
+        if (position == null)
+            return false;
+        removeAt(position);
+        return true;
+    }
+
+    /**
+     * Removes a collection of operations from this group.
+     *
+     * @param toRemove the operations to remove
+     * @return the number of operations that were in this group and got removed
+     */
+    public int removeAll(final Collection<UpdateTree.Entry<E>> toRemove) {
+        int result = 0;
+        for (final UpdateTree.Entry<E> op : toRemove) {
+            if (remove(op))
+                result++;
+        }
+        return result;
+    }
+
+    private void removeAt(final int position) {
+        final UpdateTree.Entry<E> op = ops.get(position);
+        positions.remove(op);
+        ops.set(position, null);
+        if (op.isInsertion())
+            insertions--;
+    }
+
+    /**
+     * Drops the removed operation placeholders from {@link #ops}.
+     */
+    private void compact() {
+        int live = 0;
+        for (int i = 0; i < ops.size(); i++) {
+            final UpdateTree.Entry<E> op = ops.get(i);
+            if (op == null)
+                continue;
+            ops.set(live, op);
+            positions.put(op, live);
+            live++;
+        }
+        ops.subList(live, ops.size()).clear();
+        compactions++;
     }
 }
@@ -22,6 +22,7 @@ import aau.bufferedIndexes.diskTrees.*;
 import aau.bufferedIndexes.diskTrees.visitors.RRDiskTreeInvariantChecker;
 import aau.bufferedIndexes.diskTrees.visitors.RRDiskUpdateTreeBulkReloader;
 import aau.bufferedIndexes.diskTrees.visitors.RRDiskUpdateTreeGarbageVacuumer;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.leafNodeModifiers.IRRTreeDiskNodeOnQueryModifier;
 import aau.bufferedIndexes.leafNodeModifiers.LeafNodePiggybacker;
 import aau.bufferedIndexes.leafNodeModifiers.NullModeModifier;
@@ -37,14 +38,18 @@ import xxl.core.collections.containers.Container;
 import xxl.core.collections.containers.MapContainer;
 import xxl.core.collections.containers.io.BufferedContainer;
 import xxl.core.cursors.Cursor;
+import xxl.core.cursors.DecoratorCursor;
+import xxl.core.cursors.unions.Sequentializer;
 import xxl.core.functions.Function;
 import xxl.core.indexStructures.Descriptor;
 import xxl.core.indexStructures.RTree;
 import xxl.core.io.Convertable;
 import xxl.core.io.LRUBuffer;
+import xxl.core.io.converters.Converter;
 import xxl.core.spatial.rectangles.DoublePointRectangle;
 import xxl.core.spatial.rectangles.Rectangle;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -72,7 +77,7 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
     /**
      * A GroupSplit strategy
      */
-    private final RRTreeGroupSplitter groupSplitter = new RecursiveTwoWaySplitter();
+    private RRTreeGroupSplitter groupSplitter = new RecursiveTwoWaySplitter();
 
     /**
      * A GroupOperations strategy
@@ -126,8 +131,32 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
 
     private ObjectTracer<E> objectTracer = null;
 
+    /**
+     * The write-ahead log of the buffer changes, or <code>null</code> if the buffer is not logged
+     */
+    private BufferLog<E> bufferLog = null;
+
+    /**
+     * The snapshot file kept up to date at every checkpoint, or <code>null</code> if none
+     */
+    private File snapshotFile = null;
+
+    private boolean snapshotIncludesBuffer = false;
+
+    private Converter<UpdateTree.Entry<E>> snapshotEntryConverter = null;
+
     /* Internal state */
 
+    /**
+     * Flag indicating if a buffer emptying is in progress
+     */
+    private boolean emptyingBuffer = false;
+
+    /**
+     * Flag indicating if the disk tree may have changed in its container after the last checkpoint
+     */
+    private boolean diskTreeChanged = false;
+
     /**
      * Flag indicating if last update operation caused buffer emptying
      */
@@ -144,6 +173,26 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      */
     private boolean forceFullNextEb = false;
 
+    /**
+     * The index routing deletions to their leaf nodes, if enabled
+     */
+    private LeafLocationIndex<E> leafLocationIndex = null;
+
+    /**
+     * The buffers parking operations at the internal disk tree levels, if enabled
+     */
+    private NodeBuffers<E> nodeBuffers = null;
+
+    /**
+     * Flag if the disk tree node writes of a buffer emptying are coalesced and written at its end
+     */
+    private boolean coalesceWrites = false;
+
+    /**
+     * The write set collecting the disk tree node writes of a buffer emptying, if enabled
+     */
+    private WriteSetContainer writeSet = null;
+
     /* Initialization */
 
     /**
@@ -203,7 +252,9 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         buffer.initialize(getDescriptor, bufferContainer, minNodeCapacity, maxNodeCapacity, maxBufferSize);
 
         /* Initialize the disk tree */
-        diskTree.initialize(getId, getDescriptor, container, minNodeCapacity, maxNodeCapacity, objectTracer);
+        writeSet = coalesceWrites ? new WriteSetContainer(container) : null;
+        diskTree.initialize(getId, getDescriptor, (writeSet != null) ? writeSet : container, minNodeCapacity,
+                maxNodeCapacity, objectTracer);
     }
 
     /* Update operations */
@@ -219,8 +270,18 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         //noinspection unchecked
         final E eData = (E)data;
         objectTracer.traceObject(eData, ObjectTracer.Operation.INSERT_TO_BUFFER);
-        buffer.insertWithAnnihilation(eData);
-        rrTreeStats.registerOpLifetime(eData, oldBufSize, buffer.getCurrentSize(), OperationType.INSERTION);
+        if ((nodeBuffers != null) && (nodeBuffers.annihilate(eData, OperationType.INSERTION) != null)) {
+            rrTreeStats.registerAnnihilation(eData, OperationType.INSERTION);
+        }
+        else {
+            final UpdateTree.Entry<E> move = buffer.getMoveReplacing(eData);
+            buffer.insertWithAnnihilation(eData);
+            if (move != null)
+                rrTreeStats.registerMoveHalfAnnihilation(move, move.getInsertionHalf());
+            else
+                rrTreeStats.registerOpLifetime(eData, oldBufSize, buffer.getCurrentSize(), OperationType.INSERTION);
+        }
+        logBufferOperation(eData, OperationType.INSERTION);
         dataItems++;
     }
 
@@ -234,12 +295,101 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         //noinspection unchecked
         final E eData = (E)data;
         objectTracer.traceObject(eData, ObjectTracer.Operation.REMOVE_FROM_BUFFER);
-        final Object result = buffer.removeWithAnnihilation(eData);
-        rrTreeStats.registerOpLifetime(eData, oldBufSize, buffer.getCurrentSize(), OperationType.DELETION);
+        final UpdateTree.Entry<E> parked = (nodeBuffers != null)
+                ? nodeBuffers.annihilate(eData, OperationType.DELETION) : null;
+        final Object result;
+        if (parked != null) {
+            rrTreeStats.registerAnnihilation(eData, OperationType.DELETION);
+            result = parked.getData();
+        }
+        else {
+            final UpdateTree.Entry<E> move = buffer.getMoveInserting(eData);
+            result = buffer.removeWithAnnihilation(eData);
+            if (move != null)
+                rrTreeStats.registerMoveHalfAnnihilation(move, move.getDeletionHalf());
+            else
+                rrTreeStats.registerOpLifetime(eData, oldBufSize, buffer.getCurrentSize(), OperationType.DELETION);
+        }
+        logBufferOperation(eData, OperationType.DELETION);
         dataItems--;
         return result;
     }
 
+    /**
+     * Moves an object in the buffered R-tree, i.e. removes the old object and inserts the new one as a single buffer
+     * entry.  A move of an object inserted or moved earlier replaces that buffer entry.  Falls back to a removal and an
+     * insertion if the disk tree handles deletions like insertions or if the buffer already has entries the move would
+     * conflict with.
+     *
+     * @param oldData the object, equal to which an object from the tree will be removed
+     * @param newData the object that is to be inserted
+     */
+    public void update(final Object oldData, final Object newData) {
+        //noinspection unchecked
+        final E eOldData = (E)oldData;
+        //noinspection unchecked
+        final E eNewData = (E)newData;
+        if (!canMove(eOldData, eNewData)) {
+            remove(oldData);
+            insert(newData);
+            return;
+        }
+        final int oldBufSize = maybeEmptyBuffer();
+        objectTracer.traceObject(eOldData, ObjectTracer.Operation.REMOVE_FROM_BUFFER);
+        objectTracer.traceObject(eNewData, ObjectTracer.Operation.INSERT_TO_BUFFER);
+        // The emptying above may have parked the insertion of the old data, which the move replaces then
+        final UpdateTree.Entry<E> parked = (nodeBuffers != null)
+                ? nodeBuffers.annihilate(eOldData, OperationType.DELETION) : null;
+        final UpdateTree.Entry<E> annihilated;
+        if (parked != null) {
+            buffer.insertWithAnnihilation(eNewData);
+            annihilated = parked;
+        }
+        else
+            annihilated = buffer.moveWithAnnihilation(eOldData, eNewData);
+        logBufferMove(eOldData, eNewData);
+        if (annihilated != null)
+            rrTreeStats.registerMoveHalfAnnihilation(annihilated, new UpdateTree.Entry<>(eNewData,
+                    OperationType.INSERTION));
+        else
+            rrTreeStats.registerOpLifetime(eNewData, oldBufSize, buffer.getCurrentSize(), OperationType.INSERTION);
+    }
+
+    private void logBufferOperation(final E data, final OperationType operationType) {
+        if (bufferLog == null)
+            return;
+        try {
+            bufferLog.logOperation(data, operationType);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to write the buffer log", e);
+        }
+    }
+
+    /**
+     * Checks if {@link #update} would move an object as a single buffer entry, as opposed to a removal and an
+     * insertion, each of which may empty the buffer.
+     *
+     * @param oldData the object to be removed
+     * @param newData the object to be inserted
+     * @return <code>true</code> if the object would be moved by a single buffer entry
+     */
+    public boolean canMove(final E oldData, final E newData) {
+        return !diskTree.deletionsLikeInsertions() && buffer.canMoveWithAnnihilation(oldData, newData)
+                && ((nodeBuffers == null) || (!nodeBuffers.contains(oldData) && !nodeBuffers.contains(newData)));
+    }
+
+    private void logBufferMove(final E oldData, final E newData) {
+        if (bufferLog == null)
+            return;
+        try {
+            bufferLog.logMove(oldData, newData);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to write the buffer log", e);
+        }
+    }
+
     /* Buffer operations */
 
     /**
@@ -260,6 +410,8 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * Unconditionally empty the buffer
      */
     public void forcedEmptyBuffer() {
+        if (nodeBuffers != null)
+            returnParkedOps(0);
         emptyBuffer();
     }
 
@@ -267,13 +419,47 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * EmptyBuffer implementation
      */
     private void emptyBuffer() {
+        final long timing = rrTreeStats.beginTimedEvent();
+        beginDiskTreeChange();
+        emptyingBuffer = true;
         rrTreeStats.registerEmptyBuffer();
+        if (writeSet != null)
+            writeSet.beginBatch();
+        try {
+            emptyBufferIntoDiskTree();
+        }
+        finally {
+            // The tree must be written before the buffer log checkpoint drops the executed operations.  A failed
+            // emptying ends the batch too, otherwise every later emptying would fail to begin one.
+            if (writeSet != null)
+                writeSet.flushBatch();
+        }
+        if (completedDeletions != null)
+            completedDeletions.clear();
+        emptyingBuffer = false;
+        if (leafLocationIndex != null)
+            buffer.setReservedBytes(leafLocationIndex.memorySize());
+        if ((bufferLog != null) || (snapshotFile != null))
+            checkpoint();
+        rrTreeStats.registerEndOfEmptyBuffer();
+        rrTreeStats.endTimedEvent(Instrumentation.Event.EMPTY_BUFFER, 0, timing);
+
+        // assert diskTreeInvariantsOK(); // TODO: bulk-load produces underful index nodes
+    }
+
+    /**
+     * Executes the buffer operations selected by the pushdown strategy on the disk tree and grows it as needed
+     */
+    private void emptyBufferIntoDiskTree() {
         // TODO: cleaner!!!
         if (!diskTree.deletionsLikeInsertions() && !(operationGroupMaker instanceof InsertionsOnlyGroupMaker))
             completedDeletions = new HashSet<>();
 
         IRRTreeDiskNode<E> rootNode = diskTree.getRootNode();
         List<IRRTreeDiskNode<E>> siblings;
+        // The operations parked at the levels that are no longer below the root have to be routed from the root
+        if (nodeBuffers != null)
+            returnParkedOps(rootNode.level());
         final OperationGroup<E> bufferList = buffer.flatten();
 
         if (forceFullNextEb) {
@@ -286,15 +472,20 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             siblings = emptyEverything(rootNode, bufferList);
         else {
             final IndexEntryOpGroupMap<E> bufferGroupping = operationGroupMaker.groupOperations(rootNode, bufferList);
+            // The halves of the split moves may end up in different groups, so replace the moves in the buffer too
+            for (final UpdateTree.Entry<E> move : operationGroupMaker.<E>getSplitMoves()) {
+                buffer.splitMove(move);
+                rrTreeStats.registerMoveSplit(move, false);
+            }
             final OperationGroup<E> orphanGroup = bufferGroupping.get(bufferGroupping.ORPHAN_GROUP_KEY);
             if ((orphanGroup != null) && (orphanGroup.size() != 0)) {
                 // TODO: test this branch
-                if (orphanGroup.size() == bufferList.size()) {
+                if (orphanGroup.size() == buffer.getCurrentSize()) {
                     // We got ourselves into a situation where the buffer is filled with deletions only! Just empty
                     // everything.  Might be possible to do something more optimal though.
                     // Count this as a failed emptying
                     rrTreeStats.registerFailedEmptying();
-                    siblings = emptyEverything(rootNode, bufferList);
+                    siblings = emptyEverything(rootNode, buffer.flatten());
                 }
                 else {
                     siblings = selectAndExecuteBufferGroups(rootNode, bufferGroupping);
@@ -302,19 +493,31 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             }
             else
                 siblings = selectAndExecuteBufferGroups(rootNode, bufferGroupping);
-            if (buffer.isFull()) {
+            final boolean strategyFailed = buffer.isFull();
+            if (strategyFailed) {
                 // Uh-oh. We failed to empty with the chosen strategy. Just empty everything.
                 rrTreeStats.registerFailedEmptying();
                 siblings = emptyEverything(rootNode, buffer.flatten());
             }
+            pushDownGroupsStrategy.emptyingFinished(strategyFailed);
         }
 
         diskTree.growTree(rootNode, siblings, groupSplitter);
-        if (completedDeletions != null)
-            completedDeletions.clear();
-        rrTreeStats.registerEndOfEmptyBuffer();
+        if (nodeBuffers != null)
+            drainFullNodeBuffers();
+    }
 
-        // assert diskTreeInvariantsOK(); // TODO: bulk-load produces underful index nodes
+    /**
+     * Pushes the operations parked at the node buffer levels that overflowed during this emptying all the way down, so
+     * that a full node buffer does not make every later emptying of its nodes overflow too.
+     */
+    private void drainFullNodeBuffers() {
+        final OperationGroup<E> drainedOps = nodeBuffers.takeFull();
+        if (drainedOps.size() == 0)
+            return;
+        rrTreeStats.registerNodeBufferDrain(drainedOps.size());
+        final IRRTreeDiskNode<E> rootNode = diskTree.getRootNode();
+        diskTree.growTree(rootNode, pushDownEverything(rootNode, drainedOps), groupSplitter);
     }
 
     /**
@@ -359,6 +562,19 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
     private List<IRRTreeDiskNode<E>> emptyEverything(final IRRTreeDiskNode<E> rootNode,
                                                      final OperationGroup<E> wholeBufferOps) {
         assert buffer.getCurrentSize() == wholeBufferOps.size();
+        buffer.clear();
+        return pushDownEverything(rootNode, wholeBufferOps);
+    }
+
+    /**
+     * Executes the given operations on the disk tree, pushing all of them down to the leaves.
+     *
+     * @param rootNode the root node of the disk tree
+     * @param ops      the operations, which must not be in the main buffer
+     * @return a set of new root-level nodes after performing the operations
+     */
+    private List<IRRTreeDiskNode<E>> pushDownEverything(final IRRTreeDiskNode<E> rootNode,
+                                                        final OperationGroup<E> ops) {
 
         final AbstractOperationGroupMaker oldOperationGroupMaker = operationGroupMaker;
         final PushDownGroupsStrategy<E> oldPushDownGroupsStrategy = pushDownGroupsStrategy;
@@ -366,12 +582,12 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         // TODO: redesign!!!
         if (!(operationGroupMaker instanceof DeletionsAsInsertionsGroupMaker)) {
             operationGroupMaker = new TrivialOperationGroupMaker();
+            operationGroupMaker.setLeafLocationIndex(leafLocationIndex);
             if (completedDeletions != null)
                 completedDeletions.clear();
             completedDeletions = new HashSet<>();
         }
-        buffer.clear();
-        final List<IRRTreeDiskNode<E>> results = groupUpdate(rootNode, wholeBufferOps, false, false);
+        final List<IRRTreeDiskNode<E>> results = groupUpdate(rootNode, ops, false, false);
         pushDownGroupsStrategy = oldPushDownGroupsStrategy;
         operationGroupMaker = oldOperationGroupMaker;
         if (completedDeletions != null) {
@@ -381,6 +597,86 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         return results;
     }
 
+    /**
+     * Moves the operations parked at the given disk tree level and above back to the main buffer, from which they will
+     * be routed again.
+     *
+     * @param level the lowest level to take the parked operations from
+     */
+    private void returnParkedOps(final int level) {
+        for (final UpdateTree.Entry<E> op : nodeBuffers.takeAllFrom(level))
+            buffer.insertEntry(op);
+    }
+
+    /**
+     * Returns the operations in the main buffer and the node buffers.
+     *
+     * @return all the buffered operations
+     */
+    private OperationGroup<E> allBufferedOps() {
+        final OperationGroup<E> result = buffer.flatten();
+        if (nodeBuffers != null)
+            for (final UpdateTree.Entry<E> op : nodeBuffers.flatten())
+                result.add(op);
+        return result;
+    }
+
+    /**
+     * Parks the operations that were not pushed down from a node in the node buffer of its level.  If the node buffer
+     * does not have room for them, the operations are pushed down instead, emptying the node buffer part that the node
+     * has taken over.  Deletions may be sent down several subtrees on the data disk tree, thus they are returned to
+     * the main buffer there as usual.
+     *
+     * @param backToBufferGroups the groups the pushdown strategy returned to the buffer
+     * @param pushDownGroups     the groups the pushdown strategy chose to push down
+     * @param treeLevel          the disk tree level of the node
+     */
+    private void parkOpGroups(final IndexEntryOpGroupMap<E> backToBufferGroups,
+                              final IndexEntryOpGroupMap<E> pushDownGroups, final int treeLevel) {
+        final boolean parkDeletions = diskTree.deletionsLikeInsertions();
+        int ops = 0;
+        for (final Map.Entry<IRRTreeIndexEntry<E>, OperationGroup<E>> opGroup : backToBufferGroups)
+            for (final UpdateTree.Entry<E> op : opGroup.getValue())
+                if (op.isInsertion() || parkDeletions)
+                    ops += (op.isMove() && parkDeletions) ? 2 : 1;
+        if (!nodeBuffers.hasRoomFor(treeLevel, ops)) {
+            rrTreeStats.registerNodeBufferOverflow();
+            nodeBuffers.markFull(treeLevel);
+            final Iterator<Map.Entry<IRRTreeIndexEntry<E>, OperationGroup<E>>> groupItr = backToBufferGroups.iterator();
+            while (groupItr.hasNext()) {
+                final Map.Entry<IRRTreeIndexEntry<E>, OperationGroup<E>> opGroup = groupItr.next();
+                groupItr.remove();
+                pushDownGroups.put(opGroup);
+            }
+            return;
+        }
+        rrTreeStats.registerNodeBufferParking(ops);
+        for (final Map.Entry<IRRTreeIndexEntry<E>, OperationGroup<E>> opGroup : backToBufferGroups) {
+            rrTreeStats.registerBackToBufferGroup(treeLevel, opGroup.getValue().size());
+            for (final UpdateTree.Entry<E> op : opGroup.getValue()) {
+                if (op.isMove()) {
+                    rrTreeStats.registerMoveSplit(op, false);
+                    parkOp(treeLevel, op.getInsertionHalf());
+                    if (parkDeletions)
+                        parkOp(treeLevel, op.getDeletionHalf());
+                    else
+                        putOpBackToBuffer(treeLevel, op.getDeletionHalf());
+                }
+                else if (op.isInsertion() || parkDeletions)
+                    parkOp(treeLevel, op);
+                else
+                    putOpBackToBuffer(treeLevel, op);
+            }
+        }
+    }
+
+    private void parkOp(final int treeLevel, final UpdateTree.Entry<E> op) {
+        objectTracer.traceUpdateTreeEntry(op, ObjectTracer.Operation.PUT_OP_BACK_TO_BUFFER, null);
+        assert rrTreeStats.hasUpdateLifetime(op);
+        rrTreeStats.registerBackToBufferOperation(treeLevel, op);
+        nodeBuffers.park(treeLevel, op);
+    }
+
     /**
      * Puts the non-performed operations back to the buffer.
      * 
@@ -430,6 +726,14 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * @return list of updated nodes
      */
     private List<IRRTreeDiskNode<E>> groupUpdate(final IRRTreeDiskNode<E> node, final IndexEntryOpGroupMap<E> operationMap) {
+        final long timing = rrTreeStats.beginTimedEvent();
+        final List<IRRTreeDiskNode<E>> result = doGroupUpdate(node, operationMap);
+        rrTreeStats.endTimedEvent(Instrumentation.Event.GROUP_UPDATE, node.level(), timing);
+        return result;
+    }
+
+    private List<IRRTreeDiskNode<E>> doGroupUpdate(final IRRTreeDiskNode<E> node,
+                                                   final IndexEntryOpGroupMap<E> operationMap) {
         rrTreeStats.registerGroupUpdate();
         if (node.level() == 0) {
             updateLeafNode(operationMap.flatten(), node);
@@ -453,7 +757,24 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      */
     private List<IRRTreeDiskNode<E>> groupUpdate(final IRRTreeDiskNode<E> node, final OperationGroup<E> operations,
                                                  final boolean updateGroupStats, final boolean restarted) {
+        final long timing = rrTreeStats.beginTimedEvent();
+        final List<IRRTreeDiskNode<E>> result = doGroupUpdate(node, operations, updateGroupStats, restarted);
+        rrTreeStats.endTimedEvent(Instrumentation.Event.GROUP_UPDATE, node.level(), timing);
+        return result;
+    }
+
+    private List<IRRTreeDiskNode<E>> doGroupUpdate(final IRRTreeDiskNode<E> node, final OperationGroup<E> operations,
+                                                   final boolean updateGroupStats, final boolean restarted) {
         rrTreeStats.registerGroupUpdate();
+        final boolean nodeBufferLevel = isNodeBufferLevel(node);
+        if (nodeBufferLevel) {
+            // Take over the operations parked at this level for this node
+            final List<UpdateTree.Entry<E>> parkedOps = nodeBuffers.takeContained(node.level(),
+                    node.computeDescriptor());
+            rrTreeStats.registerNodeBufferTakeOver(parkedOps.size());
+            for (final UpdateTree.Entry<E> op : parkedOps)
+                operations.add(op);
+        }
         final int originalOpListSize = operations.size();
         final boolean originalOpListIsInsertionOnly = operations.isInsertionOnly();
 
@@ -475,6 +796,8 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         }
         else {
             final IndexEntryOpGroupMap<E> groups = operationGroupMaker.groupOperations(node, operations);
+            for (final UpdateTree.Entry<E> move : operationGroupMaker.<E>getSplitMoves())
+                rrTreeStats.registerMoveSplit(move, false);
 
             // Put back to buffer operations that cannot proceed further
             final OperationGroup<E> orphans = groups.get(groups.ORPHAN_GROUP_KEY);
@@ -486,7 +809,10 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
                     = pushDownGroupsStrategy.choosePushDownGroups(groups, node.level(), node.number(), restarted);
             final IndexEntryOpGroupMap<E> pushDownGroups = pushDownAndBufferGroups.getPushDownGroups();
             final IndexEntryOpGroupMap<E> backToBufferGroups = pushDownAndBufferGroups.getBufferGroups();
-            putOpGroupsBackToBuffer(backToBufferGroups, node.level());
+            if (nodeBufferLevel)
+                parkOpGroups(backToBufferGroups, pushDownGroups, node.level());
+            else
+                putOpGroupsBackToBuffer(backToBufferGroups, node.level());
 
             if (updateNonLeafNode(pushDownGroups, node)) {
                 rrTreeStats.registerGroupUpdateRestart();
@@ -498,6 +824,17 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         return finishGroupUpdate(node);
     }
 
+    /**
+     * Checks if the operations reaching a node may be parked in a node buffer, which is the case for the internal
+     * nodes below the root if the node buffers are enabled.
+     *
+     * @param node the disk tree node
+     * @return <code>true</code> if the node level has a node buffer
+     */
+    private boolean isNodeBufferLevel(final IRRTreeDiskNode<E> node) {
+        return (nodeBuffers != null) && (node.level() > 0) && (node.level() < diskTree.height() - 1);
+    }
+
     private List<IRRTreeDiskNode<E>> finishGroupUpdate(final IRRTreeDiskNode<E> node) {
         IRRTreeDiskNode<E> nodeToSplit = node;
         if ((node.number() == 1) && (node.level() > 0)) {
@@ -505,7 +842,14 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             final IRRTreeIndexEntry<E> childEntry = node.getNonLeafNodeEntries().iterator().next();
             nodeToSplit = childEntry.get();
         }
-        return groupSplitter.groupSplit(nodeToSplit, diskTree);
+        return groupSplit(nodeToSplit);
+    }
+
+    private List<IRRTreeDiskNode<E>> groupSplit(final IRRTreeDiskNode<E> node) {
+        final long timing = rrTreeStats.beginTimedEvent();
+        final List<IRRTreeDiskNode<E>> result = groupSplitter.groupSplit(node, diskTree);
+        rrTreeStats.endTimedEvent(Instrumentation.Event.GROUP_SPLIT, node.level(), timing);
+        return result;
     }
 
     /**
@@ -604,15 +948,22 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         for (final UpdateTree.Entry<E> op : operations)
             objectTracer.traceUpdateTreeEntry(op, ObjectTracer.Operation.UPDATE_LEAF_NODE, null);
 
+        splitMovesInPlace(operations);
+
         final Collection<UpdateTree.Entry<E>> completedOperations
                 = node.executeOps(operations, insertionRemovesOldInsertion);
 
-        for (final UpdateTree.Entry<E> op : completedOperations) {
-            completeOperation(op);
-            boolean result = operations.remove(op);
-            assert result;
+        if (leafLocationIndex != null) {
+            for (final UpdateTree.Entry<E> op : operations)
+                if (op.isDeletion())
+                    leafLocationIndex.forget(op.getData());
         }
 
+        for (final UpdateTree.Entry<E> op : completedOperations)
+            completeOperation(op);
+        final int removedOps = operations.removeAll(completedOperations);
+        assert removedOps == completedOperations.size();
+
         for (final UpdateTree.Entry<E> op : operations) {
             putOpBackToBuffer(0, op);
         }
@@ -627,6 +978,31 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         }
     }
 
+    /**
+     * Replaces the moves that reached a leaf node by their halves, so that the node executes them as its regular
+     * operations.  The deletion half is executed first.
+     *
+     * @param operations the operations for the leaf node
+     */
+    private void splitMovesInPlace(final OperationGroup<E> operations) {
+        List<UpdateTree.Entry<E>> moves = null;
+        for (final UpdateTree.Entry<E> op : operations) {
+            if (op.isMove()) {
+                if (moves == null)
+                    moves = new ArrayList<>();
+                moves.add(op);
+            }
+        }
+        if (moves == null)
+            return;
+        for (final UpdateTree.Entry<E> move : moves) {
+            rrTreeStats.registerMoveSplit(move, true);
+            operations.remove(move);
+            operations.add(move.getDeletionHalf());
+            operations.add(move.getInsertionHalf());
+        }
+    }
+
     /**
      * Inserts a subtree to a main tree node.  Goes down the main tree (using R-tree ChooseSubtree algorithm) until it
      * finds the right level in the main tree to insert the subtree.  The right level is the one where distance to the
@@ -649,7 +1025,7 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             final IRRTreeDiskNode<E> childNode = childForEntry.get();
             node.remove(childForEntry);
             insertSubtree(childNode, subtree);
-            final List <IRRTreeDiskNode<E>> resultNodes = groupSplitter.groupSplit(childNode, diskTree);
+            final List <IRRTreeDiskNode<E>> resultNodes = groupSplit(childNode);
             addNewChildren(node, resultNodes, childForEntry, childNode);
             if (resultNodes.size() > 1)
                 return true;
@@ -692,7 +1068,7 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             mergeSubtree(childForEntryNode, subtree);
         }
 
-        final List<IRRTreeDiskNode<E>> resultNodes = groupSplitter.groupSplit(childForEntryNode, diskTree);
+        final List<IRRTreeDiskNode<E>> resultNodes = groupSplit(childForEntryNode);
         addNewChildren(node, resultNodes, childForEntry, childForEntryNode);
         return resultNodes.size() > 1;
     }
@@ -708,7 +1084,8 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
     }
 
     /**
-     * This is the implementation of query algorithm.
+     * This is the implementation of query algorithm.  If instrumented, the query is measured from this call until
+     * its cursor is exhausted or closed, whichever comes first.
      *
      * @param queryDescriptor describes the query in terms of a descriptor
      * @param targetLevel     the tree-level to provide the answer-objects
@@ -717,18 +1094,71 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
     public Cursor<E> query(final Descriptor queryDescriptor, final int targetLevel) {
         if (targetLevel != 0)
             throw new IllegalArgumentException("Only leaf level searching is supported");
+        if (!rrTreeStats.isInstrumented())
+            return doQuery(queryDescriptor);
+        final long timing = rrTreeStats.beginTimedEvent();
+        final Cursor<E> results;
+        boolean started = false;
+        try {
+            results = doQuery(queryDescriptor);
+            started = true;
+        }
+        finally {
+            if (!started)
+                rrTreeStats.endTimedEvent(Instrumentation.Event.QUERY, 0, timing);
+        }
+        return new DecoratorCursor<E>(results) {
+            private boolean measuring = true;
+
+            @Override
+            public boolean hasNext() {
+                // A failing cursor ends the measurement too
+                boolean exhausted = true;
+                try {
+                    exhausted = !super.hasNext();
+                    return !exhausted;
+                }
+                finally {
+                    if (exhausted)
+                        endMeasuring();
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    super.close();
+                }
+                finally {
+                    endMeasuring();
+                }
+            }
+
+            private void endMeasuring() {
+                if (measuring) {
+                    measuring = false;
+                    rrTreeStats.endTimedEvent(Instrumentation.Event.QUERY, 0, timing);
+                }
+            }
+        };
+    }
 
+    private Cursor<E> doQuery(final Descriptor queryDescriptor) {
         final IRRTreeDiskNodeOnQueryModifier<E> piggybacker
                 = queryPiggybacking
                     ? new LeafNodePiggybacker<>(this, buffer, rrTreeStats, objectTracer)
                     : new NullModeModifier<E>();
 
-        final Cursor<UpdateTree.Entry<E>> bufferCursor
-                = buffer.queryEntryOfAnyType(queryDescriptor);
+        // The objects moved away by the buffered moves are deleted from the results too
+        Cursor<UpdateTree.Entry<E>> bufferCursor = (buffer.getNumOfMoves() == 0)
+                ? buffer.queryEntryOfAnyType(queryDescriptor)
+                : new Sequentializer<>(buffer.queryEntryOfAnyType(queryDescriptor),
+                        buffer.queryMovedAway(queryDescriptor));
+        if ((nodeBuffers != null) && (nodeBuffers.size() > 0))
+            bufferCursor = new Sequentializer<>(bufferCursor, nodeBuffers.query(queryDescriptor));
         // TODO: split rrQuery into two, do the piggybacking stat accounting here
 
-        return diskTree.rrQuery(queryDescriptor, bufferCursor,
-                piggybacker, rrTreeStats.getQueryPiggybackings());
+        return diskTree.rrQuery(queryDescriptor, bufferCursor, piggybacker, rrTreeStats.getQueryPiggybackings());
     }
 
     /**
@@ -745,6 +1175,60 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             assert result;
             buffer.removeExactEntry(op);
         }
+        // The operations completed by the buffer emptying are logged by its checkpoint
+        if ((bufferLog != null) && !emptyingBuffer) {
+            try {
+                bufferLog.logCompletion(op);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Failed to write the buffer log", e);
+            }
+        }
+    }
+
+    /**
+     * Marks the buffer log or the snapshot file dirty before the first disk tree change after the last checkpoint.
+     * The disk tree nodes are updated in place, thus the container does not match the checkpoint anymore.
+     */
+    @Override
+    public void beginDiskTreeChange() {
+        if (diskTreeChanged || ((bufferLog == null) && (snapshotFile == null)))
+            return;
+        try {
+            if (bufferLog != null)
+                bufferLog.markDirty();
+            else
+                TreeSnapshot.writeDirty(snapshotFile);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to mark the tree state dirty", e);
+        }
+        diskTreeChanged = true;
+    }
+
+    /**
+     * Flushes the disk tree to its container and records the tree state as a checkpoint to reopen the tree from.  The
+     * checkpoint replaces the buffer log contents, from which the tree is then recovered together with the operations
+     * logged after it, or else rewrites the snapshot file.  Every buffer emptying ends with a checkpoint.  The garbage
+     * collection and the defragmentation do not, so their changes are checkpointed by the next buffer emptying or an
+     * explicit call.
+     */
+    public void checkpoint() {
+        if ((bufferLog == null) && (snapshotFile == null))
+            throw new IllegalStateException("Checkpointing a tree without a buffer log or a snapshot file");
+        try {
+            if (bufferLog != null)
+                bufferLog.checkpoint(snapshot(true));
+            else {
+                //noinspection unchecked
+                snapshot(snapshotIncludesBuffer).write(snapshotFile, diskTree.container().objectIdConverter(),
+                        snapshotEntryConverter);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to checkpoint the tree", e);
+        }
+        diskTreeChanged = false;
     }
 
     /* Disk I/O operations */
@@ -790,6 +1274,10 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      */
     public TreeClearIOState cleanGarbage(boolean rebuildTree) throws IOException {
         // TODO: any TODOs here, eh?
+        beginDiskTreeChange();
+        // The garbage collection sees the main buffer only
+        if (nodeBuffers != null)
+            returnParkedOps(0);
         if (!(getDiskTree() instanceof IRRDiskUpdateTree))
             return getDiskTree().cleanGarbage();
         final IRRDiskUpdateTree<E> diskUpdateTree = (IRRDiskUpdateTree<E>)getDiskTree();
@@ -799,10 +1287,12 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         final BufferedContainer indexNodeContainer
                 = gcIndexCacheSize > 0 ? new BufferedContainer(oldDiskContainer, indexNodeBuffer) : null;
         // TODO: the strategy should be passed here
+        final long timing = rrTreeStats.beginTimedEvent();
         if (rebuildTree) {
             final RRDiskUpdateTreeBulkReloader<E> treeRebuilder
                     = new RRDiskUpdateTreeBulkReloader<>(diskUpdateTree, gcInitialScratchMemSize, objectTracer);
             diskUpdateTree.visitTreeNodes(indexNodeContainer, treeRebuilder);
+            rrTreeStats.endTimedEvent(Instrumentation.Event.GC_REBUILD, 0, timing);
             indexNodesBeforeGCStat.registerValue(treeRebuilder.oldTreeIndexCount());
             leafNodesBeforeGCStat.registerValue(treeRebuilder.oldTreeLeafCount());
             hilbertFileReadStat.registerValue(treeRebuilder.getHilbertReadIO());
@@ -815,11 +1305,30 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
             final RRDiskUpdateTreeGarbageVacuumer<E> garbageVacuumer
                     = new RRDiskUpdateTreeGarbageVacuumer<>(diskUpdateTree, buffer, indexNodeContainer);
             diskUpdateTree.visitTreeNodes(indexNodeContainer, garbageVacuumer);
+            rrTreeStats.endTimedEvent(Instrumentation.Event.GC_VACUUM, 0, timing);
             if (garbageVacuumer.getPeakNodesLoadedAtOnce() > peakNodesLoadedAtOnce)
                 peakNodesLoadedAtOnce = garbageVacuumer.getPeakNodesLoadedAtOnce();
             return new TreeClearIOState(0, 0);
         }
     }
+
+    /**
+     * The disk tree defragmenter, which keeps the position to resume from between the invocations
+     */
+    private final RRDiskTreeDefragmenter<E> defragmenter = new RRDiskTreeDefragmenter<>();
+
+    /**
+     * Relocates the disk tree nodes towards the depth-first order of the tree, so that the subtrees occupy contiguous
+     * container ids, and moves the nodes at the end of the container to its free ids.  Works on the next part of the
+     * tree within the given number of container reads, writes and removes, the next invocation continues after it.
+     *
+     * @param maxIos the maximum number of container reads, writes and removes to spend
+     * @return the number of the relocated nodes
+     */
+    public int defragment(final int maxIos) {
+        beginDiskTreeChange();
+        return defragmenter.defragment(diskTree, maxIos);
+    }
     
     public double getGcAvgPartialUnloadCreatedNodes() {
         return partialUnloadCreatedNodeStat.average();
@@ -882,15 +1391,21 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * @return the MBR of the whole tree
      */
     public Descriptor rootDescriptor() {
+        Descriptor result = null;
         if (diskTree.rootDescriptor() != null) {
-            final Descriptor result = (Descriptor)diskTree.rootDescriptor().clone();
+            result = (Descriptor)diskTree.rootDescriptor().clone();
             if (buffer.rootDescriptor() != null)
                 result.union(buffer.rootDescriptor());
-            return result;
         }
-        if (buffer.rootDescriptor() != null)
-            return (Descriptor)buffer.rootDescriptor().clone();
-        return null;
+        else if (buffer.rootDescriptor() != null)
+            result = (Descriptor)buffer.rootDescriptor().clone();
+        final Descriptor nodeBuffersDescriptor = (nodeBuffers != null) ? nodeBuffers.rootDescriptor() : null;
+        if (nodeBuffersDescriptor == null)
+            return result;
+        if (result == null)
+            return nodeBuffersDescriptor;
+        result.union(nodeBuffersDescriptor);
+        return result;
     }
 
     /**
@@ -948,6 +1463,177 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         return buffer.getCurrentSize();
     }
 
+    /**
+     * Returns number of operations currently parked in the node buffers.
+     *
+     * @return number of operations, zero if the node buffers are not enabled
+     */
+    public int getNodeBufferSize() {
+        return (nodeBuffers == null) ? 0 : nodeBuffers.size();
+    }
+
+    /**
+     * Sets the time and allocation instrumentation of the tree operations.
+     *
+     * @param instrumentation the instrumentation to use, a
+     * {@link aau.bufferedIndexes.instrumentation.NullInstrumentation} to disable
+     */
+    public void setInstrumentation(final Instrumentation instrumentation) {
+        rrTreeStats.setInstrumentation(instrumentation);
+    }
+
+    /**
+     * Sets the GroupSplit algorithm used for the overflowing nodes after emptying the buffer.  The default is
+     * {@link RecursiveTwoWaySplitter}.
+     *
+     * @param groupSplitter the GroupSplit algorithm
+     */
+    public void setGroupSplitter(final RRTreeGroupSplitter groupSplitter) {
+        this.groupSplitter = groupSplitter;
+    }
+
+    /**
+     * Starts logging the buffer changes to a write-ahead log.  First recovers the tree from the existing log contents:
+     * reopens the disk tree at the log checkpoint, if any, and replays the logged operations into the buffer.  Must be
+     * called right after {@link #initialize} with the container holding the tree at the log checkpoint and the same
+     * tree parameters.
+     *
+     * @param bufferLog the buffer log
+     * @return the number of replayed log records
+     * @throws IOException if the log cannot be read
+     * @throws IllegalStateException if the disk tree was changed after the log checkpoint
+     */
+    public int setBufferLog(final BufferLog<E> bufferLog) throws IOException {
+        if (snapshotFile != null)
+            throw new IllegalStateException("The tree state is kept in a snapshot file already");
+        final int oldBufferedDataItems = bufferedDataItems();
+        final int result = bufferLog.replay(buffer);
+        final TreeSnapshot<E> checkpoint = bufferLog.getReplayedCheckpoint();
+        if (checkpoint == null)
+            dataItems += bufferedDataItems() - oldBufferedDataItems;
+        else {
+            checkSnapshotCompatibility(checkpoint);
+            if (diskTree.rootEntry() != null)
+                throw new IllegalStateException("Recovering a buffer log checkpoint into a non-empty tree");
+            diskTree.reopen(checkpoint.getRootId(), checkpoint.getHeight(), checkpoint.getRootDescriptor(),
+                    checkpoint.getDiskDataItems());
+            // The checkpoint data items include its buffer contents, which the replayed operations changed since
+            dataItems = checkpoint.getDataItems() + bufferedDataItems()
+                    - bufferedDataItems(checkpoint.getBufferContents());
+        }
+        registerRestoredBufferLifetimes();
+        this.bufferLog = bufferLog;
+        return result;
+    }
+
+    /**
+     * Keeps a snapshot file of the tree up to date, so that the tree may be reopened from its container after a
+     * crash.  The snapshot is rewritten at every checkpoint and marked dirty before the first disk tree change after
+     * it.  Without the buffer contents in the snapshot, the operations buffered at the checkpoint are lost on a crash.
+     *
+     * @param snapshotFile   the snapshot file, which is valid for the current tree state or does not exist
+     * @param includeBuffer  if <code>true</code>, the snapshots contain the buffer contents
+     * @param entryConverter the converter for the buffer entries, may be <code>null</code> if the buffer contents are
+     *                       not saved
+     */
+    public void setSnapshotFile(final File snapshotFile, final boolean includeBuffer,
+                                final Converter<UpdateTree.Entry<E>> entryConverter) {
+        if (bufferLog != null)
+            throw new IllegalStateException("The tree state is kept in a buffer log already");
+        this.snapshotFile = snapshotFile;
+        snapshotIncludesBuffer = includeBuffer;
+        snapshotEntryConverter = entryConverter;
+    }
+
+    private void registerRestoredBufferLifetimes() {
+        for (final UpdateTree.Entry<E> op : buffer.flatten())
+            rrTreeStats.registerRestoredOpLifetime(op);
+    }
+
+    /**
+     * Returns by how much the buffered operations change the number of data items, i.e. the buffered insertions minus
+     * the buffered deletions.
+     *
+     * @return the change of the data item number by the buffered operations
+     */
+    private int bufferedDataItems() {
+        return bufferedDataItems(allBufferedOps());
+    }
+
+    private static <E extends Convertable> int bufferedDataItems(final Iterable<UpdateTree.Entry<E>> ops) {
+        int result = 0;
+        for (final UpdateTree.Entry<E> op : ops)
+            if (!op.isMove())
+                result += op.isInsertion() ? 1 : -1;
+        return result;
+    }
+
+    /**
+     * Flushes the disk tree to its container and takes a snapshot that allows to reopen the tree from the container
+     * later.
+     *
+     * @param includeBuffer if <code>true</code>, the snapshot contains the buffer contents, including any parked
+     *                      operations.  Otherwise the buffer should be emptied beforehand or its contents recovered
+     *                      from a buffer log on reopening.
+     * @return the tree snapshot
+     */
+    public TreeSnapshot<E> snapshot(final boolean includeBuffer) {
+        diskTree.container().flush();
+        List<UpdateTree.Entry<E>> bufferContents = null;
+        // The data items of the operations recovered from a buffer log are counted on replaying it
+        int snapshotDataItems = dataItems - bufferedDataItems();
+        if (includeBuffer) {
+            snapshotDataItems = dataItems;
+            bufferContents = new ArrayList<>(buffer.getCurrentSize());
+            for (final UpdateTree.Entry<E> op : allBufferedOps())
+                bufferContents.add(op);
+        }
+        //noinspection unchecked
+        final IRRTreeIndexEntry<E> rootEntry = (IRRTreeIndexEntry<E>)diskTree.rootEntry();
+        return new TreeSnapshot<>(diskTree.getMinNodeCapacity(), diskTree.getMaxNodeCapacity(),
+                diskTree.getMinNodeCapacity(1), diskTree.getMaxNodeCapacity(1), buffer.getMaxSize(), snapshotDataItems,
+                diskTree.getDataItems(), (rootEntry == null) ? null : rootEntry.id(), diskTree.height(),
+                (rootEntry == null) ? null : rootEntry.descriptor(), bufferContents);
+    }
+
+    /**
+     * Reopens the tree from a snapshot taken earlier.  Must be called right after {@link #initialize} with the
+     * container holding the tree and the same tree parameters.
+     *
+     * @param snapshot the tree snapshot
+     */
+    public void restoreSnapshot(final TreeSnapshot<E> snapshot) {
+        checkSnapshotCompatibility(snapshot);
+        if ((buffer.getCurrentSize() != 0) || (diskTree.rootEntry() != null))
+            throw new IllegalStateException("Restoring a snapshot into a non-empty tree");
+        diskTree.reopen(snapshot.getRootId(), snapshot.getHeight(), snapshot.getRootDescriptor(),
+                snapshot.getDiskDataItems());
+        dataItems = snapshot.getDataItems();
+        if (snapshot.getBufferContents() != null) {
+            for (final UpdateTree.Entry<E> op : snapshot.getBufferContents())
+                buffer.insertEntry(op);
+            registerRestoredBufferLifetimes();
+        }
+    }
+
+    private void checkSnapshotCompatibility(final TreeSnapshot<E> snapshot) {
+        if ((snapshot.getMinNodeCapacity() != diskTree.getMinNodeCapacity())
+                || (snapshot.getMaxNodeCapacity() != diskTree.getMaxNodeCapacity()))
+            throw new IllegalArgumentException("Snapshot node capacities " + snapshot.getMinNodeCapacity() + '-'
+                    + snapshot.getMaxNodeCapacity() + " do not match the tree node capacities "
+                    + diskTree.getMinNodeCapacity() + '-' + diskTree.getMaxNodeCapacity());
+        if ((snapshot.getMinIndexNodeCapacity() != diskTree.getMinNodeCapacity(1))
+                || (snapshot.getMaxIndexNodeCapacity() != diskTree.getMaxNodeCapacity(1)))
+            throw new IllegalArgumentException("Snapshot index node capacities " + snapshot.getMinIndexNodeCapacity()
+                    + '-' + snapshot.getMaxIndexNodeCapacity() + " do not match the tree index node capacities "
+                    + diskTree.getMinNodeCapacity(1) + '-' + diskTree.getMaxNodeCapacity(1));
+        // The parked operations of a snapshot are restored to the main buffer, which may overflow by them
+        if ((snapshot.getBufferContents() != null) && (nodeBuffers == null)
+                && (snapshot.getBufferContents().size() > buffer.getMaxSize()))
+            throw new IllegalArgumentException("Snapshot buffer contents of " + snapshot.getBufferContents().size()
+                    + " operations do not fit into the buffer of size " + buffer.getMaxSize());
+    }
+
     /**
      * Returns copy of most RR-tree statistics
      * @return RR-tree statistics
@@ -962,6 +1648,133 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
         }
     }
 
+    /**
+     * Sets different node capacities for the disk tree index nodes than for its leaf nodes.  Must be called right
+     * after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of an index node
+     * @param maxCapacity the maximum capacity of an index node
+     */
+    public void setIndexNodeCapacities(final int minCapacity, final int maxCapacity) {
+        diskTree.setIndexNodeCapacities(minCapacity, maxCapacity);
+    }
+
+    /**
+     * Stores the disk tree index entry MBRs as single precision floats, rounded outwards so that no query results
+     * are lost.  The leaf entries are stored exactly.  Must be called before getting the disk tree node converter,
+     * and is usually combined with larger index node capacities.
+     */
+    public void enableFloatIndexMBRs() {
+        diskTree.enableFloatIndexMBRs();
+    }
+
+    /**
+     * Sets different node capacities for the disk tree leaf nodes than given on initialization.  Must be called right
+     * after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of a leaf node
+     * @param maxCapacity the maximum capacity of a leaf node
+     */
+    public void setLeafNodeCapacities(final int minCapacity, final int maxCapacity) {
+        diskTree.setLeafNodeCapacities(minCapacity, maxCapacity);
+    }
+
+    /**
+     * Stores the disk tree leaf nodes compressed, so that a leaf node holds as many entries as fit into the given
+     * number of bytes, up to its maximum capacity.  Must be called before getting the disk tree node converter, and
+     * is usually combined with a larger maximum leaf node capacity.
+     *
+     * @param nodeBytes the maximum size of a leaf node in bytes
+     */
+    public void enableCompressedLeaves(final int nodeBytes) {
+        diskTree.enableCompressedLeaves(nodeBytes);
+    }
+
+    /**
+     * Allocates the new disk tree nodes near their siblings in the container, so that the nodes under one parent
+     * stay close together in the block file as the tree grows.
+     */
+    public void enableClusteredAllocation() {
+        diskTree.enableClusteredAllocation();
+    }
+
+    /**
+     * Coalesces the disk tree node writes of each buffer emptying: a node written several times during the emptying
+     * is written once, and all the written nodes are flushed at its end in the ascending order of their ids, that is,
+     * the block offsets.  Must be called before {@link #initialize}.
+     */
+    public void enableWriteCoalescing() {
+        coalesceWrites = true;
+    }
+
+    /**
+     * Returns the number of the disk tree node writes saved by the write coalescing.
+     *
+     * @return the number of the node writes superseded within a buffer emptying
+     */
+    public int getCoalescedWrites() {
+        return (writeSet != null) ? writeSet.getCoalescedUpdates() : 0;
+    }
+
+    /**
+     * Starts maintaining an index from the data items to their leaf nodes, and routing the deletions by it instead of
+     * sending them to every overlapping subtree.  Only applicable to the data disk tree with an operation group maker
+     * that splits deletions.  The index is populated by the following node writes.  Its memory is taken from the
+     * buffer memory budget, if any, after each buffer emptying.
+     */
+    public void enableLeafLocationIndex() {
+        if (diskTree.deletionsLikeInsertions())
+            throw new IllegalStateException("The leaf location index requires the data disk tree");
+        leafLocationIndex = new LeafLocationIndex<>(diskTree.container().getIdSize());
+        diskTree.setLeafLocationIndex(leafLocationIndex);
+        operationGroupMaker.setLeafLocationIndex(leafLocationIndex);
+    }
+
+    /**
+     * Attaches bounded buffers to the internal disk tree levels below the root.  The operations that the pushdown
+     * strategy does not push further from a node at such level are parked there instead of returning to the main
+     * buffer, and are taken over by the node of that level covering them when the next buffer emptying reaches it.
+     * If a level buffer has no room, the operations are pushed down instead.  Queries consult the node buffers too.
+     *
+     * @param capacity the maximum number of operations parked at a single level
+     */
+    public void enableNodeBuffers(final int capacity) {
+        if (nodeBuffers != null)
+            throw new IllegalStateException("The node buffers are already enabled");
+        //noinspection unchecked
+        nodeBuffers = new NodeBuffers<>((Function<E, Descriptor>)getDescriptor, diskTree.getMinNodeCapacity(),
+                diskTree.getMaxNodeCapacity(), capacity);
+    }
+
+    /**
+     * Bounds the buffer by a memory budget in addition to its maximum number of operations.  The operation sizes are
+     * their logical sizes, so the budget is independent of the data type.  The first budget must be set before any
+     * operations are buffered, later it may be changed at any time.
+     *
+     * @param maxBufferBytes the buffer memory budget in bytes, 0 to remove the bound
+     */
+    public void setBufferMemoryBudget(final long maxBufferBytes) {
+        buffer.setMaxBytes(maxBufferBytes);
+    }
+
+    /**
+     * Returns the current size of the buffer in bytes.
+     *
+     * @return the sum of the logical sizes of the buffered operations, 0 if the buffer has no memory budget
+     */
+    public long getBufferBytes() {
+        return buffer.getCurrentBytes();
+    }
+
+    /**
+     * Returns the leaf location index.
+     *
+     * @return the leaf location index, <code>null</code> if not enabled
+     */
+    public LeafLocationIndex<E> getLeafLocationIndex() {
+        return leafLocationIndex;
+    }
+
     /**
      * Returns statistics on deletion splits happenned during buffer emptying
      * @return statistics on deletion splits happenned during buffer emptying
@@ -975,7 +1788,7 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * @return number of times insertions annihilated deletions
      */
     public int getNumOfIDAnnihilations() {
-        return buffer.getNumOfIDAnnihilations();
+        return buffer.getNumOfIDAnnihilations() + ((nodeBuffers == null) ? 0 : nodeBuffers.getNumOfIDAnnihilations());
     }
 
     /**
@@ -983,7 +1796,7 @@ public class RRTree<E extends Convertable> extends RTree implements IRRTree<E> {
      * @return number of times deletions annihilated insertions
      */
     public int getNumOfDIAnnihilations() {
-        return buffer.getNumOfDIAnnihilations();
+        return buffer.getNumOfDIAnnihilations() + ((nodeBuffers == null) ? 0 : nodeBuffers.getNumOfDIAnnihilations());
     }
 
     /**
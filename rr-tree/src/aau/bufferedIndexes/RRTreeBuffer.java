@@ -39,6 +39,16 @@ public class RRTreeBuffer<E extends Convertable> extends UpdateTree<E> implement
      */
     private int maxSize = -1;
 
+    /**
+     * The maximum size of the buffer in bytes, 0 if the buffer is bounded by the number of objects only.
+     */
+    private long maxBytes = 0;
+
+    /**
+     * The part of the memory budget taken by other structures of the tree
+     */
+    private long reservedBytes = 0;
+
     private int maxNodeCapacity;
 
     private Container bufferContainer = null;
@@ -121,11 +131,85 @@ public class RRTreeBuffer<E extends Convertable> extends UpdateTree<E> implement
     }
 
     /**
-     * Checks if buffer is at its maximum capacity
+     * Moves a data object to a new data object in the buffer.
+     *
+     * @param oldData the data to be deleted
+     * @param newData the data to be inserted
+     * @return the annihilated insertion entry for the old data, <code>null</code> if there was none
+     * @see UpdateTree#moveWithAnnihilation(xxl.core.io.Convertable, xxl.core.io.Convertable)
+     */
+    public Entry<E> moveWithAnnihilation(final E oldData, final E newData) {
+        if (isFull())
+            throw new IllegalStateException("Buffer overflow!");
+        return super.moveWithAnnihilation(oldData, newData);
+    }
+
+    /**
+     * Replaces a buffered move with its insertion and deletion halves.  The buffer may overflow by this, until the
+     * emptying is finished.
+     *
+     * @param move the move to split
+     */
+    public void splitMove(final Entry<E> move) {
+        final Entry<E> removed = removeExactEntry(move);
+        assert (removed != null) && removed.isMove();
+        insertEntry(move.getInsertionHalf());
+        insertEntry(move.getDeletionHalf());
+    }
+
+    /**
+     * Returns the maximum size of the buffer.
+     *
+     * @return the maximum number of operations in the buffer
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Bounds the buffer by a memory budget in addition to the maximum number of objects.  The buffer is full when the
+     * logical sizes of its entries reach the budget.  The first budget must be set while the buffer is empty, later
+     * it may be changed at any time.  A budget below the current size makes the buffer full.
+     *
+     * @param maxBufferBytes the maximum size of the buffer in bytes, 0 to remove the bound
+     */
+    public void setMaxBytes(final long maxBufferBytes) {
+        if (maxBufferBytes < 0)
+            throw new IllegalArgumentException("Buffer memory budget cannot be negative: " + maxBufferBytes);
+        if ((maxBufferBytes > 0) && (maxBytes == 0))
+            countBytes();
+        maxBytes = maxBufferBytes;
+    }
+
+    /**
+     * Returns the memory budget of the buffer.
+     *
+     * @return the maximum size of the buffer in bytes, 0 if unbounded
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the part of the memory budget taken by other structures of the tree, which the buffer cannot use.
+     *
+     * @param bytes the number of bytes taken from the budget
+     */
+    public void setReservedBytes(final long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Reserved memory cannot be negative: " + bytes);
+        reservedBytes = bytes;
+    }
+
+    /**
+     * Checks if buffer is at its maximum capacity, either in the number of objects or in bytes.  Splitting moves
+     * during the buffer emptying may take the buffer over it.  The buffer may hold at least one object, even if the
+     * reserved memory takes the whole budget.
      * @return true if yes, false otherwise
      */
     public boolean isFull() {
-        return getCurrentSize() == maxSize;
+        return (getCurrentSize() >= maxSize)
+                || ((maxBytes > 0) && (getCurrentSize() > 0) && (getCurrentBytes() + reservedBytes >= maxBytes));
     }
 
     /**
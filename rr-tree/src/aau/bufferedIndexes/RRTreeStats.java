@@ -18,6 +18,8 @@
 */
 package aau.bufferedIndexes;
 
+import aau.bufferedIndexes.instrumentation.Instrumentation;
+import aau.bufferedIndexes.instrumentation.NullInstrumentation;
 import xxl.core.io.Convertable;
 
 import java.util.*;
@@ -188,6 +190,36 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
      */
     private int totalNonPiggybackedNodeSizeIncreasingOps = 0;
 
+    /**
+     * Number of moves that were split into their halves on diverging routes in the disk tree
+     */
+    private int divergedMoves = 0;
+
+    /**
+     * Number of moves that reached the leaf node of their both halves
+     */
+    private int inPlaceMoves = 0;
+
+    /**
+     * Number of operations parked in the node buffers
+     */
+    private int nodeBufferParkings = 0;
+
+    /**
+     * Number of parked operations taken over by the nodes reached by buffer emptying
+     */
+    private int nodeBufferTakeOvers = 0;
+
+    /**
+     * Number of times a node buffer had no room for the operations to park, which were pushed down instead
+     */
+    private int nodeBufferOverflows = 0;
+
+    /**
+     * Number of parked operations drained from the full node buffers
+     */
+    private int nodeBufferDrains = 0;
+
     /**
      * Statistics for operations completed during query piggybacking
      */
@@ -206,6 +238,11 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
     private final OperationTypeStat nonleafUpdatePiggybackings
             = new OperationTypeStat("Non-leaf update piggybacking");
 
+    /**
+     * The time and allocation measurements of the tree operations, off by default
+     */
+    private Instrumentation instrumentation = new NullInstrumentation();
+
     /**
      * Makes a copy of statistics object
      * @return a copy of this object
@@ -216,6 +253,43 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
         return super.clone();
     }
 
+    /**
+     * Sets the time and allocation instrumentation.
+     *
+     * @param instrumentation the instrumentation to use, a {@link NullInstrumentation} to disable
+     */
+    public void setInstrumentation(final Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    public boolean isInstrumented() {
+        return instrumentation.isEnabled();
+    }
+
+    /**
+     * Starts measuring the time and allocations of an operation.
+     *
+     * @return the token to pass to the matching {@link #endTimedEvent} call
+     */
+    public long beginTimedEvent() {
+        return instrumentation.begin();
+    }
+
+    /**
+     * Finishes measuring the time and allocations of an operation.
+     *
+     * @param event the measured operation
+     * @param level the tree level of the operation, 0 if not applicable
+     * @param token the token returned by the matching {@link #beginTimedEvent} call
+     */
+    public void endTimedEvent(final Instrumentation.Event event, final int level, final long token) {
+        instrumentation.end(event, level, token);
+    }
+
     // Various statistical events
 
     /**
@@ -283,6 +357,37 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
             assert op.isDeletion();
     }
 
+    /**
+     * Registers operations parked in a node buffer
+     * @param ops the number of parked operations
+     */
+    public void registerNodeBufferParking(final int ops) {
+        nodeBufferParkings += ops;
+    }
+
+    /**
+     * Registers parked operations taken over by a node reached by buffer emptying
+     * @param ops the number of operations taken over
+     */
+    public void registerNodeBufferTakeOver(final int ops) {
+        nodeBufferTakeOvers += ops;
+    }
+
+    /**
+     * Registers a node buffer having no room for the operations to park
+     */
+    public void registerNodeBufferOverflow() {
+        nodeBufferOverflows++;
+    }
+
+    /**
+     * Registers parked operations drained from the full node buffers
+     * @param ops the number of drained operations
+     */
+    public void registerNodeBufferDrain(final int ops) {
+        nodeBufferDrains += ops;
+    }
+
     /**
      * Registers a node with only one entry resulting from GroupUpdate
      */
@@ -391,14 +496,55 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
     public void registerOpLifetime(final E data, final int oldBufSize, final int newBufSize,
                                    final OperationType operationType) {
         if (oldBufSize - newBufSize == 1) {
-            opLifetimeStats.updateLifetime(0);
-            completeUpdateLifetime(new UpdateTree.Entry<>(data, operationType.opposite()));
+            registerAnnihilation(data, operationType);
         }
         else {
             ebsSurvived.put(new UpdateTree.Entry<>(data, operationType), new RunningLifetimeStat(completedEmptyBufNum));
         }
     }
 
+    /**
+     * Registers statistics about an operation that annihilated with the opposite buffered operation, wherever it was
+     * buffered, completing the lifetime of the annihilated operation.
+     * @param data data of the current operation
+     * @param operationType operation type (insertion or deletion)
+     */
+    public void registerAnnihilation(final E data, final OperationType operationType) {
+        opLifetimeStats.updateLifetime(0);
+        completeUpdateLifetime(new UpdateTree.Entry<>(data, operationType.opposite()));
+    }
+
+    /**
+     * Registers statistics about an operation that annihilated with one half of a buffered move, leaving the other
+     * half in the buffer in place of the move.  The remaining half inherits the lifetime of the move.
+     *
+     * @param move          the annihilated move
+     * @param remainingHalf the operation that took the place of the move in the buffer
+     */
+    public void registerMoveHalfAnnihilation(final UpdateTree.Entry<E> move, final UpdateTree.Entry<E> remainingHalf) {
+        opLifetimeStats.updateLifetime(0);
+        final RunningLifetimeStat runningStat = ebsSurvived.remove(move);
+        assert runningStat != null;
+        ebsSurvived.put(remainingHalf, runningStat);
+    }
+
+    /**
+     * Registers splitting a move into its halves.  The insertion half continues the lifetime of the move, and the
+     * deletion half starts its own lifetime, as if it arrived to the buffer together with the move.
+     *
+     * @param move   the split move
+     * @param inPlace <code>true</code> if both halves are executed in the same leaf node, <code>false</code> if the
+     * halves diverged on their way down the disk tree
+     */
+    public void registerMoveSplit(final UpdateTree.Entry<E> move, final boolean inPlace) {
+        if (inPlace)
+            inPlaceMoves++;
+        else
+            divergedMoves++;
+        final RunningLifetimeStat runningStat = ebsSurvived.get(move);
+        ebsSurvived.put(move.getDeletionHalf(), new RunningLifetimeStat(runningStat.getEBNum()));
+    }
+
     /**
      * Marks end of life in buffer for the specified entry and updates its buffer emptying survival statistics
      * @param entry an operation which has been removed from buffer
@@ -429,6 +575,17 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
         return ebsSurvived.containsKey(entry);
     }
 
+    /**
+     * Starts tracking the lifetime of an operation that was put into the buffer by restoring it from disk, as if it
+     * arrived at the buffer now.
+     *
+     * @param entry the restored operation
+     */
+    public void registerRestoredOpLifetime(final UpdateTree.Entry<E> entry) {
+        if (!ebsSurvived.containsKey(entry))
+            ebsSurvived.put(entry, new RunningLifetimeStat(completedEmptyBufNum));
+    }
+
     /**
      * Record operation lifetime stats for all the ops currently in the buffer. To be called at the end of test run.
      */
@@ -661,6 +818,60 @@ public class RRTreeStats<E extends Convertable> implements Cloneable {
         return totalNonPiggybackedNodeSizeIncreasingOps;
     }
 
+    /**
+     * Gets the number of moves that were split because their halves went to different disk tree nodes.
+     *
+     * @return number of diverged moves
+     */
+    public int getDivergedMoves() {
+        return divergedMoves;
+    }
+
+    /**
+     * Gets the number of moves that were executed on a single leaf node.
+     *
+     * @return number of in-place moves
+     */
+    public int getInPlaceMoves() {
+        return inPlaceMoves;
+    }
+
+    /**
+     * Gets the number of operations parked in the node buffers.
+     *
+     * @return number of parked operations
+     */
+    public int getNodeBufferParkings() {
+        return nodeBufferParkings;
+    }
+
+    /**
+     * Gets the number of parked operations taken over by the nodes reached by buffer emptying.
+     *
+     * @return number of operations taken over
+     */
+    public int getNodeBufferTakeOvers() {
+        return nodeBufferTakeOvers;
+    }
+
+    /**
+     * Gets the number of times a node buffer had no room for the operations to park.
+     *
+     * @return number of node buffer overflows
+     */
+    public int getNodeBufferOverflows() {
+        return nodeBufferOverflows;
+    }
+
+    /**
+     * Gets the number of parked operations drained from the full node buffers.
+     *
+     * @return number of drained operations
+     */
+    public int getNodeBufferDrains() {
+        return nodeBufferDrains;
+    }
+
     /**
      * In a list of StatisticalData objects, bump the counter in one of them.  If the specified object is not existing
      * in the list, create it and all missing objects with smaller indexes.
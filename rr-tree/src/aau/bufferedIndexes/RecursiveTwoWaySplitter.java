@@ -54,9 +54,12 @@ public class RecursiveTwoWaySplitter implements RRTreeGroupSplitter {
 
         final IRRTreeDiskNode<E> newNode = tree.createNode(node.level()); // TODO: size it
 
+        // The split modifies the node entries directly, thus they are made private to the node first
+        node.getModifiableEntries();
         // TODO: generify R-tree
         //noinspection unchecked
-        ((RTree)tree).splitNode((ORTree.Node)node, (Collection<Object>)newNode.getEntries(), minEntries,  maxEntries);
+        ((RTree)tree).splitNode((ORTree.Node)node, (Collection<Object>)newNode.getModifiableEntries(), minEntries,
+                maxEntries);
 
         assert(newNode.number() <= maxEntries);
         assert(node.number() <= maxEntries);
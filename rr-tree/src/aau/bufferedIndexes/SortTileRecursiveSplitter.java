@@ -0,0 +1,161 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.IRRDiskTree;
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import xxl.core.io.Convertable;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An implementation of the GroupSplit algorithm that partitions an overflowing node into the minimum number of nodes
+ * in a single pass by Sort-Tile-Recursive packing.  The entries are sorted by the centers of their MBRs along the
+ * first dimension and cut into slabs, then each slab is sorted along the next dimension and cut further, until the
+ * last dimension cuts the slabs into nodes.  The resulting nodes differ in size by at most one entry.
+ */
+public class SortTileRecursiveSplitter implements RRTreeGroupSplitter {
+
+    /**
+     * An entry of the node being split together with the center of its MBR.
+     */
+    private static final class CenteredEntry {
+        final Object entry;
+        final double[] center;
+
+        CenteredEntry(final Object entry, final Rectangle mbr) {
+            this.entry = entry;
+            center = new double[mbr.dimensions()];
+            for (int i = 0; i < center.length; i++)
+                center[i] = (mbr.getCorner(false).getValue(i) + mbr.getCorner(true).getValue(i)) / 2;
+        }
+    }
+
+    /**
+     * Orders the entries by their centers along a single dimension.
+     */
+    private static final class CenterComparator implements Comparator<CenteredEntry> {
+        private final int dimension;
+
+        CenterComparator(final int dimension) {
+            this.dimension = dimension;
+        }
+
+        public int compare(final CenteredEntry o1, final CenteredEntry o2) {
+            return Double.compare(o1.center[dimension], o2.center[dimension]);
+        }
+    }
+
+    public <E extends Convertable> List<IRRTreeDiskNode<E>> groupSplit(final IRRTreeDiskNode<E> node,
+                                                                       final IRRDiskTree<E> tree) {
+        final List<IRRTreeDiskNode<E>> result = new ArrayList<>();
+        if (!node.overflows()) {
+            result.add(node);
+            return result;
+        }
+
+        final int entryCount = node.number();
+        final int maxCapacity = tree.getMaxNodeCapacity(node.level());
+        int nodeCount = Math.max((entryCount + maxCapacity - 1) / maxCapacity,
+                (int)Math.ceil(tree.compressedPageFill(node.level(), node.getEntries())));
+
+        final List<CenteredEntry> entries = new ArrayList<>(entryCount);
+        for (final Object entry : node.getEntries())
+            entries.add(new CenteredEntry(entry, (Rectangle)tree.descriptor(entry)));
+        final int dimensions = entries.get(0).center.length;
+
+        // With the compressed leaves a partition may still be too large in bytes, then tile into one node more
+        List<List<Object>> partitions;
+        do {
+            partitions = new ArrayList<>(nodeCount);
+            tile(entries, 0, nodeCount, entryCount, nodeCount, 0, dimensions, partitions);
+            assert partitions.size() == nodeCount;
+            nodeCount++;
+        } while (tree.compressedLeavesOverflow(node.level(), partitions));
+
+        // The first partition stays in the original node
+        node.getModifiableEntries().clear();
+        for (final Object entry : partitions.get(0))
+            node.grow(entry);
+        result.add(node);
+        for (int i = 1; i < partitions.size(); i++)
+            result.add(tree.createNode(node.level(), partitions.get(i)));
+
+        assert checkSplits(result);
+        return result;
+    }
+
+    /**
+     * Cuts a sorted run of entries into nodes.  The node sizes are assigned from a single sequence over all the nodes
+     * so that they differ by at most one entry regardless of how the nodes are grouped into slabs.
+     *
+     * @param entries    the entries of the run, reordered on return
+     * @param firstNode  the index of the first node of the run in the whole split
+     * @param nodes      the number of nodes to cut the run into
+     * @param totalCount the number of entries in the whole split
+     * @param totalNodes the number of nodes in the whole split
+     * @param dimension  the dimension to sort the run along
+     * @param dimensions the number of dimensions
+     * @param partitions the list to append the resulting node contents to
+     */
+    private static void tile(final List<CenteredEntry> entries, final int firstNode, final int nodes,
+                             final int totalCount, final int totalNodes, final int dimension, final int dimensions,
+                             final List<List<Object>> partitions) {
+        if (nodes == 1) {
+            final List<Object> partition = new ArrayList<>(entries.size());
+            for (final CenteredEntry e : entries)
+                partition.add(e.entry);
+            partitions.add(partition);
+            return;
+        }
+
+        Collections.sort(entries, new CenterComparator(dimension));
+
+        final int slabs = (dimension == dimensions - 1)
+                ? nodes
+                : (int)Math.ceil(Math.pow(nodes, 1.0 / (dimensions - dimension)));
+        final int runStart = nodeStart(firstNode, totalCount, totalNodes);
+        int slabFirstNode = firstNode;
+        for (int i = 0; i < slabs; i++) {
+            final int slabNodes = nodes / slabs + ((i < nodes % slabs) ? 1 : 0);
+            final int from = nodeStart(slabFirstNode, totalCount, totalNodes) - runStart;
+            final int to = nodeStart(slabFirstNode + slabNodes, totalCount, totalNodes) - runStart;
+            tile(entries.subList(from, to), slabFirstNode, slabNodes, totalCount, totalNodes,
+                    Math.min(dimension + 1, dimensions - 1), dimensions, partitions);
+            slabFirstNode += slabNodes;
+        }
+        assert slabFirstNode == firstNode + nodes;
+    }
+
+    private static int nodeStart(final int node, final int totalCount, final int totalNodes) {
+        return (int)((long)totalCount * node / totalNodes);
+    }
+
+    private static <E extends Convertable> boolean checkSplits(final Iterable<IRRTreeDiskNode<E>> splits) {
+        for (final IRRTreeDiskNode<E> s : splits) {
+            assert !s.overflows();
+            assert s.number() >= s.splitMinNumber();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,705 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import xxl.core.functions.Function;
+import xxl.core.io.Buffer;
+import xxl.core.io.SizeAware;
+
+/**
+ * A buffer that may be shared by several threads, for use by a
+ * {@link xxl.core.collections.containers.io.BufferedContainer}.  The frames are divided into stripes by the object id
+ * hash, each stripe having its own lock, its own hash table keyed by the primitive long value of the id, and its own
+ * clock replacement.  Thus the cached objects in different stripes may be read in parallel, unlike with the
+ * {@link xxl.core.io.LRUBuffer} wrapped in a synchronized container.
+ *
+ * A frame has a fix counter instead of a flag, so that the threads fixing the same object do not unfix it for each
+ * other.  The loads of the missing objects and the write-backs of the dirty ones are done with only their stripe
+ * locked, thus the misses in different stripes reach the underlying container concurrently, and the container must be
+ * thread-safe if the buffer is shared.  With a capacity in bytes, the objects must be {@link SizeAware} and each
+ * stripe gets an equal share of the capacity.
+ *
+ * @param <O> the buffer owner type
+ * @param <I> the object id type
+ * @param <E> the buffered object type
+ */
+public class StripedBuffer<O, I extends Number, E> extends Buffer<O, I, E> {
+
+    /**
+     * A buffer frame holding a single object
+     */
+    private final class Frame {
+
+        /**
+         * The position of this frame in its stripe frame array
+         */
+        int index;
+
+        O owner;
+
+        I id;
+
+        long key;
+
+        E object;
+
+        /**
+         * The function writing this object back, <code>null</code> if it is clean
+         */
+        Function<Object, ?> flush;
+
+        int fixCount;
+
+        /**
+         * Flag if this frame was accessed since the clock hand has passed it last time
+         */
+        boolean referenced;
+
+        /**
+         * The object size in bytes, zero if the buffer capacity in bytes is not limited
+         */
+        int sizeBytes;
+
+        Frame(final int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A stripe of the buffer frames.  All its methods must be called with the stripe locked.
+     */
+    private final class Stripe {
+
+        private final Frame[] frames;
+
+        /**
+         * The number of the frames in use, which are at the start of the frame array
+         */
+        private int used = 0;
+
+        private int fixed = 0;
+
+        private int clockHand = 0;
+
+        /**
+         * The total size in bytes of the objects in this stripe
+         */
+        private int bytes = 0;
+
+        private final int capacityBytes;
+
+        /**
+         * The open addressing hash table with linear probing of the frames in use
+         */
+        private final Frame[] table;
+
+        private final int tableMask;
+
+        Stripe(final int capacity, final int capacityBytes) {
+            this.capacityBytes = capacityBytes;
+            //noinspection unchecked
+            frames = new StripedBuffer.Frame[capacity];
+            for (int i = 0; i < capacity; i++)
+                frames[i] = new Frame(i);
+            int tableSize = 1;
+            while (tableSize < 2 * capacity)
+                tableSize <<= 1;
+            //noinspection unchecked
+            table = new StripedBuffer.Frame[tableSize];
+            tableMask = tableSize - 1;
+        }
+
+        private int home(final long key) {
+            return (int)hash(key) & tableMask;
+        }
+
+        Frame lookUp(final O owner, final long key) {
+            for (int i = home(key); table[i] != null; i = (i + 1) & tableMask) {
+                final Frame frame = table[i];
+                if (frame.key == key && frame.owner == owner)
+                    return frame;
+            }
+            return null;
+        }
+
+        /**
+         * Fixes the frame of an object, loading the object if it is not buffered yet.
+         *
+         * @param owner  the buffer owner
+         * @param id     the object id
+         * @param obtain the function loading the object, or <code>null</code> if the object is given
+         * @param object the object to buffer if it is not loaded
+         * @return the fixed frame
+         */
+        Frame fix(final O owner, final I id, final Function<? super I, ? extends E> obtain, final E object) {
+            final long key = id.longValue();
+            Frame frame = lookUp(owner, key);
+            if (frame == null) {
+                final Frame victim = (used == frames.length) ? victim() : null;
+                final E newObject = (obtain != null) ? obtain.invoke(id) : object;
+                if (victim != null)
+                    displace(victim);
+                final int newSizeBytes = sizeBytes(newObject);
+                while (bytes + newSizeBytes > capacityBytes && used > 0)
+                    displace(victim());
+                frame = insert(owner, id, key, newObject);
+                fix(frame);
+            }
+            else
+                fix(frame);
+            return frame;
+        }
+
+        /**
+         * Sets the object of a frame, accounting for its size.
+         *
+         * @param frame  the frame
+         * @param object the new object of the frame
+         */
+        void setObject(final Frame frame, final E object) {
+            bytes -= frame.sizeBytes;
+            frame.object = object;
+            frame.sizeBytes = sizeBytes(object);
+            bytes += frame.sizeBytes;
+        }
+
+        /**
+         * Displaces the unfixed frames until the objects of this stripe fit into its capacity in bytes.  A single
+         * object larger than the capacity is kept.
+         *
+         * @throws IllegalStateException if the objects do not fit and all frames are fixed
+         */
+        void shrinkToCapacityBytes() {
+            while (bytes > capacityBytes && used > 1)
+                displace(victim());
+        }
+
+        void fix(final Frame frame) {
+            if (frame.fixCount == 0)
+                fixed++;
+            frame.fixCount++;
+            frame.referenced = true;
+        }
+
+        void unfix(final Frame frame) {
+            if (frame.fixCount == 0)
+                return;
+            frame.fixCount--;
+            if (frame.fixCount == 0)
+                fixed--;
+        }
+
+        /**
+         * Returns <code>true</code> if this stripe has a frame that may be replaced.
+         *
+         * @return <code>true</code> if some frame is unfixed
+         */
+        boolean hasUnfixed() {
+            return fixed < used;
+        }
+
+        /**
+         * Selects an unfixed frame to replace by the clock algorithm.
+         *
+         * @return the frame to replace
+         * @throws IllegalStateException if all frames are fixed
+         */
+        Frame victim() {
+            if (fixed == used)
+                throw new IllegalStateException("Buffer overflow. Too many slots fixed.");
+            while (true) {
+                final Frame frame = frames[clockHand];
+                clockHand = (clockHand + 1) % used;
+                if (frame.fixCount > 0)
+                    continue;
+                if (frame.referenced)
+                    frame.referenced = false;
+                else
+                    return frame;
+            }
+        }
+
+        private Frame insert(final O owner, final I id, final long key, final E object) {
+            final Frame frame = frames[used++];
+            frame.owner = owner;
+            frame.id = id;
+            frame.key = key;
+            setObject(frame, object);
+            int i = home(key);
+            while (table[i] != null)
+                i = (i + 1) & tableMask;
+            table[i] = frame;
+            return frame;
+        }
+
+        void flush(final Frame frame) {
+            if (frame.flush == null)
+                return;
+            frame.flush.invoke(frame.id, frame.object);
+            frame.flush = null;
+        }
+
+        void flushAll(final O owner) {
+            for (int i = 0; i < used; i++)
+                if (frames[i].owner == owner)
+                    flush(frames[i]);
+        }
+
+        void displace(final Frame frame) {
+            flush(frame);
+            remove(frame);
+        }
+
+        void remove(final Frame frame) {
+            unlink(frame);
+            if (frame.fixCount > 0)
+                fixed--;
+            bytes -= frame.sizeBytes;
+            frame.sizeBytes = 0;
+            final Frame last = frames[--used];
+            frames[frame.index] = last;
+            last.index = frame.index;
+            frames[used] = frame;
+            frame.index = used;
+            frame.owner = null;
+            frame.id = null;
+            frame.object = null;
+            frame.flush = null;
+            frame.fixCount = 0;
+            frame.referenced = false;
+            if (clockHand >= used)
+                clockHand = 0;
+        }
+
+        void removeAll(final O owner) {
+            int i = 0;
+            while (i < used) {
+                if (frames[i].owner == owner)
+                    remove(frames[i]);
+                else
+                    i++;
+            }
+        }
+
+        /**
+         * Removes a frame from the hash table, shifting back the following frames of its probe sequence.
+         *
+         * @param frame the frame to remove
+         */
+        private void unlink(final Frame frame) {
+            int hole = home(frame.key);
+            while (table[hole] != frame)
+                hole = (hole + 1) & tableMask;
+            table[hole] = null;
+            for (int i = (hole + 1) & tableMask; table[i] != null; i = (i + 1) & tableMask) {
+                final int home = home(table[i].key);
+                if (((i - home) & tableMask) >= ((i - hole) & tableMask)) {
+                    table[hole] = table[i];
+                    table[i] = null;
+                    hole = i;
+                }
+            }
+        }
+
+        /**
+         * Checks the frame counters, sizes and the hash table of this stripe.
+         *
+         * @throws IllegalStateException if they are inconsistent
+         */
+        void check() {
+            int fixedFrames = 0;
+            int frameBytes = 0;
+            for (int i = 0; i < used; i++) {
+                final Frame frame = frames[i];
+                if (frame.index != i)
+                    throw new IllegalStateException("Frame at " + i + " has index " + frame.index);
+                if (lookUp(frame.owner, frame.key) != frame)
+                    throw new IllegalStateException("Frame of id " + frame.id + " is not in the hash table");
+                if (frame.fixCount > 0)
+                    fixedFrames++;
+                frameBytes += frame.sizeBytes;
+            }
+            int tableFrames = 0;
+            for (final Frame frame : table)
+                if (frame != null)
+                    tableFrames++;
+            if (tableFrames != used)
+                throw new IllegalStateException("The hash table has " + tableFrames + " frames instead of " + used);
+            if (fixedFrames != fixed)
+                throw new IllegalStateException("The fixed frames were not counted correctly (" + fixedFrames
+                        + " instead of " + fixed + ')');
+            if (frameBytes != bytes)
+                throw new IllegalStateException("The size was not counted correctly (" + frameBytes + " instead of "
+                        + bytes + ')');
+        }
+    }
+
+    /**
+     * A slot view of a frame, returned by {@link #victim}.  Its operations are applied to the frame under the stripe
+     * lock, unless the frame was reused for another object in the meantime.
+     */
+    private final class FrameSlot extends Slot {
+
+        private final Stripe stripe;
+
+        private final Frame frame;
+
+        private final long key;
+
+        FrameSlot(final Stripe stripe, final Frame frame) {
+            super(frame.index);
+            this.stripe = stripe;
+            this.frame = frame;
+            key = frame.key;
+            owner = frame.owner;
+            id = frame.id;
+            object = frame.object;
+            flush = frame.flush;
+            sizeBytes = frame.sizeBytes;
+        }
+
+        private boolean isCurrent() {
+            return frame.owner == owner && frame.key == key;
+        }
+
+        @Override
+        protected boolean isFixed() {
+            synchronized (stripe) {
+                return isCurrent() && frame.fixCount > 0;
+            }
+        }
+
+        @Override
+        protected void fix() {
+            synchronized (stripe) {
+                if (isCurrent())
+                    stripe.fix(frame);
+            }
+        }
+
+        @Override
+        protected void unfix() {
+            synchronized (stripe) {
+                if (isCurrent())
+                    stripe.unfix(frame);
+            }
+        }
+
+        @Override
+        protected void flush() {
+            synchronized (stripe) {
+                if (isCurrent())
+                    stripe.flush(frame);
+                flush = null;
+            }
+        }
+
+        @Override
+        protected void update(final E object, final Function<Object, ?> flush) {
+            synchronized (stripe) {
+                if (!isCurrent())
+                    throw new IllegalStateException("The slot of id " + id + " was displaced");
+                stripe.setObject(frame, object);
+                frame.flush = flush;
+                this.object = object;
+                this.flush = flush;
+                sizeBytes = frame.sizeBytes;
+            }
+        }
+
+        @Override
+        protected void insert(final O owner, final I id, final E object) {
+            throw new UnsupportedOperationException("The stripes insert their own frames");
+        }
+
+        @Override
+        protected void remove() {
+            synchronized (stripe) {
+                if (isCurrent())
+                    stripe.remove(frame);
+            }
+        }
+
+        /**
+         * Writes the object back if needed and removes it from the buffer, unless its frame was fixed in the
+         * meantime.
+         */
+        @Override
+        protected void displace() {
+            synchronized (stripe) {
+                if (isCurrent() && frame.fixCount == 0)
+                    stripe.displace(frame);
+            }
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    /**
+     * The total capacity in bytes, <code>Integer.MAX_VALUE</code> if not limited
+     */
+    private final int totalCapacityBytes;
+
+    /**
+     * The stripe where {@link #victim} starts looking for an unfixed frame
+     */
+    private int nextVictimStripe = 0;
+
+    /**
+     * Creates a new striped buffer.
+     *
+     * @param capacity    the total number of the buffer frames
+     * @param stripeCount the number of the stripes to divide the frames into
+     */
+    public StripedBuffer(final int capacity, final int stripeCount) {
+        this(capacity, Integer.MAX_VALUE, stripeCount);
+    }
+
+    /**
+     * Creates a new striped buffer with a capacity in bytes.
+     *
+     * @param capacity      the total number of the buffer frames
+     * @param capacityBytes the total size in bytes of the buffered objects, <code>Integer.MAX_VALUE</code> for no
+     *                      limit
+     * @param stripeCount   the number of the stripes to divide the frames and the bytes into
+     */
+    public StripedBuffer(final int capacity, final int capacityBytes, final int stripeCount) {
+        super(0);
+        if (stripeCount < 1)
+            throw new IllegalArgumentException("The number of stripes must be positive: " + stripeCount);
+        if (capacity < stripeCount)
+            throw new IllegalArgumentException("The capacity " + capacity + " is less than the number of stripes "
+                    + stripeCount);
+        if (capacityBytes < 1)
+            throw new IllegalArgumentException("The capacity in bytes must be positive: " + capacityBytes);
+        totalCapacityBytes = capacityBytes;
+        //noinspection unchecked
+        stripes = new StripedBuffer.Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0),
+                    (capacityBytes == Integer.MAX_VALUE) ? Integer.MAX_VALUE
+                            : capacityBytes / stripeCount + (i < capacityBytes % stripeCount ? 1 : 0));
+    }
+
+    /**
+     * Returns the size of an object for the capacity in bytes.
+     *
+     * @param object the object
+     * @return the object size in bytes, or zero if the capacity in bytes is not limited
+     */
+    private int sizeBytes(final E object) {
+        return (totalCapacityBytes == Integer.MAX_VALUE) ? 0 : ((SizeAware)object).getMemSize();
+    }
+
+    /**
+     * Scrambles the id value for the stripe and hash table selection.
+     *
+     * @param key the id value
+     * @return the hash value
+     */
+    private static long hash(final long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private Stripe stripe(final long key) {
+        return stripes[(int)((hash(key) >>> 33) % stripes.length)];
+    }
+
+    /**
+     * Returns the next slot to displace: the clock victim of the next stripe, in a round robin order, that has an
+     * unfixed frame.  The buffer itself does not call this method, as each stripe replaces its own frames.
+     *
+     * @return the slot to displace
+     * @throws IllegalStateException if all frames are fixed
+     */
+    @Override
+    protected Slot victim() {
+        for (int i = 0; i < stripes.length; i++) {
+            final Stripe stripe = stripes[(nextVictimStripe + i) % stripes.length];
+            synchronized (stripe) {
+                if (stripe.hasUnfixed()) {
+                    nextVictimStripe = (nextVictimStripe + i + 1) % stripes.length;
+                    return new FrameSlot(stripe, stripe.victim());
+                }
+            }
+        }
+        throw new IllegalStateException("Buffer overflow. Too many slots fixed.");
+    }
+
+    @Override
+    public int size() {
+        int result = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.used;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int capacity() {
+        int result = 0;
+        for (final Stripe stripe : stripes)
+            result += stripe.frames.length;
+        return result;
+    }
+
+    /**
+     * Not supported, the stripes have fixed frame arrays.
+     *
+     * @param capacity the new number of frames
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCapacity(final int capacity) {
+        throw new UnsupportedOperationException("The striped buffer cannot be resized");
+    }
+
+    @Override
+    public int bytesUsed() {
+        int result = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.bytes;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void checkBuffer() {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.check();
+            }
+        }
+    }
+
+    @Override
+    public int fixedSlots() {
+        int result = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.fixed;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void unfix(final O owner, final I id) {
+        final long key = id.longValue();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            final Frame frame = stripe.lookUp(owner, key);
+            if (frame != null)
+                stripe.unfix(frame);
+        }
+    }
+
+    @Override
+    public boolean contains(final O owner, final I id) {
+        final long key = id.longValue();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.lookUp(owner, key) != null;
+        }
+    }
+
+    @Override
+    public boolean isFixed(final O owner, final I id) {
+        final long key = id.longValue();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            final Frame frame = stripe.lookUp(owner, key);
+            return frame != null && frame.fixCount > 0;
+        }
+    }
+
+    @Override
+    public void flush(final O owner, final I id) {
+        final long key = id.longValue();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            final Frame frame = stripe.lookUp(owner, key);
+            if (frame != null)
+                stripe.flush(frame);
+        }
+    }
+
+    @Override
+    public void flushAll(final O owner) {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.flushAll(owner);
+            }
+        }
+    }
+
+    @Override
+    public E get(final O owner, final I id, final Function<? super I, ? extends E> obtain, final boolean unfix) {
+        final Stripe stripe = stripe(id.longValue());
+        synchronized (stripe) {
+            final Frame frame = stripe.fix(owner, id, obtain, null);
+            final E result = frame.object;
+            if (unfix)
+                stripe.unfix(frame);
+            return result;
+        }
+    }
+
+    @Override
+    public void update(final O owner, final I id, final E object, final Function<Object, ?> flush,
+                       final boolean unfix) {
+        final Stripe stripe = stripe(id.longValue());
+        synchronized (stripe) {
+            final Frame frame = stripe.fix(owner, id, null, object);
+            stripe.setObject(frame, object);
+            frame.flush = flush;
+            try {
+                stripe.shrinkToCapacityBytes();
+            }
+            finally {
+                if (unfix)
+                    stripe.unfix(frame);
+            }
+        }
+    }
+
+    @Override
+    public void remove(final O owner, final I id) {
+        final long key = id.longValue();
+        final Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            final Frame frame = stripe.lookUp(owner, key);
+            if (frame != null)
+                stripe.remove(frame);
+        }
+    }
+
+    @Override
+    public void removeAll(final O owner) {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.removeAll(owner);
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import xxl.core.indexStructures.Descriptor;
+import xxl.core.io.Convertable;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A superblock of an RR-tree stored in a persistent container, allowing to reopen the tree without rebuilding it.
+ * Records the disk tree root entry, the tree parameters that must match on reopening, the data item counts, and
+ * optionally the buffer contents.  The superblock file is replaced atomically and checksummed.  The same contents
+ * make up the {@link BufferLog} checkpoint records.
+ * <p>
+ * As the container is updated in place, the superblock file is replaced by a dirty marker before the first change to
+ * the tree after the snapshot, and rewritten at the next checkpoint.  A dirty superblock cannot be reopened.
+ */
+public final class TreeSnapshot<E extends Convertable> {
+
+    private static final int MAGIC = 0x52525342;
+
+    private static final int VERSION = 3;
+
+    private final int minNodeCapacity;
+
+    private final int maxNodeCapacity;
+
+    private final int minIndexNodeCapacity;
+
+    private final int maxIndexNodeCapacity;
+
+    private final int maxBufferSize;
+
+    private final int dataItems;
+
+    private final int diskDataItems;
+
+    /**
+     * The container id of the disk tree root node, <code>null</code> if the disk tree is empty
+     */
+    private final Object rootId;
+
+    private final int height;
+
+    private final Rectangle rootDescriptor;
+
+    /**
+     * The buffer contents, <code>null</code> if not saved
+     */
+    private final List<UpdateTree.Entry<E>> bufferContents;
+
+    TreeSnapshot(final int minNodeCapacity, final int maxNodeCapacity, final int minIndexNodeCapacity,
+                 final int maxIndexNodeCapacity, final int maxBufferSize, final int dataItems,
+                 final int diskDataItems, final Object rootId, final int height, final Descriptor rootDescriptor,
+                 final List<UpdateTree.Entry<E>> bufferContents) {
+        if ((rootId != null) && !(rootDescriptor instanceof Rectangle))
+            throw new IllegalArgumentException("Only rectangle root descriptors are supported, got " + rootDescriptor);
+        this.minNodeCapacity = minNodeCapacity;
+        this.maxNodeCapacity = maxNodeCapacity;
+        this.minIndexNodeCapacity = minIndexNodeCapacity;
+        this.maxIndexNodeCapacity = maxIndexNodeCapacity;
+        this.maxBufferSize = maxBufferSize;
+        this.dataItems = dataItems;
+        this.diskDataItems = diskDataItems;
+        this.rootId = rootId;
+        this.height = height;
+        this.rootDescriptor = (Rectangle)rootDescriptor;
+        this.bufferContents = bufferContents;
+    }
+
+    /**
+     * Writes the snapshot, atomically replacing any previous one.
+     *
+     * @param file           the snapshot file
+     * @param idConverter    the converter for the container ids
+     * @param entryConverter the converter for the buffer entries, may be <code>null</code> if the buffer contents
+     *                       are not saved
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void write(final File file, final Converter<Object> idConverter,
+                      final Converter<UpdateTree.Entry<E>> entryConverter) throws IOException {
+        writeFile(file, this, idConverter, entryConverter);
+    }
+
+    /**
+     * Atomically replaces a snapshot with a dirty marker, so that the tree cannot be reopened from its container
+     * until the next snapshot.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the marker cannot be written
+     */
+    public static void writeDirty(final File file) throws IOException {
+        writeFile(file, null, null, null);
+    }
+
+    private static <E extends Convertable> void writeFile(final File file, final TreeSnapshot<E> snapshot,
+                                                          final Converter<Object> idConverter,
+                                                          final Converter<UpdateTree.Entry<E>> entryConverter)
+            throws IOException {
+        final File newFile = new File(file.getPath() + ".new");
+        final FileOutputStream fileOutput = new FileOutputStream(newFile);
+        try {
+            final CheckedOutputStream checkedOutput = new CheckedOutputStream(new BufferedOutputStream(fileOutput),
+                    new CRC32());
+            final DataOutputStream output = new DataOutputStream(checkedOutput);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeBoolean(snapshot != null);
+            if (snapshot != null)
+                snapshot.write(output, idConverter, entryConverter);
+            //noinspection NumericCastThatLosesPrecision
+            output.writeInt((int)checkedOutput.getChecksum().getValue());
+            output.flush();
+            fileOutput.getChannel().force(false);
+        }
+        finally {
+            fileOutput.close();
+        }
+        replaceDurably(newFile, file);
+    }
+
+    /**
+     * Writes the snapshot contents without the file header and checksum.
+     *
+     * @param output         the output to write to
+     * @param idConverter    the converter for the container ids
+     * @param entryConverter the converter for the buffer entries, may be <code>null</code> if the buffer contents
+     *                       are not saved
+     * @throws IOException if the snapshot cannot be written
+     */
+    void write(final DataOutput output, final Converter<Object> idConverter,
+               final Converter<UpdateTree.Entry<E>> entryConverter) throws IOException {
+        output.writeInt(minNodeCapacity);
+        output.writeInt(maxNodeCapacity);
+        output.writeInt(minIndexNodeCapacity);
+        output.writeInt(maxIndexNodeCapacity);
+        output.writeInt(maxBufferSize);
+        output.writeInt(dataItems);
+        output.writeInt(diskDataItems);
+        output.writeBoolean(rootId != null);
+        if (rootId != null) {
+            idConverter.write(output, rootId);
+            output.writeInt(height);
+            output.writeInt(rootDescriptor.dimensions());
+            rootDescriptor.write(output);
+        }
+        output.writeBoolean(bufferContents != null);
+        if (bufferContents != null) {
+            output.writeInt(bufferContents.size());
+            for (final UpdateTree.Entry<E> entry : bufferContents)
+                UpdateTree.writeEntry(entryConverter, output, entry);
+        }
+    }
+
+    /**
+     * Atomically replaces a file with a new one and makes the replacement durable by forcing their directory too.
+     *
+     * @param newFile the new file, already forced to the disk
+     * @param file    the file to replace
+     * @throws IOException if the file cannot be replaced
+     */
+    static void replaceDurably(final File newFile, final File file) throws IOException {
+        Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        final FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ);
+        try {
+            directory.force(true);
+        }
+        finally {
+            directory.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file           the snapshot file
+     * @param idConverter    the converter for the container ids
+     * @param entryConverter the converter for the buffer entries, may be <code>null</code> if the buffer contents
+     *                       were not saved
+     * @param <E>            the type of the tree data items
+     * @return the read snapshot
+     * @throws IOException if the snapshot cannot be read or is corrupted
+     * @throws IllegalStateException if the snapshot is marked dirty
+     */
+    public static <E extends Convertable> TreeSnapshot<E> read(final File file, final Converter<Object> idConverter,
+                                                              final Converter<UpdateTree.Entry<E>> entryConverter)
+            throws IOException {
+        final CheckedInputStream checkedInput = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32());
+        try {
+            final DataInputStream input = new DataInputStream(checkedInput);
+            if (input.readInt() != MAGIC)
+                throw new IOException(file + " is not an RR-tree snapshot");
+            final int version = input.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported RR-tree snapshot version " + version);
+            if (!input.readBoolean())
+                throw new IllegalStateException("RR-tree snapshot " + file
+                        + " is dirty, the tree was changed in its container after the snapshot");
+            final TreeSnapshot<E> result = read(input, idConverter, entryConverter);
+            //noinspection NumericCastThatLosesPrecision
+            final int expectedChecksum = (int)checkedInput.getChecksum().getValue();
+            if (input.readInt() != expectedChecksum)
+                throw new IOException("RR-tree snapshot " + file + " is corrupted");
+            return result;
+        }
+        finally {
+            checkedInput.close();
+        }
+    }
+
+    /**
+     * Reads the snapshot contents written by {@link #write(DataOutput, Converter, Converter)}.
+     *
+     * @param input          the input to read from
+     * @param idConverter    the converter for the container ids
+     * @param entryConverter the converter for the buffer entries, may be <code>null</code> if the buffer contents
+     *                       were not saved
+     * @param <E>            the type of the tree data items
+     * @return the read snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    static <E extends Convertable> TreeSnapshot<E> read(final DataInput input, final Converter<Object> idConverter,
+                                                       final Converter<UpdateTree.Entry<E>> entryConverter)
+            throws IOException {
+        final int minNodeCapacity = input.readInt();
+        final int maxNodeCapacity = input.readInt();
+        final int minIndexNodeCapacity = input.readInt();
+        final int maxIndexNodeCapacity = input.readInt();
+        final int maxBufferSize = input.readInt();
+        final int dataItems = input.readInt();
+        final int diskDataItems = input.readInt();
+        Object rootId = null;
+        int height = 0;
+        Rectangle rootDescriptor = null;
+        if (input.readBoolean()) {
+            rootId = idConverter.read(input);
+            height = input.readInt();
+            rootDescriptor = new DoublePointRectangle(input.readInt());
+            rootDescriptor.read(input);
+        }
+        List<UpdateTree.Entry<E>> bufferContents = null;
+        if (input.readBoolean()) {
+            if (entryConverter == null)
+                throw new IllegalArgumentException("Snapshot contains the buffer, but no entry converter given");
+            final int entries = input.readInt();
+            bufferContents = new ArrayList<>(entries);
+            for (int i = 0; i < entries; i++)
+                bufferContents.add(UpdateTree.readEntry(entryConverter, input));
+        }
+        return new TreeSnapshot<>(minNodeCapacity, maxNodeCapacity, minIndexNodeCapacity, maxIndexNodeCapacity,
+                maxBufferSize, dataItems, diskDataItems, rootId, height, rootDescriptor, bufferContents);
+    }
+
+    public int getMinNodeCapacity() {
+        return minNodeCapacity;
+    }
+
+    public int getMaxNodeCapacity() {
+        return maxNodeCapacity;
+    }
+
+    public int getMinIndexNodeCapacity() {
+        return minIndexNodeCapacity;
+    }
+
+    public int getMaxIndexNodeCapacity() {
+        return maxIndexNodeCapacity;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Returns the number of data items in the whole tree, i.e. the disk tree and the buffer.
+     *
+     * @return the number of data items in the tree
+     */
+    public int getDataItems() {
+        return dataItems;
+    }
+
+    public int getDiskDataItems() {
+        return diskDataItems;
+    }
+
+    /**
+     * Returns the container id of the disk tree root node.
+     *
+     * @return the root node id, <code>null</code> if the disk tree is empty
+     */
+    public Object getRootId() {
+        return rootId;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Descriptor getRootDescriptor() {
+        return rootDescriptor;
+    }
+
+    /**
+     * Returns the saved buffer contents.
+     *
+     * @return the buffer contents, <code>null</code> if they were not saved
+     */
+    public List<UpdateTree.Entry<E>> getBufferContents() {
+        return (bufferContents == null) ? null : Collections.unmodifiableList(bufferContents);
+    }
+}
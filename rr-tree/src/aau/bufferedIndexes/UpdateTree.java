@@ -18,6 +18,8 @@
 */
 package aau.bufferedIndexes;
 
+import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
 import xxl.core.cursors.Cursor;
 import xxl.core.cursors.filters.Filter;
 import xxl.core.cursors.mappers.Mapper;
@@ -28,16 +30,22 @@ import xxl.core.indexStructures.Descriptor;
 import xxl.core.indexStructures.RTree;
 import xxl.core.indexStructures.Tree;
 import xxl.core.io.Convertable;
+import xxl.core.io.converters.Converter;
 import xxl.core.predicates.DecoratorPredicate;
 import xxl.core.predicates.Equal;
 import xxl.core.predicates.Predicate;
 import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A variant of RTree supporting lazy insertions and deletions.  Instead of data entries, this tree stores lazy
@@ -48,13 +56,41 @@ import java.util.Collection;
  */
 public class UpdateTree<E extends Convertable> extends RTree {
 
-    public final static int KPE_OPERATION_SIZE = new Entry<KPE>(null, OperationType.INSERTION).logicalSize();
+    /**
+     * An output stream that discards everything written to it, used for measuring the serialized object sizes.
+     */
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        public void write(final int b) { }
+
+        public void write(final byte[] b, final int off, final int len) { }
+    };
+
+    /**
+     * The logical size of an operation on a two-dimensional KPE.
+     */
+    public final static int KPE_OPERATION_SIZE = makeKPEOperation().logicalSize();
+
+    private static Entry<KPE> makeKPEOperation() {
+        return new Entry<>(new KPE(new DataID(), new DoublePointRectangle(2), WorkloadOperation.getConverter()),
+                OperationType.INSERTION);
+    }
 
     /**
      * Current size of the buffer in the terms of number of objects.
      */
     private int currSize = 0;
 
+    /**
+     * Current size of the buffer in bytes, as given by the logical sizes of the entries, if counted.
+     */
+    private long currBytes = 0;
+
+    /**
+     * Flag if the entry sizes in bytes are counted.  Measuring them serializes the data, thus it is only done on
+     * request.
+     */
+    private boolean countingBytes = false;
+
     /**
      * Current number of insertions annihilating deletions
      */
@@ -67,6 +103,16 @@ public class UpdateTree<E extends Convertable> extends RTree {
 
     private Function<E, Descriptor> dataDescriptorGetter = null;
 
+    /**
+     * The buffered moves, keyed by the data they replace
+     */
+    private final Map<E, Entry<E>> moves = new HashMap<>();
+
+    /**
+     * The buffered moves, keyed by the data they insert
+     */
+    private final Map<E, Entry<E>> movesByInserted = new HashMap<>();
+
     /* A comparator that disregards entry type */
     private static final Predicate<Object> UNWRAPPING_COMPARATOR =
         new DecoratorPredicate<Object>(Equal.DEFAULT_INSTANCE) {
@@ -78,7 +124,9 @@ public class UpdateTree<E extends Convertable> extends RTree {
         };
 
     /**
-     * Entry class is a lazy tree leaf entry node.
+     * Entry class is a lazy tree leaf entry node.  Besides plain insertions and deletions, an entry may be a move: an
+     * insertion that also deletes the data it replaces.  A move is equal to the plain insertion of its new data, so
+     * that it keeps its identity when it is split into its halves.
      */
     public static final class Entry<E extends Convertable> extends UpdateOperation implements Convertable, HasLogicalSize {
 
@@ -87,6 +135,16 @@ public class UpdateTree<E extends Convertable> extends RTree {
          */
         private final E data;
 
+        /**
+         * The data deleted by this entry if it is a move, <code>null</code> otherwise.
+         */
+        private final E replaced;
+
+        /**
+         * The logical size of this entry, computed on the first request.
+         */
+        private int logicalSize = -1;
+
         /**
          * Creates new insertion or deletion entry with the specified data object.
          * @param data the data to be inserted.
@@ -95,6 +153,56 @@ public class UpdateTree<E extends Convertable> extends RTree {
         public Entry(final E data, final OperationType operationType) {
             super(operationType);
             this.data = data;
+            this.replaced = null;
+        }
+
+        /**
+         * Creates new move entry, replacing one data object with another.
+         * @param data the data to be inserted
+         * @param replaced the data to be deleted
+         */
+        public Entry(final E data, final E replaced) {
+            super(OperationType.INSERTION);
+            if (replaced == null)
+                throw new IllegalArgumentException("Replaced data of a move cannot be null");
+            this.data = data;
+            this.replaced = replaced;
+        }
+
+        /**
+         * Checks if this entry is a move.
+         * @return <code>true</code> if this entry deletes the data it replaces in addition to inserting its data
+         */
+        public boolean isMove() {
+            return replaced != null;
+        }
+
+        /**
+         * Returns the data deleted by this move.
+         * @return the replaced data, <code>null</code> if this entry is not a move
+         */
+        public E getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * Returns the plain insertion half of this move.
+         * @return the insertion of the move data
+         */
+        public Entry<E> getInsertionHalf() {
+            if (!isMove())
+                throw new IllegalStateException("Only a move can be split into halves");
+            return new Entry<>(data, OperationType.INSERTION);
+        }
+
+        /**
+         * Returns the deletion half of this move.
+         * @return the deletion of the replaced data
+         */
+        public Entry<E> getDeletionHalf() {
+            if (!isMove())
+                throw new IllegalStateException("Only a move can be split into halves");
+            return new Entry<>(replaced, OperationType.DELETION);
         }
 
         // TODO javadoc & unit test
@@ -129,11 +237,13 @@ public class UpdateTree<E extends Convertable> extends RTree {
 
         public String toString() {
             return "UpdateTree.Entry " + super.toString() + '\n'
-                    + " Data = " + data.toString();
+                    + " Data = " + data.toString()
+                    + (isMove() ? "\n Replaced = " + replaced.toString() : "");
         }
 
         static public <E extends Convertable> Entry<E> copyEntry(final Entry<E> other) {
-            return new Entry<>(other.getData(), other.getOperationType());
+            return other.isMove() ? new Entry<>(other.getData(), other.getReplaced())
+                    : new Entry<>(other.getData(), other.getOperationType());
         }
 
         public void read(DataInput input) throws IOException {
@@ -148,6 +258,8 @@ public class UpdateTree<E extends Convertable> extends RTree {
         }
 
         public void write(DataOutput output) throws IOException {
+            if (isMove())
+                throw new IllegalStateException("A move must be written by UpdateTree.writeEntry");
             if (getOperationType() == OperationType.INSERTION)
                 output.writeByte(0);
             else
@@ -156,13 +268,33 @@ public class UpdateTree<E extends Convertable> extends RTree {
         }
 
         /**
-         * Returns the logical size of this entry.  It is equal to size of data plus one byte.
+         * Returns the logical size of this entry.  It is equal to the serialized size of data plus one byte, and twice
+         * that for a move, as it is written as its two halves.
          *
          * @return the logical size of this entry 
          */
-        private int logicalSize() {
-            return 39; // TODO: correct only for KPE!
+        public int logicalSize() {
+            if (logicalSize == -1)
+                logicalSize = 1 + serializedSize(data) + (isMove() ? 1 + serializedSize(replaced) : 0);
+            return logicalSize;
+        }
+    }
+
+    /**
+     * Returns the serialized size of an object.
+     *
+     * @param object the object to measure
+     * @return the number of bytes the object writes
+     */
+    public static int serializedSize(final Convertable object) {
+        final DataOutputStream output = new DataOutputStream(NULL_OUTPUT);
+        try {
+            object.write(output);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot measure the size of " + object, e);
         }
+        return output.size();
     }
 
     /**
@@ -187,6 +319,45 @@ public class UpdateTree<E extends Convertable> extends RTree {
         };
     }
 
+    /**
+     * Writes an entry with a converter for plain entries, writing a move as its two halves.
+     *
+     * @param converter the converter for plain entries
+     * @param output    the output to write to
+     * @param entry     the entry to write
+     * @param <E>       the data type
+     * @throws IOException if the output cannot be written
+     */
+    public static <E extends Convertable> void writeEntry(final Converter<Entry<E>> converter, final DataOutput output,
+                                                          final Entry<E> entry) throws IOException {
+        output.writeBoolean(entry.isMove());
+        if (entry.isMove()) {
+            converter.write(output, entry.getInsertionHalf());
+            converter.write(output, entry.getDeletionHalf());
+        }
+        else
+            converter.write(output, entry);
+    }
+
+    /**
+     * Reads an entry written by {@link #writeEntry}.
+     *
+     * @param converter the converter for plain entries
+     * @param input     the input to read from
+     * @param <E>       the data type
+     * @return the read entry
+     * @throws IOException if the input cannot be read
+     */
+    public static <E extends Convertable> Entry<E> readEntry(final Converter<Entry<E>> converter,
+                                                             final DataInput input) throws IOException {
+        final boolean move = input.readBoolean();
+        final Entry<E> entry = converter.read(input);
+        if (!move)
+            return entry;
+        final Entry<E> deletionHalf = converter.read(input);
+        return new Entry<>(entry.getData(), deletionHalf.getData());
+    }
+
     /**
      * This is the basic method to create a new tree.  This method is overrided to support lazy tree
      * node entry type.
@@ -225,6 +396,24 @@ public class UpdateTree<E extends Convertable> extends RTree {
         return currSize;
     }
 
+    /**
+     * Returns the current size of the tree in bytes.
+     * @return the sum of logical sizes of the entries in the tree, 0 if they are not counted.
+     */
+    public long getCurrentBytes() {
+        return currBytes;
+    }
+
+    /**
+     * Starts counting the logical sizes of the entries in bytes.
+     * @throws IllegalStateException if the tree is not empty
+     */
+    public void countBytes() {
+        if (currSize != 0)
+            throw new IllegalStateException("Cannot start counting bytes in a non-empty tree");
+        countingBytes = true;
+    }
+
     public int getNumOfIDAnnihilations() {
         return annihilationsID;
     }
@@ -241,6 +430,14 @@ public class UpdateTree<E extends Convertable> extends RTree {
      * @see xxl.core.indexStructures.Tree#insert(Object,xxl.core.indexStructures.Descriptor,int)
      */
     public void insertWithAnnihilation(final E data) {
+        final Entry<E> move = moves.get(data);
+        if (move != null) {
+            // Annihilate the deletion half of the move, leaving its insertion half
+            removeExactEntry(move);
+            insertEntry(move.getInsertionHalf());
+            annihilationsID++;
+            return;
+        }
         final Entry<E> earlierEntry = removeAnyEntry(data);
         if (earlierEntry == null) {
             // If we didn't find and delete matching deletion, insert the insertion into the tree
@@ -255,7 +452,99 @@ public class UpdateTree<E extends Convertable> extends RTree {
     // TODO: javadoc, test
     public void insertEntry(final Entry<E> entry) {
         super.insert(entry);
+        if (entry.isMove()) {
+            moves.put(entry.getReplaced(), entry);
+            movesByInserted.put(entry.getData(), entry);
+        }
         currSize++;
+        if (countingBytes)
+            currBytes += entry.logicalSize();
+    }
+
+    /**
+     * Checks if a move from one data object to another can be added to the tree as a single entry.  This is the case
+     * if there are no entries for the new data, neither of the objects is replaced by a move already, and the old data
+     * is either absent or inserted by an entry.
+     *
+     * @param oldData the data to be deleted
+     * @param newData the data to be inserted
+     * @return <code>true</code> if {@link #moveWithAnnihilation} can be called for these objects
+     */
+    public boolean canMoveWithAnnihilation(final E oldData, final E newData) {
+        if (oldData.equals(newData) || moves.containsKey(oldData) || moves.containsKey(newData))
+            return false;
+        if (findAnyEntry(newData) != null)
+            return false;
+        final Entry<E> oldEntry = findAnyEntry(oldData);
+        return (oldEntry == null) || oldEntry.isInsertion();
+    }
+
+    /**
+     * Moves a data object to a new data object.  If there is an insertion entry for the old data, it is replaced by
+     * the insertion of the new data, keeping whatever the replaced entry deleted.  Otherwise, inserts a move entry.
+     * Must be allowed by {@link #canMoveWithAnnihilation}.
+     *
+     * @param oldData the data to be deleted
+     * @param newData the data to be inserted
+     * @return the annihilated insertion entry for the old data, <code>null</code> if there was none
+     */
+    public Entry<E> moveWithAnnihilation(final E oldData, final E newData) {
+        assert canMoveWithAnnihilation(oldData, newData);
+        final Entry<E> earlierEntry = removeAnyEntry(oldData);
+        if (earlierEntry == null) {
+            insertEntry(new Entry<>(newData, oldData));
+            return null;
+        }
+        assert earlierEntry.isInsertion();
+        annihilationsDI++;
+        insertEntry(earlierEntry.isMove() ? new Entry<>(newData, earlierEntry.getReplaced())
+                : new Entry<>(newData, OperationType.INSERTION));
+        return earlierEntry;
+    }
+
+    /**
+     * Returns the move that deletes the given data.
+     *
+     * @param data the replaced data
+     * @return the move entry or <code>null</code> if there is none
+     */
+    public Entry<E> getMoveReplacing(final E data) {
+        return moves.get(data);
+    }
+
+    /**
+     * Returns the move that inserts the given data.
+     *
+     * @param data the inserted data
+     * @return the move entry or <code>null</code> if there is none
+     */
+    public Entry<E> getMoveInserting(final E data) {
+        return movesByInserted.get(data);
+    }
+
+    /**
+     * Returns the deletion halves of the moves whose replaced data overlaps a query descriptor.  The replaced data is
+     * not indexed, thus all the moves are examined.
+     *
+     * @param queryDescriptor the query descriptor
+     * @return a cursor over the deletion halves
+     */
+    public Cursor<Entry<E>> queryMovedAway(final Descriptor queryDescriptor) {
+        final Collection<Entry<E>> results = new ArrayList<>();
+        for (final Entry<E> move : moves.values()) {
+            if (dataDescriptorGetter.invoke(move.getReplaced()).overlaps(queryDescriptor))
+                results.add(move.getDeletionHalf());
+        }
+        return new IteratorCursor<>(results.iterator());
+    }
+
+    /**
+     * Returns the number of move entries in the tree.
+     *
+     * @return the number of moves
+     */
+    public int getNumOfMoves() {
+        return moves.size();
     }
 
     // TODO: maybe remove?
@@ -346,17 +635,45 @@ public class UpdateTree<E extends Convertable> extends RTree {
         else {
             annihilationsDI++;
             assert earlierEntry.isInsertion();
+            // Annihilating the insertion half of a move leaves its deletion half
+            if (earlierEntry.isMove())
+                insertEntry(earlierEntry.getDeletionHalf());
             return earlierEntry.getData();
         }
     }
 
-    private Entry<E> removeAnyEntry(final E data) {
+    /**
+     * Returns the entry of any type for the given data.
+     *
+     * @param data the data to look for
+     * @return the entry or <code>null</code> if there is none
+     */
+    public Entry<E> findAnyEntry(final E data) {
+        //noinspection unchecked
+        final Cursor<Entry<E>> candidates = super.query(dataDescriptorGetter.invoke(data));
+        Entry<E> result = null;
+        while ((result == null) && candidates.hasNext()) {
+            final Entry<E> candidate = candidates.next();
+            if (candidate.getData().equals(data))
+                result = candidate;
+        }
+        candidates.close();
+        return result;
+    }
+
+    /**
+     * Removes the entry of any type for the given data, without annihilating it with anything.
+     *
+     * @param data the data to remove the entry for
+     * @return the removed entry or <code>null</code> if there was none
+     */
+    public Entry<E> removeAnyEntry(final E data) {
         final Object wrappedEntry = new Entry<>(data, OperationType.INSERTION);
         // Remove any entry with this data, disregarding the entry type.
         //noinspection unchecked
         final Entry<E> result = (Entry<E>)super.remove(wrappedEntry, UNWRAPPING_COMPARATOR);
         if (result != null)
-            currSize--;
+            removed(result);
         return result;
     }
 
@@ -364,10 +681,20 @@ public class UpdateTree<E extends Convertable> extends RTree {
         //noinspection unchecked
         final Entry<E> result = (Entry<E>)super.remove(object, Equal.DEFAULT_INSTANCE);
         if (result != null)
-            currSize--;
+            removed(result);
         return result;
     }
 
+    private void removed(final Entry<E> entry) {
+        if (entry.isMove()) {
+            moves.remove(entry.getReplaced());
+            movesByInserted.remove(entry.getData());
+        }
+        currSize--;
+        if (countingBytes)
+            currBytes -= entry.logicalSize();
+    }
+
     /**
      * Removes all data in the tree.
      */
@@ -375,7 +702,10 @@ public class UpdateTree<E extends Convertable> extends RTree {
         if (currSize == 0)
             return;
         super.clear();
+        moves.clear();
+        movesByInserted.clear();
         currSize = 0;
+        currBytes = 0;
     }
 
     /**
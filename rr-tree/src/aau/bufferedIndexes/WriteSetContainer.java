@@ -0,0 +1,182 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import xxl.core.collections.containers.ConstrainedDecoratorContainer;
+import xxl.core.collections.containers.Container;
+import xxl.core.functions.Constant;
+import xxl.core.util.XXLSystem;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A container decorator that defers the object updates of a batch and writes each updated object once at the end of
+ * the batch, in the ascending order of the object ids.  With a block file container the ids are the block numbers,
+ * thus the random writes of a batch become a nearly sequential pass over the file.  The objects updated in a batch are
+ * returned by {@link #get} from the write set until it is flushed, the objects removed in a batch are dropped from it.
+ * The insertions of a batch reserve their ids right away and are deferred like the updates, so that the new objects
+ * are written in the id order too.
+ *
+ * Like the {@link xxl.core.collections.containers.io.BufferedContainer} in the clone mode, the write set keeps a copy
+ * of each updated object and returns a copy on each read, so that the objects read from it may be modified without
+ * modifying the pending write.  The object ids must be comparable.
+ */
+public class WriteSetContainer extends ConstrainedDecoratorContainer {
+
+    /**
+     * A deferred update of an object
+     */
+    private static final class PendingWrite {
+
+        Object object;
+
+        boolean unfix;
+
+        PendingWrite(final Object object, final boolean unfix) {
+            this.object = object;
+            this.unfix = unfix;
+        }
+    }
+
+    /**
+     * The pending updates of the current batch by the object id, <code>null</code> outside of a batch
+     */
+    private Map<Object, PendingWrite> writeSet = null;
+
+    /**
+     * The number of updates that were coalesced with a later update of the same object or with its removal
+     */
+    private int coalescedUpdates = 0;
+
+    /**
+     * Creates a new write set container.
+     *
+     * @param container the underlying container
+     */
+    public WriteSetContainer(final Container container) {
+        super(container);
+    }
+
+    /**
+     * Starts deferring the updates.
+     */
+    public void beginBatch() {
+        if (writeSet != null)
+            throw new IllegalStateException("A write batch is already in progress");
+        writeSet = new TreeMap<>();
+    }
+
+    /**
+     * Writes the objects updated in the current batch to the underlying container in the ascending id order and stops
+     * deferring the updates.
+     */
+    public void flushBatch() {
+        if (writeSet == null)
+            throw new IllegalStateException("No write batch is in progress");
+        final Map<Object, PendingWrite> toWrite = writeSet;
+        writeSet = null;
+        for (final Map.Entry<Object, PendingWrite> write : toWrite.entrySet())
+            container.update(write.getKey(), write.getValue().object, write.getValue().unfix);
+    }
+
+    /**
+     * Returns <code>true</code> if the updates are currently deferred.
+     *
+     * @return <code>true</code> if a write batch is in progress
+     */
+    public boolean inBatch() {
+        return writeSet != null;
+    }
+
+    /**
+     * Returns the number of the updates that were not written as they were superseded in the same batch.
+     *
+     * @return the number of the coalesced updates
+     */
+    public int getCoalescedUpdates() {
+        return coalescedUpdates;
+    }
+
+    @Override
+    public Object get(final Object id, final boolean unfix) throws NoSuchElementException {
+        if (writeSet != null) {
+            final PendingWrite write = writeSet.get(id);
+            if (write != null)
+                return XXLSystem.copyObject(write.object);
+        }
+        return super.get(id, unfix);
+    }
+
+    @Override
+    public Object insert(final Object object, final boolean unfix) {
+        if (writeSet == null)
+            return super.insert(object, unfix);
+        final Object id = container.reserve(new Constant<>(object));
+        writeSet.put(id, new PendingWrite(XXLSystem.copyObject(object), unfix));
+        return id;
+    }
+
+    @Override
+    public void update(final Object id, final Object object, final boolean unfix) throws NoSuchElementException {
+        if (writeSet == null) {
+            super.update(id, object, unfix);
+            return;
+        }
+        final PendingWrite write = writeSet.get(id);
+        if (write == null)
+            writeSet.put(id, new PendingWrite(XXLSystem.copyObject(object), unfix));
+        else {
+            write.object = XXLSystem.copyObject(object);
+            write.unfix = unfix;
+            coalescedUpdates++;
+        }
+    }
+
+    @Override
+    public void remove(final Object id) throws NoSuchElementException {
+        if ((writeSet != null) && (writeSet.remove(id) != null))
+            coalescedUpdates++;
+        super.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        if (writeSet != null)
+            writeSet.clear();
+        super.clear();
+    }
+
+    @Override
+    public void flush() {
+        if (writeSet != null) {
+            flushBatch();
+            beginBatch();
+        }
+        super.flush();
+    }
+
+    @Override
+    public void close() {
+        if (writeSet != null)
+            flushBatch();
+        super.close();
+    }
+}
@@ -37,8 +37,14 @@ import xxl.core.indexStructures.Descriptor;
 import xxl.core.indexStructures.RTree;
 import xxl.core.indexStructures.Tree;
 import xxl.core.io.Convertable;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
 import xxl.core.predicates.Predicate;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.util.CopyOnWrite;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
 
@@ -50,7 +56,13 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
     /**
      * The common ancestor for various RR-tree disk tree nodes
      */
-    public abstract class Node extends RTree.Node implements IRRTreeDiskNode<E>, Cloneable {
+    public abstract class Node extends RTree.Node implements IRRTreeDiskNode<E>, CopyOnWrite, Cloneable {
+
+        /**
+         * Flag if the entry list is shared with a copy of this node.  A shared list is copied before the first
+         * modification of the node.
+         */
+        private boolean sharedEntries = false;
 
         /* Constructors */
 
@@ -70,22 +82,54 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
             }
         }
 
-        // TODO: push down to RRDiskUpdateTree?
-        Set<?> hashedEntries = null;
+        /**
+         * Makes a copy of this node that shares the entry list with it until either of them is modified.  The entries
+         * themselves are never modified in place, an index entry is replaced instead, thus they are shared for good.
+         *
+         * @return the copy of this node
+         */
+        @Override
+        public Node share() {
+            try {
+                final Node result = (Node)clone();
+                sharedEntries = true;
+                result.sharedEntries = true;
+                return result;
+            }
+            catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Makes the entry list private to this node if it is shared with a copy.  Must be called before any
+         * modification of the entries, and only then, as it copies a shared list.
+         */
+        protected final void ownEntries() {
+            if (!sharedEntries)
+                return;
+            //noinspection unchecked
+            entries = new ArrayList(entries);
+            sharedEntries = false;
+            entriesReplaced();
+        }
 
-        boolean haveHashedEntries = false;
+        /**
+         * Does nothing, called after {@link #ownEntries} has replaced the entry list, if overridden.
+         */
+        protected void entriesReplaced() {
+        }
 
+        /**
+         * Does nothing, the nodes do not index their entries unless overridden.
+         */
         public void indexEntries() {
-            // TODO: generify properly
-            //noinspection unchecked
-            hashedEntries = new HashSet(getEntries());
-            haveHashedEntries = true;
         }
 
+        /**
+         * Does nothing, the nodes do not index their entries unless overridden.
+         */
         public void deleteEntryIndex() {
-            hashedEntries.clear();
-            hashedEntries = null;
-            haveHashedEntries = false;
         }
 
         /* Entry data */
@@ -98,11 +142,24 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
             grow(data, null);
         }
 
+        /**
+         * Adds a new data element to the node, making its entry list private first.
+         *
+         * @param data an element to add
+         * @param path the path from the root to this node
+         */
+        @Override
+        protected void grow(final Object data, final Stack path) {
+            ownEntries();
+            super.grow(data, path);
+        }
+
         /**
          * Removes a data element from the node, both index and leaf level.
          * @param data an element to remove
          */
         public void remove(final Object data) {
+            ownEntries();
             entries.remove(data);
         }
 
@@ -113,6 +170,7 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
          */
         public void addEntriesFrom(final IRRTreeDiskNode<E> n) {
             // TODO: mixing node types should be forbidden
+            ownEntries();
             ((ArrayList<?>)entries).ensureCapacity(number() + n.number());
             for (final Object entry : n.getEntries()) {
                 grow(entry);
@@ -120,22 +178,53 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
         }
 
         /**
-         * Returns a collection of this node entries.  It should not be a part of a public interface, it's
-         * intended for use by GroupSplit algorithms only.
+         * Replaces an index entry of this node with another one at the same position.
+         *
+         * @param oldEntry the entry to replace
+         * @param newEntry the entry to replace it with
+         */
+        public void replaceEntry(final IRRTreeIndexEntry<E> oldEntry, final IRRTreeIndexEntry<E> newEntry) {
+            assert level > 0;
+            ownEntries();
+            //noinspection unchecked
+            final List<Object> entryList = (List<Object>)entries;
+            for (int i = 0; i < entryList.size(); i++) {
+                if (entryList.get(i) == oldEntry) {
+                    entryList.set(i, newEntry);
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Index entry " + oldEntry + " not found in the node");
+        }
+
+        /**
+         * Returns a read-only view of this node entries.
          * @return a collection of entries.
          */
         public final Collection<?> getEntries() {
+            //noinspection unchecked
+            return Collections.unmodifiableList((List<Object>)entries);
+        }
+
+        /**
+         * Returns a collection of this node entries that may be modified.  It should not be a part of a public
+         * interface, it's intended for use by GroupSplit algorithms and node converters only.  The collection is made
+         * private to this node first.
+         * @return a collection of entries.
+         */
+        public final Collection<?> getModifiableEntries() {
+            ownEntries();
             return entries;
         }
 
         /**
-         * Returns a collection of this (non-leaf) node entries.
+         * Returns a read-only view of this (non-leaf) node entries.
          * @return a collection of IndexEntry entries
          */
         public Collection<IRRTreeIndexEntry<E>> getNonLeafNodeEntries() {
             assert level > 0;
             //noinspection unchecked
-            return entries;
+            return Collections.unmodifiableList((List<IRRTreeIndexEntry<E>>)entries);
         }
 
         /* Queries */
@@ -156,6 +245,22 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
             return (IRRTreeIndexEntry<E>)super.chooseSubtreeByDescriptor(descriptor(e));
         }
 
+        /**
+         * Chooses the subtrees for a batch of objects by sweeping the objects sorted by their MBRs against the child
+         * MBRs, see {@link SubtreeChooser}.
+         *
+         * @param objects the objects to choose the subtrees for
+         * @return the chosen child entry for every object, in the object order
+         */
+        public List<IRRTreeIndexEntry<E>> chooseSubtreesByObjects(final List<?> objects) {
+            assert level > 0;
+            final List<Descriptor> descriptors = new ArrayList<>(objects.size());
+            for (final Object object : objects)
+                descriptors.add(descriptor(object));
+            //noinspection unchecked
+            return new SubtreeChooser<>((Collection<IRRTreeIndexEntry<E>>)entries).choose(descriptors);
+        }
+
         /* Getters */
 
         /**
@@ -163,7 +268,8 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
          * @return overflow value
          */
         public boolean overflows() {
-            return super.overflows();
+            return super.overflows()
+                    || ((level == 0) && (leafCodec != null) && leafCodec.overflows(entries, maxNodeBytes));
         }
 
         /**
@@ -210,11 +316,19 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
          * @param piggybackingInfo the piggybacking info that holds numbers of candidate operations
          */
         public void limitNumberOfOperations(final IRRTreeLeafPiggybackingInfo piggybackingInfo) {
+            if ((level == 0) && (leafCodec != null)) {
+                final int excessInsertions = piggybackingInfo.getNumOfSizeIncreasingOps()
+                        - compressedLeafHeadroom(entries);
+                if (excessInsertions > 0)
+                    piggybackingInfo.limitSizeIncreasingOps(excessInsertions);
+            }
             int potentialNodeSize = number() + piggybackingInfo.nodeSizeChange();
-            if (potentialNodeSize < getMinNodeCapacity())
-                piggybackingInfo.limitSizeDecreasingOps(getMinNodeCapacity() - potentialNodeSize);
-            else if (potentialNodeSize > getMaxNodeCapacity())
-                piggybackingInfo.limitSizeIncreasingOps(potentialNodeSize - getMaxNodeCapacity());
+            final int minCapacity = getMinNodeCapacity(level());
+            final int maxCapacity = getMaxNodeCapacity(level());
+            if (potentialNodeSize < minCapacity)
+                piggybackingInfo.limitSizeDecreasingOps(minCapacity - potentialNodeSize);
+            else if (potentialNodeSize > maxCapacity)
+                piggybackingInfo.limitSizeIncreasingOps(potentialNodeSize - maxCapacity);
         }
         
         /**
@@ -295,7 +409,7 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
     /**
      * The index entry class for the various RR-tree disk tree implementations
      */
-    public class IndexEntry extends RTree.IndexEntry implements IRRTreeIndexEntry<E> {
+    public class IndexEntry extends RTree.IndexEntry implements IRRTreeIndexEntry<E>, Cloneable {
 
         /**
          * Creates a new RR-Tree IndexEntry on a specified parent level
@@ -306,6 +420,23 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
             super(parentLevel);
         }
 
+        /**
+         * Makes a copy of this index entry that refers to another node, sharing the descriptor.
+         *
+         * @param id the id of the node referred to by the copy
+         * @return the copy of this index entry
+         */
+        public IndexEntry withId(final Object id) {
+            try {
+                final IndexEntry result = (IndexEntry)clone();
+                result.initialize(id);
+                return result;
+            }
+            catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
         /**
          * Retrieves the node pointed to by this index entry from container.
          *
@@ -371,6 +502,37 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
      */
     private int maxNodeCapacity = -1;
 
+    /**
+     * Minimum allowed number of entries in an index node
+     */
+    private int minIndexNodeCapacity = -1;
+
+    /**
+     * Maximum allowed number of entries in an index node
+     */
+    private int maxIndexNodeCapacity = -1;
+
+    /**
+     * Flag if the index entry MBRs are rounded to and stored as floats
+     */
+    private boolean floatIndexMBRs = false;
+
+    /**
+     * The codec of the compressed leaf nodes, <code>null</code> if the leaf nodes are not compressed or
+     * {@link #nodeConverter} has not given the leaf entry converter yet
+     */
+    private CompressedLeafCodec leafCodec = null;
+
+    /**
+     * The maximum size of a compressed leaf node in bytes, -1 if the leaf nodes are not compressed
+     */
+    private int maxNodeBytes = -1;
+
+    /**
+     * Flag if the new nodes are allocated in the container near their siblings or children
+     */
+    private boolean clusteredAllocation = false;
+
     /**
      * LRU caching strategy for the disk tree nodes
      */
@@ -386,6 +548,11 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
      */
     ObjectTracer<E> objectTracer = null;
 
+    /**
+     * The leaf location index maintained on node writes, if any
+     */
+    private LeafLocationIndex<E> leafLocationIndex = null;
+
     /* Initialization */
 
     /**
@@ -406,10 +573,190 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
         this.getId = getId;
         this.minNodeCapacity = minNodeCapacity;
         this.maxNodeCapacity = maxNodeCapacity;
+        this.minIndexNodeCapacity = minNodeCapacity;
+        this.maxIndexNodeCapacity = maxNodeCapacity;
         this.objectTracer = objectTracer;
         return this;
     }
 
+    /**
+     * Sets different node capacities for the index nodes than for the leaf nodes.  Must be called on an empty tree
+     * after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of an index node
+     * @param maxCapacity the maximum capacity of an index node
+     */
+    public void setIndexNodeCapacities(final int minCapacity, final int maxCapacity) {
+        if (rootEntry != null)
+            throw new IllegalStateException("Changing the node capacities of a non-empty tree");
+        if ((minCapacity < 1) || (maxCapacity < 2 * minCapacity))
+            throw new IllegalArgumentException("Invalid index node capacities " + minCapacity + '-' + maxCapacity);
+        minIndexNodeCapacity = minCapacity;
+        maxIndexNodeCapacity = maxCapacity;
+        initializeNodeCapacities();
+    }
+
+    /**
+     * Sets different node capacities for the leaf nodes than given to {@link #initialize}, keeping the index node
+     * capacities.  Must be called on an empty tree after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of a leaf node
+     * @param maxCapacity the maximum capacity of a leaf node
+     */
+    public void setLeafNodeCapacities(final int minCapacity, final int maxCapacity) {
+        if (rootEntry != null)
+            throw new IllegalStateException("Changing the node capacities of a non-empty tree");
+        if ((minCapacity < 1) || (maxCapacity < 2 * minCapacity))
+            throw new IllegalArgumentException("Invalid leaf node capacities " + minCapacity + '-' + maxCapacity);
+        minNodeCapacity = minCapacity;
+        maxNodeCapacity = maxCapacity;
+        initializeNodeCapacities();
+    }
+
+    private void initializeNodeCapacities() {
+        super.initialize(getDescriptor, (Container)determineContainer.invoke(), minIndexNodeCapacity,
+                maxIndexNodeCapacity, minNodeCapacity, maxNodeCapacity);
+    }
+
+    /**
+     * Stores the index entry MBRs as single precision floats, rounded outwards, in the nodes written from now on.
+     * The rounded MBRs contain the exact ones, thus no query results are lost, while the leaf entries are stored
+     * exactly.  Must be called on an empty tree before {@link #nodeConverter}.
+     */
+    public void enableFloatIndexMBRs() {
+        if (rootEntry != null)
+            throw new IllegalStateException("Changing the MBR precision of a non-empty tree");
+        floatIndexMBRs = true;
+    }
+
+    /**
+     * Stores the leaf nodes in the compressed layout of {@link CompressedLeafCodec} in the nodes written from now on.
+     * A leaf node then overflows if it either has more entries than its maximum capacity or its compressed size
+     * exceeds the given number of bytes, thus the maximum leaf node capacity should be raised with
+     * {@link #setLeafNodeCapacities} to let the compression increase the fanout.  Must be called on an empty tree
+     * before {@link #nodeConverter}, which gives the codec the leaf entry converter.
+     *
+     * @param nodeBytes the maximum size of a leaf node in bytes
+     */
+    public void enableCompressedLeaves(final int nodeBytes) {
+        if (rootEntry != null)
+            throw new IllegalStateException("Changing the leaf node layout of a non-empty tree");
+        if (nodeBytes <= CompressedLeafCodec.HEADER_SIZE)
+            throw new IllegalArgumentException("Invalid leaf node size " + nodeBytes);
+        maxNodeBytes = nodeBytes;
+    }
+
+    /**
+     * Allocates the nodes stored from now on near the related nodes through {@link Container#reserveNear}: the nodes
+     * created by a split near the split node, the other new index nodes near their first child.
+     */
+    public void enableClusteredAllocation() {
+        clusteredAllocation = true;
+    }
+
+    /**
+     * Returns how full the given entries would make a compressed leaf node.
+     *
+     * @param level   the node level
+     * @param entries the node entries
+     * @return the compressed node size as a fraction of its maximum size, or 0 if the nodes at the given level are not
+     *         compressed
+     */
+    public double compressedPageFill(final int level, final Collection<?> entries) {
+        if ((level != 0) || (leafCodec == null))
+            return 0;
+        return leafCodec.nodeSize(entries) / (double)maxNodeBytes;
+    }
+
+    /**
+     * Returns how many entries may be added to a leaf node with the given entries before it may overflow in bytes.
+     *
+     * @param entries the leaf node entries
+     * @return the number of entries that surely fit into the compressed leaf node, or {@link Integer#MAX_VALUE} if
+     *         the leaf nodes are not compressed
+     */
+    public int compressedLeafHeadroom(final Collection<?> entries) {
+        if (leafCodec == null)
+            return Integer.MAX_VALUE;
+        return Math.max(0, (maxNodeBytes - leafCodec.nodeSize(entries)) / leafCodec.maxInsertionGrowth());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean compressedLeavesOverflow(final int level, final Iterable<? extends Collection<?>> nodeContents) {
+        if ((level != 0) || (leafCodec == null))
+            return false;
+        for (final Collection<?> entries : nodeContents)
+            if (leafCodec.overflows(entries, maxNodeBytes))
+                return true;
+        return false;
+    }
+
+    /**
+     * Gets a suitable converter to deserialize the nodes of this tree, storing the index entry MBRs as floats if
+     * enabled by {@link #enableFloatIndexMBRs} and the leaf nodes compressed if enabled by
+     * {@link #enableCompressedLeaves}.
+     *
+     * @param objectConverter a converter to convert the data objects stored in the tree, through which the compressed
+     *                        leaf entries are taken apart and put together
+     * @param dimensions number of data dimensions
+     * @return a converter for deserializing the nodes of this tree
+     */
+    @Override
+    public Converter nodeConverter(final Converter objectConverter, final int dimensions) {
+        if (maxNodeBytes > 0)
+            leafCodec = new CompressedLeafCodec(objectConverter, deletionsLikeInsertions(), dimensions);
+        if (!floatIndexMBRs && (leafCodec == null))
+            return super.nodeConverter(objectConverter, dimensions);
+        final Converter descriptorConverter = floatIndexMBRs ? new FloatMBRConverter(dimensions)
+                : new ConvertableConverter(new Function() {
+                    public Object invoke() {
+                        return new DoublePointRectangle(dimensions);
+                    }
+                });
+        if (leafCodec == null)
+            return nodeConverter(objectConverter, indexEntryConverter(descriptorConverter));
+        return new CompressedLeafNodeConverter(objectConverter, indexEntryConverter(descriptorConverter));
+    }
+
+    /**
+     * The node converter that writes the leaf nodes in the compressed layout and the index nodes as usual.
+     */
+    private class CompressedLeafNodeConverter extends NodeConverter {
+
+        CompressedLeafNodeConverter(final Converter objectConverter, final Converter indexEntryConverter) {
+            super(objectConverter, indexEntryConverter);
+        }
+
+        public Object read(final DataInput dataInput, final Object object) throws IOException {
+            final Node node = createNode(dataInput.readShort());
+            final int number = dataInput.readInt();
+            if (node.level() == 0) {
+                //noinspection unchecked
+                leafCodec.read(dataInput, number, (Collection<Object>)node.getModifiableEntries());
+            }
+            else {
+                //noinspection unchecked
+                final Collection<Object> entries = (Collection<Object>)node.getModifiableEntries();
+                for (int i = 0; i < number; i++)
+                    entries.add(indexEntryConverter.read(dataInput, createIndexEntry(node.level())));
+            }
+            return node;
+        }
+
+        public void write(final DataOutput dataOutput, final Object object) throws IOException {
+            final Node node = (Node)object;
+            if (node.level() > 0) {
+                super.write(dataOutput, object);
+                return;
+            }
+            dataOutput.writeShort(0);
+            dataOutput.writeInt(node.number());
+            leafCodec.write(dataOutput, node.getEntries());
+        }
+    }
+
     /* Factories */
 
     /**
@@ -437,6 +784,8 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
      */
     public IRRTreeIndexEntry<E> computeIndexEntry(final IRRTreeDiskNode<E> newNode) {
         final Descriptor nodeDescriptor = newNode.computeDescriptor();
+        if (floatIndexMBRs)
+            FloatMBRConverter.roundOutward((DoublePointRectangle)nodeDescriptor);
         final IRRTreeIndexEntry<E> nodeEntry = createIndexEntry(newNode.level() + 1);
         nodeEntry.initialize(nodeDescriptor);
         return nodeEntry;
@@ -445,23 +794,43 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
     /* Tree parameter getters */
 
     /**
-     * Returns the minimum allowed number of entries in a node.
+     * Returns the minimum allowed number of entries in a leaf node.
      *
-     * @return the minimum allowed number of entries in a node
+     * @return the minimum allowed number of entries in a leaf node
      */
     public int getMinNodeCapacity() {
         return minNodeCapacity;
     }
 
     /**
-     * Returns the maximum allowed number of entries in a node.
+     * Returns the maximum allowed number of entries in a leaf node.
      *
-     * @return the maximum allowed number of entries in a node
+     * @return the maximum allowed number of entries in a leaf node
      */
     public int getMaxNodeCapacity() {
         return maxNodeCapacity;
     }
 
+    /**
+     * Returns the minimum allowed number of entries in a node at a given level.
+     *
+     * @param level the node level
+     * @return the minimum allowed number of entries in a node at a given level
+     */
+    public int getMinNodeCapacity(final int level) {
+        return (level == 0) ? minNodeCapacity : minIndexNodeCapacity;
+    }
+
+    /**
+     * Returns the maximum allowed number of entries in a node at a given level.
+     *
+     * @param level the node level
+     * @return the maximum allowed number of entries in a node at a given level
+     */
+    public int getMaxNodeCapacity(final int level) {
+        return (level == 0) ? maxNodeCapacity : maxIndexNodeCapacity;
+    }
+
     /**
      * Returns the number of data items in the tree.
      * @return the number of data items in the tree
@@ -498,6 +867,27 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
         setNewRootNode(newRootEntry);
     }
 
+    /**
+     * Reopens a tree previously stored in the container.  Must be called right after {@link #initialize}.  Does not
+     * read any nodes.
+     *
+     * @param rootId         the container id of the root node, <code>null</code> if the stored tree is empty
+     * @param height         the height of the stored tree
+     * @param rootDescriptor the MBR descriptor of the root node
+     * @param dataItems      the number of data items in the stored tree
+     */
+    public void reopen(final Object rootId, final int height, final Descriptor rootDescriptor, final int dataItems) {
+        if (rootEntry != null)
+            throw new IllegalStateException("Reopening a non-empty tree");
+        this.dataItems = dataItems;
+        if (rootId == null)
+            return;
+        final IRRTreeIndexEntry<E> newRootEntry = createIndexEntry(height);
+        newRootEntry.initialize((Container)determineContainer.invoke(), rootId);
+        newRootEntry.initialize(rootDescriptor);
+        setNewRootNode(newRootEntry);
+    }
+
     public void setNewRootNode(final IRRTreeIndexEntry<E> newRootEntry) {
         rootEntry = (Tree.IndexEntry)newRootEntry;
         //noinspection AssignmentToNull
@@ -544,14 +934,40 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
      * @return new index entry
      */
     public IRRTreeIndexEntry<E> storeNode(final IRRTreeDiskNode<E> newNode, final boolean alwaysUnfix) {
+        return storeNode(newNode, alwaysUnfix, null);
+    }
+
+    /**
+     * Stores node in the container and computes its index entry.  With the clustered allocation the node is allocated
+     * near its sibling, if given, and an index node otherwise near its first child.
+     *
+     * @param newNode node to store and compute index entry for
+     * @param alwaysUnfix if <code>true</code>, node should be unfixed in the buffer regardless of caching strategy
+     * @param siblingId the container id of a sibling node to allocate the node near, <code>null</code> if none
+     * @return new index entry
+     */
+    private IRRTreeIndexEntry<E> storeNode(final IRRTreeDiskNode<E> newNode, final boolean alwaysUnfix,
+                                           final Object siblingId) {
         if (newNode.number() == 0) return null;
         if (newNode.overflows())
             throw new IllegalStateException("AbstractRRDiskTree.storeNode: overflow, entries = " + newNode.number());
 
         final IRRTreeIndexEntry<E> nodeEntry = computeIndexEntry(newNode);
         final Container container = (Container)determineContainer.invoke();
-        final Object id = container.insert(newNode, alwaysUnfix || !cachingStrategy.shouldBeFixed(newNode));
+        final boolean unfix = alwaysUnfix || !cachingStrategy.shouldBeFixed(newNode);
+        Object nearId = null;
+        if (clusteredAllocation)
+            nearId = (siblingId != null || newNode.level() == 0) ? siblingId
+                    : newNode.getNonLeafNodeEntries().iterator().next().id();
+        final Object id;
+        if (nearId != null) {
+            id = container.reserveNear(new Constant<>(newNode), nearId);
+            container.update(id, newNode, unfix);
+        }
+        else
+            id = container.insert(newNode, unfix);
         nodeEntry.initialize(container, id);
+        nodeWritten(id, newNode);
 
         return nodeEntry;
     }
@@ -569,15 +985,19 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
                                                  final IRRTreeIndexEntry<E> originalEntry,
                                                  final IRRTreeDiskNode<E> originalNode) {
         final List<IRRTreeIndexEntry<E>> indexEntries = new ArrayList<>();
+        Object siblingId = (originalEntry != null) ? originalEntry.id() : null;
         for (final IRRTreeDiskNode<E> node : nodes) {
             if (node == originalNode && (originalEntry != null)) {
                 final IRRTreeIndexEntry<E> newEntry = takeOverNode(node, originalEntry, true);
                 indexEntries.add(newEntry);
             }
             else {
-                final IRRTreeIndexEntry<E> newEntry = storeNode(node, true);
-                if (newEntry != null)
+                final IRRTreeIndexEntry<E> newEntry = storeNode(node, true, siblingId);
+                if (newEntry != null) {
                     indexEntries.add(newEntry);
+                    if (siblingId == null)
+                        siblingId = newEntry.id();
+                }
             }
         }
         return indexEntries;
@@ -601,10 +1021,20 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
         final Container container = (Container)determineContainer.invoke();
         nodeEntry.initialize(container, oldEntry.id());
         nodeEntry.update(node, alwaysUnfix || !cachingStrategy.shouldBeFixed(node));
+        nodeWritten(nodeEntry.id(), node);
 
         return nodeEntry;
     }
 
+    public void setLeafLocationIndex(final LeafLocationIndex<E> leafLocationIndex) {
+        this.leafLocationIndex = leafLocationIndex;
+    }
+
+    private void nodeWritten(final Object id, final IRRTreeDiskNode<E> node) {
+        if (leafLocationIndex != null)
+            leafLocationIndex.nodeWritten(id, node);
+    }
+
     /* Queries */
 
     /**
@@ -667,6 +1097,7 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
                                         new RRTreeLeafPiggybackingInfo());
                                 if (nodeModified) {
                                     indexEntry.update(node);
+                                    nodeWritten(indexEntry.id(), node);
                                 }
                             }
 
@@ -843,6 +1274,17 @@ public abstract class AbstractRRDiskTree<E extends Convertable> extends RTree im
         return getId.invoke(data);
     }
 
+    /**
+     * Returns the key to hash a data item by: its id, or the item itself if the tree was initialized without the id
+     * function.
+     *
+     * @param data the data to return the hash key of
+     * @return the hash key of the data
+     */
+    Object hashKey(final E data) {
+        return (getId != null) ? getId.invoke(data) : data;
+    }
+
     /**
      * Determines the level of the tree where the index entries should be put.  Assumes all the entries are on the same
      * level.
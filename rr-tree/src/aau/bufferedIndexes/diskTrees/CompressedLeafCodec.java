@@ -0,0 +1,350 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.HilbertPointComparator;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.points.DoublePoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The compressed layout of the leaf nodes.  The entries are written in the Hilbert order of the lower left corners of
+ * their MBRs, so that the consecutive entries are close in space.  The id of an entry is written as a variable-length
+ * difference from the previous id, and each MBR coordinate as the XOR of its bits with the same coordinate of the
+ * previous entry, in one of three modes chosen per node by the smallest result: a variable-length number, a
+ * variable-length number of the bit-reversed value, or the raw eight bytes.  The first mode suits the coordinates that
+ * share the high-order bits, the second those that share the low-order zero bits, such as integral values, and the
+ * third bounds the size of the incompressible ones.  The coding is lossless.
+ *
+ * <p>Removing an entry never makes a node larger, as in every mode the difference between the neighbours of a removed
+ * entry takes no more bytes than the two differences it replaces.  Adding one entry makes a node larger by at most
+ * {@link #maxInsertionGrowth} bytes.</p>
+ *
+ * <p>The entries are taken apart and put together through the object converter of the tree, so the codec does not
+ * depend on their types, only on their serialized layout: an optional operation type byte, an integer id and the
+ * lower and upper MBR corner coordinates as doubles, as the KPEs with integer ids and the disk update tree
+ * operations on them are written.</p>
+ */
+final class CompressedLeafCodec {
+
+    /**
+     * The size of a node header: the level, the number of entries and the coordinate mode
+     */
+    static final int HEADER_SIZE = 2 + 4 + 1;
+
+    private static final int FORWARD_MODE = 0;
+
+    private static final int REVERSED_MODE = 1;
+
+    private static final int RAW_MODE = 2;
+
+    private static final int MAX_ID_DELTA_SIZE = 5;
+
+    private static final int MAX_COORDINATE_SIZE = 10;
+
+    private static final Comparator<Fields> HILBERT_ORDER = new Comparator<Fields>() {
+        public int compare(final Fields o1, final Fields o2) {
+            return HilbertPointComparator.INSTANCE.compare(o1.lowerCorner, o2.lowerCorner);
+        }
+    };
+
+    /**
+     * The converter of the leaf entries
+     */
+    private final Converter<Object> objectConverter;
+
+    /**
+     * The size of the operation type byte before the id, 0 if the leaf entries are the data items
+     */
+    private final int prefixSize;
+
+    /**
+     * The number of the MBR dimensions
+     */
+    private final int dimensions;
+
+    /**
+     * The serialized size of a leaf entry
+     */
+    private final int entrySize;
+
+    /**
+     * Creates a new codec.
+     *
+     * @param objectConverter the converter of the leaf entries
+     * @param operations      if <code>true</code>, the leaf entries are the update operations on the data items,
+     *                        otherwise the data items themselves
+     * @param dimensions      the number of the MBR dimensions
+     */
+    CompressedLeafCodec(final Converter<?> objectConverter, final boolean operations, final int dimensions) {
+        if (objectConverter == null)
+            throw new IllegalArgumentException("Compressed leaves need the leaf entry converter");
+        if (dimensions <= 0)
+            throw new IllegalArgumentException("Invalid number of dimensions " + dimensions);
+        //noinspection unchecked
+        this.objectConverter = (Converter<Object>)objectConverter;
+        prefixSize = operations ? 1 : 0;
+        this.dimensions = dimensions;
+        entrySize = prefixSize + 4 + 2 * dimensions * 8;
+    }
+
+    /**
+     * The compressed fields of a serialized leaf entry.
+     */
+    private final class Fields {
+
+        final byte prefix;
+
+        final int id;
+
+        /**
+         * The bits of the MBR coordinates, the lower corner first
+         */
+        final long[] bits;
+
+        /**
+         * The lower MBR corner, the Hilbert sort key
+         */
+        final DoublePoint lowerCorner;
+
+        Fields(final byte[] entry) {
+            final ByteBuffer buffer = ByteBuffer.wrap(entry);
+            prefix = (prefixSize > 0) ? buffer.get() : 0;
+            id = buffer.getInt();
+            bits = new long[2 * dimensions];
+            for (int i = 0; i < bits.length; i++)
+                bits[i] = buffer.getLong();
+            final double[] lows = new double[dimensions];
+            for (int i = 0; i < dimensions; i++)
+                lows[i] = Double.longBitsToDouble(bits[i]);
+            lowerCorner = new DoublePoint(lows);
+        }
+    }
+
+    /**
+     * Returns the size of a leaf node with given entries in this layout.
+     *
+     * @param entries the node entries
+     * @return the node size in bytes, including the header
+     */
+    int nodeSize(final Collection<?> entries) {
+        final List<Fields> sorted = sortedFields(entries);
+        int size = HEADER_SIZE + prefixSize * sorted.size();
+        int forwardSize = 0;
+        int reversedSize = 0;
+        int rawSize = 0;
+        int previousId = 0;
+        final long[] previousBits = new long[2 * dimensions];
+        for (final Fields fields : sorted) {
+            size += varLongSize(zigZag((long)fields.id - previousId));
+            previousId = fields.id;
+            for (int i = 0; i < previousBits.length; i++) {
+                final long xor = fields.bits[i] ^ previousBits[i];
+                forwardSize += varLongSize(xor);
+                reversedSize += varLongSize(Long.reverse(xor));
+                rawSize += 8;
+            }
+            System.arraycopy(fields.bits, 0, previousBits, 0, previousBits.length);
+        }
+        return size + Math.min(rawSize, Math.min(forwardSize, reversedSize));
+    }
+
+    /**
+     * Checks if a leaf node with given entries is larger than given size in this layout.  The exact size is computed
+     * only if the number of entries does not decide it, as every entry takes at least one byte per id and coordinate
+     * and at most the raw coordinates and the longest id difference.
+     *
+     * @param entries  the node entries
+     * @param maxBytes the maximum node size in bytes
+     * @return <code>true</code> if the node is larger than <code>maxBytes</code>
+     */
+    boolean overflows(final Collection<?> entries, final int maxBytes) {
+        final long number = entries.size();
+        if (HEADER_SIZE + number * (prefixSize + MAX_ID_DELTA_SIZE + 2 * dimensions * 8) <= maxBytes)
+            return false;
+        if (HEADER_SIZE + number * (prefixSize + 1 + 2 * dimensions) > maxBytes)
+            return true;
+        return nodeSize(entries) > maxBytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes a single new entry may add to a leaf node.
+     *
+     * @return the maximum growth of a node on an insertion
+     */
+    int maxInsertionGrowth() {
+        // The new entry itself and the growth of the difference of its successor
+        return 2 * (prefixSize + MAX_ID_DELTA_SIZE + 2 * dimensions * MAX_COORDINATE_SIZE);
+    }
+
+    /**
+     * Writes the entries of a leaf node, without the level and the number of entries.
+     *
+     * @param dataOutput the output to write to
+     * @param entries    the node entries
+     * @throws IOException if an I/O error occurs
+     */
+    void write(final DataOutput dataOutput, final Collection<?> entries) throws IOException {
+        final List<Fields> sorted = sortedFields(entries);
+        final int mode = chooseMode(sorted);
+        dataOutput.writeByte(mode);
+        int previousId = 0;
+        final long[] previousBits = new long[2 * dimensions];
+        for (final Fields fields : sorted) {
+            if (prefixSize > 0)
+                dataOutput.writeByte(fields.prefix);
+            writeVarLong(dataOutput, zigZag((long)fields.id - previousId));
+            previousId = fields.id;
+            for (int i = 0; i < previousBits.length; i++) {
+                final long xor = fields.bits[i] ^ previousBits[i];
+                switch (mode) {
+                    case FORWARD_MODE: writeVarLong(dataOutput, xor); break;
+                    case REVERSED_MODE: writeVarLong(dataOutput, Long.reverse(xor)); break;
+                    default: dataOutput.writeLong(xor);
+                }
+            }
+            System.arraycopy(fields.bits, 0, previousBits, 0, previousBits.length);
+        }
+    }
+
+    /**
+     * Reads the entries of a leaf node written by {@link #write}.
+     *
+     * @param dataInput the input to read from
+     * @param number    the number of the node entries
+     * @param entries   the collection to add the read entries to
+     * @throws IOException if an I/O error occurs
+     */
+    void read(final DataInput dataInput, final int number, final Collection<Object> entries) throws IOException {
+        final int mode = dataInput.readByte();
+        if ((mode < FORWARD_MODE) || (mode > RAW_MODE))
+            throw new IllegalStateException("Unknown compressed leaf coordinate mode " + mode);
+        // Restore the serialized entries and let the object converter read them
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream(number * entrySize);
+        final DataOutputStream serializedOutput = new DataOutputStream(serialized);
+        int previousId = 0;
+        final long[] bits = new long[2 * dimensions];
+        for (int i = 0; i < number; i++) {
+            if (prefixSize > 0)
+                serializedOutput.writeByte(dataInput.readByte());
+            //noinspection NumericCastThatLosesPrecision
+            final int id = (int)(previousId + unZigZag(readVarLong(dataInput)));
+            previousId = id;
+            serializedOutput.writeInt(id);
+            for (int j = 0; j < bits.length; j++) {
+                switch (mode) {
+                    case FORWARD_MODE: bits[j] ^= readVarLong(dataInput); break;
+                    case REVERSED_MODE: bits[j] ^= Long.reverse(readVarLong(dataInput)); break;
+                    default: bits[j] ^= dataInput.readLong();
+                }
+                serializedOutput.writeLong(bits[j]);
+            }
+        }
+        final DataInput serializedInput
+                = new DataInputStream(new ByteArrayInputStream(serialized.toByteArray()));
+        for (int i = 0; i < number; i++)
+            entries.add(objectConverter.read(serializedInput));
+    }
+
+    private List<Fields> sortedFields(final Collection<?> entries) {
+        final List<Fields> result = new ArrayList<>(entries.size());
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream(entrySize);
+        final DataOutputStream serializedOutput = new DataOutputStream(serialized);
+        try {
+            for (final Object entry : entries) {
+                serialized.reset();
+                objectConverter.write(serializedOutput, entry);
+                if (serialized.size() != entrySize)
+                    throw new IllegalArgumentException("Cannot compress a leaf entry of " + serialized.size()
+                            + " bytes, expected " + entrySize);
+                result.add(new Fields(serialized.toByteArray()));
+            }
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException("Serializing to memory failed", e);
+        }
+        Collections.sort(result, HILBERT_ORDER);
+        return result;
+    }
+
+    private int chooseMode(final List<Fields> sorted) {
+        long forwardSize = 0;
+        long reversedSize = 0;
+        final long[] previousBits = new long[2 * dimensions];
+        for (final Fields fields : sorted) {
+            for (int i = 0; i < previousBits.length; i++) {
+                final long xor = fields.bits[i] ^ previousBits[i];
+                forwardSize += varLongSize(xor);
+                reversedSize += varLongSize(Long.reverse(xor));
+            }
+            System.arraycopy(fields.bits, 0, previousBits, 0, previousBits.length);
+        }
+        final long rawSize = 8L * previousBits.length * sorted.size();
+        if (rawSize <= Math.min(forwardSize, reversedSize))
+            return RAW_MODE;
+        return (forwardSize <= reversedSize) ? FORWARD_MODE : REVERSED_MODE;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int varLongSize(final long value) {
+        return (64 - Long.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    private static void writeVarLong(final DataOutput dataOutput, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            //noinspection NumericCastThatLosesPrecision
+            dataOutput.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        //noinspection NumericCastThatLosesPrecision
+        dataOutput.writeByte((int)value);
+    }
+
+    private static long readVarLong(final DataInput dataInput) throws IOException {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = dataInput.readByte();
+            result |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return result;
+    }
+}
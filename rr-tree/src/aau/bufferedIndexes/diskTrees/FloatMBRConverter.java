@@ -0,0 +1,91 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.DoubleRectangles;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A converter that stores the MBRs as single precision floats, halving their size on the disk.  The stored MBRs must
+ * have been rounded to floats by {@link #roundOutward} beforehand, which makes the conversion exact: the MBRs read
+ * back are equal to the ones written, and they contain the exact MBRs they were rounded from, thus no query result
+ * is lost.
+ */
+public final class FloatMBRConverter extends Converter<DoublePointRectangle> {
+
+    private final int dimensions;
+
+    /**
+     * Creates a new converter for the MBRs of given dimensionality.
+     *
+     * @param dimensions the number of the MBR dimensions
+     */
+    public FloatMBRConverter(final int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public DoublePointRectangle read(final DataInput dataInput, final DoublePointRectangle object)
+            throws IOException {
+        final DoublePointRectangle result = (object != null) ? object : new DoublePointRectangle(dimensions);
+        final double[] lows = DoubleRectangles.lows(result);
+        final double[] highs = DoubleRectangles.highs(result);
+        for (int i = 0; i < dimensions; i++)
+            lows[i] = dataInput.readFloat();
+        for (int i = 0; i < dimensions; i++)
+            highs[i] = dataInput.readFloat();
+        return result;
+    }
+
+    @Override
+    public void write(final DataOutput dataOutput, final DoublePointRectangle object) throws IOException {
+        final double[] lows = DoubleRectangles.lows(object);
+        final double[] highs = DoubleRectangles.highs(object);
+        for (int i = 0; i < dimensions; i++) {
+            assert lows[i] == (float)lows[i] : "MBR " + object + " is not rounded to floats";
+            dataOutput.writeFloat((float)lows[i]);
+        }
+        for (int i = 0; i < dimensions; i++) {
+            assert highs[i] == (float)highs[i] : "MBR " + object + " is not rounded to floats";
+            dataOutput.writeFloat((float)highs[i]);
+        }
+    }
+
+    /**
+     * Rounds an MBR in place to the smallest MBR with float coordinates containing it.  The rounding is idempotent
+     * and commutes with the MBR union, thus the union of the rounded MBRs is rounded too.
+     *
+     * @param rectangle the MBR to round
+     */
+    public static void roundOutward(final DoublePointRectangle rectangle) {
+        final double[] lows = DoubleRectangles.lows(rectangle);
+        final double[] highs = DoubleRectangles.highs(rectangle);
+        for (int i = 0; i < lows.length; i++) {
+            final float low = (float)lows[i];
+            lows[i] = (low > lows[i]) ? Math.nextAfter(low, Double.NEGATIVE_INFINITY) : low;
+            final float high = (float)highs[i];
+            highs[i] = (high < highs[i]) ? Math.nextUp(high) : high;
+        }
+    }
+}
@@ -101,17 +101,100 @@ public interface IRRDiskTree<E extends Convertable> {
     public Object rootEntry ();
 
     /**
-     * Returns the minimum allowed number of entries in a node.
-     * @return the minimum allowed number of entries in a node
+     * Returns the minimum allowed number of entries in a leaf node.
+     * @return the minimum allowed number of entries in a leaf node
      */
     public int getMinNodeCapacity();
 
     /**
-     * Returns the maximum allowed number of entries in a node.
-     * @return the maximum allowed number of entries in a node
+     * Returns the maximum allowed number of entries in a leaf node.
+     * @return the maximum allowed number of entries in a leaf node
      */
     public int getMaxNodeCapacity();
 
+    /**
+     * Returns the minimum allowed number of entries in a node at a given level.
+     * @param level the node level
+     * @return the minimum allowed number of entries in a node at a given level
+     */
+    public int getMinNodeCapacity(final int level);
+
+    /**
+     * Returns the maximum allowed number of entries in a node at a given level.
+     * @param level the node level
+     * @return the maximum allowed number of entries in a node at a given level
+     */
+    public int getMaxNodeCapacity(final int level);
+
+    /**
+     * Sets different node capacities for the index nodes than for the leaf nodes.  Must be called on an empty tree
+     * after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of an index node
+     * @param maxCapacity the maximum capacity of an index node
+     */
+    public void setIndexNodeCapacities(final int minCapacity, final int maxCapacity);
+
+    /**
+     * Sets different node capacities for the leaf nodes than given on initialization, keeping the index node
+     * capacities.  Must be called on an empty tree after {@link #initialize}.
+     *
+     * @param minCapacity the minimum capacity of a leaf node
+     * @param maxCapacity the maximum capacity of a leaf node
+     */
+    public void setLeafNodeCapacities(final int minCapacity, final int maxCapacity);
+
+    /**
+     * Stores the index entry MBRs as single precision floats, rounded outwards, in the nodes written from now on.
+     * The leaf entries are stored exactly.  Must be called on an empty tree before {@link #nodeConverter}.
+     */
+    public void enableFloatIndexMBRs();
+
+    /**
+     * Stores the leaf nodes compressed in the nodes written from now on.  A leaf node then also overflows if its
+     * compressed size exceeds the given number of bytes.  Must be called on an empty tree before
+     * {@link #nodeConverter}.
+     *
+     * @param nodeBytes the maximum size of a leaf node in bytes
+     */
+    public void enableCompressedLeaves(final int nodeBytes);
+
+    /**
+     * Allocates the nodes stored from now on near the related nodes in the container: the nodes created by a split
+     * near the split node, the other new index nodes near their first child.
+     */
+    public void enableClusteredAllocation();
+
+    /**
+     * Returns how full the given entries would make a compressed leaf node.
+     *
+     * @param level   the node level
+     * @param entries the node entries
+     * @return the compressed node size as a fraction of its maximum size, or 0 if the nodes at the given level are not
+     *         compressed
+     */
+    public double compressedPageFill(final int level, final Collection<?> entries);
+
+    /**
+     * Returns how many entries may be added to a leaf node with the given entries before it may overflow in bytes.
+     *
+     * @param entries the leaf node entries
+     * @return the number of entries that surely fit into the compressed leaf node, or {@link Integer#MAX_VALUE} if
+     *         the leaf nodes are not compressed
+     */
+    public int compressedLeafHeadroom(final Collection<?> entries);
+
+    /**
+     * Checks if any of the given node contents is too large in bytes for a compressed leaf node.  Used by the group
+     * splitters to grow the number of split nodes until the partitions fit.
+     *
+     * @param level        the level of the nodes
+     * @param nodeContents the node contents to check
+     * @return <code>true</code> if any of the node contents overflows a compressed leaf node, <code>false</code> if
+     *         none do or the nodes at the given level are not compressed
+     */
+    public boolean compressedLeavesOverflow(final int level, final Iterable<? extends Collection<?>> nodeContents);
+
     /**
      * Creates a new node of this tree with a given level and node contents.
      * @param level the level of the new node
@@ -248,4 +331,21 @@ public interface IRRDiskTree<E extends Convertable> {
     public int getDataItems();
 
     public TreeClearIOState cleanGarbage();
+
+    /**
+     * Reopens a tree previously stored in the container.  Must be called right after {@link #initialize}.
+     *
+     * @param rootId         the container id of the root node, <code>null</code> if the stored tree is empty
+     * @param height         the height of the stored tree
+     * @param rootDescriptor the MBR descriptor of the root node
+     * @param dataItems      the number of data items in the stored tree
+     */
+    public void reopen(final Object rootId, final int height, final Descriptor rootDescriptor, final int dataItems);
+
+    /**
+     * Sets the leaf location index to maintain on every node write.
+     *
+     * @param leafLocationIndex the leaf location index, <code>null</code> to stop maintaining it
+     */
+    public void setLeafLocationIndex(final LeafLocationIndex<E> leafLocationIndex);
 }
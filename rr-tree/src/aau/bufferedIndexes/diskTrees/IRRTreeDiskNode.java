@@ -26,6 +26,7 @@ import xxl.core.io.Convertable;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * An interface that RRDiskTree.Node should implement.
@@ -53,13 +54,27 @@ public interface IRRTreeDiskNode<E extends Convertable> {
     public void addEntriesFrom(final IRRTreeDiskNode<E> n);
 
     /**
-     * Returns a collection of node entries, type unknown.
+     * Replaces an index entry of this node with another one at the same position.  The index entries are replaced
+     * instead of modifying them in place, as they are shared by the copies of the node.
+     * @param oldEntry the entry to replace
+     * @param newEntry the entry to replace it with
+     */
+    public void replaceEntry(final IRRTreeIndexEntry<E> oldEntry, final IRRTreeIndexEntry<E> newEntry);
+
+    /**
+     * Returns a read-only collection of node entries, type unknown.
      * @return a collection of node entries
      */
     public Collection<?> getEntries();
 
     /**
-     * Returns a collection of node entries, assuming that the node is an index node.
+     * Returns a collection of node entries, type unknown, that may be modified.
+     * @return a collection of node entries
+     */
+    public Collection<?> getModifiableEntries();
+
+    /**
+     * Returns a read-only collection of node entries, assuming that the node is an index node.
      * @return a collection of index entries in the node
      */
     public Collection<IRRTreeIndexEntry<E>> getNonLeafNodeEntries();
@@ -142,6 +157,15 @@ public interface IRRTreeDiskNode<E extends Convertable> {
      */
      public IRRTreeIndexEntry<E> chooseSubtreeByObject(final Object object);
 
+    /**
+     * Chooses the subtrees to follow for a batch of objects at once.  The choices are the same as those of
+     * {@link #chooseSubtreeByObject} for every object separately.
+     *
+     * @param objects the objects to choose the subtrees for
+     * @return the index entry referring to the root of the chosen subtree for every object, in the object order
+     */
+    public List<IRRTreeIndexEntry<E>> chooseSubtreesByObjects(final List<?> objects);
+
     /**
      * Loop through a given cursor and collect operations that can be performed on a node with or without enlarging its
      * MBR, disregarding if it will overflow or underflow as a result.  A deletion may be performed if there is a
@@ -200,8 +224,8 @@ public interface IRRTreeDiskNode<E extends Convertable> {
 
     /**
      * Prepare an efficient index for following executeConstrainedSubsetOfOps and willOperationIncreaseNodeSize
-     * operations.  The index is not updated when node is updated.  The caller must call deleteEntryIndex after
-     * finishing with the operations above.
+     * operations.  Depending on the node type, the index is either kept in sync with the node updates or not built at
+     * all.  The caller must call deleteEntryIndex after finishing with the operations above.
      */
     void indexEntries();
 
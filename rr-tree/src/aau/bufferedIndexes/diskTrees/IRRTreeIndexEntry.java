@@ -56,6 +56,15 @@ public interface IRRTreeIndexEntry<E extends Convertable> extends HasLogicalSize
      */
     public Tree.IndexEntry initialize (Container container, Object id);
 
+    /**
+     * Makes a copy of this index entry that refers to another node.  The index entries in a node are replaced by such
+     * copies instead of modifying them in place, as they are shared by the copies of the node.
+     *
+     * @param id an ID of the node referred to by the copy
+     * @return the copy of this index entry
+     */
+    public IRRTreeIndexEntry<E> withId(Object id);
+
     /* Getters */
 
     /**
@@ -0,0 +1,192 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.UpdateTree;
+import xxl.core.io.Convertable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An id-keyed open addressing hash index over the entries of an update tree leaf node, so that an entry or its
+ * annihilating opposite is found and removed in constant time.  The index stores the entry positions in the node
+ * entry list.  Removing an entry moves the last entry of the list into its position, so the order of the leaf
+ * entries is not preserved.
+ *
+ * @param <E> the type of the tree data items
+ */
+final class LeafEntryIndex<E extends Convertable> {
+
+    /**
+     * Marks a free hash table slot and a missing entry
+     */
+    static final int NO_ENTRY = -1;
+
+    private static final int MIN_SLOTS = 8;
+
+    private final AbstractRRDiskTree<E> tree;
+
+    private final List<UpdateTree.Entry<E>> entries;
+
+    /**
+     * The linear probing hash table of entry positions in the entry list
+     */
+    private int[] slots;
+
+    private int size = 0;
+
+    /**
+     * Indexes the entries of a leaf node.
+     *
+     * @param tree    the tree of the node
+     * @param entries the entry list of the node, must be modified only through this index afterwards
+     */
+    LeafEntryIndex(final AbstractRRDiskTree<E> tree, final List<UpdateTree.Entry<E>> entries) {
+        this.tree = tree;
+        this.entries = entries;
+        rebuild();
+    }
+
+    /**
+     * Checks if the entry list has been modified bypassing the index.
+     *
+     * @return <code>true</code> if the index does not match the entry list
+     */
+    boolean isStale() {
+        return size != entries.size();
+    }
+
+    /**
+     * Indexes the entry that has just been appended to the entry list.
+     */
+    void entryAdded() {
+        if ((size + 1 != entries.size()) || (entries.size() * 2 > slots.length))
+            rebuild();
+        else
+            insertPosition(entries.size() - 1);
+    }
+
+    /**
+     * Finds the entry that annihilates with a given operation.
+     *
+     * @param operation the operation
+     * @return the position of the opposite entry in the entry list, or {@link #NO_ENTRY} if there is none
+     */
+    int findOpposite(final UpdateTree.Entry<E> operation) {
+        assert !isStale();
+        for (int slot = home(operation); slots[slot] != NO_ENTRY; slot = next(slot)) {
+            final UpdateTree.Entry<E> candidate = entries.get(slots[slot]);
+            if ((candidate.getOperationType() == operation.getOperationType().opposite())
+                    && candidate.getData().equals(operation.getData()))
+                return slots[slot];
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * Finds an entry.
+     *
+     * @param entry the entry to find
+     * @return the position of an equal entry in the entry list, or {@link #NO_ENTRY} if there is none
+     */
+    int find(final UpdateTree.Entry<E> entry) {
+        assert !isStale();
+        for (int slot = home(entry); slots[slot] != NO_ENTRY; slot = next(slot)) {
+            if (entries.get(slots[slot]).equals(entry))
+                return slots[slot];
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * Removes an entry from the entry list, moving the last entry into its position.
+     *
+     * @param position the position of the entry to remove
+     */
+    void removeAt(final int position) {
+        assert !isStale();
+        freeSlot(slotOf(position));
+        final int last = entries.size() - 1;
+        if (position != last) {
+            slots[slotOf(last)] = position;
+            entries.set(position, entries.get(last));
+        }
+        entries.remove(last);
+    }
+
+    private void rebuild() {
+        int slotCount = MIN_SLOTS;
+        while (slotCount < entries.size() * 4)
+            slotCount <<= 1;
+        slots = new int[slotCount];
+        Arrays.fill(slots, NO_ENTRY);
+        size = 0;
+        for (int i = 0; i < entries.size(); i++)
+            insertPosition(i);
+    }
+
+    private void insertPosition(final int position) {
+        int slot = home(entries.get(position));
+        while (slots[slot] != NO_ENTRY)
+            slot = next(slot);
+        slots[slot] = position;
+        size++;
+    }
+
+    private int slotOf(final int position) {
+        int slot = home(entries.get(position));
+        while (slots[slot] != position) {
+            assert slots[slot] != NO_ENTRY;
+            slot = next(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Frees a slot, shifting back the following slots of the probe sequence so that no tombstones are needed.
+     *
+     * @param slot the slot to free
+     */
+    private void freeSlot(final int slot) {
+        int free = slot;
+        slots[free] = NO_ENTRY;
+        size--;
+        for (int current = next(free); slots[current] != NO_ENTRY; current = next(current)) {
+            final int home = home(entries.get(slots[current]));
+            // Move the entry back unless its home slot lies cyclically in (free, current]
+            final boolean homeInRange = (free < current) ? ((home > free) && (home <= current))
+                    : ((home > free) || (home <= current));
+            if (!homeInRange) {
+                slots[free] = slots[current];
+                slots[current] = NO_ENTRY;
+                free = current;
+            }
+        }
+    }
+
+    private int home(final UpdateTree.Entry<E> entry) {
+        final int hash = tree.hashKey(entry.getData()).hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (slots.length - 1);
+    }
+
+    private int next(final int slot) {
+        return (slot + 1) & (slots.length - 1);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.UpdateTree;
+import xxl.core.io.Convertable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A secondary index from data items to the container ids of the leaf nodes holding them, and from node ids to the ids
+ * of their parent nodes.  It lets a deletion go down the single path to its leaf node instead of into every subtree
+ * whose MBR contains it.
+ *
+ * The index is maintained on node writes, the latest write of a node holding an item or a child entry wins.  It is a
+ * hint only: it may lack entries and may hold stale ones.  Thus a route is taken only if it leads to a child of the
+ * current node that spatially contains the item, and the entry of a deletion is dropped once the deletion reaches a
+ * leaf node, so that a stale entry cannot mislead the same deletion twice.
+ *
+ * The index is kept in memory, but it stands for a disk-based hash index: its size is the serialized size of its
+ * entries, to be charged to the memory budget, and every probe of a lookup counts as a read, to be charged to the I/O.
+ *
+ * @param <E> the type of the data items in the tree
+ */
+public class LeafLocationIndex<E extends Convertable> {
+
+    private final Map<E, Object> leafIds = new HashMap<>();
+
+    private final Map<Object, Object> parentIds = new HashMap<>();
+
+    /**
+     * The serialized size of a node id
+     */
+    private final int idSize;
+
+    /**
+     * The serialized size of all the entries
+     */
+    private long memorySize = 0;
+
+    private int lookups = 0;
+
+    private int routedDeletions = 0;
+
+    private int unroutedDeletions = 0;
+
+    /**
+     * Creates a new empty index.
+     *
+     * @param idSize the serialized size of a node id
+     */
+    public LeafLocationIndex(final int idSize) {
+        if (idSize <= 0)
+            throw new IllegalArgumentException("The node id size must be positive, got " + idSize);
+        this.idSize = idSize;
+    }
+
+    /**
+     * Registers that a node has been written to the container.
+     *
+     * @param id   the container id of the node
+     * @param node the node
+     */
+    public void nodeWritten(final Object id, final IRRTreeDiskNode<E> node) {
+        if (node.level() == 0) {
+            for (final E data : ((IRRTreeDiskDataNode<E>)node).getLeafNodeEntries())
+                if (leafIds.put(data, id) == null)
+                    memorySize += UpdateTree.serializedSize(data) + idSize;
+        }
+        else {
+            for (final IRRTreeIndexEntry<E> child : node.getNonLeafNodeEntries())
+                if (parentIds.put(child.id(), id) == null)
+                    memorySize += 2 * idSize;
+        }
+    }
+
+    /**
+     * Finds the child entry of a non-leaf node whose subtree holds a given data item.
+     *
+     * @param node the non-leaf node to choose the child in
+     * @param data the data item
+     * @return the child entry leading to the leaf node holding the data item, <code>null</code> if unknown
+     */
+    public IRRTreeIndexEntry<E> route(final IRRTreeDiskNode<E> node, final E data) {
+        assert node.level() > 0;
+        lookups++;
+        Object target = leafIds.get(data);
+        for (int level = 1; (target != null) && (level < node.level()); level++) {
+            lookups++;
+            target = parentIds.get(target);
+        }
+        if (target != null) {
+            for (final IRRTreeIndexEntry<E> child : node.getNonLeafNodeEntries()) {
+                if (child.id().equals(target) && child.spatiallyContains(data)) {
+                    routedDeletions++;
+                    return child;
+                }
+            }
+        }
+        unroutedDeletions++;
+        return null;
+    }
+
+    /**
+     * Drops the entry of a given data item.  Should be called when a deletion of the item reaches a leaf node,
+     * whether it succeeds or not.
+     *
+     * @param data the data item
+     */
+    public void forget(final E data) {
+        if (leafIds.remove(data) != null)
+            memorySize -= UpdateTree.serializedSize(data) + idSize;
+    }
+
+    /**
+     * Drops all the entries.  The index is rebuilt by the following node writes.
+     */
+    public void clear() {
+        leafIds.clear();
+        parentIds.clear();
+        memorySize = 0;
+    }
+
+    /**
+     * Returns the memory size of the index.
+     *
+     * @return the serialized size of the index entries in bytes
+     */
+    public long memorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Returns how many index probes the lookups have done, each of them standing for a read of a disk-based index.
+     *
+     * @return the number of the index probes
+     */
+    public int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the number of data items in the index.
+     *
+     * @return the number of data items in the index
+     */
+    public int size() {
+        return leafIds.size();
+    }
+
+    /**
+     * Returns how many times a deletion has been routed to a single child by the index.
+     *
+     * @return the number of routed deletions
+     */
+    public int getRoutedDeletions() {
+        return routedDeletions;
+    }
+
+    /**
+     * Returns how many times a deletion has not been routed by the index and had to be grouped spatially.
+     *
+     * @return the number of unrouted deletions
+     */
+    public int getUnroutedDeletions() {
+        return unroutedDeletions;
+    }
+}
@@ -51,11 +51,13 @@ public class RRDiskDataTree<E extends Convertable> extends AbstractRRDiskTree<E>
         }
 
         /**
-         * Returns a collection of node entries, assuming that the node is a leaf node.
+         * Returns a collection of node entries, assuming that the node is a leaf node.  As the caller may modify the
+         * collection, it is made private to this node first.
          * @return a collection of data entries in the node
          */
         public Collection<E> getLeafNodeEntries() {
             assert level == 0;
+            ownEntries();
             //noinspection unchecked
             return entries;
         }
@@ -74,7 +76,7 @@ public class RRDiskDataTree<E extends Convertable> extends AbstractRRDiskTree<E>
          */
         protected boolean doesOperationFit(Descriptor descriptor, UpdateTree.Entry<E> operation, boolean outsideMBRAllowed) {
             // TODO: test outsideMBRAllowed == true case
-            return (operation.isDeletion() && getLeafNodeEntries().contains(operation.getData()))
+            return (operation.isDeletion() && entries.contains(operation.getData()))
                     || (operation.isInsertion()
                         && (descriptor.contains(RRDiskDataTree.this.descriptor(operation.getData()))
                             || outsideMBRAllowed));
@@ -113,7 +115,7 @@ public class RRDiskDataTree<E extends Convertable> extends AbstractRRDiskTree<E>
                     RRDiskDataTree.this.dataItems--;
                 }
                 else if (entry.isInsertion() && (maxInsertions > 0)
-                        && !this.getLeafNodeEntries().contains(entry.getData())) { // TODO: is last condition necessary?
+                        && !entries.contains(entry.getData())) { // TODO: is last condition necessary?
                     this.grow(entry.getData());
                     RRDiskDataTree.this.dataItems++;
                     executedOps.add(entry);
@@ -0,0 +1,284 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.HilbertPointComparator;
+import xxl.core.indexStructures.Descriptor;
+import xxl.core.io.Convertable;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.points.DoublePoint;
+import xxl.core.spatial.points.Point;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The disk tree part of the RR-tree that places the data by the Hilbert order, as in the Hilbert R-tree.  The Hilbert
+ * key of a data object is the lower left corner of its MBR, ordered by {@link HilbertPointComparator}, the same order
+ * as of the bulk-loading.  Every index entry stores the lowest and the highest key in its subtree in addition to the
+ * MBR.  The insertions go to the child with the lowest high key not below the key of the inserted object, and the
+ * deletions go to the children whose key ranges contain the key of the deleted object.  As long as the nodes are
+ * split along the Hilbert order, the key ranges of the siblings do not overlap and every deletion has a single target
+ * leaf.  The ranges are recomputed on every node write, thus the routing stays correct if the nodes are formed
+ * otherwise, only less selective.
+ *
+ * @param <E> the data element type
+ */
+public class RRDiskHilbertTree<E extends Convertable> extends RRDiskDataTree<E> {
+
+    /**
+     * The order of the Hilbert keys
+     */
+    public static final Comparator<Point> KEY_ORDER = HilbertPointComparator.INSTANCE;
+
+    /**
+     * The Hilbert R-tree node
+     */
+    public class Node extends RRDiskDataTree<E>.Node {
+
+        /**
+         * Creates a new node with a given level and node contents.
+         *
+         * @param level the level of the node
+         * @param newEntries the contents of the node
+         */
+        Node(final int level, final Collection<?> newEntries) {
+            super(level, newEntries);
+        }
+
+        /**
+         * Chooses the child with the lowest high key that is not below the key of a given object, or the child with
+         * the highest high key if all of them are below.
+         *
+         * @param e a data object, an index entry or a descriptor to choose the child for
+         * @return the chosen child entry
+         */
+        @Override
+        public IRRTreeIndexEntry<E> chooseSubtreeByObject(final Object e) {
+            assert level > 0;
+            final Point key = hilbertKey(e);
+            HilbertIndexEntry result = null;
+            HilbertIndexEntry highest = null;
+            final Iterator<?> children = entries();
+            while (children.hasNext()) {
+                final HilbertIndexEntry child = (HilbertIndexEntry)children.next();
+                if ((KEY_ORDER.compare(child.highKey, key) >= 0)
+                        && ((result == null) || (KEY_ORDER.compare(child.highKey, result.highKey) < 0)))
+                    result = child;
+                if ((highest == null) || (KEY_ORDER.compare(child.highKey, highest.highKey) > 0))
+                    highest = child;
+            }
+            return (result != null) ? result : highest;
+        }
+
+        /**
+         * Chooses the subtrees for a batch of objects by their Hilbert keys, one at a time.
+         *
+         * @param objects the objects to choose the subtrees for
+         * @return the chosen child entry for every object, in the object order
+         */
+        @Override
+        public List<IRRTreeIndexEntry<E>> chooseSubtreesByObjects(final List<?> objects) {
+            final List<IRRTreeIndexEntry<E>> result = new ArrayList<>(objects.size());
+            for (final Object object : objects)
+                result.add(chooseSubtreeByObject(object));
+            return result;
+        }
+
+        /**
+         * Returns the Hilbert key of a node entry.
+         *
+         * @param entry a data object, an index entry or a descriptor
+         * @return the key as given by {@link RRDiskHilbertTree#hilbertKey}
+         */
+        public Point hilbertKey(final Object entry) {
+            return RRDiskHilbertTree.this.hilbertKey(entry);
+        }
+    }
+
+    /**
+     * The index entry that additionally stores the Hilbert key range of its subtree
+     */
+    public class HilbertIndexEntry extends IndexEntry {
+
+        private Point lowKey = null;
+
+        private Point highKey = null;
+
+        /**
+         * Creates a new index entry on a specified parent level
+         *
+         * @param parentLevel the parent level of the new index entry
+         */
+        public HilbertIndexEntry(final int parentLevel) {
+            super(parentLevel);
+        }
+
+        /**
+         * Returns the lowest Hilbert key in the subtree.
+         *
+         * @return the lowest key, <code>null</code> if the range is not computed, as for a reopened root entry
+         */
+        public Point lowKey() {
+            return lowKey;
+        }
+
+        /**
+         * Returns the highest Hilbert key in the subtree.
+         *
+         * @return the highest key, <code>null</code> if the range is not computed, as for a reopened root entry
+         */
+        public Point highKey() {
+            return highKey;
+        }
+
+        /**
+         * Checks if a given key is inside the key range of the subtree.
+         *
+         * @param key the key to check
+         * @return <code>true</code> if the key is between the lowest and the highest key, inclusive
+         */
+        public boolean containsKey(final Point key) {
+            return (KEY_ORDER.compare(lowKey, key) <= 0) && (KEY_ORDER.compare(key, highKey) <= 0);
+        }
+
+        /**
+         * Extends the key range to include a given range.
+         *
+         * @param low  the lowest key of the range to include
+         * @param high the highest key of the range to include
+         */
+        private void include(final Point low, final Point high) {
+            if ((lowKey == null) || (KEY_ORDER.compare(low, lowKey) < 0))
+                lowKey = low;
+            if ((highKey == null) || (KEY_ORDER.compare(high, highKey) > 0))
+                highKey = high;
+        }
+    }
+
+    /**
+     * The number of dimensions of the stored keys, set when the node converter is made
+     */
+    private int keyDimensions = 2;
+
+    /**
+     * Returns the Hilbert key of a node entry.
+     *
+     * @param entry a data object, an index entry or a descriptor
+     * @return the lower left corner of the MBR for a data object or a descriptor, the highest key in the subtree for
+     *         an index entry
+     */
+    public Point hilbertKey(final Object entry) {
+        if (entry instanceof RRDiskHilbertTree.HilbertIndexEntry)
+            //noinspection unchecked
+            return ((HilbertIndexEntry)entry).highKey;
+        if (entry instanceof Descriptor)
+            return ((Rectangle)entry).getCorner(false);
+        return ((Rectangle)descriptor(entry)).getCorner(false);
+    }
+
+    @Override
+    public IRRTreeDiskNode<E> createNode(final int level, final List<?> nodeContents) {
+        //noinspection unchecked
+        assert (level == 0) || (nodeContents == null) || (nodeContents.size() == 0)
+                || (level == getHeight((List<IRRTreeIndexEntry<E>>)nodeContents) + 1);
+        return new Node(level, nodeContents);
+    }
+
+    @Override
+    public Node createNode(final int level) {
+        return (Node)createNode(level, null);
+    }
+
+    @Override
+    public HilbertIndexEntry createIndexEntry(final int parentLevel) {
+        return new HilbertIndexEntry(parentLevel);
+    }
+
+    /**
+     * Creates a new index entry for a given node and initializes its descriptor and its Hilbert key range.
+     *
+     * @param newNode a node to compute the index entry for
+     * @return the newly created index entry
+     */
+    @Override
+    public IRRTreeIndexEntry<E> computeIndexEntry(final IRRTreeDiskNode<E> newNode) {
+        final HilbertIndexEntry result = (HilbertIndexEntry)super.computeIndexEntry(newNode);
+        final Iterator<?> entries = newNode.entries();
+        while (entries.hasNext()) {
+            final Object entry = entries.next();
+            if (newNode.level() == 0) {
+                final Point key = hilbertKey(entry);
+                result.include(key, key);
+            }
+            else {
+                final HilbertIndexEntry child = (HilbertIndexEntry)entry;
+                assert child.lowKey != null;
+                result.include(child.lowKey, child.highKey);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Converter nodeConverter(final Converter objectConverter, final int dimensions) {
+        keyDimensions = dimensions;
+        return super.nodeConverter(objectConverter, dimensions);
+    }
+
+    /**
+     * Returns a converter for the index entries that writes the Hilbert key range after the id and the descriptor.
+     *
+     * @param descriptorConverter the converter for the descriptors
+     * @return the index entry converter
+     */
+    @Override
+    public Converter indexEntryConverter(final Converter descriptorConverter) {
+        return new IndexEntryConverter(descriptorConverter) {
+            @Override
+            public Object read(final DataInput dataInput, final Object object) throws IOException {
+                final HilbertIndexEntry result = (HilbertIndexEntry)super.read(dataInput, object);
+                result.lowKey = readKey(dataInput);
+                result.highKey = readKey(dataInput);
+                return result;
+            }
+
+            @Override
+            public void write(final DataOutput dataOutput, final Object object) throws IOException {
+                super.write(dataOutput, object);
+                final HilbertIndexEntry entry = (HilbertIndexEntry)object;
+                ((DoublePoint)entry.lowKey).write(dataOutput);
+                ((DoublePoint)entry.highKey).write(dataOutput);
+            }
+        };
+    }
+
+    private Point readKey(final DataInput dataInput) throws IOException {
+        final DoublePoint result = new DoublePoint(keyDimensions);
+        result.read(dataInput);
+        return result;
+    }
+}
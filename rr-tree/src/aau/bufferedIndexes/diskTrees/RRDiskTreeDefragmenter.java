@@ -0,0 +1,409 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import xxl.core.collections.containers.Container;
+import xxl.core.functions.Constant;
+import xxl.core.io.Convertable;
+
+import java.util.*;
+
+/**
+ * An online defragmenter that relocates the disk tree nodes so that their container ids follow the depth-first order
+ * of the tree: every index node is followed by its subtree, and the leaves under one parent are contiguous.  With a
+ * block file container the ids are the block offsets, thus the subtree walks and the range queries read near-sequential
+ * blocks.
+ * <p>
+ * Each invocation works on a window of the depth-first order within a budget of container reads, writes and removes.
+ * The next window starts in the middle of the previous one, wrapping around at the end of the tree, so that the
+ * windows overlap and the nodes may move between them.  The window is walked first,
+ * reading its index nodes but not its leaves, until half of the budget is spent.  Then the window nodes with the
+ * largest ids are moved to the lower free ids the container reserves, so that a block file container may truncate its
+ * freed tail, and the window nodes are swapped into the depth-first order over the ids they occupy.  The relocated
+ * nodes and their parents with the redirected index entries are kept in memory and written at the end, in the
+ * ascending id order, and only then the ids the moved nodes have left are removed.  The nodes already in place are
+ * skipped, thus the repeated invocations converge to a clustered tree and follow its changes.
+ *
+ * @param <E> the type of the data items in the tree
+ */
+public class RRDiskTreeDefragmenter<E extends Convertable> {
+
+    /**
+     * The worst case number of I/Os a node move adds: reading the moved node and its parent, writing them, and
+     * removing the old node id
+     */
+    private static final int MOVE_IOS = 5;
+
+    /**
+     * The worst case number of I/Os a node swap adds: reading and writing the two swapped nodes and their parents
+     */
+    private static final int SWAP_IOS = 8;
+
+    /**
+     * The child entry positions on the path from the root to the node the next invocation starts from, empty to start
+     * from the root
+     */
+    private List<Integer> resumePath = new ArrayList<>();
+
+    /**
+     * The tree being defragmented by the current invocation
+     */
+    private IRRDiskTree<E> tree = null;
+
+    /**
+     * The maximum number of container I/Os of the current invocation
+     */
+    private int maxIos = 0;
+
+    /**
+     * The ids of the window nodes in the depth-first order of the tree
+     */
+    private final List<Object> nodeIds = new ArrayList<>();
+
+    /**
+     * The child entry positions on the paths from the root to the window nodes
+     */
+    private final List<List<Integer>> nodePaths = new ArrayList<>();
+
+    /**
+     * The positions of the window node ids in the depth-first order
+     */
+    private final Map<Object, Integer> positions = new HashMap<>();
+
+    /**
+     * The ids of the parent nodes by the child node ids, the root node has none
+     */
+    private final Map<Object, Object> parentIds = new HashMap<>();
+
+    /**
+     * The index nodes read by the window walk, by their ids
+     */
+    private final Map<Object, IRRTreeDiskNode<E>> loadedNodes = new HashMap<>();
+
+    /**
+     * The nodes to be written at the end by their new ids
+     */
+    private final SortedMap<Object, IRRTreeDiskNode<E>> pendingNodes = new TreeMap<>();
+
+    /**
+     * The ids left by the moved nodes, to be removed after the nodes are written
+     */
+    private final SortedSet<Object> freedIds = new TreeSet<>();
+
+    /**
+     * The number of container reads done by the current invocation
+     */
+    private int reads = 0;
+
+    /**
+     * The number of container removes done by the current invocation
+     */
+    private int removes = 0;
+
+    /**
+     * The number of the nodes that got a new id in the current invocation
+     */
+    private int relocatedNodes = 0;
+
+    /**
+     * Relocates the nodes of the next window of the tree.  At least the path to the first window node is read, even if
+     * it exceeds the budget.
+     *
+     * @param tree   the tree to defragment
+     * @param maxIos the maximum number of container reads, writes and removes to spend
+     * @return the number of the relocated nodes
+     */
+    public int defragment(final IRRDiskTree<E> tree, final int maxIos) {
+        if (maxIos <= 0)
+            throw new IllegalArgumentException("The defragmentation I/O budget must be positive, got " + maxIos);
+        //noinspection unchecked
+        final IRRTreeIndexEntry<E> rootEntry = (IRRTreeIndexEntry<E>)tree.rootEntry();
+        if (rootEntry == null) {
+            resumePath.clear();
+            return 0;
+        }
+        this.tree = tree;
+        this.maxIos = maxIos;
+        reads = 0;
+        removes = 0;
+        relocatedNodes = 0;
+        final List<Integer> path = new ArrayList<>();
+        if (collect(rootEntry, null, path, true))
+            resumePath = new ArrayList<>();
+        else
+            resumePath = (nodePaths.size() > 1) ? nodePaths.get(nodePaths.size() / 2) : path;
+        if (!nodeIds.isEmpty()) {
+            final SortedSet<Object> usedIds = new TreeSet<>(nodeIds);
+            compact(usedIds);
+            cluster(new ArrayList<>(usedIds));
+            writePendingNodes();
+        }
+        nodeIds.clear();
+        nodePaths.clear();
+        positions.clear();
+        parentIds.clear();
+        loadedNodes.clear();
+        this.tree = null;
+        return relocatedNodes;
+    }
+
+    /**
+     * Walks the subtree of an index entry in the depth-first order, adding its nodes to the window, starting from the
+     * resume path if the entry is on it.
+     *
+     * @param entry    the index entry pointing to the subtree
+     * @param parentId the id of the parent node, <code>null</code> for the root node
+     * @param path     the child entry positions on the path from the root to the entry, restored on returning
+     *                 <code>true</code>
+     * @param resuming <code>true</code> if the entry is on the resume path
+     * @return <code>true</code> if the whole subtree was walked, <code>false</code> if the window is full and the path
+     *         points to the first node not in it
+     */
+    private boolean collect(final IRRTreeIndexEntry<E> entry, final Object parentId, final List<Integer> path,
+                            final boolean resuming) {
+        final int depth = path.size();
+        final boolean leaf = entry.level() == 0;
+        final boolean ancestor = resuming && !leaf && (depth < resumePath.size());
+        if (!ancestor) {
+            if (!nodeIds.isEmpty() && !canCollect(leaf ? 0 : 1))
+                return false;
+            final Object id = entry.id();
+            positions.put(id, nodeIds.size());
+            nodeIds.add(id);
+            nodePaths.add(new ArrayList<>(path));
+            parentIds.put(id, parentId);
+        }
+        if (leaf)
+            return true;
+        final IRRTreeDiskNode<E> node = readNode(entry.id());
+        loadedNodes.put(entry.id(), node);
+        final List<IRRTreeIndexEntry<E>> children = new ArrayList<>(node.getNonLeafNodeEntries());
+        for (int i = ancestor ? resumePath.get(depth) : 0; i < children.size(); i++) {
+            path.add(i);
+            if (!collect(children.get(i), entry.id(), path, ancestor && (i == resumePath.get(depth))))
+                return false;
+            path.remove(path.size() - 1);
+        }
+        return true;
+    }
+
+    private boolean canCollect(final int nodeReads) {
+        final int windowBudget = Math.max(1, maxIos / 2);
+        return (reads + nodeReads <= windowBudget) && (nodeIds.size() < windowBudget);
+    }
+
+    private boolean canAfford(final int ios) {
+        return reads + removes + pendingNodes.size() + freedIds.size() + ios <= maxIos;
+    }
+
+    /**
+     * Moves the window nodes with the largest ids to the lower ids reserved from the container for as long as it
+     * returns such ids.
+     *
+     * @param usedIds the ids of the window nodes, updated for the moves
+     */
+    private void compact(final SortedSet<Object> usedIds) {
+        final Container container = tree.container();
+        while (canAfford(MOVE_IOS)) {
+            final Object lastId = usedIds.last();
+            final Object freeId = container.reserve(new Constant<>(peekNode(lastId)));
+            if (compareIds(freeId, lastId) >= 0) {
+                container.remove(freeId);
+                removes++;
+                return;
+            }
+            final IRRTreeDiskNode<E> node = takeNode(lastId);
+            pendingNodes.put(freeId, node);
+            freedIds.add(lastId);
+            relocatedNodes++;
+
+            final Object parentId = parentIds.remove(lastId);
+            parentIds.put(freeId, parentId);
+            setChildrenParent(node, freeId);
+            redirectEntry(parentId, findEntry(parentId, lastId), freeId);
+
+            final int position = positions.remove(lastId);
+            nodeIds.set(position, freeId);
+            positions.put(freeId, position);
+            usedIds.remove(lastId);
+            usedIds.add(freeId);
+        }
+    }
+
+    /**
+     * Swaps the window nodes into the depth-first order over the given ids.
+     *
+     * @param targetIds the window node ids in the ascending order
+     */
+    private void cluster(final List<Object> targetIds) {
+        for (int i = 0; i < nodeIds.size(); i++) {
+            final Object id = nodeIds.get(i);
+            final Object targetId = targetIds.get(i);
+            if (id.equals(targetId))
+                continue;
+            if (!canAfford(SWAP_IOS))
+                return;
+            swapNodes(id, targetId);
+            final int targetPosition = positions.get(targetId);
+            nodeIds.set(i, targetId);
+            nodeIds.set(targetPosition, id);
+            positions.put(targetId, i);
+            positions.put(id, targetPosition);
+        }
+    }
+
+    /**
+     * Swaps two nodes in memory and redirects their parent index entries.
+     *
+     * @param id1 the id of the first node
+     * @param id2 the id of the second node
+     */
+    private void swapNodes(final Object id1, final Object id2) {
+        final Object parentId1 = swappedId(parentIds.get(id1), id1, id2);
+        final Object parentId2 = swappedId(parentIds.get(id2), id1, id2);
+        final IRRTreeDiskNode<E> node1 = takeNode(id1);
+        final IRRTreeDiskNode<E> node2 = takeNode(id2);
+        pendingNodes.put(id2, node1);
+        pendingNodes.put(id1, node2);
+        relocatedNodes += 2;
+
+        // A node may be the parent of the other one, thus its children are updated before the parents are
+        setChildrenParent(node1, id2);
+        setChildrenParent(node2, id1);
+        parentIds.put(id2, parentId1);
+        parentIds.put(id1, parentId2);
+
+        // Both entries are found before redirecting either, as the nodes may be siblings
+        final IRRTreeIndexEntry<E> entry1 = findEntry(parentId1, id1);
+        final IRRTreeIndexEntry<E> entry2 = findEntry(parentId2, id2);
+        redirectEntry(parentId1, entry1, id2);
+        redirectEntry(parentId2, entry2, id1);
+    }
+
+    private static Object swappedId(final Object id, final Object id1, final Object id2) {
+        if (id1.equals(id)) return id2;
+        if (id2.equals(id)) return id1;
+        return id;
+    }
+
+    private void setChildrenParent(final IRRTreeDiskNode<E> node, final Object parentId) {
+        if (node.level() == 0)
+            return;
+        for (final IRRTreeIndexEntry<E> childEntry : node.getNonLeafNodeEntries())
+            parentIds.put(childEntry.id(), parentId);
+    }
+
+    /**
+     * Finds the index entry pointing to a given node in its parent, keeping the parent to be written.
+     *
+     * @param parentId the id of the parent node, <code>null</code> for the root node
+     * @param id       the id of the node
+     * @return the index entry pointing to the node
+     */
+    private IRRTreeIndexEntry<E> findEntry(final Object parentId, final Object id) {
+        if (parentId == null) {
+            //noinspection unchecked
+            return (IRRTreeIndexEntry<E>)tree.rootEntry();
+        }
+        IRRTreeDiskNode<E> parent = pendingNodes.get(parentId);
+        if (parent == null) {
+            parent = takeNode(parentId);
+            pendingNodes.put(parentId, parent);
+        }
+        for (final IRRTreeIndexEntry<E> entry : parent.getNonLeafNodeEntries())
+            if (entry.id().equals(id))
+                return entry;
+        throw new IllegalStateException("Node " + id + " not found in its parent node " + parentId);
+    }
+
+    /**
+     * Replaces the index entry pointing to a node with one pointing to its new id.  The entry is not modified in place,
+     * as it may be shared with the cached copies of the parent node.
+     *
+     * @param parentId the id of the parent node found by {@link #findEntry}, <code>null</code> for the root node
+     * @param entry    the index entry pointing to the node
+     * @param newId    the new id of the node
+     */
+    private void redirectEntry(final Object parentId, final IRRTreeIndexEntry<E> entry, final Object newId) {
+        if (parentId == null)
+            tree.setNewRootNode(entry.withId(newId));
+        else
+            pendingNodes.get(parentId).replaceEntry(entry, entry.withId(newId));
+    }
+
+    /**
+     * Returns a node, reading it and keeping it with the walked nodes if it is neither pending nor walked.
+     *
+     * @param id the id of the node
+     * @return the node
+     */
+    private IRRTreeDiskNode<E> peekNode(final Object id) {
+        IRRTreeDiskNode<E> node = pendingNodes.get(id);
+        if (node == null)
+            node = loadedNodes.get(id);
+        if (node == null) {
+            node = readNode(id);
+            loadedNodes.put(id, node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns a node to be relocated, taking it from the pending or the walked nodes, or reading it.
+     *
+     * @param id the id of the node
+     * @return the node
+     */
+    private IRRTreeDiskNode<E> takeNode(final Object id) {
+        IRRTreeDiskNode<E> node = pendingNodes.remove(id);
+        if (node == null)
+            node = loadedNodes.remove(id);
+        return (node != null) ? node : readNode(id);
+    }
+
+    private IRRTreeDiskNode<E> readNode(final Object id) {
+        reads++;
+        //noinspection unchecked
+        return (IRRTreeDiskNode<E>)tree.container().get(id);
+    }
+
+    /**
+     * Writes the relocated nodes and the parents with the redirected entries, and then removes the ids the moved nodes
+     * have left, so that a node is never only in memory.
+     */
+    private void writePendingNodes() {
+        for (final Map.Entry<Object, IRRTreeDiskNode<E>> pendingNode : pendingNodes.entrySet()) {
+            final IRRTreeDiskNode<E> node = pendingNode.getValue();
+            final IRRTreeIndexEntry<E> nodeEntry = tree.createIndexEntry(node.level() + 1);
+            nodeEntry.initialize(pendingNode.getKey());
+            tree.takeOverNode(node, nodeEntry, false);
+        }
+        pendingNodes.clear();
+        final Container container = tree.container();
+        for (final Object freedId : freedIds)
+            container.remove(freedId);
+        removes += freedIds.size();
+        freedIds.clear();
+    }
+
+    private static int compareIds(final Object id1, final Object id2) {
+        //noinspection unchecked
+        return ((Comparable<Object>)id1).compareTo(id2);
+    }
+}
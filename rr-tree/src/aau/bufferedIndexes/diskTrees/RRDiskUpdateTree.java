@@ -54,15 +54,90 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
         }
 
         /**
-         * Returns a collection of node entries, assuming that the node is a leaf node.
+         * The index of the leaf node entries, built on the first use and kept in sync by the node updates.
+         * <code>null</code> if not built yet or if the entries might have been modified bypassing the node.
+         */
+        private LeafEntryIndex<E> entryIndex = null;
+
+        /**
+         * Returns a collection of node entries, assuming that the node is a leaf node.  As the caller may modify the
+         * collection directly, it is made private to this node and the entry index is dropped.
          *
          * @return a collection of data entries in the node
          */
         public Collection<UpdateTree.Entry<E>> getLeafNodeEntries() {
+            ownEntries();
+            entryIndex = null;
             //noinspection unchecked
             return entries;
         }
 
+        /**
+         * Returns the entry index of this leaf node, building it if necessary.
+         *
+         * @return the entry index
+         */
+        private LeafEntryIndex<E> leafEntryIndex() {
+            assert level() == 0;
+            ownEntries();
+            if ((entryIndex == null) || entryIndex.isStale()) {
+                //noinspection unchecked
+                entryIndex = new LeafEntryIndex<>(RRDiskUpdateTree.this, (List<UpdateTree.Entry<E>>)entries);
+            }
+            return entryIndex;
+        }
+
+        /**
+         * Adds a new data element to the node, keeping the entry index in sync.
+         *
+         * @param data an element to add
+         * @param path the path from the root to this node
+         */
+        protected void grow(final Object data, final Stack path) {
+            super.grow(data, path);
+            if (entryIndex != null)
+                entryIndex.entryAdded();
+        }
+
+        /**
+         * Removes a data element from the node, both index and leaf level.  Leaf entries are found through the entry
+         * index.
+         *
+         * @param data an element to remove
+         */
+        public void remove(final Object data) {
+            if (level() > 0) {
+                super.remove(data);
+                return;
+            }
+            final LeafEntryIndex<E> index = leafEntryIndex();
+            //noinspection unchecked
+            final int position = index.find((UpdateTree.Entry<E>)data);
+            if (position != LeafEntryIndex.NO_ENTRY)
+                index.removeAt(position);
+        }
+
+        /**
+         * Drops the entry index built on the replaced entry list.
+         */
+        @Override
+        protected void entriesReplaced() {
+            entryIndex = null;
+        }
+
+        /**
+         * Builds the entry index, if it is not built yet.  It is kept in sync afterwards.
+         */
+        public void indexEntries() {
+            leafEntryIndex();
+        }
+
+        /**
+         * Does nothing, the entry index is kept in sync with the node and reused.
+         */
+        public void deleteEntryIndex() {
+        }
+
         /**
          * A stop-gap measure before nodes implement Iterable properly.  Signals to a node that its element was just
          * removed through an iterator.
@@ -108,12 +183,14 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
          * @return <code>true</code> if this operation was executed, <code>false</code> otherwise.
          */
         protected boolean executeOp(final UpdateTree.Entry<E> entry, final boolean insertionRemovesOldInsertion) {
-            final boolean oppositeRemoved = getLeafNodeEntries().remove(entry.makeOpposite());
-            if (!oppositeRemoved) {
+            final LeafEntryIndex<E> index = leafEntryIndex();
+            final int opposite = index.findOpposite(entry);
+            if (opposite == LeafEntryIndex.NO_ENTRY) {
                 RRDiskUpdateTree.this.dataItems++;
                 grow(entry);
             }
             else {
+                index.removeAt(opposite);
                 RRDiskUpdateTree.this.dataItems--;
             }
             return true;
@@ -128,8 +205,7 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
          *         otherwise.
          */
         public boolean operationWillIncreaseNodeSize(UpdateTree.Entry<E> operation) {
-            assert haveHashedEntries;
-            return !hashedEntries.contains(operation.makeOpposite());
+            return leafEntryIndex().findOpposite(operation) == LeafEntryIndex.NO_ENTRY;
         }
 
         /**
@@ -144,8 +220,10 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
          */
         public Collection<UpdateTree.Entry<E>> executeConstrainedSubsetOfOps(Collection<UpdateTree.Entry<E>> candidateSet, int maxInsertions, int maxDeletions) {
             final Collection<UpdateTree.Entry<E>> executedOps = new ArrayList<>(candidateSet.size());
+            final LeafEntryIndex<E> index = leafEntryIndex();
             for (UpdateTree.Entry<E> entry : candidateSet) {
-                if (operationWillIncreaseNodeSize(entry)) {
+                final int opposite = index.findOpposite(entry);
+                if (opposite == LeafEntryIndex.NO_ENTRY) {
                     if (maxInsertions > 0) {
                         grow(entry);
                         RRDiskUpdateTree.this.dataItems++;
@@ -154,8 +232,7 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
                     }
                 }
                 else if (maxDeletions > 0) {
-                    boolean result = getLeafNodeEntries().remove(entry.makeOpposite());
-                    assert result;
+                    index.removeAt(opposite);
                     RRDiskUpdateTree.this.dataItems--;
                     maxDeletions--;
                     executedOps.add(entry);
@@ -180,22 +257,15 @@ public class RRDiskUpdateTree<E extends Convertable> extends AbstractRRDiskTree<
             }
             assert level() == 0;
             final IRRTreeDiskUpdateNode<E> node = (IRRTreeDiskUpdateNode<E>)n;
-            // TODO: fix O(n^2)
+            final LeafEntryIndex<E> index = leafEntryIndex();
             for (final UpdateTree.Entry<E> e : node.getLeafNodeEntries()) {
-                boolean shouldAnnihilate = false;
-                final Iterator<UpdateTree.Entry<E>> thisNodeEntriesItr
-                        = getLeafNodeEntries().iterator();
-                while (thisNodeEntriesItr.hasNext()) {
-                    final UpdateTree.Entry<E> e2 = thisNodeEntriesItr.next();
-                    if (doEntriesAnnihilate(e, e2)) {
-                        shouldAnnihilate = true;
-                        thisNodeEntriesItr.remove();
-                        RRDiskUpdateTree.this.dataItems--;
-                        RRDiskUpdateTree.this.dataItems--;
-                        break;
-                    }
+                final int opposite = index.findOpposite(e);
+                if (opposite != LeafEntryIndex.NO_ENTRY) {
+                    index.removeAt(opposite);
+                    RRDiskUpdateTree.this.dataItems--;
+                    RRDiskUpdateTree.this.dataItems--;
                 }
-                if (!shouldAnnihilate)
+                else
                     grow(e);
             }
         }
@@ -0,0 +1,202 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import xxl.core.indexStructures.Descriptor;
+import xxl.core.io.Convertable;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.DoubleRectangles;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A batched R-tree ChooseSubtree over the children of a single index node.  The child MBRs are copied into flat
+ * coordinate arrays once, the objects to route are sorted by their lower x coordinate and swept against the children
+ * sorted the same way, so that an object contained in some child is assigned without looking at the children that
+ * cannot contain it.  The objects that no child contains fall back to the minimum area enlargement choice.  The
+ * area computations are done by {@link DoubleRectangles} and the sorts are done over primitive positions, without
+ * allocating rectangles, points or boxed positions.  The choices are the same as those of
+ * {@link xxl.core.indexStructures.RTree.Node#chooseSubtreeByDescriptor}: the smallest containing child, or else the
+ * child needing the least area enlargement, ties going to the first child in the node.
+ *
+ * @param <E> the type of the tree data items
+ */
+final class SubtreeChooser<E extends Convertable> {
+
+    private final List<IRRTreeIndexEntry<E>> children;
+
+    private final int dimensions;
+
+    /**
+     * The child MBR corners, <code>dimensions</code> coordinates per child in the node order
+     */
+    private final double[] lows;
+
+    private final double[] highs;
+
+    private final double[] areas;
+
+    /**
+     * The child positions sorted by the lower x coordinate
+     */
+    private final int[] byLowX;
+
+    /**
+     * The swept children whose x extent may still contain the next object
+     */
+    private final int[] active;
+
+    /**
+     * Copies the MBRs of index node children.
+     *
+     * @param children the index entries of the node, in the node order
+     */
+    SubtreeChooser(final Collection<IRRTreeIndexEntry<E>> children) {
+        if (children.isEmpty())
+            throw new IllegalArgumentException("Cannot choose among no children");
+        this.children = new ArrayList<>(children);
+        final int n = this.children.size();
+        dimensions = ((Rectangle)this.children.get(0).descriptor()).dimensions();
+        lows = new double[n * dimensions];
+        highs = new double[n * dimensions];
+        areas = new double[n];
+        for (int i = 0; i < n; i++) {
+            copyCorners(this.children.get(i).descriptor(), lows, highs, i * dimensions);
+            areas[i] = DoubleRectangles.area(lows, highs, i * dimensions, dimensions);
+        }
+        byLowX = sortedByLowX(lows, n, dimensions);
+        active = new int[n];
+    }
+
+    /**
+     * Chooses a child for every one of the given descriptors.
+     *
+     * @param descriptors the rectangles to route
+     * @return the chosen child for every descriptor, in the order of the descriptors
+     */
+    List<IRRTreeIndexEntry<E>> choose(final List<Descriptor> descriptors) {
+        final int count = descriptors.size();
+        final double[] objectLows = new double[count * dimensions];
+        final double[] objectHighs = new double[count * dimensions];
+        for (int i = 0; i < count; i++)
+            copyCorners(descriptors.get(i), objectLows, objectHighs, i * dimensions);
+        final int[] order = sortedByLowX(objectLows, count, dimensions);
+
+        final IRRTreeIndexEntry<?>[] result = new IRRTreeIndexEntry<?>[count];
+        int nextChild = 0;
+        int activeCount = 0;
+        for (final int object : order) {
+            final double lowX = objectLows[object * dimensions];
+            while ((nextChild < byLowX.length) && (lows[byLowX[nextChild] * dimensions] <= lowX))
+                active[activeCount++] = byLowX[nextChild++];
+            int chosen = -1;
+            int i = 0;
+            while (i < activeCount) {
+                final int child = active[i];
+                if (highs[child * dimensions] < lowX) {
+                    active[i] = active[--activeCount];
+                    continue;
+                }
+                if (DoubleRectangles.contains(lows, highs, child * dimensions, objectLows, objectHighs,
+                        object * dimensions, dimensions)
+                        && ((chosen == -1) || (areas[child] < areas[chosen])
+                            || ((areas[child] == areas[chosen]) && (child < chosen))))
+                    chosen = child;
+                i++;
+            }
+            if (chosen == -1)
+                chosen = leastEnlargement(objectLows, objectHighs, object);
+            result[object] = children.get(chosen);
+        }
+        //noinspection unchecked
+        return (List<IRRTreeIndexEntry<E>>)(List<?>)Arrays.asList(result);
+    }
+
+    /**
+     * Copies the corner coordinates of a rectangle from its own coordinate arrays, without allocating corner points.
+     */
+    private void copyCorners(final Descriptor rectangle, final double[] toLows, final double[] toHighs,
+                             final int offset) {
+        final DoublePointRectangle doubleRectangle = (DoublePointRectangle)rectangle;
+        System.arraycopy(DoubleRectangles.lows(doubleRectangle), 0, toLows, offset, dimensions);
+        System.arraycopy(DoubleRectangles.highs(doubleRectangle), 0, toHighs, offset, dimensions);
+    }
+
+    /**
+     * Returns the positions of packed rectangles sorted by their lower x coordinates, by a heap sort over the
+     * positions.
+     *
+     * @param packedLows the lower corner coordinates, <code>dimensions</code> per rectangle
+     * @param count the number of rectangles
+     * @param dimensions the number of dimensions
+     * @return the rectangle positions in the ascending order of their lower x coordinates
+     */
+    static int[] sortedByLowX(final double[] packedLows, final int count, final int dimensions) {
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        for (int i = count / 2 - 1; i >= 0; i--)
+            siftDown(order, i, count, packedLows, dimensions);
+        for (int end = count - 1; end > 0; end--) {
+            final int largest = order[0];
+            order[0] = order[end];
+            order[end] = largest;
+            siftDown(order, 0, end, packedLows, dimensions);
+        }
+        return order;
+    }
+
+    private static void siftDown(final int[] heap, final int root, final int size, final double[] packedLows,
+                                 final int dimensions) {
+        final int element = heap[root];
+        final double key = packedLows[element * dimensions];
+        int parent = root;
+        int child;
+        while ((child = 2 * parent + 1) < size) {
+            if ((child + 1 < size) && (packedLows[heap[child + 1] * dimensions] > packedLows[heap[child] * dimensions]))
+                child++;
+            if (packedLows[heap[child] * dimensions] <= key)
+                break;
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = element;
+    }
+
+    /**
+     * Finds the child whose MBR needs the least area enlargement to include an object.
+     */
+    private int leastEnlargement(final double[] objectLows, final double[] objectHighs, final int object) {
+        int chosen = -1;
+        double minEnlargement = Double.MAX_VALUE;
+        for (int child = 0; child < areas.length; child++) {
+            final double enlargement = DoubleRectangles.unionArea(lows, highs, child * dimensions, objectLows,
+                    objectHighs, object * dimensions, dimensions) - areas[child];
+            if (enlargement < minEnlargement) {
+                minEnlargement = enlargement;
+                chosen = child;
+            }
+        }
+        return (chosen == -1) ? 0 : chosen;
+    }
+}
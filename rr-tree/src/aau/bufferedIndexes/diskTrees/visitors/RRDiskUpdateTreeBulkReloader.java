@@ -208,6 +208,8 @@ public class RRDiskUpdateTreeBulkReloader<E extends Convertable> implements IRRD
         final List<UpdateTree.Entry<E>> newLeafNodeContents = new ArrayList<>(bulkLoadNodeSize);
         final List<IRRTreeIndexEntry<E>> newIndexEntries = new ArrayList<>();
         int dataItemsInNewTree = 0;
+        // The compressed leaf size is costly to compute, thus it is checked only once the previous headroom is used
+        int nextCompressedFillCheck = 0;
         final Collection<Object> seenIds = new HashSet<>();
         while (gcEntryCollection.size() > 0) {
             final EntryTmpFileIdxPair<E> entryTmpFileIdxPair = gcEntryCollection.pop();
@@ -227,8 +229,19 @@ public class RRDiskUpdateTreeBulkReloader<E extends Convertable> implements IRRD
             loadFromPartialFile(gcEntryCollection, replacementReader, partialInputs, entryToWrite);
             newLeafNodeContents.add(entryToWrite);
             dataItemsInNewTree++;
-            if (newLeafNodeContents.size() == bulkLoadNodeSize)
+            boolean leafFull = newLeafNodeContents.size() == bulkLoadNodeSize;
+            if (!leafFull && (newLeafNodeContents.size() >= nextCompressedFillCheck)) {
+                final int headroom = tree.compressedLeafHeadroom(newLeafNodeContents);
+                leafFull = (headroom == 0)
+                        || (tree.compressedPageFill(0, newLeafNodeContents) >= BULK_LOAD_FILL_FACTOR);
+                //noinspection NumericCastThatLosesPrecision
+                nextCompressedFillCheck = (int)Math.min(Integer.MAX_VALUE,
+                        (long)newLeafNodeContents.size() + headroom);
+            }
+            if (leafFull) {
                 makeNode(newLeafNodeContents, 0, newIndexEntries);
+                nextCompressedFillCheck = 0;
+            }
         }
         if (newLeafNodeContents.size() > 0)
             makeNode(newLeafNodeContents, 0, newIndexEntries);
@@ -240,6 +253,8 @@ public class RRDiskUpdateTreeBulkReloader<E extends Convertable> implements IRRD
             assert result;
         }
 
+        //noinspection NumericCastThatLosesPrecision
+        bulkLoadNodeSize = (int)Math.ceil(tree.getMaxNodeCapacity(1) * BULK_LOAD_FILL_FACTOR);
         List<IRRTreeIndexEntry<E>> lowerIndexEntries = newIndexEntries;
         int level = 1;
         while (lowerIndexEntries.size() > 1) {
@@ -110,9 +110,16 @@ public class RRDiskUpdateTreeGarbageVacuumer<E extends Convertable> extends RRDi
         }
         node.deleteEntryIndex();
 
+        int compressedHeadroom = tree.compressedLeafHeadroom(node.getLeafNodeEntries());
         for (final UpdateTree.Entry<E> insertion : insertionsToExecute) {
             if (node.number() == tree.getMaxNodeCapacity())
                 break;
+            if (compressedHeadroom == 0) {
+                compressedHeadroom = tree.compressedLeafHeadroom(node.getLeafNodeEntries());
+                if (compressedHeadroom == 0)
+                    break;
+            }
+            compressedHeadroom--;
             node.grow(insertion);
             node.dataItemAdded();
             buffer.removeExactEntry(insertion);
@@ -0,0 +1,177 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.instrumentation;
+
+import aau.bufferedIndexes.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * An instrumentation that records the wall-clock durations in nanoseconds, and, if the JVM supports it, the allocated
+ * bytes of the operations into log-bucketed histograms, separately for every operation and tree level.  The
+ * allocations are measured for the current thread through the thread MXBean.  Not thread-safe, same as the tree.
+ */
+public final class HistogramInstrumentation implements Instrumentation {
+
+    /**
+     * The measurements of a single operation at a single tree level
+     */
+    public static final class Measurements {
+
+        private final LatencyHistogram durations = new LatencyHistogram();
+
+        private final LatencyHistogram allocations = new LatencyHistogram();
+
+        public LatencyHistogram getDurations() {
+            return durations;
+        }
+
+        /**
+         * Returns the allocated bytes histogram.
+         *
+         * @return the allocated bytes histogram, empty if the JVM does not support allocation measurement
+         */
+        public LatencyHistogram getAllocations() {
+            return allocations;
+        }
+    }
+
+    private static final int INITIAL_SLOTS = 16;
+
+    private final Map<Event, List<Measurements>> measurements = new EnumMap<>(Event.class);
+
+    /**
+     * The thread MXBean for allocation measurement, or <code>null</code> if not supported
+     */
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    /**
+     * The start times of the currently measured operations, indexed by their tokens
+     */
+    private long[] timeStarts = new long[INITIAL_SLOTS];
+
+    /**
+     * The allocated bytes of the current thread at the beginning of the currently measured operations, indexed by
+     * their tokens
+     */
+    private long[] allocationStarts = new long[INITIAL_SLOTS];
+
+    /**
+     * The stack of unused tokens
+     */
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+
+    private int freeSlotCount;
+
+    public HistogramInstrumentation() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if ((threadBean instanceof com.sun.management.ThreadMXBean)
+                && ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        else
+            allocationBean = null;
+        for (final Event event : Event.values())
+            measurements.put(event, new ArrayList<Measurements>());
+        for (int i = 0; i < INITIAL_SLOTS; i++)
+            freeSlots[i] = INITIAL_SLOTS - 1 - i;
+        freeSlotCount = INITIAL_SLOTS;
+    }
+
+    /**
+     * Returns <code>true</code> if the allocated memory is measured.
+     *
+     * @return <code>true</code> if the allocated memory is measured
+     */
+    public boolean measuresAllocations() {
+        return allocationBean != null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long begin() {
+        if (freeSlotCount == 0)
+            growSlots();
+        final int slot = freeSlots[--freeSlotCount];
+        if (allocationBean != null)
+            allocationStarts[slot] = allocatedBytes();
+        timeStarts[slot] = System.nanoTime();
+        return slot;
+    }
+
+    @Override
+    public void end(final Event event, final int level, final long token) {
+        final long now = System.nanoTime();
+        //noinspection NumericCastThatLosesPrecision
+        final int slot = (int)token;
+        final Measurements levelMeasurements = getOrCreate(event, level);
+        levelMeasurements.durations.record(now - timeStarts[slot]);
+        if (allocationBean != null)
+            levelMeasurements.allocations.record(allocatedBytes() - allocationStarts[slot]);
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private void growSlots() {
+        final int oldSize = timeStarts.length;
+        final int newSize = oldSize * 2;
+        timeStarts = Arrays.copyOf(timeStarts, newSize);
+        allocationStarts = Arrays.copyOf(allocationStarts, newSize);
+        freeSlots = Arrays.copyOf(freeSlots, newSize);
+        for (int i = oldSize; i < newSize; i++)
+            freeSlots[freeSlotCount++] = i;
+    }
+
+    private long allocatedBytes() {
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private Measurements getOrCreate(final Event event, final int level) {
+        final List<Measurements> levels = measurements.get(event);
+        while (levels.size() <= level)
+            levels.add(null);
+        Measurements result = levels.get(level);
+        if (result == null) {
+            result = new Measurements();
+            levels.set(level, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the measurements of an operation by tree level.
+     *
+     * @param event the operation
+     * @return the tree levels mapped to their measurements, only for the levels where the operation was measured
+     */
+    public SortedMap<Integer, Measurements> getMeasurements(final Event event) {
+        final SortedMap<Integer, Measurements> result = new TreeMap<>();
+        final List<Measurements> levels = measurements.get(event);
+        for (int level = 0; level < levels.size(); level++)
+            if (levels.get(level) != null)
+                result.put(level, levels.get(level));
+        return result;
+    }
+}
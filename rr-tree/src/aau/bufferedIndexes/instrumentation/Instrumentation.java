@@ -0,0 +1,62 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.instrumentation;
+
+/**
+ * An interface for measuring the wall-clock time and the allocated memory of various RR-tree operations.  Every
+ * measured operation is bracketed by {@link #begin} and {@link #end} calls.  The measured operations may nest and
+ * overlap.
+ */
+public interface Instrumentation {
+
+    public static enum Event {
+        EMPTY_BUFFER,
+        GROUP_UPDATE,
+        GROUP_SPLIT,
+        LEAF_PIGGYBACKING,
+        QUERY_PIGGYBACKING,
+        GC_VACUUM,
+        GC_REBUILD,
+        QUERY
+    }
+
+    /**
+     * Returns <code>true</code> if this instrumentation measures anything, allowing the callers to skip preparing the
+     * arguments of the measurement calls otherwise.
+     *
+     * @return <code>true</code> if the operations are measured
+     */
+    public boolean isEnabled();
+
+    /**
+     * Starts measuring an operation.
+     *
+     * @return the token to pass to the matching {@link #end} call
+     */
+    public long begin();
+
+    /**
+     * Finishes measuring an operation and records its measurements.
+     *
+     * @param event the measured operation
+     * @param level the tree level of the operation, 0 if not applicable
+     * @param token the token returned by the matching {@link #begin} call
+     */
+    public void end(final Event event, final int level, final long token);
+}
@@ -0,0 +1,56 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.instrumentation;
+
+/**
+ * An instrumentation that measures nothing.  Its calls are trivial for the JIT to inline away, making the disabled
+ * instrumentation free.
+ */
+public final class NullInstrumentation implements Instrumentation {
+
+    /**
+     * Returns <code>false</code> as the null instrumentation does not measure anything.
+     *
+     * @return <code>false</code>
+     */
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Starts measuring an operation. Does nothing for the null instrumentation.
+     *
+     * @return 0
+     */
+    @Override
+    public long begin() {
+        return 0;
+    }
+
+    /**
+     * Finishes measuring an operation. Does nothing for the null instrumentation.
+     *
+     * @param event the measured operation
+     * @param level the tree level of the operation, 0 if not applicable
+     * @param token the token returned by the matching {@link #begin} call
+     */
+    @Override
+    public void end(final Event event, final int level, final long token) { }
+}
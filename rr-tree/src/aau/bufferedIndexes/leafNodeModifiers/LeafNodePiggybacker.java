@@ -20,6 +20,7 @@ package aau.bufferedIndexes.leafNodeModifiers;
 
 import aau.bufferedIndexes.*;
 import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.objectTracers.ObjectTracer;
 import xxl.core.cursors.Cursor;
 import xxl.core.indexStructures.Descriptor;
@@ -27,6 +28,7 @@ import xxl.core.io.Convertable;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 
 /**
  * The RR-tree query-time leaf node modifier that performs piggybacking.
@@ -87,6 +89,18 @@ public class LeafNodePiggybacker<E extends Convertable> implements IRRTreeDiskNo
      */
     public boolean modify(final IRRTreeDiskNode<E> node, final boolean allowReorganization,
                           final double epsilon, final IRRTreeLeafPiggybackingInfo piggybackingInfo) {
+        if (!rrTreeStats.isInstrumented())
+            return doModify(node, allowReorganization, epsilon, piggybackingInfo);
+        final long timing = rrTreeStats.beginTimedEvent();
+        final boolean result = doModify(node, allowReorganization, epsilon, piggybackingInfo);
+        // Only the update piggybacking is allowed to reorganize the node
+        rrTreeStats.endTimedEvent(allowReorganization ? Instrumentation.Event.LEAF_PIGGYBACKING
+                : Instrumentation.Event.QUERY_PIGGYBACKING, node.level(), timing);
+        return result;
+    }
+
+    private boolean doModify(final IRRTreeDiskNode<E> node, final boolean allowReorganization,
+                             final double epsilon, final IRRTreeLeafPiggybackingInfo piggybackingInfo) {
         final Descriptor descriptor = node.computeDescriptor();
         if (descriptor == null)
             return false;    
@@ -99,6 +113,13 @@ public class LeafNodePiggybacker<E extends Convertable> implements IRRTreeDiskNo
 
         refinedCandidateSet.removeAll(piggybackedOps);
 
+        // A move may delete its old data from another node, thus it is left in the buffer
+        final Iterator<UpdateTree.Entry<E>> candidates = refinedCandidateSet.iterator();
+        while (candidates.hasNext()) {
+            if (candidates.next().isMove())
+                candidates.remove();
+        }
+
         // TODO: assert here that no operations in the refinedCandidateSet annihilate with each other
 
         node.indexEntries();
@@ -122,6 +143,7 @@ public class LeafNodePiggybacker<E extends Convertable> implements IRRTreeDiskNo
             return false;
         }
 
+        tree.beginDiskTreeChange();
         final Collection<UpdateTree.Entry<E>> newlyExecutedOps = node.executeConstrainedSubsetOfOps(refinedCandidateSet,
                 piggybackingInfo.getNumOfSizeIncreasingOps(), piggybackingInfo.getNumOfSizeDecreasingOps());
         node.deleteEntryIndex();
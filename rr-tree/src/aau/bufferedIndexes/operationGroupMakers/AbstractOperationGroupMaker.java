@@ -23,8 +23,15 @@ import aau.bufferedIndexes.OperationGroup;
 import aau.bufferedIndexes.StatisticalData;
 import aau.bufferedIndexes.UpdateTree;
 import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.IRRTreeIndexEntry;
+import aau.bufferedIndexes.diskTrees.LeafLocationIndex;
 import xxl.core.io.Convertable;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * An abstract operation group maker class.  Defines routines that are independent of grouping strategy.
  */
@@ -35,9 +42,32 @@ public abstract class AbstractOperationGroupMaker {
      */
     final StatisticalData deletionSplits = new StatisticalData();
 
+    /**
+     * The index to route deletions by, if any
+     */
+    LeafLocationIndex<?> leafLocationIndex = null;
+
+    /**
+     * The moves split into their halves by the last grouping
+     */
+    private final List<UpdateTree.Entry<?>> splitMoves = new ArrayList<>();
+
+    /**
+     * How many moves have been kept whole during grouping
+     */
+    private int wholeMoves = 0;
+
+    /**
+     * The children chosen by the batched ChooseSubtree for the grouped operations, keyed by the operated data
+     */
+    private final Map<Object, IRRTreeIndexEntry<?>> chosenSubtrees = new IdentityHashMap<>();
+
     /**
      * Creates a mapping between node entries and operations.  Should more or less follow R-tree rules for going down
-     * the tree.
+     * the tree.  A move is kept whole if both its halves go to the same single child, and split into the halves,
+     * grouped separately, otherwise.  The split moves are available from {@link #getSplitMoves} afterwards.  The
+     * operations routed by ChooseSubtree are routed all at once by {@link IRRTreeDiskNode#chooseSubtreesByObjects}
+     * before grouping.
      * @param node the node whose entries will be mapped to operations
      * @param operations the operations to process
      * @param <T> payload data type
@@ -49,15 +79,109 @@ public abstract class AbstractOperationGroupMaker {
         if (operations == null)
             throw new IllegalArgumentException("Argument operations cannot be null");
 
+        splitMoves.clear();
         final IndexEntryOpGroupMap<T> result = new IndexEntryOpGroupMap<>();
-        for (final UpdateTree.Entry<T> operation : operations) {
-            final T operatedData = operation.getData();
-            groupOperation(operation, operatedData, node, result);
+        chooseSubtrees(node, operations);
+        try {
+            for (final UpdateTree.Entry<T> operation : operations) {
+                if (operation.isMove()) {
+                    groupMove(operation, node, result);
+                    continue;
+                }
+                final T operatedData = operation.getData();
+                groupOperation(operation, operatedData, node, result);
+            }
+        }
+        finally {
+            chosenSubtrees.clear();
         }
         return result;
 
     }
 
+    /**
+     * Routes the operations, including the move halves, that are grouped by ChooseSubtree in a single batch.
+     *
+     * @param node       the node whose entries will be mapped to operations
+     * @param operations the operations to process
+     * @param <T>        payload data type
+     */
+    private <T extends Convertable> void chooseSubtrees(final IRRTreeDiskNode<T> node,
+                                                        final OperationGroup<T> operations) {
+        if (node.level() == 0)
+            return;
+        final List<Object> routedObjects = new ArrayList<>();
+        final List<T> routedData = new ArrayList<>();
+        for (final UpdateTree.Entry<T> operation : operations) {
+            if (operation.isMove()) {
+                addRoutedObject(operation.getInsertionHalf(), routedObjects, routedData);
+                addRoutedObject(operation.getDeletionHalf(), routedObjects, routedData);
+            }
+            else
+                addRoutedObject(operation, routedObjects, routedData);
+        }
+        if (routedObjects.size() < 2)
+            return;
+        final List<IRRTreeIndexEntry<T>> chosen = node.chooseSubtreesByObjects(routedObjects);
+        for (int i = 0; i < chosen.size(); i++)
+            chosenSubtrees.put(routedData.get(i), chosen.get(i));
+    }
+
+    private <T extends Convertable> void addRoutedObject(final UpdateTree.Entry<T> operation,
+                                                         final List<Object> routedObjects, final List<T> routedData) {
+        final Object routedObject = subtreeChoiceObject(operation);
+        if (routedObject == null)
+            return;
+        routedObjects.add(routedObject);
+        routedData.add(operation.getData());
+    }
+
+    /**
+     * Returns the object by whose descriptor an operation is routed with ChooseSubtree, if the maker groups it so.
+     *
+     * @param operation a non-move operation
+     * @param <T>       payload data type
+     * @return the object to pass to {@link IRRTreeDiskNode#chooseSubtreeByObject}, or <code>null</code> if the
+     *         operation is grouped otherwise
+     */
+    protected <T extends Convertable> Object subtreeChoiceObject(final UpdateTree.Entry<T> operation) {
+        return null;
+    }
+
+    /**
+     * Returns the child chosen for an operation by ChooseSubtree, taking it from the batch routed before grouping if
+     * it is there.
+     *
+     * @param node      node among whose entries to choose
+     * @param operation a non-move operation for which {@link #subtreeChoiceObject} is not <code>null</code>
+     * @param <T>       payload data type
+     * @return the chosen child entry
+     */
+    protected <T extends Convertable> IRRTreeIndexEntry<T> chooseSubtree(final IRRTreeDiskNode<T> node,
+                                                                         final UpdateTree.Entry<T> operation) {
+        //noinspection unchecked
+        final IRRTreeIndexEntry<T> chosen = (IRRTreeIndexEntry<T>)chosenSubtrees.get(operation.getData());
+        return (chosen != null) ? chosen : node.chooseSubtreeByObject(subtreeChoiceObject(operation));
+    }
+
+    private <T extends Convertable> void groupMove(final UpdateTree.Entry<T> move, final IRRTreeDiskNode<T> node,
+                                                   final IndexEntryOpGroupMap<T> result) {
+        final UpdateTree.Entry<T> insertionHalf = move.getInsertionHalf();
+        final UpdateTree.Entry<T> deletionHalf = move.getDeletionHalf();
+        final IndexEntryOpGroupMap<T> halves = new IndexEntryOpGroupMap<>();
+        groupOperation(insertionHalf, insertionHalf.getData(), node, halves);
+        groupOperation(deletionHalf, deletionHalf.getData(), node, halves);
+        if ((halves.size() == 1) && (halves.get(halves.ORPHAN_GROUP_KEY) == null)) {
+            result.addEntry(halves.iterator().next().getKey(), move);
+            wholeMoves++;
+            return;
+        }
+        for (final Map.Entry<IRRTreeIndexEntry<T>, OperationGroup<T>> group : halves)
+            for (final UpdateTree.Entry<T> half : group.getValue())
+                result.addEntry(group.getKey(), half);
+        splitMoves.add(move);
+    }
+
     /**
      * Choose a node entry or entries for a given operation and update the result accordingly.
      *
@@ -81,10 +205,41 @@ public abstract class AbstractOperationGroupMaker {
         return deletionSplits;
     }
 
+    /**
+     * Returns the moves that were split into their halves by the last grouping.
+     *
+     * @param <T> payload data type
+     * @return the split moves
+     */
+    public <T extends Convertable> List<UpdateTree.Entry<T>> getSplitMoves() {
+        //noinspection unchecked
+        return (List<UpdateTree.Entry<T>>)(List<?>)splitMoves;
+    }
+
+    /**
+     * Returns how many moves have been kept whole during grouping.
+     *
+     * @return the number of whole moves
+     */
+    public int getWholeMoves() {
+        return wholeMoves;
+    }
+
+    /**
+     * Sets the index to route deletions to their leaf nodes by.  Used by the makers that would otherwise send a
+     * deletion to every overlapping child.
+     *
+     * @param leafLocationIndex the leaf location index, <code>null</code> to group deletions spatially only
+     */
+    public void setLeafLocationIndex(final LeafLocationIndex<?> leafLocationIndex) {
+        this.leafLocationIndex = leafLocationIndex;
+    }
+
     /**
      * Resets deletion split statistics.
      */
     public void resetStatistics() {
         deletionSplits.reset();
+        wholeMoves = 0;
     }
 }
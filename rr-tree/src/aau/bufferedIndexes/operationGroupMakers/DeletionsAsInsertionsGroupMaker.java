@@ -43,7 +43,19 @@ public class DeletionsAsInsertionsGroupMaker extends AbstractOperationGroupMaker
     protected <T extends Convertable> void groupOperation(final UpdateTree.Entry<T> operation, final T operatedData,
                                                           final IRRTreeDiskNode<T> node,
                                                           final IndexEntryOpGroupMap<T> result) {
-        final IRRTreeIndexEntry<T> childForEntry = node.chooseSubtreeByObject(operation);
+        final IRRTreeIndexEntry<T> childForEntry = chooseSubtree(node, operation);
         result.addEntry(childForEntry, operation);
     }
+
+    /**
+     * Returns the operation itself, as both insertions and deletions are grouped by ChooseSubtree.
+     *
+     * @param operation a non-move operation
+     * @param <T>       payload data type
+     * @return the operation
+     */
+    @Override
+    protected <T extends Convertable> Object subtreeChoiceObject(final UpdateTree.Entry<T> operation) {
+        return operation;
+    }
 }
@@ -0,0 +1,164 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.operationGroupMakers;
+
+import aau.bufferedIndexes.IndexEntryOpGroupMap;
+import aau.bufferedIndexes.OperationGroup;
+import aau.bufferedIndexes.UpdateTree;
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.IRRTreeIndexEntry;
+import aau.bufferedIndexes.diskTrees.LeafLocationIndex;
+import aau.bufferedIndexes.diskTrees.RRDiskHilbertTree;
+import xxl.core.io.Convertable;
+import xxl.core.spatial.points.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An operation group maker for the Hilbert disk tree that routes the operations by the key ranges of the children.
+ * The children are sorted by their high keys once per node, then every operation is routed by a binary search
+ * instead of a ChooseSubtree pass over all the children.  An insertion goes to the first child whose high key is not
+ * below the key of the operation, or to the last child.  A deletion goes to all the children whose key ranges contain
+ * its key, which is a single child if the ranges do not overlap.
+ */
+public class HilbertOperationGroupMaker extends AbstractOperationGroupMaker {
+
+    /**
+     * Orders the index entries by their high keys.
+     */
+    private static final Comparator<RRDiskHilbertTree<?>.HilbertIndexEntry> HIGH_KEY_ORDER
+            = new Comparator<RRDiskHilbertTree<?>.HilbertIndexEntry>() {
+        public int compare(final RRDiskHilbertTree<?>.HilbertIndexEntry o1,
+                           final RRDiskHilbertTree<?>.HilbertIndexEntry o2) {
+            return RRDiskHilbertTree.KEY_ORDER.compare(o1.highKey(), o2.highKey());
+        }
+    };
+
+    /**
+     * The children of the node being grouped, sorted by their high keys
+     */
+    private final List<RRDiskHilbertTree<?>.HilbertIndexEntry> children = new ArrayList<>();
+
+    /**
+     * The lowest low key of each suffix of the sorted children, bounding the search for deletion targets
+     */
+    private final List<Point> suffixLowKeys = new ArrayList<>();
+
+    /**
+     * Creates a mapping between node entries and operations by the Hilbert key ranges of the node entries.
+     *
+     * @param node the node whose entries will be mapped to operations, must be a Hilbert disk tree node
+     * @param operations the operations to process
+     * @param <T> payload data type
+     * @return mapping between node entries and operations
+     */
+    @Override
+    public <T extends Convertable> IndexEntryOpGroupMap<T> groupOperations(final IRRTreeDiskNode<T> node,
+                                                                           final OperationGroup<T> operations) {
+        if (!(node instanceof RRDiskHilbertTree.Node))
+            throw new IllegalArgumentException("The Hilbert operation group maker requires the Hilbert disk tree");
+        for (final IRRTreeIndexEntry<T> child : node.getNonLeafNodeEntries())
+            children.add((RRDiskHilbertTree<?>.HilbertIndexEntry)child);
+        Collections.sort(children, HIGH_KEY_ORDER);
+        suffixLowKeys.addAll(Collections.<Point>nCopies(children.size(), null));
+        Point suffixLow = null;
+        for (int i = children.size() - 1; i >= 0; i--) {
+            final Point low = children.get(i).lowKey();
+            if ((suffixLow == null) || (RRDiskHilbertTree.KEY_ORDER.compare(low, suffixLow) < 0))
+                suffixLow = low;
+            suffixLowKeys.set(i, suffixLow);
+        }
+        try {
+            return super.groupOperations(node, operations);
+        }
+        finally {
+            children.clear();
+            suffixLowKeys.clear();
+        }
+    }
+
+    /**
+     * Chooses a node entry or entries for a given operation by its Hilbert key and updates the result accordingly.
+     * The deletions are routed by the leaf location index first if it knows the target child.
+     *
+     * @param operation     an operation to choose the entry for
+     * @param operatedData  data inside the operation
+     * @param node          node among whose entries to choose
+     * @param result        the result mapping to update
+     * @param <T>           type of the data element in the tree
+     */
+    protected <T extends Convertable> void groupOperation(final UpdateTree.Entry<T> operation, final T operatedData,
+                                                          final IRRTreeDiskNode<T> node,
+                                                          final IndexEntryOpGroupMap<T> result) {
+        final Point key = ((RRDiskHilbertTree<?>.Node)node).hilbertKey(operatedData);
+        final int first = firstChildNotBelow(key);
+        if (!operation.isDeletion()) {
+            result.addEntry(this.<T>child(Math.min(first, children.size() - 1)), operation);
+            return;
+        }
+        if (leafLocationIndex != null) {
+            //noinspection unchecked
+            final IRRTreeIndexEntry<T> routedChild = ((LeafLocationIndex<T>)leafLocationIndex).route(node,
+                    operatedData);
+            if (routedChild != null) {
+                result.addEntry(routedChild, operation);
+                deletionSplits.update(1, 1);
+                return;
+            }
+        }
+        int splitBranching = 0;
+        for (int i = first; (i < children.size())
+                && (RRDiskHilbertTree.KEY_ORDER.compare(suffixLowKeys.get(i), key) <= 0); i++) {
+            if (children.get(i).containsKey(key)) {
+                result.addEntry(this.<T>child(i), operation);
+                splitBranching++;
+            }
+        }
+        if (splitBranching == 0)
+            result.addEntry(result.ORPHAN_GROUP_KEY, operation);
+        deletionSplits.update(splitBranching, 1);
+    }
+
+    /**
+     * Finds the first child in the sorted order whose high key is not below a given key.
+     *
+     * @param key the key to search for
+     * @return the index of the child, or the number of the children if all high keys are below the key
+     */
+    private int firstChildNotBelow(final Point key) {
+        int low = 0;
+        int high = children.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (RRDiskHilbertTree.KEY_ORDER.compare(children.get(middle).highKey(), key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private <T extends Convertable> IRRTreeIndexEntry<T> child(final int i) {
+        //noinspection unchecked
+        return (IRRTreeIndexEntry<T>)children.get(i);
+    }
+}
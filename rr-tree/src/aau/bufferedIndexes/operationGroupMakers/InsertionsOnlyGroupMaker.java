@@ -45,7 +45,19 @@ public class InsertionsOnlyGroupMaker extends AbstractOperationGroupMaker {
             result.addEntry(result.ORPHAN_GROUP_KEY, operation);
             return;
         }        
-        final IRRTreeIndexEntry<T> childForEntry = node.chooseSubtreeByObject(operatedData);
+        final IRRTreeIndexEntry<T> childForEntry = chooseSubtree(node, operation);
         result.addEntry(childForEntry, operation);
     }
+
+    /**
+     * Returns the data of an insertion, as the insertions are grouped by ChooseSubtree.
+     *
+     * @param operation a non-move operation
+     * @param <T>       payload data type
+     * @return the inserted data, <code>null</code> for a deletion
+     */
+    @Override
+    protected <T extends Convertable> Object subtreeChoiceObject(final UpdateTree.Entry<T> operation) {
+        return operation.isDeletion() ? null : operation.getData();
+    }
 }
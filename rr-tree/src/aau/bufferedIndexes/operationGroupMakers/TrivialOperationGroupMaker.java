@@ -22,6 +22,7 @@ import aau.bufferedIndexes.IndexEntryOpGroupMap;
 import aau.bufferedIndexes.UpdateTree;
 import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
 import aau.bufferedIndexes.diskTrees.IRRTreeIndexEntry;
+import aau.bufferedIndexes.diskTrees.LeafLocationIndex;
 import xxl.core.io.Convertable;
 
 import java.util.Iterator;
@@ -35,8 +36,9 @@ public class TrivialOperationGroupMaker extends AbstractOperationGroupMaker {
 
     /**
      * Chooses a node entry or entries for a given operation and update the result accordingly.  For insertions,
-     * chooses a child entry using standard R-tree ChooseSubtree algorithm.  For deletions, chooses all child entries
-     * whose MBR overlap the MBR of the deletion.
+     * chooses a child entry using standard R-tree ChooseSubtree algorithm.  For deletions, chooses the child entry
+     * given by the leaf location index if it knows one, and all child entries whose MBR overlap the MBR of the
+     * deletion otherwise.
      *
      * @param operation     an operation to choose the entry for
      * @param operatedData  data inside the operation
@@ -48,6 +50,16 @@ public class TrivialOperationGroupMaker extends AbstractOperationGroupMaker {
                                                           final IRRTreeDiskNode<T> node,
                                                           final IndexEntryOpGroupMap<T> result) {
         if (operation.isDeletion()) {
+            if (leafLocationIndex != null) {
+                //noinspection unchecked
+                final IRRTreeIndexEntry<T> routedChild
+                        = ((LeafLocationIndex<T>)leafLocationIndex).route(node, operatedData);
+                if (routedChild != null) {
+                    result.addEntry(routedChild, operation);
+                    deletionSplits.update(1, 1);
+                    return;
+                }
+            }
             int splitBranching = 0;
             final Iterator<IRRTreeIndexEntry<T>> children = node.query(operatedData);
             while (children.hasNext()) {
@@ -63,9 +75,21 @@ public class TrivialOperationGroupMaker extends AbstractOperationGroupMaker {
             deletionSplits.update(splitBranching, 1);
         }
         else {
-            final IRRTreeIndexEntry<T> childForEntry = node.chooseSubtreeByObject(operatedData);
+            final IRRTreeIndexEntry<T> childForEntry = chooseSubtree(node, operation);
             result.addEntry(childForEntry, operation);
         }
     }
+
+    /**
+     * Returns the data of an insertion, as the insertions are grouped by ChooseSubtree.
+     *
+     * @param operation a non-move operation
+     * @param <T>       payload data type
+     * @return the inserted data, <code>null</code> for a deletion
+     */
+    @Override
+    protected <T extends Convertable> Object subtreeChoiceObject(final UpdateTree.Entry<T> operation) {
+        return operation.isDeletion() ? null : operation.getData();
+    }
 }
     
\ No newline at end of file
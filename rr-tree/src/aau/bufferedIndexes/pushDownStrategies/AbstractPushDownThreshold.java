@@ -48,6 +48,11 @@ public abstract class AbstractPushDownThreshold<E extends Convertable> implement
         return thresholdUnsatisfied;
     }
 
+    /**
+     * {@inheritDoc}  Ignored by the static threshold strategies.
+     */
+    public void emptyingFinished(final boolean failed) { }
+
     void selectGroupsAboveThreshold(final IndexEntryOpGroupMap<E> groupsToFilter,
                                     final IndexEntryOpGroupMap<E> groupsForPushDown,
                                     final IndexEntryOpGroupMap<E> groupsForBuffer)
@@ -0,0 +1,262 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.pushDownStrategies;
+
+import aau.bufferedIndexes.IndexEntryOpGroupMap;
+import aau.bufferedIndexes.PushDownAndBufferGroups;
+import aau.bufferedIndexes.RRTreeStats;
+import aau.bufferedIndexes.StatisticalData;
+import aau.bufferedIndexes.diskTrees.IRRDiskTree;
+import xxl.core.io.Convertable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A push down strategy that applies a threshold at the root level and tunes it online from the tree statistics.  Over
+ * a window of buffer emptyings it measures the number of operations pushed out of the buffer per node I/O, as given by
+ * the group sizes per level, and after each window moves the threshold in the direction that increased this ratio,
+ * reversing the direction when the ratio drops.  The threshold is never raised above the largest root level group,
+ * pushed down or returned to the buffer.  A failed emptying halves the threshold immediately.  Below the root level
+ * all the operations are pushed down.
+ */
+public class PushDownAdaptiveThreshold<E extends Convertable> extends AbstractPushDownThreshold<E> {
+
+    /**
+     * The tree which is using this strategy
+     */
+    private final IRRDiskTree<E> tree;
+
+    /**
+     * The statistics of the RR-tree which is using this strategy
+     */
+    private final RRTreeStats<E> stats;
+
+    /**
+     * Number of buffer emptyings between threshold adjustments
+     */
+    private final int windowSize;
+
+    /**
+     * The threshold currently applied at the root level
+     */
+    private int currentThreshold;
+
+    /**
+     * The direction of the next threshold adjustment, 1 or -1
+     */
+    private int direction = 1;
+
+    private int emptyingsInWindow = 0;
+
+    /**
+     * The group sizes per level at the start of the current window
+     */
+    private final List<StatisticalData> windowStartGroupSizes = new ArrayList<>();
+
+    /**
+     * The back-to-buffer group sizes per level at the start of the current window
+     */
+    private final List<StatisticalData> windowStartBackToBufferSizes = new ArrayList<>();
+
+    /**
+     * The number of failed emptyings at the last notification
+     */
+    private int failedEmptyings;
+
+    /**
+     * Operations pushed per node I/O in the previous window, negative if there is no comparable previous window
+     */
+    private double lastWindowEfficiency = -1.0;
+
+    /**
+     * The threshold values chosen at the end of each window or after each failed emptying
+     */
+    private final List<Integer> thresholdHistory = new ArrayList<>();
+
+    /**
+     * Creates new strategy object.
+     * @param tree the tree to use this strategy on
+     * @param stats the statistics of the RR-tree to use this strategy
+     * @param initialThreshold the threshold value to start with
+     * @param windowSize number of buffer emptyings between threshold adjustments
+     * @param groupSizeByInsertions flag if insertions or all ops should be considered for group size calculations
+     */
+    public PushDownAdaptiveThreshold(final IRRDiskTree<E> tree, final RRTreeStats<E> stats, final int initialThreshold,
+                                     final int windowSize, final boolean groupSizeByInsertions) {
+        super(initialThreshold, groupSizeByInsertions);
+        if (initialThreshold < 1)
+            throw new IllegalArgumentException("Initial threshold must be positive: " + initialThreshold);
+        if (windowSize < 1)
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        this.tree = tree;
+        this.stats = stats;
+        this.windowSize = windowSize;
+        currentThreshold = initialThreshold;
+        failedEmptyings = stats.getFailedEmptyings();
+        resetWindow();
+    }
+
+    /**
+     * From a set of mappings between node index entries and operations, chooses the operations that should be further
+     * processed down the tree and the ones that should be returned back to buffer.
+     * @param groupsToFilter set of mappings between node index entries and operations
+     * @param childNodeLevel the tree level of the receiving nodes
+     * @param childNodeSize     the size of the receiving node
+     * @param calledFromRestart is it asked to do regrouping from GroupUpdate restart
+     * @return operations to be processed down and operations to be returned to buffer
+     */
+    public PushDownAndBufferGroups<E> choosePushDownGroups(final IndexEntryOpGroupMap<E> groupsToFilter,
+                                                           final int childNodeLevel, final int childNodeSize,
+                                                           final boolean calledFromRestart) {
+        final IndexEntryOpGroupMap<E> groupsForPushDown = new IndexEntryOpGroupMap<>();
+        final IndexEntryOpGroupMap<E> groupsForBuffer = new IndexEntryOpGroupMap<>();
+        if (groupsToFilter == null)
+            return new PushDownAndBufferGroups<>(groupsForPushDown, groupsForBuffer);
+        if ((tree.height() == childNodeLevel + 1) && !calledFromRestart)
+            selectGroupsAboveThreshold(currentThreshold, groupsToFilter, groupsForPushDown, groupsForBuffer, false);
+        else
+            groupsForPushDown.copy(groupsToFilter);
+        return new PushDownAndBufferGroups<>(groupsForPushDown, groupsForBuffer);
+    }
+
+    /**
+     * {@inheritDoc}  Adjusts the threshold at the end of each window.  Any failed emptying registered in the tree
+     * statistics since the last notification counts as a failure too, such as one with only orphan operations.
+     */
+    @Override
+    public void emptyingFinished(final boolean failed) {
+        final int newFailedEmptyings = stats.getFailedEmptyings();
+        final boolean anyFailed = failed || (newFailedEmptyings > failedEmptyings);
+        failedEmptyings = newFailedEmptyings;
+        if (anyFailed) {
+            // The threshold is too high to free the buffer, back off and start a new window
+            currentThreshold = Math.max(1, currentThreshold / 2);
+            direction = -1;
+            lastWindowEfficiency = -1.0;
+            thresholdHistory.add(currentThreshold);
+            resetWindow();
+            return;
+        }
+        emptyingsInWindow++;
+        if (emptyingsInWindow < windowSize)
+            return;
+        final int rootLevel = tree.height() - 1;
+        final List<StatisticalData> groupSizes = stats.getGroupSizeStatistics();
+        // The operations pushed out of the buffer are the ones received by the children of the root.  Every group
+        // received below the root is a node I/O, and so is the root itself at each emptying.
+        long opsPushed = 0;
+        long nodesVisited = emptyingsInWindow;
+        int largestGroup = 0;
+        for (int level = 0; level < groupSizes.size(); level++) {
+            final StatisticalData startSizes = level < windowStartGroupSizes.size()
+                    ? windowStartGroupSizes.get(level) : null;
+            for (final Map.Entry<Integer, Integer> groupSize : groupSizes.get(level).entrySet()) {
+                final int groups = groupSize.getValue() - count(startSizes, groupSize.getKey());
+                nodesVisited += groups;
+                if ((level == rootLevel - 1) && (groups > 0)) {
+                    opsPushed += (long)groupSize.getKey() * groups;
+                    largestGroup = Math.max(largestGroup, groupSize.getKey());
+                }
+            }
+        }
+        final List<StatisticalData> backToBufferSizes = new ArrayList<>(stats.getBackToBufferGroupSizes());
+        if (rootLevel < backToBufferSizes.size()) {
+            final StatisticalData startSizes = rootLevel < windowStartBackToBufferSizes.size()
+                    ? windowStartBackToBufferSizes.get(rootLevel) : null;
+            for (final Map.Entry<Integer, Integer> groupSize : backToBufferSizes.get(rootLevel).entrySet())
+                if (groupSize.getValue() > count(startSizes, groupSize.getKey()))
+                    largestGroup = Math.max(largestGroup, groupSize.getKey());
+        }
+
+        final double efficiency = (double)opsPushed / nodesVisited;
+        if (efficiency < lastWindowEfficiency)
+            direction = -direction;
+        lastWindowEfficiency = efficiency;
+        final int step = Math.max(1, currentThreshold / 4);
+        currentThreshold = Math.max(1, Math.min(currentThreshold + direction * step, largestGroup + 1));
+        thresholdHistory.add(currentThreshold);
+        resetWindow();
+    }
+
+    private static int count(final StatisticalData sizes, final int groupSize) {
+        return ((sizes != null) && sizes.containsKey(groupSize)) ? sizes.get(groupSize) : 0;
+    }
+
+    private void resetWindow() {
+        emptyingsInWindow = 0;
+        copyStatistics(stats.getGroupSizeStatistics(), windowStartGroupSizes);
+        copyStatistics(stats.getBackToBufferGroupSizes(), windowStartBackToBufferSizes);
+    }
+
+    private static void copyStatistics(final Collection<StatisticalData> from, final List<StatisticalData> to) {
+        to.clear();
+        for (final StatisticalData levelData : from) {
+            final StatisticalData copy = new StatisticalData();
+            copy.add(levelData);
+            to.add(copy);
+        }
+    }
+
+    /**
+     * Returns the threshold currently applied at the root level
+     * @return the current threshold
+     */
+    public int getCurrentThreshold() {
+        return currentThreshold;
+    }
+
+    /**
+     * Returns the threshold values chosen at the end of each window or after each failed emptying
+     * @return the list of chosen thresholds, oldest first
+     */
+    public List<Integer> getThresholdHistory() {
+        return Collections.unmodifiableList(thresholdHistory);
+    }
+
+    /**
+     * Returns the number of buffer emptyings between threshold adjustments
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Tells if this strategy is likely to empty significant part of the buffer.  Thresholding at root level will not
+     * do this with sane thresholds.
+     *
+     * @return <code>true</code> if the strategy is likely to empty significant part of the buffer
+     */
+    public boolean willEmptyBigPartOfBuffer() {
+        return false;
+    }
+
+    /**
+     * Returns the number of equal largest groups encountered.  Always zero for this strategy.
+     *
+     * @return number of equal largest groups
+     */
+    public int getEqualLargestGroups() {
+        return 0;
+    }
+}
@@ -61,4 +61,9 @@ public class PushDownAllGroups<E extends Convertable> implements PushDownGroupsS
     public int getEqualLargestGroups() {
         return 0;
     }
+
+    /**
+     * {@inheritDoc}  Ignored by this strategy.
+     */
+    public void emptyingFinished(final boolean failed) { }
 }
@@ -61,7 +61,7 @@ public class PushDownDivideByConstantBelowRoot<E extends Convertable> extends Ab
             return new PushDownAndBufferGroups<>();
         int divider = 1;
         for (int i = 0; i < tree.height() - childNodeLevel - 1; i++) {
-            divider *= (tree.getMinNodeCapacity() + tree.getMaxNodeCapacity()) / 2.0D * coefficient;
+            divider *= (tree.getMinNodeCapacity(1) + tree.getMaxNodeCapacity(1)) / 2.0D * coefficient;
         }
         return applyThreshold(groupsToFilter.numOfDistinctOps() / divider, groupsToFilter);
     }
@@ -83,4 +83,12 @@ public class PushDownDivideByConstantBelowRoot<E extends Convertable> extends Ab
     public int getEqualLargestGroups() {
         return pushDownAtRoot.getEqualLargestGroups();
     }
+
+    /**
+     * {@inheritDoc}  Passed on to the root level strategy.
+     */
+    @Override
+    public void emptyingFinished(final boolean failed) {
+        pushDownAtRoot.emptyingFinished(failed);
+    }
 }
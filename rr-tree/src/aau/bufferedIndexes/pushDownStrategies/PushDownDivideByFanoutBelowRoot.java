@@ -81,4 +81,12 @@ public class PushDownDivideByFanoutBelowRoot<E extends Convertable> extends Abst
     public int getEqualLargestGroups() {
         return pushDownAtRoot.getEqualLargestGroups();
     }
+
+    /**
+     * {@inheritDoc}  Passed on to the root level strategy.
+     */
+    @Override
+    public void emptyingFinished(final boolean failed) {
+        pushDownAtRoot.emptyingFinished(failed);
+    }
 }
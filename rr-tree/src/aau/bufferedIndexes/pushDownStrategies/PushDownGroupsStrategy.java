@@ -52,4 +52,11 @@ public interface PushDownGroupsStrategy<E extends Convertable> {
      * @return number of equal largest groups
      */
     int getEqualLargestGroups();
+
+    /**
+     * Notifies the strategy that a buffer emptying has completed.
+     * @param failed <code>true</code> if the operations chosen by this strategy did not free enough of the buffer and
+     *               the whole buffer had to be emptied
+     */
+    void emptyingFinished(final boolean failed);
 }
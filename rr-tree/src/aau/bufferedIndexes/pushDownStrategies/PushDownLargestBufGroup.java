@@ -120,4 +120,9 @@ public class PushDownLargestBufGroup<E extends Convertable> implements PushDownG
     public int getEqualLargestGroups() {
         return equalLargestGroupsFound;
     }
+
+    /**
+     * {@inheritDoc}  Ignored by this strategy.
+     */
+    public void emptyingFinished(final boolean failed) { }
 }
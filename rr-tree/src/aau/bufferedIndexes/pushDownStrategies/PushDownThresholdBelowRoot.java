@@ -66,6 +66,14 @@ public class PushDownThresholdBelowRoot<E extends Convertable> extends AbstractP
         return pushDownAtRoot.getEqualLargestGroups();
     }
 
+    /**
+     * {@inheritDoc}  Passed on to the root level strategy.
+     */
+    @Override
+    public void emptyingFinished(final boolean failed) {
+        pushDownAtRoot.emptyingFinished(failed);
+    }
+
     public int getThresholdSatisfactions() {
         return pushDownBelow.getThresholdSatisfactions();
     }
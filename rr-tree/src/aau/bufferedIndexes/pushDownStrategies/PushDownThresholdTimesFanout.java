@@ -52,7 +52,7 @@ public class PushDownThresholdTimesFanout<E extends Convertable> extends Abstrac
                                                            final boolean calledFromRestart) {
         int t = threshold;
         for (int i = 0; i < childNodeLevel - 1; i++) {
-            t *= (tree.getMinNodeCapacity() + tree.getMaxNodeCapacity()) / 2;
+            t *= (tree.getMinNodeCapacity(1) + tree.getMaxNodeCapacity(1)) / 2;
         }
         return applyThreshold(t, groupsToFilter);
     }
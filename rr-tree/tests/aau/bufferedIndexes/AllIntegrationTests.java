@@ -34,6 +34,7 @@ import org.junit.runners.Suite;
         PushDownDivideByConstantBelowRootTest.class,
         PushDownDivideByFanoutBelowRootTest.class,
         PushDownThresholdTimesFanoutTest.class,
+        PushDownAdaptiveThresholdTest.class,
         CachingStrategyTest.class,
         IndexEntryOpGroupMapTest.class,
         RRTreeIntegrationTest.class        
@@ -19,14 +19,21 @@
 package aau.bufferedIndexes;
 
 import aau.bufferedIndexes.diskTrees.AbstractRRDiskTreeTest;
+import aau.bufferedIndexes.diskTrees.CompressedLeafCodecTest;
+import aau.bufferedIndexes.diskTrees.FloatMBRConverterTest;
+import aau.bufferedIndexes.diskTrees.LeafLocationIndexTest;
 import aau.bufferedIndexes.diskTrees.RRDiskDataTreeTest;
+import aau.bufferedIndexes.diskTrees.RRDiskHilbertTreeTest;
+import aau.bufferedIndexes.diskTrees.RRDiskTreeDefragmenterTest;
 import aau.bufferedIndexes.diskTrees.RRDiskUpdateTreeTest;
 import aau.bufferedIndexes.diskTrees.visitors.RRDiskUpdateTreeGarbageCleanerTest;
 import aau.bufferedIndexes.diskTrees.visitors.RRTreeInvariantCheckerTest;
+import aau.bufferedIndexes.instrumentation.HistogramInstrumentationTest;
 import aau.bufferedIndexes.leafNodeModifiers.LeafNodePiggybackerTest;
 import aau.bufferedIndexes.leafNodeModifiers.NullNodeModifierTest;
 import aau.bufferedIndexes.objectTracers.NullObjectTracerTest;
 import aau.bufferedIndexes.operationGroupMakers.DeletionsAsInsertionsGroupMakerTest;
+import aau.bufferedIndexes.operationGroupMakers.HilbertOperationGroupMakerTest;
 import aau.bufferedIndexes.operationGroupMakers.InsertionsOnlyGroupMakerTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -55,6 +62,26 @@ import org.junit.runners.Suite;
         AggregateStatsTest.class,
         HilbertPointComparatorTest.class,
         NullObjectTracerTest.class,
-        InsertionsOnlyGroupMakerTest.class
+        InsertionsOnlyGroupMakerTest.class,
+        LatencyHistogramTest.class,
+        HistogramInstrumentationTest.class,
+        BufferLogTest.class,
+        TreeSnapshotTest.class,
+        TreeRecoveryTest.class,
+        SortTileRecursiveSplitterTest.class,
+        LeafLocationIndexTest.class,
+        NodeBuffersTest.class,
+        StripedBufferTest.class,
+        RRDiskHilbertTreeTest.class,
+        HilbertSplitterTest.class,
+        HilbertOperationGroupMakerTest.class,
+        FloatMBRConverterTest.class,
+        CompressedLeafCodecTest.class,
+        WriteSetContainerTest.class,
+        RRDiskTreeDefragmenterTest.class,
+        RTreeSplitNodeTest.class,
+        BlockFileContainerTest.class,
+        MemoryBudgetBalancerTest.class,
+        LRUBufferTest.class
 })
 public class AllUnitTests { }
\ No newline at end of file
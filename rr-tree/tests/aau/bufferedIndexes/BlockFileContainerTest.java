@@ -0,0 +1,129 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xxl.core.collections.containers.CounterContainer;
+import xxl.core.collections.containers.io.BlockFileContainer;
+import xxl.core.io.Block;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the placement of the reserved blocks in the XXL BlockFileContainer
+ */
+public class BlockFileContainerTest {
+
+    private static final int BLOCK_SIZE = 64;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private BlockFileContainer container;
+
+    @Before
+    public void setUp() {
+        container = new BlockFileContainer(new File(folder.getRoot(), "container").getPath(), BLOCK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        container.delete();
+    }
+
+    @Test
+    public void reserveNearPicksNearestFreeBlock() {
+        reserveBlocks(10);
+        // Block 3 is on the top of the free list
+        container.remove(id(7));
+        container.remove(id(3));
+        // The following block is tried first
+        assertEquals(id(7), container.reserveNear(null, id(6)));
+        assertEquals(id(3), container.reserveNear(null, id(4)));
+        assertEquals(10, container.size());
+    }
+
+    @Test
+    public void reserveNearWithinNearBlocks() {
+        final int blocks = BlockFileContainer.NEAR_BLOCKS + 2;
+        reserveBlocks(blocks);
+        container.remove(id(1));
+        assertEquals(id(1), container.reserveNear(null, id(BlockFileContainer.NEAR_BLOCKS + 1)));
+    }
+
+    @Test
+    public void reserveNearFallsBackWithoutFreeBlock() {
+        reserveBlocks(5);
+        // Appended like by reserve
+        assertEquals(id(5), container.reserveNear(null, id(2)));
+    }
+
+    @Test
+    public void reserveNearFallsBackBeyondNearBlocks() {
+        final int blocks = BlockFileContainer.NEAR_BLOCKS + 3;
+        reserveBlocks(blocks);
+        container.remove(id(0));
+        // The free block is too far away, so it is taken from the free list by reserve
+        assertEquals(id(0), container.reserveNear(null, id(BlockFileContainer.NEAR_BLOCKS + 1)));
+        assertEquals(id(blocks), container.reserve(null));
+    }
+
+    @Test
+    public void reserveSkipsBlocksReservedNear() {
+        reserveBlocks(10);
+        container.remove(id(3));
+        container.remove(id(7));
+        assertEquals(id(7), container.reserveNear(null, id(8)));
+        // The free list still has the offset of block 7
+        assertEquals(id(3), container.reserve(null));
+        assertEquals(id(10), container.reserve(null));
+        for (int i = 0; i <= 10; i++)
+            assertTrue(container.isUsed(id(i)));
+    }
+
+    @Test
+    public void reservedNearCountedAsInsert() {
+        final CounterContainer counter = new CounterContainer(container);
+        counter.insert(new Block(new byte[BLOCK_SIZE]));
+        final Object id = counter.reserveNear(null, id(0));
+        assertEquals(id(1), id);
+        assertEquals(1, counter.reserves);
+        counter.update(id, new Block(new byte[BLOCK_SIZE]), true);
+        assertEquals(2, counter.inserts);
+        assertEquals(0, counter.updates);
+        counter.update(id, new Block(new byte[BLOCK_SIZE]), true);
+        assertEquals(1, counter.updates);
+    }
+
+    private void reserveBlocks(final int blocks) {
+        for (int i = 0; i < blocks; i++)
+            assertEquals(id(i), container.reserve(null));
+    }
+
+    private static Long id(final int block) {
+        return (long)block * BLOCK_SIZE;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.functions.Function;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BufferLog
+ */
+public class BufferLogTest {
+
+    private static final Function<Object, UpdateTree.Entry<KPE>> ENTRY_FACTORY
+            = new Function<Object, UpdateTree.Entry<KPE>>() {
+        public UpdateTree.Entry<KPE> invoke() {
+            return new UpdateTree.Entry<>(new KPE(new DataID(), new DoublePointRectangle(2),
+                    WorkloadOperation.getConverter()), OperationType.INSERTION);
+        }
+    };
+
+    private static final int PAGE_SIZE = 4096;
+
+    @SuppressWarnings("unchecked")
+    private static final Converter<Object> ID_CONVERTER = new MapContainer().objectIdConverter();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File logFile;
+
+    private BufferLog<KPE> log;
+
+    private RRTreeBuffer<KPE> buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = new File(folder.getRoot(), "buffer.log");
+        log = openLog(1);
+        buffer = makeBuffer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+    }
+
+    private BufferLog<KPE> openLog(final int groupCommitSize) throws IOException {
+        return new BufferLog<>(logFile, ID_CONVERTER, new ConvertableConverter<>(ENTRY_FACTORY), groupCommitSize,
+                PAGE_SIZE);
+    }
+
+    private static RRTreeBuffer<KPE> makeBuffer() {
+        final RRTreeBuffer<KPE> result = new RRTreeBuffer<>();
+        result.initialize(TestUtils.GET_DESCRIPTOR, new MapContainer(), 2, 4, 100);
+        return result;
+    }
+
+    private static KPE makeKPE(final int id, final double x, final double y) {
+        return new KPE(new DataID(id), TestUtils.makeRectangle(x, y, x + 1.0, y + 1.0),
+                WorkloadOperation.getConverter());
+    }
+
+    private void insert(final KPE data) throws IOException {
+        buffer.insertWithAnnihilation(data);
+        log.logOperation(data, OperationType.INSERTION);
+    }
+
+    private void remove(final KPE data) throws IOException {
+        buffer.removeWithAnnihilation(data);
+        log.logOperation(data, OperationType.DELETION);
+    }
+
+    private static Set<UpdateTree.Entry<KPE>> contents(final RRTreeBuffer<KPE> buffer) {
+        final Set<UpdateTree.Entry<KPE>> result = new HashSet<>();
+        for (final UpdateTree.Entry<KPE> entry : buffer.flatten())
+            result.add(entry);
+        return result;
+    }
+
+    private static TreeSnapshot<KPE> snapshot(final Object rootId, final int height,
+                                              final RRTreeBuffer<KPE> buffer) {
+        final List<UpdateTree.Entry<KPE>> bufferContents = new ArrayList<>();
+        for (final UpdateTree.Entry<KPE> entry : buffer.flatten())
+            bufferContents.add(entry);
+        return new TreeSnapshot<>(2, 4, 2, 4, 100, 5 + bufferContents.size(), 5, rootId, height,
+                (rootId == null) ? null : TestUtils.makeRectangle(0.0, 0.0, 10.0, 10.0), bufferContents);
+    }
+
+    private void checkpoint() throws IOException {
+        log.checkpoint(snapshot(null, 0, buffer));
+    }
+
+    private RRTreeBuffer<KPE> recover(final int groupCommitSize, final int expectedRecords) throws IOException {
+        log.close();
+        log = openLog(groupCommitSize);
+        final RRTreeBuffer<KPE> result = makeBuffer();
+        assertEquals(expectedRecords, log.replay(result));
+        return result;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroGroupCommitSize() throws IOException {
+        openLog(0);
+    }
+
+    @Test
+    public void emptyLog() throws IOException {
+        final RRTreeBuffer<KPE> recovered = recover(1, 0);
+        assertEquals(0, recovered.getCurrentSize());
+        assertEquals(0, log.getForces());
+    }
+
+    @Test
+    public void replayOperations() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        insert(makeKPE(2, 5.0, 5.0));
+        remove(makeKPE(3, 7.0, 7.0));
+        // Annihilates with the insertion
+        remove(makeKPE(1, 0.0, 0.0));
+        assertEquals(4, log.getForces());
+        assertEquals(4, log.getPageWrites());
+
+        final RRTreeBuffer<KPE> recovered = recover(1, 4);
+        assertEquals(2, recovered.getCurrentSize());
+        assertEquals(contents(buffer), contents(recovered));
+    }
+
+    @Test
+    public void groupCommit() throws IOException {
+        log.close();
+        log = openLog(3);
+        insert(makeKPE(1, 0.0, 0.0));
+        insert(makeKPE(2, 5.0, 5.0));
+        assertEquals(0, log.getForces());
+        insert(makeKPE(3, 7.0, 7.0));
+        assertEquals(1, log.getForces());
+        assertEquals(1, log.getPageWrites());
+        insert(makeKPE(4, 9.0, 9.0));
+        assertEquals(1, log.getForces());
+
+        // Simulate a crash by not closing the log
+        final RRTreeBuffer<KPE> recovered = makeBuffer();
+        final BufferLog<KPE> recoveredLog = openLog(3);
+        assertEquals(3, recoveredLog.replay(recovered));
+        recoveredLog.close();
+        assertEquals(3, recovered.getCurrentSize());
+    }
+
+    @Test
+    public void checkpointTruncates() throws IOException {
+        for (int i = 0; i < 10; i++)
+            insert(makeKPE(i, i, i));
+        final long sizeBeforeCheckpoint = logFile.length();
+        buffer.removeExactEntry(new UpdateTree.Entry<>(makeKPE(0, 0.0, 0.0), OperationType.INSERTION));
+        checkpoint();
+        assertTrue(logFile.length() < sizeBeforeCheckpoint);
+        insert(makeKPE(10, 10.0, 10.0));
+
+        final RRTreeBuffer<KPE> recovered = recover(1, 2);
+        assertEquals(10, recovered.getCurrentSize());
+        assertEquals(contents(buffer), contents(recovered));
+    }
+
+    @Test
+    public void checkpointTreeState() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        recover(1, 1);
+        assertNull(log.getReplayedCheckpoint());
+        log.checkpoint(snapshot(7L, 2, buffer));
+        insert(makeKPE(2, 5.0, 5.0));
+
+        recover(1, 2);
+        final TreeSnapshot<KPE> checkpoint = log.getReplayedCheckpoint();
+        assertEquals(7L, checkpoint.getRootId());
+        assertEquals(2, checkpoint.getHeight());
+        assertEquals(TestUtils.makeRectangle(0.0, 0.0, 10.0, 10.0), checkpoint.getRootDescriptor());
+        assertEquals(6, checkpoint.getDataItems());
+        assertEquals(5, checkpoint.getDiskDataItems());
+        assertEquals(1, checkpoint.getBufferContents().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointWithoutBuffer() throws IOException {
+        log.checkpoint(new TreeSnapshot<KPE>(2, 4, 2, 4, 100, 0, 0, null, 0, null, null));
+    }
+
+    @Test
+    public void dirtyMarkIsForced() throws IOException {
+        log.close();
+        log = openLog(3);
+        insert(makeKPE(1, 0.0, 0.0));
+        log.markDirty();
+        assertEquals(1, log.getForces());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noRecoveryAfterDirtyMark() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        checkpoint();
+        log.markDirty();
+        insert(makeKPE(2, 5.0, 5.0));
+        recover(1, 3);
+    }
+
+    @Test
+    public void checkpointClearsDirtyMark() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        log.markDirty();
+        checkpoint();
+        insert(makeKPE(2, 5.0, 5.0));
+        assertEquals(contents(buffer), contents(recover(1, 2)));
+    }
+
+    @Test
+    public void replayMoves() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        buffer.moveWithAnnihilation(makeKPE(1, 0.0, 0.0), makeKPE(1, 1.0, 1.0));
+        log.logMove(makeKPE(1, 0.0, 0.0), makeKPE(1, 1.0, 1.0));
+        buffer.moveWithAnnihilation(makeKPE(2, 5.0, 5.0), makeKPE(2, 6.0, 6.0));
+        log.logMove(makeKPE(2, 5.0, 5.0), makeKPE(2, 6.0, 6.0));
+        checkpoint();
+        buffer.moveWithAnnihilation(makeKPE(3, 8.0, 8.0), makeKPE(3, 9.0, 9.0));
+        log.logMove(makeKPE(3, 8.0, 8.0), makeKPE(3, 9.0, 9.0));
+
+        final RRTreeBuffer<KPE> recovered = recover(1, 2);
+        assertEquals(3, recovered.getCurrentSize());
+        assertEquals(contents(buffer), contents(recovered));
+        assertEquals(2, recovered.getNumOfMoves());
+        assertNull(recovered.getMoveReplacing(makeKPE(1, 0.0, 0.0)));
+        assertEquals(makeKPE(2, 6.0, 6.0), recovered.getMoveReplacing(makeKPE(2, 5.0, 5.0)).getData());
+        assertEquals(makeKPE(3, 9.0, 9.0), recovered.getMoveReplacing(makeKPE(3, 8.0, 8.0)).getData());
+    }
+
+    @Test
+    public void completion() throws IOException {
+        final KPE data = makeKPE(1, 0.0, 0.0);
+        insert(data);
+        insert(makeKPE(2, 5.0, 5.0));
+        final UpdateTree.Entry<KPE> completed = new UpdateTree.Entry<>(data, OperationType.INSERTION);
+        log.logCompletion(completed);
+        buffer.removeExactEntry(completed);
+
+        final RRTreeBuffer<KPE> recovered = recover(1, 3);
+        assertEquals(1, recovered.getCurrentSize());
+        assertEquals(contents(buffer), contents(recovered));
+    }
+
+    @Test
+    public void tornTail() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        insert(makeKPE(2, 5.0, 5.0));
+        log.close();
+        final long validLength = logFile.length();
+        final RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        try {
+            // A partially written third record
+            file.seek(validLength);
+            file.write(new byte[] { 0, 0, 0, 0, 40, 1, 2, 3 });
+        }
+        finally {
+            file.close();
+        }
+
+        final RRTreeBuffer<KPE> recovered = recover(1, 2);
+        assertEquals(2, recovered.getCurrentSize());
+        assertEquals(validLength, logFile.length());
+
+        // The log is appendable after the recovery
+        log.logOperation(makeKPE(3, 7.0, 7.0), OperationType.INSERTION);
+        assertEquals(3, recover(1, 3).getCurrentSize());
+    }
+
+    @Test
+    public void corruptedRecord() throws IOException {
+        insert(makeKPE(1, 0.0, 0.0));
+        log.close();
+        final long firstRecordLength = logFile.length();
+        log = openLog(1);
+        insert(makeKPE(2, 5.0, 5.0));
+        log.close();
+        final RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        try {
+            // Flip a byte in the second record payload
+            file.seek(firstRecordLength + 10);
+            final int b = file.read();
+            file.seek(firstRecordLength + 10);
+            file.write(b ^ 0xFF);
+        }
+        finally {
+            file.close();
+        }
+
+        assertEquals(1, recover(1, 1).getCurrentSize());
+        assertEquals(firstRecordLength, logFile.length());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.RRDiskHilbertTree;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.spatial.KPE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for HilbertSplitter
+ */
+public class HilbertSplitterTest extends TreeTester {
+
+    private final RRDiskHilbertTree<KPE> tree = new RRDiskHilbertTree<>();
+    private final RRTreeGroupSplitter splitter = new HilbertSplitter();
+
+    @Before
+    public void setUp() {
+        tree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY,
+                new NullObjectTracer<KPE>());
+    }
+
+    @Test
+    public void nonOverflowingNode() {
+        final IRRTreeDiskNode<KPE> node = tree.createNode(0, makeList(MAX_CAPACITY));
+        final List<IRRTreeDiskNode<KPE>> splits = splitter.groupSplit(node, tree);
+        assertEquals(1, splits.size());
+        assertSame(node, splits.get(0));
+        assertEquals(MAX_CAPACITY, node.number());
+    }
+
+    @Test
+    public void groupSplit() {
+        testSplit(MAX_CAPACITY + 1);
+        testSplit(2 * MAX_CAPACITY - 1);
+        testSplit(2 * MAX_CAPACITY);
+        testSplit(2 * MAX_CAPACITY + 1);
+        testSplit(3 * MAX_CAPACITY);
+        testSplit(5 * MAX_CAPACITY);
+        testSplit(10 * MAX_CAPACITY + 1);
+    }
+
+    @Test
+    public void siblingKeyRangesDisjoint() {
+        final List<IRRTreeDiskNode<KPE>> splits = splitter.groupSplit(tree.createNode(0, makeList(5 * MAX_CAPACITY)),
+                tree);
+        final List<RRDiskHilbertTree<KPE>.HilbertIndexEntry> entries = new ArrayList<>();
+        for (final IRRTreeDiskNode<KPE> s : splits)
+            entries.add((RRDiskHilbertTree<KPE>.HilbertIndexEntry)tree.computeIndexEntry(s));
+        Collections.sort(entries, new Comparator<RRDiskHilbertTree<KPE>.HilbertIndexEntry>() {
+            public int compare(final RRDiskHilbertTree<KPE>.HilbertIndexEntry o1,
+                               final RRDiskHilbertTree<KPE>.HilbertIndexEntry o2) {
+                return RRDiskHilbertTree.KEY_ORDER.compare(o1.lowKey(), o2.lowKey());
+            }
+        });
+        for (int i = 1; i < entries.size(); i++)
+            assertTrue("Sibling key ranges should not overlap",
+                    RRDiskHilbertTree.KEY_ORDER.compare(entries.get(i - 1).highKey(), entries.get(i).lowKey()) < 0);
+    }
+
+    private static List<KPE> makeList(final int size) {
+        return new ArrayList<>(Arrays.asList(TestData.data).subList(0, size));
+    }
+
+    private void testSplit(final int nodeSize) {
+        final IRRTreeDiskNode<KPE> toSplit = tree.createNode(0, makeList(nodeSize));
+        final List<IRRTreeDiskNode<KPE>> splits = splitter.groupSplit(toSplit, tree);
+
+        assertEquals("The node should be split into the minimum number of nodes",
+                (nodeSize + MAX_CAPACITY - 1) / MAX_CAPACITY, splits.size());
+        assertTrue("The original node should be one of the split nodes", splits.contains(toSplit));
+
+        final Set<Object> splitEntries = new HashSet<>();
+        int sumOfSplitEntries = 0;
+        for (final IRRTreeDiskNode<KPE> s : splits) {
+            assertTrue("Split nodes should not be overflowing", !s.overflows());
+            assertTrue("Split nodes should not be underflowing", s.number() >= s.splitMinNumber());
+            assertTrue("Split node sizes should differ by at most one",
+                    Math.abs(s.number() - nodeSize / splits.size()) <= 1);
+            assertEquals("Split node should be on the same level as the original node", 0, s.level());
+            splitEntries.addAll(s.getEntries());
+            sumOfSplitEntries += s.number();
+        }
+        assertEquals(nodeSize, sumOfSplitEntries);
+        assertEquals("Every entry should be found in one of the split nodes",
+                new HashSet<Object>(makeList(nodeSize)), splitEntries);
+    }
+}
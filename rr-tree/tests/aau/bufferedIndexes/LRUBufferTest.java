@@ -0,0 +1,120 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.Test;
+import xxl.core.functions.Function;
+import xxl.core.io.LRUBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the resizing of the XXL LRUBuffer
+ */
+public class LRUBufferTest {
+
+    private final Object owner = new Object();
+
+    private final Map<Long, String> flushed = new HashMap<>();
+
+    private final Function<Object, Object> flush = new Function<Object, Object>() {
+        public Object invoke(final Object id, final Object object) {
+            flushed.put((Long)id, (String)object);
+            return null;
+        }
+    };
+
+    private final Function<Long, String> load = new Function<Long, String>() {
+        public String invoke(final Long id) {
+            return "object " + id;
+        }
+    };
+
+    private final LRUBuffer<Object, Long, String> buffer = new LRUBuffer<>(4);
+
+    @Test
+    public void growAddsSlots() {
+        fill(4);
+        buffer.setCapacity(6);
+        assertEquals(6, buffer.capacity());
+        buffer.get(owner, 5L, load, true);
+        buffer.get(owner, 6L, load, true);
+        assertEquals(6, buffer.size());
+        for (long id = 1; id <= 6; id++)
+            assertTrue(buffer.contains(owner, id));
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    public void shrinkDisplacesLeastRecentlyUsed() {
+        fill(4);
+        buffer.get(owner, 1L, load, true);
+        buffer.setCapacity(2);
+        assertEquals(2, buffer.capacity());
+        assertEquals(2, buffer.size());
+        assertTrue(buffer.contains(owner, 1L));
+        assertTrue(buffer.contains(owner, 4L));
+        assertEquals(2, flushed.size());
+        assertEquals("new 2", flushed.get(2L));
+        assertEquals("new 3", flushed.get(3L));
+        buffer.get(owner, 5L, load, true);
+        assertEquals(2, buffer.size());
+        assertFalse(buffer.contains(owner, 4L));
+    }
+
+    @Test
+    public void shrinkDropsEmptySlots() {
+        buffer.update(owner, 1L, "new 1", flush, true);
+        buffer.setCapacity(2);
+        assertEquals(2, buffer.capacity());
+        assertEquals(1, buffer.size());
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    public void shrinkSkipsFixed() {
+        fill(4);
+        buffer.get(owner, 1L, load, false);
+        buffer.setCapacity(1);
+        assertTrue(buffer.contains(owner, 1L));
+        assertEquals(3, flushed.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shrinkAllFixed() {
+        buffer.get(owner, 1L, load, false);
+        buffer.get(owner, 2L, load, false);
+        buffer.setCapacity(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveCapacity() {
+        buffer.setCapacity(0);
+    }
+
+    private void fill(final int objects) {
+        for (long id = 1; id <= objects; id++)
+            buffer.update(owner, id, "new " + id, flush, true);
+    }
+}
@@ -0,0 +1,92 @@
+package aau.bufferedIndexes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        final LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMinimum());
+        assertEquals(0, h.getMaximum());
+        assertEquals(0.0D, h.getMean(), 0.0D);
+        assertEquals(0, h.getValueAtPercentile(99.0D));
+    }
+
+    @Test
+    public void smallValuesExact() {
+        final LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            h.record(i);
+        assertEquals(100, h.getCount());
+        assertEquals(1, h.getMinimum());
+        assertEquals(100, h.getMaximum());
+        assertEquals(50.5D, h.getMean(), 1e-9);
+        assertEquals(50, h.getValueAtPercentile(50.0D));
+        assertEquals(99, h.getValueAtPercentile(99.0D));
+        assertEquals(100, h.getValueAtPercentile(100.0D));
+        assertEquals(1, h.getValueAtPercentile(0.0D));
+    }
+
+    @Test
+    public void bucketsContiguous() {
+        long expectedLowest = 0;
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE) + 1; bucket++) {
+            assertEquals(expectedLowest, LatencyHistogram.lowestEquivalentValue(bucket));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.lowestEquivalentValue(bucket)));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.highestEquivalentValue(bucket)));
+            expectedLowest = LatencyHistogram.highestEquivalentValue(bucket) + 1;
+        }
+        assertEquals(Long.MIN_VALUE, expectedLowest);
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        final Random random = new Random(42);
+        final long[] values = new long[10000];
+        final LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long)(Math.exp(random.nextDouble() * 25));
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (final double percentile : new double[]{10.0D, 50.0D, 90.0D, 99.0D, 99.9D}) {
+            final long exact = values[(int)Math.ceil(percentile / 100.0D * values.length) - 1];
+            final long approximate = h.getValueAtPercentile(percentile);
+            assertTrue(approximate >= exact);
+            assertTrue(approximate - exact <= exact / 64);
+        }
+        assertEquals(values[values.length - 1], h.getValueAtPercentile(100.0D));
+    }
+
+    @Test
+    public void add() {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        a.record(1000000);
+        b.record(5);
+        a.add(b);
+        assertEquals(3, a.getCount());
+        assertEquals(5, a.getMinimum());
+        assertEquals(1000000, a.getMaximum());
+        assertEquals(1000015, a.getSum());
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getValueAtPercentile(50.0D));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negative() {
+        new LatencyHistogram().record(-1);
+    }
+}
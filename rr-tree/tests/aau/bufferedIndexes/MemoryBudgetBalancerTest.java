@@ -0,0 +1,158 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MemoryBudgetBalancer}
+ */
+public class MemoryBudgetBalancerTest {
+
+    private static final int PAGE_BYTES = 100;
+
+    private long requests = 0;
+
+    private long misses = 0;
+
+    private long writes = 0;
+
+    private long updates = 0;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositivePageSize() {
+        new MemoryBudgetBalancer(10000, 0, 10, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveWindow() {
+        new MemoryBudgetBalancer(10000, PAGE_BYTES, 10, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noCache() {
+        new MemoryBudgetBalancer(10000, PAGE_BYTES, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noRoomForBuffer() {
+        new MemoryBudgetBalancer(1050, PAGE_BYTES, 10, 1);
+    }
+
+    @Test
+    public void initialSplit() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 3);
+        assertEquals(40, balancer.getCachePages());
+        assertEquals(6000, balancer.getBufferBytes());
+        assertEquals(3, balancer.getWindowSize());
+        assertTrue(balancer.getCachePagesHistory().isEmpty());
+    }
+
+    @Test
+    public void rebalancesAfterWindow() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 2);
+        assertFalse(window(balancer, 100, 50, 0, 100));
+        assertEquals(40, balancer.getCachePages());
+        assertTrue(window(balancer, 0, 0, 0, 0));
+        assertEquals(50, balancer.getCachePages());
+    }
+
+    @Test
+    public void noHitsMoveToBuffer() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 1);
+        assertTrue(window(balancer, 100, 100, 10, 100));
+        assertEquals(30, balancer.getCachePages());
+        assertEquals(7000, balancer.getBufferBytes());
+    }
+
+    @Test
+    public void hitsMoveToCache() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 1);
+        assertTrue(window(balancer, 100, 50, 10, 100));
+        assertEquals(50, balancer.getCachePages());
+        assertEquals(5000, balancer.getBufferBytes());
+    }
+
+    @Test
+    public void improvementContinues() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 1);
+        window(balancer, 100, 50, 0, 100);
+        assertTrue(window(balancer, 100, 40, 0, 100));
+        assertEquals(62, balancer.getCachePages());
+    }
+
+    @Test
+    public void costIncreaseReverses() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 1);
+        window(balancer, 100, 50, 0, 100);
+        assertTrue(window(balancer, 100, 80, 0, 100));
+        assertEquals(38, balancer.getCachePages());
+        // The writes count in the cost too
+        window(balancer, 100, 60, 0, 100);
+        assertEquals(29, balancer.getCachePages());
+        assertTrue(window(balancer, 100, 60, 30, 100));
+        assertEquals(36, balancer.getCachePages());
+        assertEquals(Arrays.asList(50, 38, 29, 36), balancer.getCachePagesHistory());
+    }
+
+    @Test
+    public void flatHitRateStopsCacheGrowth() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(10000, PAGE_BYTES, 40, 1);
+        window(balancer, 100, 50, 0, 100);
+        assertTrue(window(balancer, 100, 50, 0, 100));
+        assertEquals(38, balancer.getCachePages());
+    }
+
+    @Test
+    public void cacheBounded() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(1000, PAGE_BYTES, 8, 1);
+        assertTrue(window(balancer, 100, 50, 0, 100));
+        assertEquals(9, balancer.getCachePages());
+        assertEquals(100, balancer.getBufferBytes());
+        assertFalse(window(balancer, 100, 40, 0, 100));
+        assertEquals(9, balancer.getCachePages());
+    }
+
+    @Test
+    public void cacheKeepsOnePage() {
+        final MemoryBudgetBalancer balancer = new MemoryBudgetBalancer(1000, PAGE_BYTES, 1, 1);
+        assertFalse(window(balancer, 100, 100, 0, 100));
+        assertEquals(1, balancer.getCachePages());
+        assertEquals(900, balancer.getBufferBytes());
+        assertEquals(Arrays.asList(1), balancer.getCachePagesHistory());
+    }
+
+    /**
+     * Adds the I/Os of a buffer emptying to the running totals and notifies the balancer about them
+     */
+    private boolean window(final MemoryBudgetBalancer balancer, final long windowRequests, final long windowMisses,
+                           final long windowWrites, final long windowUpdates) {
+        requests += windowRequests;
+        misses += windowMisses;
+        writes += windowWrites;
+        updates += windowUpdates;
+        return balancer.emptyingFinished(requests, misses, writes, updates);
+    }
+}
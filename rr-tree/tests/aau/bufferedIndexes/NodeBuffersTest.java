@@ -0,0 +1,145 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.cursors.Cursor;
+import xxl.core.spatial.KPE;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for NodeBuffers class
+ */
+public class NodeBuffersTest {
+
+    private NodeBuffers<KPE> nodeBuffers;
+
+    private final UpdateTree.Entry<KPE> opI1
+            = TestUtils.makeOperation(OperationType.INSERTION, 1, 1.0, 1.0, 2.0, 2.0);
+    private final UpdateTree.Entry<KPE> opI2
+            = TestUtils.makeOperation(OperationType.INSERTION, 2, 8.0, 8.0, 9.0, 9.0);
+    private final UpdateTree.Entry<KPE> opD3
+            = TestUtils.makeOperation(OperationType.DELETION, 3, 1.5, 1.5, 3.0, 3.0);
+
+    @Before
+    public void setUp() {
+        nodeBuffers = new NodeBuffers<>(TestUtils.GET_DESCRIPTOR, 2, 4, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity() {
+        new NodeBuffers<>(TestUtils.GET_DESCRIPTOR, 2, 4, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parkMove() {
+        final UpdateTree.Entry<KPE> move = new UpdateTree.Entry<>(opI2.getData(), opI1.getData());
+        nodeBuffers.park(1, move);
+    }
+
+    @Test
+    public void hasRoomFor() {
+        assertTrue(nodeBuffers.hasRoomFor(1, 2));
+        assertFalse(nodeBuffers.hasRoomFor(1, 3));
+        nodeBuffers.park(1, opI1);
+        assertTrue(nodeBuffers.hasRoomFor(1, 1));
+        assertFalse(nodeBuffers.hasRoomFor(1, 2));
+        assertTrue(nodeBuffers.hasRoomFor(2, 2));
+        assertEquals(1, nodeBuffers.size());
+    }
+
+    @Test
+    public void takeContained() {
+        nodeBuffers.park(1, opI1);
+        nodeBuffers.park(1, opD3);
+        nodeBuffers.park(2, opI2);
+        assertTrue(nodeBuffers.takeContained(2, TestUtils.makeDescriptor(0.0, 0.0, 5.0, 5.0)).isEmpty());
+        final List<UpdateTree.Entry<KPE>> taken
+                = nodeBuffers.takeContained(1, TestUtils.makeDescriptor(0.0, 0.0, 2.5, 2.5));
+        assertEquals(1, taken.size());
+        assertEquals(opI1, taken.get(0));
+        assertEquals(2, nodeBuffers.size());
+        assertFalse(nodeBuffers.contains(opI1.getData()));
+        assertTrue(nodeBuffers.contains(opD3.getData()));
+    }
+
+    @Test
+    public void takeAllFrom() {
+        nodeBuffers.park(1, opI1);
+        nodeBuffers.park(2, opI2);
+        final OperationGroup<KPE> taken = nodeBuffers.takeAllFrom(2);
+        assertEquals(1, taken.size());
+        assertTrue(taken.contains(opI2));
+        assertEquals(1, nodeBuffers.size());
+        assertEquals(1, nodeBuffers.takeAllFrom(0).size());
+        assertEquals(0, nodeBuffers.size());
+    }
+
+    @Test
+    public void takeFull() {
+        nodeBuffers.park(1, opI1);
+        nodeBuffers.park(2, opI2);
+        assertEquals(0, nodeBuffers.takeFull().size());
+        nodeBuffers.markFull(2);
+        final OperationGroup<KPE> taken = nodeBuffers.takeFull();
+        assertEquals(1, taken.size());
+        assertTrue(taken.contains(opI2));
+        assertEquals(1, nodeBuffers.size());
+        // The marks are cleared by taking the operations
+        nodeBuffers.park(2, opD3);
+        assertEquals(0, nodeBuffers.takeFull().size());
+        // And by returning the operations to the main buffer
+        nodeBuffers.markFull(1);
+        nodeBuffers.takeAllFrom(1);
+        nodeBuffers.park(1, opI1);
+        assertEquals(0, nodeBuffers.takeFull().size());
+        assertEquals(1, nodeBuffers.size());
+    }
+
+    @Test
+    public void annihilate() {
+        nodeBuffers.park(1, opI1);
+        nodeBuffers.park(2, opD3);
+        assertNull(nodeBuffers.annihilate(opI2.getData(), OperationType.INSERTION));
+        assertEquals(opI1, nodeBuffers.annihilate(opI1.getData(), OperationType.DELETION));
+        assertEquals(opD3, nodeBuffers.annihilate(opD3.getData(), OperationType.INSERTION));
+        assertEquals(0, nodeBuffers.size());
+        assertEquals(1, nodeBuffers.getNumOfIDAnnihilations());
+        assertEquals(1, nodeBuffers.getNumOfDIAnnihilations());
+    }
+
+    @Test
+    public void queryAndRootDescriptor() {
+        assertNull(nodeBuffers.rootDescriptor());
+        nodeBuffers.park(1, opI1);
+        nodeBuffers.park(2, opI2);
+        final Cursor<UpdateTree.Entry<KPE>> results = nodeBuffers.query(TestUtils.makeDescriptor(0.0, 0.0, 3.0, 3.0));
+        assertTrue(results.hasNext());
+        assertEquals(opI1, results.next());
+        assertFalse(results.hasNext());
+        results.close();
+        assertTrue(nodeBuffers.rootDescriptor().contains(TestUtils.GET_DESCRIPTOR.invoke(opI1.getData())));
+        assertTrue(nodeBuffers.rootDescriptor().contains(TestUtils.GET_DESCRIPTOR.invoke(opI2.getData())));
+        assertEquals(2, nodeBuffers.flatten().size());
+    }
+}
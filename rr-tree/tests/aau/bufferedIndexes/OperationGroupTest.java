@@ -22,6 +22,10 @@ import org.junit.Before;
 import org.junit.Test;
 import xxl.core.spatial.KPE;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -62,4 +66,86 @@ public class OperationGroupTest {
         g.add(opD);
         assertFalse (g.isInsertionOnly());
     }
+
+    private static List<UpdateTree.Entry<KPE>> makeOps(final int count) {
+        final List<UpdateTree.Entry<KPE>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new UpdateTree.Entry<>(TestData.data[i],
+                    ((i % 3) == 0) ? OperationType.DELETION : OperationType.INSERTION));
+        }
+        return result;
+    }
+
+    private static List<UpdateTree.Entry<KPE>> contents(final OperationGroup<KPE> group) {
+        final List<UpdateTree.Entry<KPE>> result = new ArrayList<>(group.size());
+        for (final UpdateTree.Entry<KPE> op : group)
+            result.add(op);
+        return result;
+    }
+
+    @Test
+    public void containsAndRemove() {
+        g.add(opI);
+        assertTrue (g.contains(new UpdateTree.Entry<>(d, OperationType.INSERTION)));
+        assertFalse (g.contains(opD));
+        assertFalse (g.remove(opD));
+        assertTrue (g.remove(new UpdateTree.Entry<>(d, OperationType.INSERTION)));
+        assertFalse (g.contains(opI));
+        assertEquals (0, g.size());
+        assertEquals (0, g.sizeInInsertions());
+        assertTrue (g.isInsertionOnly());
+    }
+
+    @Test
+    public void removeAllKeepsOrderAndCounts() {
+        final List<UpdateTree.Entry<KPE>> ops = makeOps(30);
+        g = new OperationGroup<>(ops);
+        final List<UpdateTree.Entry<KPE>> toRemove = new ArrayList<>();
+        toRemove.add(opI);
+        for (int i = 0; i < ops.size(); i += 2)
+            toRemove.add(ops.get(i));
+        assertEquals (15, g.removeAll(toRemove));
+
+        final List<UpdateTree.Entry<KPE>> expected = new ArrayList<>(ops);
+        expected.removeAll(toRemove);
+        assertEquals (expected, contents(g));
+        assertEquals (expected.size(), g.size());
+        int insertions = 0;
+        for (final UpdateTree.Entry<KPE> op : expected) {
+            if (op.isInsertion())
+                insertions++;
+        }
+        assertEquals (insertions, g.sizeInInsertions());
+    }
+
+    @Test
+    public void iteratorRemove() {
+        final List<UpdateTree.Entry<KPE>> ops = makeOps(10);
+        g = new OperationGroup<>(ops);
+        final Iterator<UpdateTree.Entry<KPE>> itr = g.iterator();
+        while (itr.hasNext()) {
+            if (itr.next().isDeletion())
+                itr.remove();
+        }
+        assertTrue (g.isInsertionOnly());
+        assertEquals (6, g.size());
+        assertFalse (g.contains(ops.get(0)));
+        assertTrue (g.contains(ops.get(1)));
+    }
+
+    @Test
+    public void addAfterRemovals() {
+        final List<UpdateTree.Entry<KPE>> ops = makeOps(20);
+        for (final UpdateTree.Entry<KPE> op : ops.subList(0, 10))
+            g.add(op);
+        for (final UpdateTree.Entry<KPE> op : ops.subList(0, 8))
+            assertTrue (g.remove(op));
+        // Adding more operations drops the removed ones from the storage
+        for (final UpdateTree.Entry<KPE> op : ops.subList(10, 20))
+            g.add(op);
+        assertEquals (ops.subList(8, 20), contents(g));
+        assertTrue (g.remove(ops.get(15)));
+        assertFalse (g.contains(ops.get(15)));
+        assertTrue (g.contains(ops.get(16)));
+    }
 }
@@ -89,6 +89,50 @@ public class RRTreeBufferTest extends TreeTester {
         assertTrue(!rrTreeBuffer.isFull());
     }
 
+    @Test
+    public void isFullByBytes() {
+        rrTreeBuffer.initialize(TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY, 100);
+        rrTreeBuffer.setMaxBytes(2 * UpdateTree.KPE_OPERATION_SIZE);
+        assertEquals(2 * UpdateTree.KPE_OPERATION_SIZE, rrTreeBuffer.getMaxBytes());
+        rrTreeBuffer.insertWithAnnihilation(TestUtils.makeWorkloadKPE(1, 1.0, 1.0, 2.0, 2.0));
+        assertEquals(UpdateTree.KPE_OPERATION_SIZE, rrTreeBuffer.getCurrentBytes());
+        assertFalse(rrTreeBuffer.isFull());
+        final KPE deleted = TestUtils.makeWorkloadKPE(2, 3.0, 3.0, 4.0, 4.0);
+        rrTreeBuffer.removeWithAnnihilation(deleted);
+        assertTrue(rrTreeBuffer.isFull());
+        rrTreeBuffer.removeExactEntry(new UpdateTree.Entry<>(deleted, OperationType.DELETION));
+        assertEquals(UpdateTree.KPE_OPERATION_SIZE, rrTreeBuffer.getCurrentBytes());
+        assertFalse(rrTreeBuffer.isFull());
+        rrTreeBuffer.clear();
+        assertEquals(0, rrTreeBuffer.getCurrentBytes());
+    }
+
+    @Test
+    public void isFullByReservedBytes() {
+        rrTreeBuffer.initialize(TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY, 100);
+        rrTreeBuffer.setMaxBytes(3 * UpdateTree.KPE_OPERATION_SIZE);
+        rrTreeBuffer.setReservedBytes(3 * UpdateTree.KPE_OPERATION_SIZE);
+        assertFalse(rrTreeBuffer.isFull());
+        rrTreeBuffer.insertWithAnnihilation(TestUtils.makeWorkloadKPE(1, 1.0, 1.0, 2.0, 2.0));
+        assertTrue(rrTreeBuffer.isFull());
+        rrTreeBuffer.setReservedBytes(UpdateTree.KPE_OPERATION_SIZE);
+        assertFalse(rrTreeBuffer.isFull());
+        rrTreeBuffer.insertWithAnnihilation(TestUtils.makeWorkloadKPE(2, 3.0, 3.0, 4.0, 4.0));
+        assertTrue(rrTreeBuffer.isFull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeReservedBytes() {
+        rrTreeBuffer.setReservedBytes(-1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setMaxBytesNonEmpty() {
+        rrTreeBuffer.initialize(TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY, 100);
+        rrTreeBuffer.insertWithAnnihilation(TestData.data[0]);
+        rrTreeBuffer.setMaxBytes(1000);
+    }
+
     @Test
     public void insert() {
         rrTreeBuffer.initialize(TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY, 101);
@@ -21,6 +21,8 @@ package aau.bufferedIndexes;
 import aau.bufferedIndexes.diskTrees.IRRDiskTree;
 import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
 import aau.bufferedIndexes.diskTrees.RRDiskUpdateTree;
+import aau.bufferedIndexes.instrumentation.HistogramInstrumentation;
+import aau.bufferedIndexes.instrumentation.Instrumentation;
 import aau.bufferedIndexes.objectTracers.NullObjectTracer;
 import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
 import aau.bufferedIndexes.operationGroupMakers.DeletionsAsInsertionsGroupMaker;
@@ -29,7 +31,9 @@ import aau.bufferedIndexes.pushDownStrategies.PushDownAllGroups;
 import aau.bufferedIndexes.pushDownStrategies.PushDownGroupsStrategy;
 import org.junit.Before;
 import org.junit.Test;
+import xxl.core.collections.containers.MapContainer;
 import xxl.core.cursors.Cursor;
+import xxl.core.functions.Function;
 import xxl.core.spatial.KPE;
 
 import java.io.IOException;
@@ -121,6 +125,72 @@ public class RRTreeIntegrationTest extends TreeTester {
         tree.cleanGarbage(false); // TODO: here and everywhere else: test with true too
     }
 
+    @Test
+    public void writeCoalescingAfterFailedEmptying() {
+        final boolean[] failReserve = new boolean[1];
+        mainMemoryContainer = new MapContainer(false) {
+            @Override
+            public Object reserve(final Function getObject) {
+                if (failReserve[0])
+                    throw new IllegalStateException("Injected container failure");
+                return super.reserve(getObject);
+            }
+        };
+        tree = new RRTree<>(dataDiskTree);
+        tree.enableWriteCoalescing();
+        tree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY,
+                MAX_CAPACITY, 101, trivialGroupMaker, true, true, 0.0, true, 0, 0, emptyWholeBuffer,
+                new NullObjectTracer<KPE>());
+        int i;
+        for (i = 0; i <= 100; i++)
+            tree.insert(TestData.data[i]);
+        failReserve[0] = true;
+        try {
+            tree.forcedEmptyBuffer();
+            fail("The injected container failure should fail the emptying");
+        }
+        catch (IllegalStateException e) {
+            assertEquals ("Injected container failure", e.getMessage());
+        }
+        failReserve[0] = false;
+        for (; i <= 201; i++)
+            tree.insert(TestData.data[i]);
+        tree.forcedEmptyBuffer();
+        querySingleExisting(tree, TestData.data[201]);
+    }
+
+    @Test
+    public void instrumentedQueryEndsOnExhaustion() {
+        tree = new RRTree<>(dataDiskTree);
+        tree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY,
+                MAX_CAPACITY, 101, trivialGroupMaker, true, true, 0.0, true, 0, 0, emptyWholeBuffer,
+                new NullObjectTracer<KPE>());
+        final HistogramInstrumentation instrumentation = new HistogramInstrumentation();
+        tree.setInstrumentation(instrumentation);
+        for (int i = 0; i < 10; i++)
+            tree.insert(TestData.data[i]);
+
+        // Exhausted but never closed
+        final Cursor<KPE> exhausted = tree.query(tree.rootDescriptor());
+        while (exhausted.hasNext())
+            exhausted.next();
+        assertEquals(1, queryMeasurements(instrumentation));
+        // Neither exhausting again nor closing measures it twice
+        assertFalse(exhausted.hasNext());
+        exhausted.close();
+        assertEquals(1, queryMeasurements(instrumentation));
+
+        // Closed before exhaustion
+        final Cursor<KPE> closed = tree.query(tree.rootDescriptor());
+        assertTrue(closed.hasNext());
+        closed.close();
+        assertEquals(2, queryMeasurements(instrumentation));
+    }
+
+    private static long queryMeasurements(final HistogramInstrumentation instrumentation) {
+        return instrumentation.getMeasurements(Instrumentation.Event.QUERY).get(0).getDurations().getCount();
+    }
+
     @Test
     public void dataDiskTreeBufferInsert() throws IOException {
         testBufferInsert(dataDiskTree, trivialGroupMaker);
@@ -346,6 +416,54 @@ public class RRTreeIntegrationTest extends TreeTester {
         tree.cleanGarbage(false);
     }
 
+    @Test
+    public void moveDataTree() throws IOException {
+        testMove(dataDiskTree, trivialGroupMaker);
+    }
+
+    @Test
+    public void moveUpdateTree() throws IOException {
+        testMove(updateDiskTree, delsAsInsGroupMaker);
+    }
+
+    private static KPE makeMovingObject(final int id, final int position) {
+        final double x = id * 10.0 + position * 2.0;
+        return TestUtils.makeKPE(id, x, id % 7, x + 1.0, id % 7 + 1.0);
+    }
+
+    private void testMove(final IRRDiskTree<KPE> diskTree,
+                          final AbstractOperationGroupMaker operationGroupMaker) throws IOException {
+        tree = new RRTree<>(diskTree);
+        tree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY,
+                MAX_CAPACITY, 50, operationGroupMaker, true, true, 0.0, true, 0, 0, emptyWholeBuffer,
+                new NullObjectTracer<KPE>());
+        final int objects = 200;
+        for (int i = 0; i < objects; i++)
+            checkedInsert(tree, makeMovingObject(i, 0));
+        for (int position = 1; position <= 3; position++) {
+            for (int i = 0; i < objects; i++) {
+                final KPE oldObject = makeMovingObject(i, position - 1);
+                final KPE newObject = makeMovingObject(i, position);
+                tree.update(oldObject, newObject);
+                queryNonexisting(tree, oldObject);
+                querySingleExisting(tree, newObject);
+            }
+        }
+        // Move some objects twice before the buffer is emptied
+        for (int i = 0; i < 10; i++) {
+            tree.update(makeMovingObject(i, 3), makeMovingObject(i, 4));
+            tree.update(makeMovingObject(i, 4), makeMovingObject(i, 5));
+            queryNonexisting(tree, makeMovingObject(i, 3));
+            queryNonexisting(tree, makeMovingObject(i, 4));
+            querySingleExisting(tree, makeMovingObject(i, 5));
+        }
+        tree.forcedEmptyBuffer();
+        assertEquals(0, tree.getCurrentBufferSize());
+        for (int i = 0; i < objects; i++)
+            querySingleExisting(tree, makeMovingObject(i, (i < 10) ? 5 : 3));
+        tree.cleanGarbage(false);
+    }
+
     @Test
     public void piggybackingEnabledDataDiskTree() throws IOException {
         testPiggybackingEnabled(dataDiskTree, trivialGroupMaker);
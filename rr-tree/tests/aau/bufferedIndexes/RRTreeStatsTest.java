@@ -226,6 +226,24 @@ public class RRTreeStatsTest {
         checkForLifetime(lifeTimeStats, 0, 2, 0);
     }
 
+    @Test
+    public void lifeTimeStatsParkedAnnihilation() {
+        // The deletion was parked in a node buffer, the insertion annihilates with it there
+        stats.registerOpLifetime(d, 2, 3, OperationType.DELETION);
+        stats.registerAnnihilation(d, OperationType.INSERTION);
+        final Set<Map.Entry<Integer, OpLifetimeStats.TotalsForEB>> lifeTimeStats = stats.getOpLifetimeStats();
+        assertEquals (1, lifeTimeStats.size());
+        checkForLifetime(lifeTimeStats, 0, 2, 0);
+    }
+
+    @Test
+    public void nodeBufferDrains() {
+        assertEquals(0, stats.getNodeBufferDrains());
+        stats.registerNodeBufferDrain(3);
+        stats.registerNodeBufferDrain(2);
+        assertEquals(5, stats.getNodeBufferDrains());
+    }
+
     @Test
     public void lifeTimeStatsBackToBuffer() {
         assertEquals (0, stats.getOpLifetimeStats().size());
@@ -0,0 +1,248 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
+import aau.workload.DataID;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.indexStructures.ORTree;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.FloatPointRectangle;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for the R*-tree node split of the XXL RTree, comparing it against the distribution-based split that it
+ * replaced.
+ */
+public class RTreeSplitNodeTest extends TreeTester {
+
+    private final RRDiskDataTree<KPE> tree = new RRDiskDataTree<>();
+
+    private static final int MIN_CAPACITY = 10;
+
+    @Before
+    public void setUp() {
+        tree.initialize(TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY, MAX_CAPACITY);
+    }
+
+    @Test
+    public void diagonalData() {
+        // The data is symmetric in both dimensions, so the margin sums of the dimensions tie
+        checkSplits(Arrays.asList(TestData.data).subList(0, MAX_CAPACITY + 1));
+        checkSplits(Arrays.asList(TestData.data2).subList(0, MAX_CAPACITY + 1));
+    }
+
+    @Test
+    public void identicalRectangles() {
+        // All the distributions tie on margin, overlap and area
+        final List<KPE> data = new ArrayList<>(MAX_CAPACITY + 1);
+        for (int i = 0; i <= MAX_CAPACITY; i++)
+            data.add(TestUtils.makeKPE(i, 1, 1, 3, 3));
+        checkSplits(data);
+    }
+
+    @Test
+    public void gridData() {
+        final List<KPE> data = new ArrayList<>(MAX_CAPACITY + 1);
+        for (int i = 0; i <= MAX_CAPACITY; i++)
+            data.add(TestUtils.makeKPE(i, i % 10, i / 10, (i % 10) + 1, (i / 10) + 1));
+        checkSplits(data);
+    }
+
+    @Test
+    public void randomData() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            final List<KPE> data = new ArrayList<>(MAX_CAPACITY + 1);
+            for (int i = 0; i <= MAX_CAPACITY; i++) {
+                // Small integer coordinates produce many ties between the coordinates and the distributions
+                final int x = random.nextInt(20);
+                final int y = random.nextInt(20);
+                data.add(TestUtils.makeKPE(i, x, y, x + random.nextInt(5), y + random.nextInt(5)));
+            }
+            checkSplits(data);
+        }
+    }
+
+    @Test
+    public void floatRectangles() {
+        final Random random = new Random(7);
+        final List<KPE> data = new ArrayList<>(MAX_CAPACITY + 1);
+        for (int i = 0; i <= MAX_CAPACITY; i++) {
+            final float x = random.nextInt(50) / 4.0f;
+            final float y = random.nextInt(50) / 4.0f;
+            final KPE kpe = new KPE(new FloatPointRectangle(new float[] {x, y}, new float[] {x + 1.5f, y + 0.25f}));
+            kpe.setID(new DataID(i));
+            data.add(kpe);
+        }
+        checkSplits(data);
+    }
+
+    private void checkSplits(final List<KPE> data) {
+        checkSplit(data, MIN_CAPACITY, data.size() - MIN_CAPACITY);
+        checkSplit(data, 1, data.size() - 1);
+        checkSplit(data, data.size() / 2, data.size() - data.size() / 2);
+    }
+
+    private void checkSplit(final List<KPE> data, final int minEntries, final int maxEntries) {
+        final Rectangle[] expected = rectangles(data);
+        final int expectedSecondStart = referenceSplit(expected, minEntries, maxEntries);
+
+        final IRRTreeDiskNode<KPE> node = tree.createNode(0, new ArrayList<>(data));
+        final IRRTreeDiskNode<KPE> newNode = tree.createNode(0);
+        //noinspection unchecked
+        tree.splitNode((ORTree.Node)node, (Collection<Object>)newNode.getModifiableEntries(), minEntries, maxEntries);
+
+        assertSameRectangles(Arrays.asList(expected).subList(0, expectedSecondStart), node.getEntries());
+        assertSameRectangles(Arrays.asList(expected).subList(expectedSecondStart, expected.length),
+                newNode.getEntries());
+    }
+
+    private static void assertSameRectangles(final List<Rectangle> expected, final Collection<?> entries) {
+        final List<Rectangle> actual = rectangles(entries);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertSame(expected.get(i), actual.get(i));
+    }
+
+    private static List<Rectangle> rectangles(final Collection<?> entries) {
+        final List<Rectangle> result = new ArrayList<>(entries.size());
+        for (final Object e : entries)
+            result.add((Rectangle)((KPE)e).getData());
+        return result;
+    }
+
+    private static Rectangle[] rectangles(final List<KPE> data) {
+        return rectangles((Collection<?>)data).toArray(new Rectangle[data.size()]);
+    }
+
+    /**
+     * The comparators in the order of the RTree sorters: the left corners of the first two dimensions, then the
+     * right corners, so that the distributions of the dimension <tt>d</tt> are made by sorters <tt>2d</tt> and
+     * <tt>2d + 1</tt>.
+     */
+    private static final List<Comparator<Rectangle>> SORTERS = Arrays.asList(cornerSorter(false, 0),
+            cornerSorter(false, 1), cornerSorter(true, 0), cornerSorter(true, 1));
+
+    private static Comparator<Rectangle> cornerSorter(final boolean rightCorner, final int dimension) {
+        return new Comparator<Rectangle>() {
+            public int compare(final Rectangle r1, final Rectangle r2) {
+                return Double.compare(r1.getCorner(rightCorner).getValue(dimension),
+                        r2.getCorner(rightCorner).getValue(dimension));
+            }
+        };
+    }
+
+    private static final class Distribution {
+        final Rectangle[] entries;
+        final int secondStart;
+        final Rectangle first;
+        final Rectangle second;
+
+        Distribution(final Rectangle[] entries, final int secondStart) {
+            this.entries = entries;
+            this.secondStart = secondStart;
+            first = bound(entries, 0, secondStart);
+            second = bound(entries, secondStart, entries.length);
+        }
+
+        private static Rectangle bound(final Rectangle[] entries, final int from, final int to) {
+            final Rectangle result = toDouble(entries[from]);
+            for (int i = from + 1; i < to; i++)
+                result.union(toDouble(entries[i]));
+            return result;
+        }
+
+        /**
+         * The split evaluates the distributions over double coordinates for any rectangle type.
+         */
+        private static Rectangle toDouble(final Rectangle rectangle) {
+            final double[] lows = new double[rectangle.dimensions()];
+            final double[] highs = new double[rectangle.dimensions()];
+            for (int d = 0; d < lows.length; d++) {
+                lows[d] = rectangle.getCorner(false).getValue(d);
+                highs[d] = rectangle.getCorner(true).getValue(d);
+            }
+            return new DoublePointRectangle(lows, highs);
+        }
+    }
+
+    /**
+     * The R*-tree split as it was done over a list of distribution objects per dimension: the dimension with the
+     * first minimal margin sum, then the first of its distributions with minimal overlap and, among those, minimal
+     * area.
+     *
+     * @param rects the rectangles to split, sorted in place for the chosen distribution on return
+     * @param minEntries Minimum allowed number of entries in a node
+     * @param maxEntries Maximum allowed number of entries in a node
+     * @return the start of the second partition in the sorted rectangles
+     */
+    private static int referenceSplit(final Rectangle[] rects, final int minEntries, final int maxEntries) {
+        List<Distribution> chosenDimension = null;
+        double minMarginSum = Double.POSITIVE_INFINITY;
+        for (int dim = 0; dim < 2; dim++) {
+            final List<Distribution> distributions = new ArrayList<>();
+            double marginSum = 0.0;
+            for (int s = 2 * dim; s < 2 * dim + 2; s++) {
+                final Rectangle[] sorted = Arrays.copyOf(rects, rects.length);
+                Arrays.sort(sorted, SORTERS.get(s));
+                for (int j = minEntries; j <= maxEntries; j++) {
+                    final Distribution distribution = new Distribution(sorted, j);
+                    distributions.add(distribution);
+                    marginSum += distribution.first.margin() + distribution.second.margin();
+                }
+            }
+            if (marginSum < minMarginSum) {
+                minMarginSum = marginSum;
+                chosenDimension = distributions;
+            }
+        }
+
+        Distribution chosen = null;
+        double minOverlap = Double.POSITIVE_INFINITY;
+        double minArea = Double.POSITIVE_INFINITY;
+        assert chosenDimension != null;
+        for (final Distribution distribution : chosenDimension) {
+            final double overlap = distribution.first.overlap(distribution.second);
+            final double area = distribution.first.area() + distribution.second.area();
+            if ((overlap < minOverlap) || ((overlap == minOverlap) && (area < minArea))) {
+                minOverlap = overlap;
+                minArea = area;
+                chosen = distribution;
+            }
+        }
+
+        assert chosen != null;
+        System.arraycopy(chosen.entries, 0, rects, 0, rects.length);
+        return chosen.secondStart;
+    }
+}
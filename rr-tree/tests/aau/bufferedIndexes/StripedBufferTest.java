@@ -0,0 +1,352 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.Container;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.collections.containers.io.BufferedContainer;
+import xxl.core.functions.Function;
+import xxl.core.io.SizeAware;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link StripedBuffer}
+ */
+public class StripedBufferTest {
+
+    private final Object owner = new Object();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Map<Long, String> flushed = new HashMap<>();
+
+    private final Function<Long, String> load = new Function<Long, String>() {
+        public String invoke(final Long id) {
+            loads.incrementAndGet();
+            return "object " + id;
+        }
+    };
+
+    private final Function<Object, Object> flush = new Function<Object, Object>() {
+        public Object invoke(final Object id, final Object object) {
+            flushed.put((Long)id, (String)object);
+            return null;
+        }
+    };
+
+    private StripedBuffer<Object, Long, String> buffer;
+
+    /**
+     * An object of a given size in bytes
+     */
+    private static final class Sized implements SizeAware {
+
+        private final int size;
+
+        Sized(final int size) {
+            this.size = size;
+        }
+
+        public int getMemSize() {
+            return size;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        buffer = new StripedBuffer<>(4, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noStripes() {
+        new StripedBuffer<>(4, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityLessThanStripes() {
+        new StripedBuffer<>(1, 2);
+    }
+
+    @Test
+    public void capacity() {
+        assertEquals (4, buffer.capacity());
+        assertEquals (0, buffer.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void notResizable() {
+        buffer.setCapacity(8);
+    }
+
+    @Test
+    public void getLoadsOnce() {
+        assertEquals ("object 1", buffer.get(owner, 1L, load, true));
+        assertEquals ("object 1", buffer.get(owner, 1L, load, true));
+        assertEquals (1, loads.get());
+        assertEquals (1, buffer.size());
+        assertTrue (buffer.contains(owner, 1L));
+        assertFalse (buffer.contains(new Object(), 1L));
+        assertFalse (buffer.isFixed(owner, 1L));
+    }
+
+    @Test
+    public void fixCounter() {
+        buffer.get(owner, 1L, load, false);
+        buffer.get(owner, 1L, load, false);
+        assertEquals (1, buffer.fixedSlots());
+        buffer.unfix(owner, 1L);
+        assertTrue (buffer.isFixed(owner, 1L));
+        buffer.unfix(owner, 1L);
+        assertFalse (buffer.isFixed(owner, 1L));
+        assertEquals (0, buffer.fixedSlots());
+    }
+
+    @Test
+    public void replacementFlushesDirty() {
+        final StripedBuffer<Object, Long, String> oneStripe = new StripedBuffer<>(2, 1);
+        oneStripe.update(owner, 1L, "new 1", flush, true);
+        oneStripe.update(owner, 2L, "new 2", flush, true);
+        assertTrue (flushed.isEmpty());
+        oneStripe.get(owner, 3L, load, true);
+        assertEquals (2, oneStripe.size());
+        assertEquals (1, flushed.size());
+        final long displaced = flushed.keySet().iterator().next();
+        assertFalse (oneStripe.contains(owner, displaced));
+        assertEquals ("new " + displaced, flushed.get(displaced));
+    }
+
+    @Test
+    public void replacementSkipsFixed() {
+        final StripedBuffer<Object, Long, String> oneStripe = new StripedBuffer<>(2, 1);
+        oneStripe.get(owner, 1L, load, false);
+        oneStripe.get(owner, 2L, load, true);
+        oneStripe.get(owner, 3L, load, true);
+        assertTrue (oneStripe.contains(owner, 1L));
+        assertFalse (oneStripe.contains(owner, 2L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void allFixed() {
+        final StripedBuffer<Object, Long, String> oneStripe = new StripedBuffer<>(1, 1);
+        oneStripe.get(owner, 1L, load, false);
+        oneStripe.get(owner, 2L, load, true);
+    }
+
+    @Test
+    public void flushAll() {
+        buffer.update(owner, 1L, "new 1", flush, true);
+        buffer.update(owner, 2L, "new 2", flush, true);
+        buffer.flushAll(owner);
+        assertEquals (2, flushed.size());
+        flushed.clear();
+        buffer.flushAll(owner);
+        assertTrue (flushed.isEmpty());
+    }
+
+    @Test
+    public void removeDoesNotFlush() {
+        buffer.update(owner, 1L, "new 1", flush, true);
+        buffer.remove(owner, 1L);
+        assertFalse (buffer.contains(owner, 1L));
+        assertTrue (flushed.isEmpty());
+    }
+
+    @Test
+    public void removeAllOfOwner() {
+        final Object otherOwner = new Object();
+        buffer.get(owner, 1L, load, true);
+        buffer.get(owner, 2L, load, true);
+        buffer.get(otherOwner, 1L, load, true);
+        buffer.removeAll(owner);
+        assertEquals (1, buffer.size());
+        assertTrue (buffer.contains(otherOwner, 1L));
+    }
+
+    @Test
+    public void manyIdsThroughSmallBuffer() {
+        final StripedBuffer<Object, Long, String> oneStripe = new StripedBuffer<>(8, 1);
+        for (long i = 0; i < 1000; i++) {
+            oneStripe.get(owner, i, load, true);
+            oneStripe.get(owner, i / 2, load, true);
+            assertTrue (oneStripe.contains(owner, i));
+            assertTrue (oneStripe.size() <= 8);
+        }
+        for (long i = 0; i < 1000; i++)
+            oneStripe.remove(owner, i);
+        assertEquals (0, oneStripe.size());
+    }
+
+    @Test
+    public void bufferedContainerWriteBack() {
+        final MapContainer storage = new MapContainer();
+        final Container container = new BufferedContainer(storage, new StripedBuffer(4, 2), true);
+        final List<Object> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            ids.add(container.insert(i));
+        for (int i = 0; i < 20; i++)
+            container.update(ids.get(i), i + 100);
+        for (int i = 0; i < 20; i++)
+            assertEquals (i + 100, container.get(ids.get(i)));
+        container.flush();
+        for (int i = 0; i < 20; i++)
+            assertEquals (i + 100, storage.get(ids.get(i)));
+    }
+
+    @Test
+    public void concurrentReads() throws InterruptedException {
+        final StripedBuffer<Object, Long, String> concurrentBuffer = new StripedBuffer<>(64, 8);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger errors = new AtomicInteger();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        final long id = i % 64;
+                        if (!("object " + id).equals(concurrentBuffer.get(owner, id, load, true)))
+                            errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads)
+            thread.start();
+        for (final Thread thread : threads)
+            thread.join();
+        assertEquals (0, errors.get());
+        assertEquals (0, concurrentBuffer.fixedSlots());
+        assertTrue (concurrentBuffer.size() <= 64);
+    }
+
+    @Test
+    public void concurrentMissesInDifferentStripes() throws InterruptedException {
+        final StripedBuffer<Object, Long, String> concurrentBuffer = new StripedBuffer<>(8, 8);
+        // Each load waits for the other one, thus the loads must run at the same time
+        final CyclicBarrier bothLoading = new CyclicBarrier(2);
+        final AtomicInteger errors = new AtomicInteger();
+        final Function<Long, String> waitingLoad = new Function<Long, String>() {
+            public String invoke(final Long id) {
+                try {
+                    bothLoading.await(10, TimeUnit.SECONDS);
+                }
+                catch (final Exception e) {
+                    errors.incrementAndGet();
+                }
+                return "object " + id;
+            }
+        };
+        final List<Thread> threads = new ArrayList<>();
+        for (long id = 1; id <= 2; id++) {
+            final long threadId = id;
+            threads.add(new Thread() {
+                public void run() {
+                    concurrentBuffer.get(owner, threadId, waitingLoad, true);
+                }
+            });
+        }
+        for (final Thread thread : threads)
+            thread.start();
+        for (final Thread thread : threads)
+            thread.join();
+        assertEquals (0, errors.get());
+        assertEquals (2, concurrentBuffer.size());
+        concurrentBuffer.checkBuffer();
+    }
+
+    @Test
+    public void victim() {
+        buffer.get(owner, 1L, load, false);
+        buffer.get(owner, 2L, load, true);
+        assertNotNull (buffer.victim());
+        assertNotNull (buffer.victim());
+        buffer.checkBuffer();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void victimAllFixed() {
+        buffer.get(owner, 1L, load, false);
+        buffer.victim();
+    }
+
+    @Test
+    public void bytesUsed() {
+        final StripedBuffer<Object, Long, Sized> sizedBuffer = new StripedBuffer<>(4, 100, 1);
+        sizedBuffer.update(owner, 1L, new Sized(10), flush, true);
+        sizedBuffer.update(owner, 2L, new Sized(20), flush, true);
+        assertEquals (30, sizedBuffer.bytesUsed());
+        sizedBuffer.update(owner, 1L, new Sized(15), flush, true);
+        assertEquals (35, sizedBuffer.bytesUsed());
+        sizedBuffer.remove(owner, 2L);
+        assertEquals (15, sizedBuffer.bytesUsed());
+        sizedBuffer.checkBuffer();
+    }
+
+    @Test
+    public void bytesNotCountedWithoutCapacityBytes() {
+        final StripedBuffer<Object, Long, Sized> sizedBuffer = new StripedBuffer<>(4, 1);
+        sizedBuffer.update(owner, 1L, new Sized(10), flush, true);
+        assertEquals (0, sizedBuffer.bytesUsed());
+    }
+
+    @Test
+    public void capacityBytesDisplaces() {
+        final Map<Long, Object> flushedSized = new HashMap<>();
+        final Function<Object, Object> flushSized = new Function<Object, Object>() {
+            public Object invoke(final Object id, final Object object) {
+                flushedSized.put((Long)id, object);
+                return null;
+            }
+        };
+        final StripedBuffer<Object, Long, Sized> sizedBuffer = new StripedBuffer<>(4, 50, 1);
+        sizedBuffer.update(owner, 1L, new Sized(20), flushSized, true);
+        sizedBuffer.update(owner, 2L, new Sized(20), flushSized, true);
+        assertTrue (flushedSized.isEmpty());
+        sizedBuffer.update(owner, 3L, new Sized(20), flushSized, true);
+        assertEquals (2, sizedBuffer.size());
+        assertEquals (40, sizedBuffer.bytesUsed());
+        assertEquals (1, flushedSized.size());
+        sizedBuffer.update(owner, 3L, new Sized(45), flushSized, true);
+        assertEquals (1, sizedBuffer.size());
+        assertEquals (45, sizedBuffer.bytesUsed());
+        assertTrue (sizedBuffer.contains(owner, 3L));
+        sizedBuffer.checkBuffer();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void capacityBytesAllFixed() {
+        final StripedBuffer<Object, Long, Sized> sizedBuffer = new StripedBuffer<>(4, 50, 1);
+        sizedBuffer.update(owner, 1L, new Sized(30), flush, false);
+        sizedBuffer.update(owner, 2L, new Sized(30), flush, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveCapacityBytes() {
+        new StripedBuffer<>(4, 0, 1);
+    }
+}
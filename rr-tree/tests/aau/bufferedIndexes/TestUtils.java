@@ -24,9 +24,12 @@ import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
 import aau.bufferedIndexes.objectTracers.NullObjectTracer;
 import aau.bufferedIndexes.pushDownStrategies.AbstractPushDownThreshold;
 import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
 import xxl.core.functions.Function;
 import xxl.core.indexStructures.Descriptor;
 import xxl.core.io.Convertable;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
 import xxl.core.spatial.KPE;
 import xxl.core.spatial.points.DoublePoint;
 import xxl.core.spatial.rectangles.DoublePointRectangle;
@@ -104,7 +107,7 @@ public class TestUtils {
 
     public static <T extends Convertable> void addEntry(final IRRTreeDiskNode<T> node,
                                                         final IRRTreeIndexEntry<T> entry) {
-        node.getNonLeafNodeEntries().add(entry);
+        node.grow(entry);
     }
 
     public static Descriptor getDescriptor(final Object entry) {
@@ -167,6 +170,21 @@ public class TestUtils {
         return new KPE(makeRectangle(x1, y1, x2, y2));
     }
 
+    /**
+     * The converter of the KPEs made by {@link #makeWorkloadKPE}
+     */
+    public static final Converter<KPE> WORKLOAD_KPE_CONVERTER
+            = new ConvertableConverter<>(new Function<Object, KPE>() {
+                public KPE invoke() {
+                    return new KPE(new DataID(), new DoublePointRectangle(2), WorkloadOperation.getConverter());
+                }
+            });
+
+    public static KPE makeWorkloadKPE(final int id, final double x1, final double y1, final double x2,
+                                      final double y2) {
+        return new KPE(new DataID(id), makeRectangle(x1, y1, x2, y2), WorkloadOperation.getConverter());
+    }
+
     public static KPE makeKPE(final int id, final double x1, final double y1, final double x2, final double y2) {
         final KPE result = makeKPE (x1, y1, x2, y2);
         result.setID(new DataID(id));
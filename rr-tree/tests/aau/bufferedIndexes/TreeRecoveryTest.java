@@ -0,0 +1,230 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import aau.bufferedIndexes.operationGroupMakers.TrivialOperationGroupMaker;
+import aau.bufferedIndexes.pushDownStrategies.PushDownAllGroups;
+import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xxl.core.collections.containers.Container;
+import xxl.core.collections.containers.io.BlockFileContainer;
+import xxl.core.collections.containers.io.BufferedContainer;
+import xxl.core.collections.containers.io.ConverterContainer;
+import xxl.core.cursors.Cursor;
+import xxl.core.functions.Function;
+import xxl.core.io.LRUBuffer;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+import xxl.core.spatial.rectangles.Rectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reopening the RRTree from its file container after a crash, either from the buffer log or from the
+ * snapshot file.  A crash is simulated by abandoning the tree together with its node cache and files.
+ */
+public class TreeRecoveryTest {
+
+    private static final Function<Object, UpdateTree.Entry<KPE>> ENTRY_FACTORY
+            = new Function<Object, UpdateTree.Entry<KPE>>() {
+        public UpdateTree.Entry<KPE> invoke() {
+            return new UpdateTree.Entry<>(new KPE(new DataID(), new DoublePointRectangle(2),
+                    WorkloadOperation.getConverter()), OperationType.INSERTION);
+        }
+    };
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final int MIN_CAPACITY = 4;
+
+    private static final int MAX_CAPACITY = 12;
+
+    private static final int BUFFER_SIZE = 50;
+
+    private static final int CACHE_SIZE = 8;
+
+    private static final int OPERATIONS = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Converter<UpdateTree.Entry<KPE>> entryConverter;
+
+    private List<UpdateTree.Entry<KPE>> workload;
+
+    private Set<KPE> expectedResults;
+
+    @Before
+    public void setUp() {
+        entryConverter = new ConvertableConverter<>(ENTRY_FACTORY);
+        workload = makeWorkload();
+        final RRTree<KPE> tree = openTree("reference", false);
+        run(tree, 0, OPERATIONS);
+        expectedResults = queryAll(tree);
+    }
+
+    private static List<UpdateTree.Entry<KPE>> makeWorkload() {
+        final Random random = new Random(42);
+        final List<UpdateTree.Entry<KPE>> result = new ArrayList<>(OPERATIONS);
+        final List<KPE> live = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (!live.isEmpty() && (random.nextInt(4) == 0)) {
+                result.add(new UpdateTree.Entry<>(live.remove(random.nextInt(live.size())), OperationType.DELETION));
+                continue;
+            }
+            final double x = random.nextDouble() * 100.0;
+            final double y = random.nextDouble() * 100.0;
+            final KPE data = TestUtils.makeWorkloadKPE(i, x, y, x + 0.5, y + 0.5);
+            live.add(data);
+            result.add(new UpdateTree.Entry<>(data, OperationType.INSERTION));
+        }
+        return result;
+    }
+
+    private String prefix(final String name) {
+        return new File(folder.getRoot(), name).getPath();
+    }
+
+    private RRTree<KPE> openTree(final String name, final boolean reopen) {
+        final RRDiskDataTree<KPE> diskTree = new RRDiskDataTree<>();
+        final Converter<KPE> nodeConverter = diskTree.nodeConverter(TestUtils.WORKLOAD_KPE_CONVERTER, 2);
+        final BlockFileContainer fileContainer = reopen ? new BlockFileContainer(prefix(name))
+                : new BlockFileContainer(prefix(name), BLOCK_SIZE);
+        final Container container = new BufferedContainer(new ConverterContainer(fileContainer, nodeConverter),
+                new LRUBuffer(CACHE_SIZE), true, true);
+        final RRTree<KPE> result = new RRTree<>(diskTree);
+        result.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, MIN_CAPACITY, MAX_CAPACITY,
+                BUFFER_SIZE, new TrivialOperationGroupMaker(), true, true, 0.0, false, 0, 0,
+                new PushDownAllGroups<KPE>(), new NullObjectTracer<KPE>());
+        return result;
+    }
+
+    private BufferLog<KPE> openLog(final RRTree<KPE> tree) throws IOException {
+        //noinspection unchecked
+        return new BufferLog<>(new File(folder.getRoot(), "buffer.log"),
+                tree.getDiskTree().container().objectIdConverter(), entryConverter, 1, BLOCK_SIZE);
+    }
+
+    private File snapshotFile() {
+        return new File(folder.getRoot(), "tree.snapshot");
+    }
+
+    private Converter<Object> idConverter(final RRTree<KPE> tree) {
+        //noinspection unchecked
+        return tree.getDiskTree().container().objectIdConverter();
+    }
+
+    private void run(final RRTree<KPE> tree, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final UpdateTree.Entry<KPE> op = workload.get(i);
+            if (op.isInsertion())
+                tree.insert(op.getData());
+            else
+                tree.remove(op.getData());
+        }
+    }
+
+    private static Set<KPE> queryAll(final RRTree<KPE> tree) {
+        final Rectangle everything = TestUtils.makeRectangle(-1.0, -1.0, 101.0, 101.0);
+        final Set<KPE> result = new HashSet<>();
+        final Cursor<?> cursor = tree.query(everything);
+        while (cursor.hasNext())
+            assertTrue(result.add((KPE)cursor.next()));
+        cursor.close();
+        return result;
+    }
+
+    @Test
+    public void recoverFromBufferLog() throws IOException {
+        final int crashAt = OPERATIONS / 2 + 7;
+        final RRTree<KPE> crashed = openTree("crashed", false);
+        crashed.setBufferLog(openLog(crashed));
+        run(crashed, 0, crashAt);
+
+        final RRTree<KPE> recovered = openTree("crashed", true);
+        final BufferLog<KPE> log = openLog(recovered);
+        try {
+            assertTrue(recovered.setBufferLog(log) > 0);
+            assertNotNull(log.getReplayedCheckpoint());
+            run(recovered, crashAt, OPERATIONS);
+            assertEquals(expectedResults, queryAll(recovered));
+        }
+        finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void recoverFromSnapshotFile() throws IOException {
+        final RRTree<KPE> crashed = openTree("crashed", false);
+        crashed.setSnapshotFile(snapshotFile(), true, entryConverter);
+        // Crash right after a buffer emptying, as the operations buffered after it are not logged.  The emptying is
+        // checkpointed before the operation that triggered it.
+        int resumeAt = OPERATIONS / 2;
+        run(crashed, 0, resumeAt);
+        while (true) {
+            run(crashed, resumeAt, resumeAt + 1);
+            if (crashed.wasBufferEmptied())
+                break;
+            resumeAt++;
+        }
+
+        final RRTree<KPE> recovered = openTree("crashed", true);
+        recovered.restoreSnapshot(TreeSnapshot.read(snapshotFile(), idConverter(recovered), entryConverter));
+        recovered.setSnapshotFile(snapshotFile(), true, entryConverter);
+        run(recovered, resumeAt, OPERATIONS);
+        assertEquals(expectedResults, queryAll(recovered));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshotDirtyAfterCrash() throws IOException {
+        final RRTree<KPE> crashed = openTree("crashed", false);
+        crashed.setSnapshotFile(snapshotFile(), true, entryConverter);
+        run(crashed, 0, OPERATIONS / 2);
+        crashed.defragment(10);
+
+        TreeSnapshot.read(snapshotFile(), idConverter(openTree("crashed", true)), entryConverter);
+    }
+
+    @Test
+    public void snapshotRewrittenAtCheckpoint() throws IOException {
+        final RRTree<KPE> tree = openTree("crashed", false);
+        tree.setSnapshotFile(snapshotFile(), false, null);
+        run(tree, 0, OPERATIONS / 2);
+        tree.forcedEmptyBuffer();
+        tree.defragment(10);
+        tree.checkpoint();
+
+        final RRTree<KPE> reopened = openTree("crashed", true);
+        reopened.restoreSnapshot(TreeSnapshot.<KPE>read(snapshotFile(), idConverter(reopened), null));
+        assertEquals(queryAll(tree), queryAll(reopened));
+    }
+}
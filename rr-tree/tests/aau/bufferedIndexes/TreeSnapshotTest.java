@@ -0,0 +1,274 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import aau.bufferedIndexes.operationGroupMakers.TrivialOperationGroupMaker;
+import aau.bufferedIndexes.pushDownStrategies.PushDownAllGroups;
+import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xxl.core.functions.Function;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TreeSnapshot and reopening the RRTree from it
+ */
+public class TreeSnapshotTest extends TreeTester {
+
+    private static final Function<Object, UpdateTree.Entry<KPE>> ENTRY_FACTORY
+            = new Function<Object, UpdateTree.Entry<KPE>>() {
+        public UpdateTree.Entry<KPE> invoke() {
+            return new UpdateTree.Entry<>(new KPE(new DataID(), new DoublePointRectangle(2),
+                    WorkloadOperation.getConverter()), OperationType.INSERTION);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 101;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File snapshotFile;
+
+    private Converter<UpdateTree.Entry<KPE>> entryConverter;
+
+    @Before
+    public void setUp() {
+        snapshotFile = new File(folder.getRoot(), "tree.snapshot");
+        entryConverter = new ConvertableConverter<>(ENTRY_FACTORY);
+    }
+
+    private RRTree<KPE> makeTree(final int bufferSize) {
+        final RRTree<KPE> result = new RRTree<>(new RRDiskDataTree<KPE>());
+        result.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, mainMemoryContainer, MIN_CAPACITY,
+                MAX_CAPACITY, bufferSize, new TrivialOperationGroupMaker(), true, true, 0.0, true, 0, 0,
+                new PushDownAllGroups<KPE>(), new NullObjectTracer<KPE>());
+        return result;
+    }
+
+    private Converter<Object> idConverter() {
+        //noinspection unchecked
+        return mainMemoryContainer.objectIdConverter();
+    }
+
+    private void writeSnapshot(final RRTree<KPE> tree, final boolean includeBuffer) throws IOException {
+        tree.snapshot(includeBuffer).write(snapshotFile, idConverter(), entryConverter);
+    }
+
+    private RRTree<KPE> reopen() throws IOException {
+        final RRTree<KPE> result = makeTree(BUFFER_SIZE);
+        result.restoreSnapshot(TreeSnapshot.read(snapshotFile, idConverter(), entryConverter));
+        return result;
+    }
+
+    /**
+     * Makes a data item like {@link TestData#data}, but with a serializable identifier, so that the buffer can be saved
+     */
+    private static KPE data(final int i) {
+        return new KPE(new DataID(i), TestUtils.makeRectangle(i * 2, i * 2, (i * 2) + 1, (i * 2) + 1),
+                WorkloadOperation.getConverter());
+    }
+
+    private static int fill(final RRTree<KPE> tree) {
+        // Empties the buffer twice and leaves some operations in it
+        final int count = 2 * (BUFFER_SIZE + 1) + 10;
+        for (int i = 0; i < count; i++)
+            checkedInsert(tree, data(i));
+        return count;
+    }
+
+    @Test
+    public void emptyTree() throws IOException {
+        writeSnapshot(makeTree(BUFFER_SIZE), true);
+        final TreeSnapshot<KPE> snapshot = TreeSnapshot.read(snapshotFile, idConverter(), entryConverter);
+        assertNull(snapshot.getRootId());
+        assertEquals(0, snapshot.getDataItems());
+        assertEquals(0, snapshot.getBufferContents().size());
+
+        final RRTree<KPE> reopened = reopen();
+        queryNonexisting(reopened, data(0));
+        checkedInsert(reopened, data(0));
+    }
+
+    @Test
+    public void reopenWithBuffer() throws IOException {
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        final int count = fill(tree);
+        final int bufferSize = tree.getCurrentBufferSize();
+        assertTrue(bufferSize > 0);
+        writeSnapshot(tree, true);
+
+        final TreeSnapshot<KPE> snapshot = TreeSnapshot.read(snapshotFile, idConverter(), entryConverter);
+        assertNotNull(snapshot.getRootId());
+        assertEquals(tree.getDiskTree().height(), snapshot.getHeight());
+        assertEquals(bufferSize, snapshot.getBufferContents().size());
+
+        final RRTree<KPE> reopened = reopen();
+        assertEquals(bufferSize, reopened.getCurrentBufferSize());
+        for (int i = 0; i < count; i++)
+            querySingleExisting(reopened, data(i));
+        for (int i = count; i < count + BUFFER_SIZE + 1; i++)
+            checkedInsert(reopened, data(i));
+        // Deleting a disk tree item
+        reopened.remove(data(0));
+        queryNonexisting(reopened, data(0));
+    }
+
+    @Test
+    public void reopenWithoutBuffer() throws IOException {
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        final int count = fill(tree);
+        tree.forcedEmptyBuffer();
+        writeSnapshot(tree, false);
+        assertNull(TreeSnapshot.read(snapshotFile, idConverter(), null).getBufferContents());
+
+        final RRTree<KPE> reopened = reopen();
+        assertEquals(0, reopened.getCurrentBufferSize());
+        for (int i = 0; i < count; i++)
+            querySingleExisting(reopened, data(i));
+    }
+
+    private BufferLog<KPE> openLog(final File logFile) throws IOException {
+        return new BufferLog<>(logFile, idConverter(), entryConverter, 1, 4096);
+    }
+
+    @Test
+    public void recoverFromBufferLog() throws IOException {
+        final File logFile = new File(folder.getRoot(), "buffer.log");
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        tree.setBufferLog(openLog(logFile));
+        final int count = fill(tree);
+        tree.remove(data(count - 1));
+        final float dataRatio = tree.getPhysicalToLogicalDataRatio();
+
+        // Crash without closing the log, the tree is recovered from its checkpoint and the operations after it
+        final RRTree<KPE> reopened = makeTree(BUFFER_SIZE);
+        final BufferLog<KPE> log = openLog(logFile);
+        try {
+            assertTrue(reopened.setBufferLog(log) > 0);
+            assertEquals(tree.getCurrentBufferSize(), reopened.getCurrentBufferSize());
+            assertEquals(dataRatio, reopened.getPhysicalToLogicalDataRatio(), 0.0f);
+            // Completes the replayed operations
+            reopened.forcedEmptyBuffer();
+            for (int i = 0; i < count - 1; i++)
+                querySingleExisting(reopened, data(i));
+            queryNonexisting(reopened, data(count - 1));
+        }
+        finally {
+            log.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noRecoveryAfterDiskTreeChange() throws IOException {
+        final File logFile = new File(folder.getRoot(), "buffer.log");
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        tree.setBufferLog(openLog(logFile));
+        fill(tree);
+        tree.defragment(10);
+
+        makeTree(BUFFER_SIZE).setBufferLog(openLog(logFile));
+    }
+
+    @Test
+    public void replayBufferLogIntoNewTree() throws IOException {
+        final File logFile = new File(folder.getRoot(), "buffer.log");
+        BufferLog<KPE> log = openLog(logFile);
+        makeTree(BUFFER_SIZE).setBufferLog(log);
+        final int count = 10;
+        for (int i = 0; i < count; i++)
+            log.logOperation(data(i), OperationType.INSERTION);
+        log.close();
+
+        final RRTree<KPE> recovered = makeTree(BUFFER_SIZE);
+        log = openLog(logFile);
+        try {
+            assertEquals(count, recovered.setBufferLog(log));
+            assertEquals(0.0f, recovered.getPhysicalToLogicalDataRatio(), 0.0f);
+            recovered.forcedEmptyBuffer();
+            assertEquals(1.0f, recovered.getPhysicalToLogicalDataRatio(), 0.0f);
+            for (int i = 0; i < count; i++)
+                querySingleExisting(recovered, data(i));
+        }
+        finally {
+            log.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferContentsDoNotFit() throws IOException {
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        fill(tree);
+        writeSnapshot(tree, true);
+        makeTree(1).restoreSnapshot(TreeSnapshot.read(snapshotFile, idConverter(), entryConverter));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void restoreIntoNonEmptyTree() throws IOException {
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        fill(tree);
+        writeSnapshot(tree, false);
+        tree.restoreSnapshot(TreeSnapshot.<KPE>read(snapshotFile, idConverter(), null));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedSnapshot() throws IOException {
+        final RRTree<KPE> tree = makeTree(BUFFER_SIZE);
+        fill(tree);
+        writeSnapshot(tree, true);
+        final RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.seek(file.length() / 2);
+            final int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+        finally {
+            file.close();
+        }
+        TreeSnapshot.read(snapshotFile, idConverter(), entryConverter);
+    }
+
+    @Test(expected = IOException.class)
+    public void notASnapshot() throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.writeInt(0);
+            file.writeInt(0);
+        }
+        finally {
+            file.close();
+        }
+        TreeSnapshot.read(snapshotFile, idConverter(), entryConverter);
+    }
+}
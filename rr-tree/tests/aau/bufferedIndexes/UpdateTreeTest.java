@@ -224,6 +224,14 @@ public class UpdateTreeTest extends TreeTester {
         assertEquals(1, tree.getCurrentSize());
     }
 
+    @Test
+    public void entryLogicalSize() {
+        final KPE d1 = TestUtils.makeWorkloadKPE(1, 1.0, 1.0, 2.0, 2.0);
+        final KPE d2 = TestUtils.makeWorkloadKPE(1, 3.0, 3.0, 4.0, 4.0);
+        assertEquals(UpdateTree.KPE_OPERATION_SIZE, new UpdateTree.Entry<>(d1, OperationType.DELETION).logicalSize());
+        assertEquals(2 * UpdateTree.KPE_OPERATION_SIZE, new UpdateTree.Entry<>(d2, d1).logicalSize());
+    }
+
     @Test
     public void clear()  {
         initTree();
@@ -283,6 +291,136 @@ public class UpdateTreeTest extends TreeTester {
         assertEquals (e, e2);
     }
 
+    @Test
+    public void moveEntry() {
+        final KPE oldData = TestUtils.makeKPE(1, 0, 0, 1, 1);
+        final KPE newData = TestUtils.makeKPE(1, 2, 2, 3, 3);
+        final UpdateTree.Entry<KPE> move = new UpdateTree.Entry<>(newData, oldData);
+        assertTrue(move.isMove());
+        assertTrue(move.isInsertion());
+        assertSame(oldData, move.getReplaced());
+        assertFalse(new UpdateTree.Entry<>(newData, OperationType.INSERTION).isMove());
+
+        // A move is equal to its insertion half
+        final UpdateTree.Entry<KPE> insertionHalf = move.getInsertionHalf();
+        assertFalse(insertionHalf.isMove());
+        assertEquals(move, insertionHalf);
+        assertEquals(move.hashCode(), insertionHalf.hashCode());
+        assertEquals(new UpdateTree.Entry<>(oldData, OperationType.DELETION), move.getDeletionHalf());
+
+        final UpdateTree.Entry<KPE> copy = UpdateTree.Entry.copyEntry(move);
+        assertTrue(copy.isMove());
+        assertSame(oldData, copy.getReplaced());
+        assertTrue(move.toString().contains(oldData.toString()));
+
+        try {
+            insertionHalf.getDeletionHalf();
+            fail("Expected IllegalStateException not thrown!");
+        }
+        catch (IllegalStateException ignored) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void moveWithAnnihilation() {
+        initTree();
+        final KPE data0 = TestUtils.makeKPE(1, 0, 0, 1, 1);
+        final KPE data1 = TestUtils.makeKPE(1, 2, 2, 3, 3);
+        final KPE data2 = TestUtils.makeKPE(1, 4, 4, 5, 5);
+
+        // A move of an object not in the tree is a single entry
+        assertTrue(tree.canMoveWithAnnihilation(data0, data1));
+        assertNull(tree.moveWithAnnihilation(data0, data1));
+        assertEquals(1, tree.getCurrentSize());
+        assertEquals(1, tree.getNumOfMoves());
+        final UpdateTree.Entry<KPE> move = tree.getMoveReplacing(data0);
+        assertNotNull(move);
+        assertSame(move, tree.getMoveInserting(data1));
+        assertSame(move, tree.getMoveInserting(TestUtils.makeKPE(1, 2, 2, 3, 3)));
+        assertNull(tree.getMoveInserting(data0));
+
+        // The object cannot be moved from its old position again, nor moved back directly
+        assertFalse(tree.canMoveWithAnnihilation(data0, data2));
+        assertFalse(tree.canMoveWithAnnihilation(data1, data0));
+
+        // A consecutive move collapses into the existing entry, keeping the replaced data
+        assertTrue(tree.canMoveWithAnnihilation(data1, data2));
+        assertSame(move, tree.moveWithAnnihilation(data1, data2));
+        assertEquals(1, tree.getCurrentSize());
+        assertEquals(1, tree.getNumOfDIAnnihilations());
+        final UpdateTree.Entry<KPE> collapsedMove = tree.getMoveReplacing(data0);
+        assertSame(data2, collapsedMove.getData());
+        assertSame(collapsedMove, tree.getMoveInserting(data2));
+        assertNull(tree.getMoveInserting(data1));
+        checkForEntrySequence(data1);
+        checkForEntrySequence(data2, OperationType.INSERTION);
+
+        // The moved away objects are deleted for queries
+        final Cursor<UpdateTree.Entry<KPE>> movedAway = tree.queryMovedAway(TestUtils.makeDescriptor(0, 0, 1, 1));
+        assertTrue(movedAway.hasNext());
+        assertEquals(new UpdateTree.Entry<>(data0, OperationType.DELETION), movedAway.next());
+        assertFalse(movedAway.hasNext());
+        assertFalse(tree.queryMovedAway(TestUtils.makeDescriptor(4, 4, 5, 5)).hasNext());
+
+        // A move of an inserted object is a plain insertion
+        final KPE other0 = TestUtils.makeKPE(2, 10, 10, 11, 11);
+        final KPE other1 = TestUtils.makeKPE(2, 12, 12, 13, 13);
+        tree.insertWithAnnihilation(other0);
+        tree.moveWithAnnihilation(other0, other1);
+        assertEquals(2, tree.getCurrentSize());
+        assertEquals(1, tree.getNumOfMoves());
+        checkForEntrySequence(other0);
+        checkForEntrySequence(other1, OperationType.INSERTION);
+
+        // Conflicting entries prevent a single entry move
+        tree.removeWithAnnihilation(data1);
+        assertFalse(tree.canMoveWithAnnihilation(data2, data1));
+        assertFalse(tree.canMoveWithAnnihilation(data1, data0));
+        assertFalse(tree.canMoveWithAnnihilation(data2, data2));
+    }
+
+    @Test
+    public void annihilateMoveHalves() {
+        initTree();
+        final KPE data0 = TestUtils.makeKPE(1, 0, 0, 1, 1);
+        final KPE data1 = TestUtils.makeKPE(1, 2, 2, 3, 3);
+
+        // Deleting the new object leaves the deletion of the old one
+        tree.moveWithAnnihilation(data0, data1);
+        assertSame(data1, tree.removeWithAnnihilation(data1));
+        assertEquals(1, tree.getCurrentSize());
+        assertEquals(0, tree.getNumOfMoves());
+        assertNull(tree.getMoveInserting(data1));
+        checkForEntrySequence(data0, OperationType.DELETION);
+        checkForEntrySequence(data1);
+
+        // Inserting the old object back leaves the insertion of the new one
+        tree.clear();
+        tree.moveWithAnnihilation(data0, data1);
+        tree.insertWithAnnihilation(data0);
+        assertEquals(1, tree.getCurrentSize());
+        assertEquals(0, tree.getNumOfMoves());
+        assertEquals(1, tree.getNumOfIDAnnihilations());
+        checkForEntrySequence(data0);
+        checkForEntrySequence(data1, OperationType.INSERTION);
+
+        // Exact removal and clearing forget the moves
+        tree.clear();
+        final KPE data2 = TestUtils.makeKPE(2, 6, 6, 7, 7);
+        final KPE data3 = TestUtils.makeKPE(2, 8, 8, 9, 9);
+        tree.moveWithAnnihilation(data0, data1);
+        tree.moveWithAnnihilation(data2, data3);
+        assertNotNull(tree.removeExactEntry(new UpdateTree.Entry<>(data1, OperationType.INSERTION)));
+        assertNull(tree.getMoveReplacing(data0));
+        assertNull(tree.getMoveInserting(data1));
+        assertNotNull(tree.getMoveInserting(data3));
+        assertEquals(1, tree.getNumOfMoves());
+        tree.clear();
+        assertEquals(0, tree.getNumOfMoves());
+        assertNull(tree.getMoveInserting(data3));
+    }
+
     @Test
     public void removeAllDeletions() {
         initTree();
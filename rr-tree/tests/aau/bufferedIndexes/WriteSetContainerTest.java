@@ -0,0 +1,203 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes;
+
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.CounterContainer;
+import xxl.core.collections.containers.MapContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link WriteSetContainer}
+ */
+public class WriteSetContainerTest {
+
+    /**
+     * A mutable object stored in the container
+     */
+    public static final class Cell implements Cloneable {
+
+        int value;
+
+        Cell(final int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Cell clone() {
+            return new Cell(value);
+        }
+    }
+
+    private final List<Object> updatedIds = new ArrayList<>();
+
+    private final MapContainer storage = new MapContainer() {
+        @Override
+        public void update(final Object id, final Object object, final boolean unfix) {
+            updatedIds.add(id);
+            super.update(id, object, unfix);
+        }
+    };
+
+    private final WriteSetContainer writeSet = new WriteSetContainer(storage);
+
+    private final List<Object> ids = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 5; i++)
+            ids.add(writeSet.insert(new Cell(i)));
+    }
+
+    private int storedValue(final int i) {
+        return ((Cell)storage.get(ids.get(i))).value;
+    }
+
+    @Test
+    public void updatesPassThroughOutsideBatch() {
+        writeSet.update(ids.get(1), new Cell(10));
+        assertEquals (10, storedValue(1));
+        assertEquals (1, updatedIds.size());
+        assertFalse (writeSet.inBatch());
+    }
+
+    @Test
+    public void batchDefersAndCoalesces() {
+        writeSet.beginBatch();
+        writeSet.update(ids.get(3), new Cell(30));
+        writeSet.update(ids.get(1), new Cell(10));
+        writeSet.update(ids.get(3), new Cell(31));
+        assertTrue (updatedIds.isEmpty());
+        assertEquals (3, storedValue(3));
+        assertEquals (31, ((Cell)writeSet.get(ids.get(3))).value);
+
+        writeSet.flushBatch();
+        assertEquals (31, storedValue(3));
+        assertEquals (10, storedValue(1));
+        assertEquals (1, writeSet.getCoalescedUpdates());
+        final List<Object> expectedOrder = new ArrayList<>();
+        expectedOrder.add(ids.get(1));
+        expectedOrder.add(ids.get(3));
+        assertEquals (expectedOrder, updatedIds);
+    }
+
+    @Test
+    public void batchDefersInsertions() {
+        writeSet.beginBatch();
+        final Object newId = writeSet.insert(new Cell(50));
+        writeSet.update(ids.get(0), new Cell(0));
+        assertTrue (updatedIds.isEmpty());
+        assertEquals (50, ((Cell)writeSet.get(newId)).value);
+
+        writeSet.flushBatch();
+        assertEquals (50, ((Cell)storage.get(newId)).value);
+        final List<Object> expectedOrder = new ArrayList<>();
+        expectedOrder.add(ids.get(0));
+        expectedOrder.add(newId);
+        assertEquals (expectedOrder, updatedIds);
+    }
+
+    @Test
+    public void removeDropsPendingInsertion() {
+        writeSet.beginBatch();
+        final Object newId = writeSet.insert(new Cell(50));
+        writeSet.remove(newId);
+        writeSet.flushBatch();
+
+        assertTrue (updatedIds.isEmpty());
+        assertFalse (storage.contains(newId));
+    }
+
+    @Test
+    public void deferredInsertionCountedAsInsertion() {
+        final CounterContainer counter = new CounterContainer(new MapContainer());
+        final WriteSetContainer countedWriteSet = new WriteSetContainer(counter);
+        final Object id = countedWriteSet.insert(new Cell(0));
+        countedWriteSet.beginBatch();
+        countedWriteSet.insert(new Cell(1));
+        countedWriteSet.update(id, new Cell(2));
+        countedWriteSet.flushBatch();
+
+        assertEquals (2, counter.inserts);
+        assertEquals (1, counter.updates);
+    }
+
+    @Test
+    public void pendingObjectIsCopied() {
+        writeSet.beginBatch();
+        final Cell cell = new Cell(10);
+        writeSet.update(ids.get(0), cell);
+        cell.value = 11;
+        final Cell read = (Cell)writeSet.get(ids.get(0));
+        assertEquals (10, read.value);
+        read.value = 12;
+
+        writeSet.flushBatch();
+        assertEquals (10, storedValue(0));
+    }
+
+    @Test
+    public void removeDropsPendingWrite() {
+        writeSet.beginBatch();
+        writeSet.update(ids.get(2), new Cell(20));
+        writeSet.remove(ids.get(2));
+        writeSet.flushBatch();
+
+        assertTrue (updatedIds.isEmpty());
+        assertFalse (storage.contains(ids.get(2)));
+        assertEquals (1, writeSet.getCoalescedUpdates());
+    }
+
+    @Test
+    public void flushWritesPendingAndKeepsBatch() {
+        writeSet.beginBatch();
+        writeSet.update(ids.get(4), new Cell(40));
+        writeSet.flush();
+
+        assertEquals (40, storedValue(4));
+        assertTrue (writeSet.inBatch());
+        writeSet.flushBatch();
+        assertEquals (1, updatedIds.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nestedBatch() {
+        writeSet.beginBatch();
+        writeSet.beginBatch();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void flushWithoutBatch() {
+        writeSet.flushBatch();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void getRemoved() {
+        writeSet.beginBatch();
+        writeSet.update(ids.get(2), new Cell(20));
+        writeSet.remove(ids.get(2));
+        writeSet.get(ids.get(2));
+    }
+}
@@ -22,6 +22,7 @@ import aau.bufferedIndexes.*;
 import aau.bufferedIndexes.diskTrees.visitors.IRRDiskTreeVisitor;
 import aau.bufferedIndexes.leafNodeModifiers.IRRTreeDiskNodeOnQueryModifier;
 import aau.bufferedIndexes.leafNodeModifiers.NullModeModifier;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
 import aau.workload.DataID;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -60,8 +61,14 @@ public class AbstractRRDiskTreeTest {
 
     class AbstractRRDiskTreeStub extends AbstractRRDiskTree<KPE> {
 
+        /**
+         * The number of the entry lists copied by the nodes of this tree on their first modification after sharing
+         */
+        int entryListCopies = 0;
+
         class Node extends AbstractRRDiskTree<KPE>.Node {
             public Node(int level, Collection<?> newEntries) { super(level, newEntries); }
+            protected void entriesReplaced() { entryListCopies++; }
             protected boolean doesOperationFit(Descriptor descriptor, UpdateTree.Entry<KPE> operation, boolean outsideMBRAllowed) { return false; }
             protected boolean executeOp(UpdateTree.Entry<KPE> kpeEntry, boolean insertionRemovesOldInsertion) {
                 return false; }
@@ -108,6 +115,18 @@ public class AbstractRRDiskTreeTest {
         }
     }
 
+    /**
+     * Map container that records the allocation hints given to it
+     */
+    class NearRecordingContainer extends MapContainer {
+        final List<Object> nearIds = new ArrayList<>();
+
+        public Object reserveNear(final Function getObject, final Object nearId) {
+            nearIds.add(nearId);
+            return super.reserveNear(getObject, nearId);
+        }
+    }
+
     final private Mockery context = new JUnit4Mockery();
 
     private IRRTreeIndexEntry<KPE> mockIndexEntry;
@@ -192,6 +211,92 @@ public class AbstractRRDiskTreeTest {
         assertTrue (n.getEntries().contains(2));
     }
 
+    @Test
+    public void nodeShareGrowCopiesOnWrite() {
+        final AbstractRRDiskTree.Node n = diskTree.new Node(0, new ArrayList());
+        n.grow(1);
+        final AbstractRRDiskTree.Node copy = n.share();
+        copy.grow(2);
+        assertEquals (1, n.number());
+        assertEquals (2, copy.number());
+        n.grow(3);
+        assertEquals (2, n.number());
+        assertFalse (n.getEntries().contains(2));
+        assertFalse (copy.getEntries().contains(3));
+    }
+
+    @Test
+    public void nodeShareRemoveCopiesOnWrite() {
+        final AbstractRRDiskTree.Node n = diskTree.new Node(0, new ArrayList());
+        n.grow(1);
+        n.grow(2);
+        final AbstractRRDiskTree.Node copy = n.share();
+        n.remove(1);
+        assertEquals (1, n.number());
+        assertEquals (2, copy.number());
+        assertTrue (copy.getEntries().contains(1));
+    }
+
+    @Test
+    public void nodeShareReplaceEntryCopiesOnWrite() {
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, null, 50, 100);
+        final RRDiskDataTree<KPE>.IndexEntry entry = diskTree.createIndexEntry(1);
+        entry.initialize(TestUtils.makeRectangle(0.0, 0.0, 2.0, 2.0));
+        entry.initialize(5L);
+        final AbstractRRDiskTree.Node n = diskTree.new Node(1, Collections.singletonList(entry));
+        final AbstractRRDiskTree.Node copy = n.share();
+        assertSame (entry, copy.getNonLeafNodeEntries().iterator().next());
+        copy.replaceEntry(entry, entry.withId(7L));
+        final IRRTreeIndexEntry<?> newEntry = (IRRTreeIndexEntry<?>)copy.getNonLeafNodeEntries().iterator().next();
+        assertEquals (7L, newEntry.id());
+        assertSame (entry.descriptor(), newEntry.descriptor());
+        assertSame (entry, n.getNonLeafNodeEntries().iterator().next());
+        assertEquals (5L, entry.id());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void nodeGetNonLeafNodeEntriesReadOnly() {
+        final AbstractRRDiskTree.Node n = diskTree.new Node(1, Collections.singletonList(mockIndexEntry));
+        n.getNonLeafNodeEntries().clear();
+    }
+
+    @Test
+    public void cachedIndexNodeSharedUntilModified() {
+        final Container cache = new BufferedContainer(container, new LRUBuffer(4), false, true);
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, cache, 1, 10);
+        final IRRTreeIndexEntry<KPE> leafEntry1
+                = diskTree.storeNode(makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0)), true);
+        final IRRTreeIndexEntry<KPE> leafEntry2
+                = diskTree.storeNode(makeNodeWithContents(0, TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0)), true);
+        final IRRTreeDiskNode<KPE> indexNode = diskTree.createNode(1);
+        indexNode.grow(leafEntry1);
+        indexNode.grow(leafEntry2);
+        final IRRTreeIndexEntry<KPE> indexEntry = diskTree.storeNode(indexNode, true);
+        diskTree.entryListCopies = 0;
+
+        // A cache hit and a read-only traversal copy no entries
+        final IRRTreeDiskNode<KPE> hit = indexEntry.get();
+        assertNotSame (indexNode, hit);
+        final Iterator<IRRTreeIndexEntry<KPE>> children = hit.getNonLeafNodeEntries().iterator();
+        assertSame (leafEntry1, children.next());
+        assertSame (leafEntry2, children.next());
+        assertSame (leafEntry1, hit.chooseSubtreeByObject(TestUtils.makeKPE(0.5, 0.5, 0.6, 0.6)));
+        assertSame (leafEntry2, hit.query(TestUtils.makeRectangle(2.5, 2.5, 2.6, 2.6)).next());
+        assertEquals (TestUtils.makeRectangle(0.0, 0.0, 3.0, 3.0), hit.computeDescriptor());
+        for (final IRRTreeIndexEntry<KPE> child : hit.getNonLeafNodeEntries())
+            assertEquals (1, child.get().number());
+        assertEquals (0, diskTree.entryListCopies);
+
+        // A modification after a cache hit copies the entry list once and does not reach the cached node
+        hit.remove(leafEntry1);
+        hit.replaceEntry(leafEntry2, leafEntry2.withId(leafEntry1.id()));
+        assertEquals (1, diskTree.entryListCopies);
+        final IRRTreeDiskNode<KPE> secondHit = indexEntry.get();
+        assertEquals (2, secondHit.number());
+        assertSame (leafEntry1, secondHit.getNonLeafNodeEntries().iterator().next());
+        assertEquals (1, diskTree.entryListCopies);
+    }
+
     @Test
     public void nodeSetLevel() {
         emptyNode.setLevel(15);
@@ -363,6 +468,51 @@ public class AbstractRRDiskTreeTest {
         assertEquals (TestUtils.makeRectangle(0.0, 0.0, 12.0, 11.0), result);
     }
 
+    @Test
+    public void nodeChooseSubtreesByObjects() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, 2, 10,
+                new NullObjectTracer<KPE>());
+        final IRRTreeDiskNode<KPE> n = diskTree.new Node(1, new ArrayList<IRRTreeIndexEntry<KPE>>());
+        final double[][] childRectangles = {
+                {0.0, 0.0, 0.5, 0.5}, {0.5, 0.0, 1.0, 0.5}, {0.0, 0.5, 0.5, 1.0}, {0.5, 0.5, 1.0, 1.0},
+                {0.25, 0.25, 0.75, 0.75}, {0.0, 0.0, 0.5, 0.5}, {0.1, 0.1, 0.2, 0.2}, {2.0, 2.0, 3.0, 3.0}};
+        for (final double[] r : childRectangles) {
+            final RRDiskDataTree<KPE>.IndexEntry child = diskTree.createIndexEntry(1);
+            child.initialize(TestUtils.makeRectangle(r[0], r[1], r[2], r[3]));
+            n.grow(child);
+        }
+        final List<KPE> objects = new ArrayList<>(Arrays.asList(TestData.data).subList(0, 200));
+        objects.add(TestUtils.makeKPE(0.15, 0.15, 0.16, 0.16));
+        objects.add(TestUtils.makeKPE(0.5, 0.5, 0.5, 0.5));
+        objects.add(TestUtils.makeKPE(1.5, 1.5, 1.6, 1.6));
+        objects.add(TestUtils.makeKPE(-1.0, 0.2, -0.5, 0.3));
+        objects.add(TestUtils.makeKPE(2.5, 2.5, 2.6, 2.6));
+
+        final List<IRRTreeIndexEntry<KPE>> chosen = n.chooseSubtreesByObjects(objects);
+        assertEquals (objects.size(), chosen.size());
+        for (int i = 0; i < objects.size(); i++)
+            assertSame ("Object " + i, n.chooseSubtreeByObject(objects.get(i)), chosen.get(i));
+    }
+
+    @Test
+    public void subtreeChooserSortedByLowX() {
+        final int dimensions = 2;
+        final Random random = new Random(11);
+        for (int count = 0; count < 40; count++) {
+            final double[] lows = new double[count * dimensions];
+            for (int i = 0; i < lows.length; i++)
+                lows[i] = random.nextInt(10);
+            final int[] order = SubtreeChooser.sortedByLowX(lows, count, dimensions);
+            final boolean[] seen = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                assertFalse (seen[order[i]]);
+                seen[order[i]] = true;
+                if (i > 0)
+                    assertTrue (lows[order[i - 1] * dimensions] <= lows[order[i] * dimensions]);
+            }
+        }
+    }
+
     class FittingOperationTestTree extends AbstractRRDiskTreeStub {
         class Node extends AbstractRRDiskTreeStub.Node {
             final private UpdateTree.Entry<KPE> unfitOp;
@@ -541,6 +691,116 @@ public class AbstractRRDiskTreeTest {
 
         assertEquals (50, diskTree.getMinNodeCapacity());
         assertEquals (100, diskTree.getMaxNodeCapacity());
+        assertEquals (50, diskTree.getMinNodeCapacity(1));
+        assertEquals (100, diskTree.getMaxNodeCapacity(1));
+    }
+
+    @Test
+    public void setIndexNodeCapacities() {
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 2, 4, null);
+        diskTree.setIndexNodeCapacities(3, 8);
+
+        assertEquals (2, diskTree.getMinNodeCapacity(0));
+        assertEquals (4, diskTree.getMaxNodeCapacity(0));
+        assertEquals (3, diskTree.getMinNodeCapacity(2));
+        assertEquals (8, diskTree.getMaxNodeCapacity(2));
+
+        final IRRTreeDiskNode<KPE> leaf = makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0),
+                TestUtils.makeKPE(1.0, 1.0, 2.0, 2.0), TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0),
+                TestUtils.makeKPE(3.0, 3.0, 4.0, 4.0), TestUtils.makeKPE(4.0, 4.0, 5.0, 5.0));
+        assertTrue (leaf.overflows());
+        final List<IRRTreeIndexEntry<KPE>> children = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            children.add(diskTree.computeIndexEntry(leaf));
+        assertFalse (diskTree.createNode(1, children).overflows());
+        assertTrue (diskTree.createNode(1, children.subList(0, 2)).underflows());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setIndexNodeCapacitiesNonEmpty() {
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 2, 4, null);
+        diskTree.setNewRootNode(makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0)));
+        diskTree.setIndexNodeCapacities(3, 8);
+    }
+
+    @Test
+    public void setLeafNodeCapacities() {
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 2, 4, null);
+        diskTree.setLeafNodeCapacities(3, 8);
+
+        assertEquals (3, diskTree.getMinNodeCapacity(0));
+        assertEquals (8, diskTree.getMaxNodeCapacity(0));
+        assertEquals (2, diskTree.getMinNodeCapacity(2));
+        assertEquals (4, diskTree.getMaxNodeCapacity(2));
+        assertFalse (makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0),
+                TestUtils.makeKPE(1.0, 1.0, 2.0, 2.0), TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0),
+                TestUtils.makeKPE(3.0, 3.0, 4.0, 4.0), TestUtils.makeKPE(4.0, 4.0, 5.0, 5.0)).overflows());
+    }
+
+    @Test
+    public void compressedLeavesOverflowBySize() {
+        diskTree.enableCompressedLeaves(CompressedLeafCodec.HEADER_SIZE + 100);
+        diskTree.nodeConverter(TestUtils.WORKLOAD_KPE_CONVERTER, 2);
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 1, 100, null);
+        final IRRTreeDiskNode<KPE> leaf = makeNodeWithContents(0,
+                TestUtils.makeWorkloadKPE(1, 0.1234567, 0.7654321, 0.3456789, 0.9876543),
+                TestUtils.makeWorkloadKPE(2, 0.2345678, 0.8765432, 0.4567891, 1.9876543));
+        assertFalse (leaf.overflows());
+        assertTrue (diskTree.compressedPageFill(0, leaf.getEntries()) <= 1);
+        assertEquals (0, diskTree.compressedPageFill(1, leaf.getEntries()), 0);
+
+        leaf.grow(TestUtils.makeWorkloadKPE(3, 10.345678, 20.987654, 30.567891, 40.198765));
+        leaf.grow(TestUtils.makeWorkloadKPE(4, 50.456789, 60.876543, 70.678912, 80.219876));
+        assertTrue (leaf.overflows());
+        assertTrue (diskTree.compressedPageFill(0, leaf.getEntries()) > 1);
+        assertEquals (0, diskTree.compressedLeafHeadroom(leaf.getEntries()));
+        assertTrue (diskTree.compressedLeavesOverflow(0, Collections.singletonList(leaf.getEntries())));
+        assertFalse (diskTree.compressedLeavesOverflow(1, Collections.singletonList(leaf.getEntries())));
+    }
+
+    @Test
+    public void compressedLeavesNeedNodeConverter() {
+        diskTree.enableCompressedLeaves(CompressedLeafCodec.HEADER_SIZE + 100);
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 1, 100, null);
+        final IRRTreeDiskNode<KPE> leaf = makeNodeWithContents(0,
+                TestUtils.makeWorkloadKPE(1, 0.1234567, 0.7654321, 0.3456789, 0.9876543),
+                TestUtils.makeWorkloadKPE(2, 0.2345678, 0.8765432, 0.4567891, 1.9876543),
+                TestUtils.makeWorkloadKPE(3, 10.345678, 20.987654, 30.567891, 40.198765),
+                TestUtils.makeWorkloadKPE(4, 50.456789, 60.876543, 70.678912, 80.219876));
+        // Without the leaf entry converter the leaves are not compressed yet
+        assertFalse (leaf.overflows());
+        diskTree.nodeConverter(TestUtils.WORKLOAD_KPE_CONVERTER, 2);
+        assertTrue (leaf.overflows());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compressedLeavesNullConverter() {
+        diskTree.enableCompressedLeaves(4096);
+        diskTree.nodeConverter(null, 2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void enableCompressedLeavesNonEmpty() {
+        diskTree.initialize(null, TestUtils.GET_DESCRIPTOR, container, 2, 4, null);
+        diskTree.setNewRootNode(makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0)));
+        diskTree.enableCompressedLeaves(4096);
+    }
+
+    @Test
+    public void computeIndexEntryFloatMBRs() {
+        diskTree.enableFloatIndexMBRs();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, null, 50, 100);
+        final IRRTreeDiskNode<KPE> n = makeNodeWithContents(0,
+                TestUtils.makeKPE(0.1, 0.2, 1.0, 1.0),
+                TestUtils.makeKPE(1.0, 1.0, 2.3, 2.4));
+        final Descriptor exact = n.computeDescriptor();
+        final IRRTreeIndexEntry<KPE> entry = diskTree.computeIndexEntry(n);
+
+        assertTrue (entry.descriptor().contains(exact));
+        assertFalse (entry.descriptor().equals(exact));
+        assertEquals (TestUtils.makeRectangle(Math.nextAfter((float)0.1, Double.NEGATIVE_INFINITY),
+                Math.nextAfter((float)0.2, Double.NEGATIVE_INFINITY), Math.nextUp((float)2.3), (float)2.4),
+                entry.descriptor());
     }
 
     @Test
@@ -746,6 +1006,66 @@ public class AbstractRRDiskTreeTest {
         }
     }
 
+    @Test
+    public void storeNodesNoClusteredAllocation() {
+        final NearRecordingContainer nearContainer = new NearRecordingContainer();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, nearContainer, 50, 100);
+        final IRRTreeDiskNode<KPE> n = makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0));
+        final IRRTreeDiskNode<KPE> n2 = makeNodeWithContents(0, TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0));
+
+        final List<IRRTreeIndexEntry<KPE>> result = diskTree.storeNodes(Arrays.asList(n, n2), null, null);
+
+        assertEquals (2, result.size());
+        assertTrue (nearContainer.nearIds.isEmpty());
+    }
+
+    @Test
+    public void storeNodesClusteredAllocationNoOriginalNode() {
+        final NearRecordingContainer nearContainer = new NearRecordingContainer();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, nearContainer, 50, 100);
+        diskTree.enableClusteredAllocation();
+        final IRRTreeDiskNode<KPE> n = makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0));
+        final IRRTreeDiskNode<KPE> n2 = makeNodeWithContents(0, TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0));
+
+        final List<IRRTreeIndexEntry<KPE>> result = diskTree.storeNodes(Arrays.asList(n, n2), null, null);
+
+        assertEquals (2, result.size());
+        assertEquals (Collections.singletonList(result.get(0).id()), nearContainer.nearIds);
+        assertEquals (n2.number(), ((IRRTreeDiskNode<KPE>)result.get(1).get()).number());
+    }
+
+    @Test
+    public void storeNodesClusteredAllocationWithOriginalNode() {
+        final NearRecordingContainer nearContainer = new NearRecordingContainer();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, nearContainer, 50, 100);
+        diskTree.enableClusteredAllocation();
+        final IRRTreeDiskNode<KPE> n = makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0));
+        final IRRTreeDiskNode<KPE> n2 = makeNodeWithContents(0, TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0));
+        final IRRTreeIndexEntry<KPE> oldEntry = diskTree.storeNode(n2, true);
+        nearContainer.nearIds.clear();
+
+        final List<IRRTreeIndexEntry<KPE>> result = diskTree.storeNodes(Arrays.asList(n, n2), oldEntry, n2);
+
+        assertEquals (2, result.size());
+        assertEquals (Collections.singletonList(oldEntry.id()), nearContainer.nearIds);
+    }
+
+    @Test
+    public void storeNodeClusteredAllocationIndexNode() {
+        final NearRecordingContainer nearContainer = new NearRecordingContainer();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, nearContainer, 50, 100);
+        diskTree.enableClusteredAllocation();
+        final IRRTreeIndexEntry<KPE> leafEntry = diskTree.storeNode(
+                makeNodeWithContents(0, TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0)), true);
+        assertTrue (nearContainer.nearIds.isEmpty());
+
+        final IRRTreeIndexEntry<KPE> indexEntry = diskTree.storeNode(
+                diskTree.createNode(1, Collections.singletonList(leafEntry)), true);
+
+        assertEquals (1, indexEntry.level());
+        assertEquals (Collections.singletonList(leafEntry.id()), nearContainer.nearIds);
+    }
+
     @Test
     public void growTreeSingleSibling() {
         diskTree.initialize(TestUtils.GET_DESCRIPTOR, container, 50, 100);
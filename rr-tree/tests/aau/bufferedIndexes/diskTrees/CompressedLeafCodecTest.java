@@ -0,0 +1,181 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.OperationType;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.UpdateTree;
+import aau.workload.DataID;
+import aau.workload.WorkloadOperation;
+import org.junit.Test;
+import xxl.core.functions.Function;
+import xxl.core.io.converters.ConvertableConverter;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for CompressedLeafCodec
+ */
+public class CompressedLeafCodecTest {
+
+    private static final int LEVEL_AND_NUMBER_SIZE = 6;
+
+    private static final Converter<UpdateTree.Entry<KPE>> OPERATION_CONVERTER
+            = new ConvertableConverter<>(new Function<Object, UpdateTree.Entry<KPE>>() {
+                public UpdateTree.Entry<KPE> invoke() {
+                    return new UpdateTree.Entry<>(new KPE(new DataID(), new DoublePointRectangle(2),
+                            WorkloadOperation.getConverter()), OperationType.INSERTION);
+                }
+            });
+
+    private final CompressedLeafCodec dataCodec = new CompressedLeafCodec(TestUtils.WORKLOAD_KPE_CONVERTER, false, 2);
+
+    private final CompressedLeafCodec operationCodec = new CompressedLeafCodec(OPERATION_CONVERTER, true, 2);
+
+    private static List<Object> makeEntries(final Random random, final int count, final boolean operations,
+                                            final boolean integral) {
+        final List<Object> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final double x = integral ? random.nextInt(1000) : random.nextDouble() * 1000 - 500;
+            final double y = integral ? random.nextInt(1000) : random.nextDouble() * 1000 - 500;
+            final KPE kpe = TestUtils.makeWorkloadKPE(random.nextInt(100000), x, y, x + 0.2, y + 0.2);
+            result.add(operations ? new UpdateTree.Entry<>(kpe, random.nextBoolean() ? OperationType.INSERTION
+                    : OperationType.DELETION) : kpe);
+        }
+        return result;
+    }
+
+    private static void checkRoundTrip(final CompressedLeafCodec codec, final List<Object> entries)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(new DataOutputStream(bytes), entries);
+        assertEquals (codec.nodeSize(entries) - LEVEL_AND_NUMBER_SIZE, bytes.size());
+
+        final Collection<Object> read = new ArrayList<>();
+        codec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), entries.size(), read);
+        assertEquals (entries.size(), read.size());
+        assertTrue (read.containsAll(entries));
+        assertTrue (entries.containsAll(read));
+    }
+
+    @Test
+    public void dataRoundTrip() throws IOException {
+        final Random random = new Random(1);
+        checkRoundTrip(dataCodec, makeEntries(random, 100, false, true));
+        checkRoundTrip(dataCodec, makeEntries(random, 100, false, false));
+    }
+
+    @Test
+    public void operationRoundTrip() throws IOException {
+        final Random random = new Random(2);
+        checkRoundTrip(operationCodec, makeEntries(random, 100, true, true));
+        checkRoundTrip(operationCodec, makeEntries(random, 100, true, false));
+    }
+
+    @Test
+    public void emptyRoundTrip() throws IOException {
+        checkRoundTrip(dataCodec, new ArrayList<>());
+        assertEquals (CompressedLeafCodec.HEADER_SIZE, dataCodec.nodeSize(new ArrayList<>()));
+    }
+
+    @Test
+    public void compressesNearbyEntries() {
+        final List<Object> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            entries.add(TestUtils.makeWorkloadKPE(i, i % 10, i / 10, i % 10 + 0.2, i / 10 + 0.2));
+        // The uncompressed entry takes 38 bytes
+        assertTrue (dataCodec.nodeSize(entries) < 100 * 38 / 3);
+    }
+
+    @Test
+    public void removalDoesNotGrow() {
+        final Random random = new Random(3);
+        for (final boolean integral : new boolean[] {true, false}) {
+            final List<Object> entries = makeEntries(random, 50, true, integral);
+            while (!entries.isEmpty()) {
+                final int size = operationCodec.nodeSize(entries);
+                entries.remove(random.nextInt(entries.size()));
+                assertTrue (operationCodec.nodeSize(entries) <= size);
+            }
+        }
+    }
+
+    @Test
+    public void insertionGrowthBounded() {
+        final Random random = new Random(4);
+        for (final boolean integral : new boolean[] {true, false}) {
+            final List<Object> entries = new ArrayList<>();
+            for (final Object entry : makeEntries(random, 50, true, integral)) {
+                final int size = operationCodec.nodeSize(entries);
+                entries.add(entry);
+                assertTrue (operationCodec.nodeSize(entries) - size <= operationCodec.maxInsertionGrowth());
+            }
+        }
+    }
+
+    @Test
+    public void overflowsAgreesWithNodeSize() {
+        final Random random = new Random(5);
+        for (final boolean integral : new boolean[] {true, false}) {
+            final List<Object> entries = new ArrayList<>();
+            for (final Object entry : makeEntries(random, 300, true, integral)) {
+                entries.add(entry);
+                final int size = operationCodec.nodeSize(entries);
+                for (final int maxBytes : new int[] {size - 1, size, 1024, 4096}) {
+                    assertEquals (size > maxBytes, operationCodec.overflows(entries, maxBytes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void overflowsWithoutNodeSize() {
+        // Any three entries fit into the raw bound and no 20 entries fit into the minimal one
+        final List<Object> entries = makeEntries(new Random(6), 20, false, false);
+        assertFalse (dataCodec.overflows(entries.subList(0, 3), CompressedLeafCodec.HEADER_SIZE + 3 * 37));
+        assertTrue (dataCodec.overflows(entries, CompressedLeafCodec.HEADER_SIZE + 20 * 5 - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unexpectedEntryLayout() {
+        final List<Object> entries = makeEntries(new Random(7), 2, false, false);
+        // The data items are one byte shorter than the operations
+        operationCodec.nodeSize(entries);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullConverter() {
+        new CompressedLeafCodec(null, false, 2);
+    }
+}
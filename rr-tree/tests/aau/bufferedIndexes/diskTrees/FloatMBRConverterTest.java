@@ -0,0 +1,79 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.TestUtils;
+import org.junit.Test;
+import xxl.core.spatial.rectangles.DoublePointRectangle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for FloatMBRConverter
+ */
+public class FloatMBRConverterTest {
+
+    private final FloatMBRConverter converter = new FloatMBRConverter(2);
+
+    @Test
+    public void roundOutwardContains() {
+        final DoublePointRectangle exact = (DoublePointRectangle)TestUtils.makeRectangle(-0.1, 1.0 / 3, 0.7, 1e10 - 1);
+        final DoublePointRectangle rounded = new DoublePointRectangle(exact);
+        FloatMBRConverter.roundOutward(rounded);
+
+        assertTrue (rounded.contains(exact));
+        assertEquals (TestUtils.makeRectangle((float)-0.1, Math.nextAfter((float)(1.0 / 3), Double.NEGATIVE_INFINITY),
+                Math.nextUp((float)0.7), (float)(1e10 - 1)), rounded);
+    }
+
+    @Test
+    public void roundOutwardIdempotent() {
+        final DoublePointRectangle exactFloats = (DoublePointRectangle)TestUtils.makeRectangle(0.5, -2.0, 1.25, 3.0);
+        final DoublePointRectangle rounded = new DoublePointRectangle(exactFloats);
+        FloatMBRConverter.roundOutward(rounded);
+        assertEquals (exactFloats, rounded);
+
+        final DoublePointRectangle twice = (DoublePointRectangle)TestUtils.makeRectangle(0.1, 0.2, 0.3, 0.4);
+        FloatMBRConverter.roundOutward(twice);
+        final DoublePointRectangle once = new DoublePointRectangle(twice);
+        FloatMBRConverter.roundOutward(twice);
+        assertEquals (once, twice);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final DoublePointRectangle rectangle = (DoublePointRectangle)TestUtils.makeRectangle(0.1, 0.2, 0.3, 0.4);
+        FloatMBRConverter.roundOutward(rectangle);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        converter.write(new DataOutputStream(bytes), rectangle);
+        assertEquals (16, bytes.size());
+
+        final DoublePointRectangle read = converter.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals (rectangle, read);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.IndexEntryOpGroupMap;
+import aau.bufferedIndexes.OperationGroup;
+import aau.bufferedIndexes.OperationType;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.UpdateTree;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import aau.bufferedIndexes.operationGroupMakers.AbstractOperationGroupMaker;
+import aau.bufferedIndexes.operationGroupMakers.TrivialOperationGroupMaker;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.spatial.KPE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for LeafLocationIndex
+ */
+public class LeafLocationIndexTest {
+
+    private static final int ID_SIZE = 8;
+
+    private final RRDiskDataTree<KPE> diskTree = new RRDiskDataTree<>();
+
+    private final LeafLocationIndex<KPE> index = new LeafLocationIndex<>(ID_SIZE);
+
+    private final KPE a = TestUtils.makeWorkloadKPE(1, 0, 0, 1, 1);
+    private final KPE b = TestUtils.makeWorkloadKPE(2, 1, 1, 2, 2);
+    private final KPE c = TestUtils.makeWorkloadKPE(3, 0.5, 0.5, 1.5, 1.5);
+
+    private IRRTreeIndexEntry<KPE> leaf1;
+    private IRRTreeIndexEntry<KPE> leaf2;
+    private IRRTreeDiskNode<KPE> parent;
+
+    @Before
+    public void setUp() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, new MapContainer(), 1, 10,
+                new NullObjectTracer<KPE>());
+        diskTree.setLeafLocationIndex(index);
+        leaf1 = storeLeaf(a, b);
+        leaf2 = storeLeaf(c);
+        parent = makeIndexNode(1, leaf1, leaf2);
+    }
+
+    private IRRTreeIndexEntry<KPE> storeLeaf(final KPE... contents) {
+        return diskTree.storeNode(diskTree.createNode(0, Arrays.asList(contents)), true);
+    }
+
+    @SafeVarargs
+    private final IRRTreeDiskNode<KPE> makeIndexNode(final int level, final IRRTreeIndexEntry<KPE>... children) {
+        return diskTree.createNode(level, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    @Test
+    public void routeToLeaf() {
+        assertEquals(leaf1.id(), index.route(parent, a).id());
+        assertEquals(leaf1.id(), index.route(parent, b).id());
+        assertEquals(leaf2.id(), index.route(parent, c).id());
+        assertEquals(3, index.getRoutedDeletions());
+        assertEquals(0, index.getUnroutedDeletions());
+    }
+
+    @Test
+    public void routeUnknown() {
+        assertNull(index.route(parent, TestUtils.makeWorkloadKPE(4, 0, 0, 1, 1)));
+        assertEquals(0, index.getRoutedDeletions());
+        assertEquals(1, index.getUnroutedDeletions());
+    }
+
+    @Test
+    public void routeAboveParent() {
+        final IRRTreeIndexEntry<KPE> parentEntry = diskTree.storeNode(parent, true);
+        final IRRTreeIndexEntry<KPE> otherParentEntry = diskTree.storeNode(makeIndexNode(1, storeLeaf(
+                TestUtils.makeWorkloadKPE(5, 0, 0, 2, 2))), true);
+        final IRRTreeDiskNode<KPE> root = makeIndexNode(2, parentEntry, otherParentEntry);
+        assertEquals(parentEntry.id(), index.route(root, c).id());
+    }
+
+    @Test
+    public void routeUnwrittenParent() {
+        final IRRTreeDiskNode<KPE> root = makeIndexNode(2, diskTree.computeIndexEntry(parent));
+        assertNull(index.route(root, c));
+    }
+
+    @Test
+    public void routeLatestWriteWins() {
+        final IRRTreeIndexEntry<KPE> movedTo = storeLeaf(a);
+        assertNull(index.route(parent, a));
+        assertEquals(movedTo.id(), index.route(makeIndexNode(1, leaf1, movedTo), a).id());
+    }
+
+    @Test
+    public void forget() {
+        assertEquals(3, index.size());
+        index.forget(a);
+        assertEquals(2, index.size());
+        assertNull(index.route(parent, a));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveIdSize() {
+        new LeafLocationIndex<KPE>(0);
+    }
+
+    @Test
+    public void memorySize() {
+        final long itemSize = UpdateTree.serializedSize(a) + ID_SIZE;
+        assertEquals(3 * itemSize, index.memorySize());
+        diskTree.storeNode(parent, true);
+        assertEquals(3 * itemSize + 2 * 2 * ID_SIZE, index.memorySize());
+        storeLeaf(a, b);
+        assertEquals(3 * itemSize + 2 * 2 * ID_SIZE, index.memorySize());
+        index.forget(a);
+        index.forget(a);
+        assertEquals(2 * itemSize + 2 * 2 * ID_SIZE, index.memorySize());
+        index.clear();
+        assertEquals(0, index.memorySize());
+    }
+
+    @Test
+    public void lookups() {
+        index.route(parent, a);
+        assertEquals(1, index.getLookups());
+        index.route(parent, TestUtils.makeWorkloadKPE(4, 0, 0, 1, 1));
+        assertEquals(2, index.getLookups());
+        final IRRTreeIndexEntry<KPE> parentEntry = diskTree.storeNode(parent, true);
+        index.route(makeIndexNode(2, parentEntry), c);
+        assertEquals(4, index.getLookups());
+    }
+
+    @Test
+    public void clear() {
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.route(parent, c));
+    }
+
+    @Test
+    public void groupMakerRoutesDeletion() {
+        final AbstractOperationGroupMaker groupMaker = new TrivialOperationGroupMaker();
+        final OperationGroup<KPE> ops = new OperationGroup<>();
+        ops.add(new UpdateTree.Entry<>(c, OperationType.DELETION));
+
+        // c is spatially contained in both leaves
+        IndexEntryOpGroupMap<KPE> groups = groupMaker.groupOperations(parent, ops);
+        assertEquals(2, countGroups(groups));
+
+        groupMaker.setLeafLocationIndex(index);
+        groups = groupMaker.groupOperations(parent, ops);
+        assertEquals(1, countGroups(groups));
+        assertEquals(1, groups.get(leaf2).size());
+        assertEquals(1, groupMaker.getDeletionSplits().get(1));
+    }
+
+    private static int countGroups(final IndexEntryOpGroupMap<KPE> groups) {
+        final List<Object> keys = new ArrayList<>();
+        for (final Object group : groups)
+            keys.add(group);
+        return keys.size();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.HilbertSplitter;
+import aau.bufferedIndexes.TestData;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.io.converters.Converter;
+import xxl.core.spatial.KPE;
+import xxl.core.spatial.points.Point;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the RRDiskHilbertTree
+ */
+public class RRDiskHilbertTreeTest {
+
+    private RRDiskHilbertTree<KPE> diskTree;
+
+    @Before
+    public void setUp() {
+        diskTree = new RRDiskHilbertTree<>();
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, new MapContainer(), 4, 10,
+                new NullObjectTracer<KPE>());
+    }
+
+    @Test
+    public void leafIndexEntryKeyRange() {
+        final List<KPE> data = Arrays.asList(TestUtils.makeKPE(0.0, 0.0, 1.0, 1.0),
+                TestUtils.makeKPE(2.0, 2.0, 3.0, 3.0), TestUtils.makeKPE(3.0, 0.0, 4.0, 1.0));
+        final IRRTreeDiskNode<KPE> leaf = diskTree.createNode(0, data);
+        final RRDiskHilbertTree<KPE>.HilbertIndexEntry entry
+                = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)diskTree.computeIndexEntry(leaf);
+
+        final List<Point> keys = new ArrayList<>();
+        for (final KPE d : data) {
+            keys.add(diskTree.hilbertKey(d));
+            assertTrue (entry.containsKey(diskTree.hilbertKey(d)));
+        }
+        assertEquals (0, RRDiskHilbertTree.KEY_ORDER.compare(Collections.min(keys, RRDiskHilbertTree.KEY_ORDER),
+                entry.lowKey()));
+        assertEquals (0, RRDiskHilbertTree.KEY_ORDER.compare(Collections.max(keys, RRDiskHilbertTree.KEY_ORDER),
+                entry.highKey()));
+    }
+
+    @Test
+    public void indexEntryKeyRangeCoversChildren() {
+        final IRRTreeDiskNode<KPE> root = makeRoot(30);
+        final RRDiskHilbertTree<KPE>.HilbertIndexEntry rootEntry
+                = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)diskTree.computeIndexEntry(root);
+        for (int i = 0; i < 30; i++)
+            assertTrue (rootEntry.containsKey(diskTree.hilbertKey(TestData.data[i])));
+        for (final IRRTreeIndexEntry<KPE> child : root.getNonLeafNodeEntries()) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry hilbertChild
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)child;
+            assertTrue (rootEntry.containsKey(hilbertChild.lowKey()));
+            assertTrue (rootEntry.containsKey(hilbertChild.highKey()));
+        }
+    }
+
+    @Test
+    public void chooseSubtreeByKeyRange() {
+        final IRRTreeDiskNode<KPE> root = makeRoot(30);
+        for (int i = 0; i < 30; i++) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry chosen
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)root.chooseSubtreeByObject(TestData.data[i]);
+            assertTrue (chosen.containsKey(diskTree.hilbertKey(TestData.data[i])));
+        }
+    }
+
+    @Test
+    public void chooseSubtreeAboveAllKeys() {
+        final IRRTreeDiskNode<KPE> root = makeRoot(30);
+        RRDiskHilbertTree<KPE>.HilbertIndexEntry highest = null;
+        for (final IRRTreeIndexEntry<KPE> child : root.getNonLeafNodeEntries()) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry hilbertChild
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)child;
+            if ((highest == null)
+                    || (RRDiskHilbertTree.KEY_ORDER.compare(hilbertChild.highKey(), highest.highKey()) > 0))
+                highest = hilbertChild;
+        }
+        for (int i = 30; i < 60; i++) {
+            final Point key = diskTree.hilbertKey(TestData.data[i]);
+            //noinspection ConstantConditions
+            if (RRDiskHilbertTree.KEY_ORDER.compare(key, highest.highKey()) > 0)
+                assertSame (highest, root.chooseSubtreeByObject(TestData.data[i]));
+        }
+    }
+
+    @Test
+    public void indexNodeConversion() throws IOException {
+        final IRRTreeDiskNode<KPE> root = makeRoot(30);
+        final Converter converter = diskTree.nodeConverter(null, 2);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        converter.write(new DataOutputStream(bytes), root);
+        final IRRTreeDiskNode<KPE> read = (IRRTreeDiskNode<KPE>)converter.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), null);
+
+        assertEquals (root.number(), read.number());
+        final Iterator<IRRTreeIndexEntry<KPE>> readEntries = read.getNonLeafNodeEntries().iterator();
+        for (final IRRTreeIndexEntry<KPE> entry : root.getNonLeafNodeEntries()) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry written = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)entry;
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry readEntry
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)readEntries.next();
+            assertEquals (written.id(), readEntry.id());
+            assertEquals (0, RRDiskHilbertTree.KEY_ORDER.compare(written.lowKey(), readEntry.lowKey()));
+            assertEquals (0, RRDiskHilbertTree.KEY_ORDER.compare(written.highKey(), readEntry.highKey()));
+        }
+    }
+
+    /**
+     * Makes a two-level tree by splitting a leaf of the first test data objects along the Hilbert order.
+     *
+     * @param dataCount the number of the test data objects
+     * @return the root node
+     */
+    private IRRTreeDiskNode<KPE> makeRoot(final int dataCount) {
+        final IRRTreeDiskNode<KPE> leaf = diskTree.createNode(0,
+                new ArrayList<>(Arrays.asList(TestData.data).subList(0, dataCount)));
+        final List<IRRTreeDiskNode<KPE>> leaves = new HilbertSplitter().groupSplit(leaf, diskTree);
+        final List<IRRTreeIndexEntry<KPE>> entries = diskTree.storeNodes(leaves, null, null);
+        return diskTree.createNode(1, entries);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.diskTrees;
+
+import aau.bufferedIndexes.TestData;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.diskTrees.visitors.IRRDiskTreeVisitor;
+import aau.bufferedIndexes.diskTrees.visitors.RRDiskTreeInvariantChecker;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.CounterContainer;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.cursors.Cursors;
+import xxl.core.functions.Function;
+import xxl.core.spatial.KPE;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RRDiskTreeDefragmenter class
+ */
+public class RRDiskTreeDefragmenterTest {
+
+    /**
+     * A map container that reuses the smallest removed id, like a block file container reuses the freed blocks
+     */
+    private static class ReusingMapContainer extends MapContainer {
+
+        private final SortedSet<Object> freeIds = new TreeSet<>();
+
+        /**
+         * The ids of the updates and the removes, in their order, the removes marked by a negative id
+         */
+        private final List<Long> operations = new ArrayList<>();
+
+        public void update(final Object id, final Object object, final boolean unfix) {
+            super.update(id, object, unfix);
+            operations.add((Long)id);
+        }
+
+        public void remove(final Object id) throws NoSuchElementException {
+            super.remove(id);
+            freeIds.add(id);
+            operations.add(-1 - (Long)id);
+        }
+
+        public Object reserve(final Function getObject) {
+            if (freeIds.isEmpty())
+                return super.reserve(getObject);
+            final Object id = freeIds.first();
+            freeIds.remove(id);
+            //noinspection unchecked
+            map.put(id, empty);
+            return id;
+        }
+    }
+
+    private static final int DATA_ITEMS = 401;
+
+    private ReusingMapContainer mapContainer;
+
+    private CounterContainer container;
+
+    private RRDiskDataTree<KPE> diskTree;
+
+    private RRDiskTreeDefragmenter<KPE> defragmenter;
+
+    @Before
+    public void setUp() {
+        defragmenter = new RRDiskTreeDefragmenter<>();
+        mapContainer = new ReusingMapContainer();
+        container = new CounterContainer(mapContainer);
+        diskTree = new RRDiskDataTree<>();
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, container, 10, 20);
+    }
+
+    private void makeThreeLevelTree() {
+        for (int i = 0; i < DATA_ITEMS; i++)
+            diskTree.insert(TestData.data[i]);
+        assertEquals (3, diskTree.height());
+    }
+
+    private List<Object> depthFirstNodeIds() throws IOException {
+        final List<Object> result = new ArrayList<>();
+        diskTree.visitTreeNodes(null, new IRRDiskTreeVisitor<KPE>() {
+            public void visitIndexNode(final IRRDiskTree<KPE> tree, final IRRTreeIndexEntry<KPE> indexNodeEntry,
+                                       final IRRTreeDiskNode<KPE> indexNode) {
+                result.add(indexNodeEntry.id());
+            }
+
+            public void visitLeafNode(final IRRDiskTree<KPE> tree, final IRRTreeIndexEntry<KPE> leafNodeEntry) {
+                result.add(leafNodeEntry.id());
+            }
+
+            public void finishVisiting() { }
+        });
+        return result;
+    }
+
+    private int defragment(final int maxIos) {
+        return defragmenter.defragment(diskTree, maxIos);
+    }
+
+    private void assertTreeIntact() throws IOException {
+        diskTree.visitTreeNodes(null, new RRDiskTreeInvariantChecker<KPE>());
+        assertEquals (DATA_ITEMS, Cursors.count(diskTree.query()));
+        assertEquals (depthFirstNodeIds().size(), mapContainer.size());
+    }
+
+    private static boolean isAscending(final List<Object> ids) {
+        final List<Object> sortedIds = new ArrayList<>(ids);
+        //noinspection unchecked
+        Collections.sort((List)sortedIds);
+        return sortedIds.equals(ids);
+    }
+
+    private static void assertAscending(final List<Object> ids) {
+        assertTrue (isAscending(ids));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveBudget() {
+        defragment(0);
+    }
+
+    @Test
+    public void emptyTree() {
+        assertEquals (0, defragment(100));
+        assertEquals (0, mapContainer.size());
+    }
+
+    @Test
+    public void depthFirstOrder() throws IOException {
+        makeThreeLevelTree();
+        final List<Object> oldIds = depthFirstNodeIds();
+        assertTrue (defragment(Integer.MAX_VALUE) > 0);
+        assertTreeIntact();
+        final List<Object> newIds = depthFirstNodeIds();
+        assertAscending(newIds);
+        assertEquals (new TreeSet<>(oldIds), new TreeSet<>(newIds));
+        assertEquals (newIds.get(0), diskTree.rootEntry().id());
+        assertEquals (0, defragment(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void ioBudget() throws IOException {
+        makeThreeLevelTree();
+        final int indexNodes = depthFirstNodeIds().size() - diskTree.height();
+        int invocations = 0;
+        while (!isAscending(depthFirstNodeIds())) {
+            assertTrue (invocations < 1000);
+            container.reset();
+            defragment(20);
+            // The path to the first window node is read besides the budget
+            assertTrue (container.gets + container.inserts + container.updates + container.removes
+                    <= 20 + diskTree.height() - 1);
+            assertTrue (container.gets < indexNodes);
+            assertTreeIntact();
+            invocations++;
+        }
+        assertTrue (invocations > 2);
+    }
+
+    @Test
+    public void writesBeforeRemoves() throws IOException {
+        final List<Object> fillerIds = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+            fillerIds.add(container.insert(i));
+        makeThreeLevelTree();
+        for (final Object fillerId : fillerIds)
+            container.remove(fillerId);
+        final Set<Object> oldIds = new HashSet<Object>(depthFirstNodeIds());
+        mapContainer.operations.clear();
+
+        assertTrue (defragment(Integer.MAX_VALUE) > 0);
+        int lastUpdate = -1;
+        int firstNodeRemove = Integer.MAX_VALUE;
+        for (int i = 0; i < mapContainer.operations.size(); i++) {
+            final long id = mapContainer.operations.get(i);
+            if (id >= 0)
+                lastUpdate = i;
+            else if (oldIds.contains(-1 - id))
+                firstNodeRemove = Math.min(firstNodeRemove, i);
+        }
+        assertTrue (firstNodeRemove < Integer.MAX_VALUE);
+        assertTrue (lastUpdate < firstNodeRemove);
+    }
+
+    @Test
+    public void compactIntoFreeIds() throws IOException {
+        final List<Object> fillerIds = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+            fillerIds.add(container.insert(i));
+        makeThreeLevelTree();
+        for (final Object fillerId : fillerIds)
+            container.remove(fillerId);
+        final int nodes = depthFirstNodeIds().size();
+
+        defragment(Integer.MAX_VALUE);
+        assertTreeIntact();
+        final List<Object> ids = depthFirstNodeIds();
+        assertAscending(ids);
+        assertEquals (0L, ids.get(0));
+        assertEquals ((long)(nodes - 1), ids.get(nodes - 1));
+    }
+}
@@ -224,6 +224,24 @@ public class RRDiskUpdateTreeTest {
         testNodeExecute (TestData.data[0], OperationType.DELETION, TestData.data[0], OperationType.INSERTION, false,
                 true, 0);
     }
+
+    @Test
+    public void nodeShareExecuteOpCopiesOnWrite() {
+        diskTree.initialize(TestUtils.GET_DESCRIPTOR, container, 1, 10);
+        final RRDiskUpdateTree<KPE>.Node n = makeNodeWithContents(0, OperationType.INSERTION, TestData.data[0],
+                TestData.data[2]);
+        n.indexEntries();
+        //noinspection unchecked
+        final RRDiskUpdateTree<KPE>.Node copy = (RRDiskUpdateTree<KPE>.Node)n.share();
+        final UpdateTree.Entry<KPE> deletion = new UpdateTree.Entry<>(TestData.data[0], OperationType.DELETION);
+        assertTrue (copy.executeOp(deletion, false));
+        assertEquals (1, copy.number());
+        assertEquals (2, n.number());
+        assertFalse (n.operationWillIncreaseNodeSize(deletion));
+        assertTrue (copy.operationWillIncreaseNodeSize(deletion));
+        n.deleteEntryIndex();
+        copy.deleteEntryIndex();
+    }
     
     private void testNodeExecute(final KPE existingData, final OperationType existingDataOp, final KPE dataToExecute,
                                  final OperationType opToExecute, final boolean insertionDeletesOldInsertion,
@@ -245,6 +263,66 @@ public class RRDiskUpdateTreeTest {
         return n;
     }
 
+    @Test
+    public void nodeExecuteOpsManyAnnihilations() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, 1, 1000, null);
+        final RRDiskUpdateTree<KPE>.Node n = makeNodeWithContents(0, OperationType.INSERTION);
+        final Set<UpdateTree.Entry<KPE>> expected = new HashSet<>();
+        final Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            final UpdateTree.Entry<KPE> op = new UpdateTree.Entry<>(TestData.data[random.nextInt(300)],
+                    random.nextBoolean() ? OperationType.INSERTION : OperationType.DELETION);
+            if (expected.contains(op))
+                continue;
+            assertEquals(!expected.contains(op.makeOpposite()), n.operationWillIncreaseNodeSize(op));
+            assertTrue(n.executeOp(op, false));
+            if (!expected.remove(op.makeOpposite()))
+                expected.add(op);
+            assertEquals(expected.size(), n.number());
+        }
+        assertEquals(expected, new HashSet<>(n.getLeafNodeEntries()));
+    }
+
+    @Test
+    public void nodeRemoveKeepsIndexInSync() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, 1, 10, null);
+        final RRDiskUpdateTree<KPE>.Node n = makeNodeWithContents(0, OperationType.INSERTION, TestData.data[0],
+                TestData.data[1], TestData.data[2]);
+        n.indexEntries();
+        n.remove(new UpdateTree.Entry<>(TestData.data[0], OperationType.INSERTION));
+        assertEquals(2, n.number());
+        assertTrue(n.operationWillIncreaseNodeSize(new UpdateTree.Entry<>(TestData.data[0],
+                OperationType.DELETION)));
+        assertFalse(n.operationWillIncreaseNodeSize(new UpdateTree.Entry<>(TestData.data[2],
+                OperationType.DELETION)));
+    }
+
+    @Test
+    public void nodeIndexRebuiltAfterDirectModification() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, 1, 10, null);
+        final RRDiskUpdateTree<KPE>.Node n = makeNodeWithContents(0, OperationType.INSERTION, TestData.data[0],
+                TestData.data[1]);
+        n.indexEntries();
+        n.getLeafNodeEntries().add(new UpdateTree.Entry<>(TestData.data[2], OperationType.INSERTION));
+        assertTrue(n.executeOp(new UpdateTree.Entry<>(TestData.data[2], OperationType.DELETION), false));
+        assertEquals(2, n.number());
+    }
+
+    @Test
+    public void nodeAddEntriesFromAnnihilates() {
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, container, 1, 10, null);
+        final RRDiskUpdateTree<KPE>.Node n = makeNodeWithContents(0, OperationType.INSERTION, TestData.data[0],
+                TestData.data[1], TestData.data[2]);
+        final RRDiskUpdateTree<KPE>.Node other = makeNodeWithContents(0, OperationType.DELETION, TestData.data[1],
+                TestData.data[3]);
+        n.addEntriesFrom(other);
+        final Set<UpdateTree.Entry<KPE>> expected = new HashSet<>();
+        expected.add(new UpdateTree.Entry<>(TestData.data[0], OperationType.INSERTION));
+        expected.add(new UpdateTree.Entry<>(TestData.data[2], OperationType.INSERTION));
+        expected.add(new UpdateTree.Entry<>(TestData.data[3], OperationType.DELETION));
+        assertEquals(expected, new HashSet<>(n.getLeafNodeEntries()));
+    }
+
     @Test
     public void createNodeWithContents() {
         diskTree.initialize(Function.IDENTITY, null, 50, 100);
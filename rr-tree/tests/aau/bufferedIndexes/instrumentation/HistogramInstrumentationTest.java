@@ -0,0 +1,110 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.instrumentation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HistogramInstrumentation
+ */
+public class HistogramInstrumentationTest {
+
+    private HistogramInstrumentation instrumentation;
+
+    @Before
+    public void setUp() {
+        instrumentation = new HistogramInstrumentation();
+    }
+
+    @Test
+    public void enabled() {
+        assertTrue(instrumentation.isEnabled());
+        assertFalse(new NullInstrumentation().isEnabled());
+    }
+
+    @Test
+    public void noMeasurements() {
+        for (final Instrumentation.Event event : Instrumentation.Event.values())
+            assertTrue(instrumentation.getMeasurements(event).isEmpty());
+    }
+
+    @Test
+    public void measurementsByEventAndLevel() {
+        instrumentation.end(Instrumentation.Event.GROUP_UPDATE, 2, instrumentation.begin());
+        instrumentation.end(Instrumentation.Event.GROUP_UPDATE, 2, instrumentation.begin());
+        instrumentation.end(Instrumentation.Event.GROUP_UPDATE, 0, instrumentation.begin());
+        instrumentation.end(Instrumentation.Event.QUERY, 0, instrumentation.begin());
+
+        final SortedMap<Integer, HistogramInstrumentation.Measurements> groupUpdates
+                = instrumentation.getMeasurements(Instrumentation.Event.GROUP_UPDATE);
+        assertEquals(2, groupUpdates.size());
+        assertEquals(1, groupUpdates.get(0).getDurations().getCount());
+        assertEquals(2, groupUpdates.get(2).getDurations().getCount());
+        assertFalse(groupUpdates.containsKey(1));
+        assertEquals(1, instrumentation.getMeasurements(Instrumentation.Event.QUERY).get(0).getDurations().getCount());
+        assertTrue(instrumentation.getMeasurements(Instrumentation.Event.GROUP_SPLIT).isEmpty());
+    }
+
+    @Test
+    public void nestedMeasurements() throws InterruptedException {
+        final long outer = instrumentation.begin();
+        final long inner = instrumentation.begin();
+        assertTrue(outer != inner);
+        instrumentation.end(Instrumentation.Event.GROUP_SPLIT, 1, inner);
+        Thread.sleep(2);
+        instrumentation.end(Instrumentation.Event.EMPTY_BUFFER, 0, outer);
+        final long outerDuration = instrumentation.getMeasurements(Instrumentation.Event.EMPTY_BUFFER).get(0)
+                .getDurations().getMaximum();
+        final long innerDuration = instrumentation.getMeasurements(Instrumentation.Event.GROUP_SPLIT).get(1)
+                .getDurations().getMaximum();
+        assertTrue(outerDuration >= 2000000);
+        assertTrue(outerDuration > innerDuration);
+    }
+
+    @Test
+    public void manyOverlappingMeasurements() {
+        final long[] tokens = new long[100];
+        for (int i = 0; i < tokens.length; i++)
+            tokens[i] = instrumentation.begin();
+        for (final long token : tokens)
+            instrumentation.end(Instrumentation.Event.GC_VACUUM, 0, token);
+        assertEquals(tokens.length,
+                instrumentation.getMeasurements(Instrumentation.Event.GC_VACUUM).get(0).getDurations().getCount());
+    }
+
+    @Test
+    public void allocations() {
+        final long token = instrumentation.begin();
+        final long[][] garbage = new long[16][];
+        for (int i = 0; i < garbage.length; i++)
+            garbage[i] = new long[1024];
+        instrumentation.end(Instrumentation.Event.GC_REBUILD, 0, token);
+        final long allocated = instrumentation.getMeasurements(Instrumentation.Event.GC_REBUILD).get(0)
+                .getAllocations().getMaximum();
+        if (instrumentation.measuresAllocations())
+            assertTrue(allocated >= garbage.length * 1024 * 8);
+        else
+            assertEquals(0, allocated);
+    }
+}
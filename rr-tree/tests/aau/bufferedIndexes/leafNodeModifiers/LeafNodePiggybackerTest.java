@@ -123,6 +123,7 @@ public class LeafNodePiggybackerTest {
             //noinspection unchecked
             exactly(i + d).of(mockNode).operationWillIncreaseNodeSize(with(aNonNull(UpdateTree.Entry.class)));
                 will(returnValue(false));
+            oneOf (mockTree).beginDiskTreeChange();
             oneOf (mockNode).executeConstrainedSubsetOfOps(with(same(piggybackedOps)),
                     with(any(Integer.class)), with(any(Integer.class))); will(returnValue(piggybackedOps));
             allowing(mockInfo).getUnpiggybackableSizeDecreasingOps(); will(returnValue(0));
@@ -180,6 +181,7 @@ public class LeafNodePiggybackerTest {
             atMost(secondPiggybackedOps.size()).of(mockNode).
                     operationWillIncreaseNodeSize(with(aNonNull(UpdateTree.Entry.class)));
                 will(returnValue(false));
+            oneOf (mockTree).beginDiskTreeChange();
             oneOf (mockNode).executeConstrainedSubsetOfOps(with(equal(shouldBePiggybacked)),
                     with(any(Integer.class)), with(any(Integer.class))); will(returnValue(shouldBePiggybacked));
         }});
@@ -220,6 +222,7 @@ public class LeafNodePiggybackerTest {
             oneOf (mockInfo).getNumOfSizeIncreasingOps(); will(returnValue(1));
             oneOf (mockInfo).getNumOfSizeDecreasingOps(); will(returnValue(1));
                         
+            oneOf (mockTree).beginDiskTreeChange();
             oneOf (mockNode).executeConstrainedSubsetOfOps(with(same(piggybackedOps)),
                     with(1), with(1)); will(returnValue(actuallyPiggybackedOps));
         }});
@@ -273,6 +276,7 @@ public class LeafNodePiggybackerTest {
             //noinspection unchecked
             exactly(2 + 1).of(mockNode).operationWillIncreaseNodeSize(with(aNonNull(UpdateTree.Entry.class)));
                 will(returnValue(false));
+            oneOf (mockTree).beginDiskTreeChange();
             oneOf (mockNode).executeConstrainedSubsetOfOps(with(same(piggybackedOps)),
                     with(any(Integer.class)), with(any(Integer.class))); will(returnValue(piggybackedOps));
             allowing(mockInfo).getUnpiggybackableSizeDecreasingOps(); will(returnValue(0));
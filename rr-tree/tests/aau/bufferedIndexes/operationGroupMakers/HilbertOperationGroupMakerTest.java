@@ -0,0 +1,130 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.operationGroupMakers;
+
+import aau.bufferedIndexes.HilbertSplitter;
+import aau.bufferedIndexes.IndexEntryOpGroupMap;
+import aau.bufferedIndexes.OperationGroup;
+import aau.bufferedIndexes.OperationType;
+import aau.bufferedIndexes.TestData;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.UpdateTree;
+import aau.bufferedIndexes.diskTrees.IRRTreeDiskNode;
+import aau.bufferedIndexes.diskTrees.IRRTreeIndexEntry;
+import aau.bufferedIndexes.diskTrees.RRDiskDataTree;
+import aau.bufferedIndexes.diskTrees.RRDiskHilbertTree;
+import aau.bufferedIndexes.objectTracers.NullObjectTracer;
+import org.junit.Before;
+import org.junit.Test;
+import xxl.core.collections.containers.MapContainer;
+import xxl.core.spatial.KPE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for HilbertOperationGroupMaker
+ */
+public class HilbertOperationGroupMakerTest {
+
+    private final AbstractOperationGroupMaker groupMaker = new HilbertOperationGroupMaker();
+
+    private RRDiskHilbertTree<KPE> diskTree;
+
+    private IRRTreeDiskNode<KPE> root;
+
+    @Before
+    public void setUp() {
+        diskTree = new RRDiskHilbertTree<>();
+        diskTree.initialize(TestUtils.GET_ID, TestUtils.GET_DESCRIPTOR, new MapContainer(), 4, 10,
+                new NullObjectTracer<KPE>());
+        final IRRTreeDiskNode<KPE> leaf = diskTree.createNode(0,
+                new ArrayList<>(Arrays.asList(TestData.data).subList(0, 50)));
+        final List<IRRTreeDiskNode<KPE>> leaves = new HilbertSplitter().groupSplit(leaf, diskTree);
+        root = diskTree.createNode(1, diskTree.storeNodes(leaves, null, null));
+    }
+
+    @Test
+    public void insertionsByKeyRange() {
+        final OperationGroup<KPE> operations = new OperationGroup<>();
+        for (int i = 0; i < 50; i++)
+            operations.add(new UpdateTree.Entry<>(TestData.data[i], OperationType.INSERTION));
+        final IndexEntryOpGroupMap<KPE> result = groupMaker.groupOperations(root, operations);
+        assertEquals (50, result.numOfDistinctOps());
+        checkGroupsMatchKeyRanges(result);
+    }
+
+    @Test
+    public void deletionsToSingleChild() {
+        final OperationGroup<KPE> operations = new OperationGroup<>();
+        for (int i = 0; i < 50; i++)
+            operations.add(new UpdateTree.Entry<>(TestData.data[i], OperationType.DELETION));
+        final IndexEntryOpGroupMap<KPE> result = groupMaker.groupOperations(root, operations);
+        int groupedOps = 0;
+        for (final Map.Entry<IRRTreeIndexEntry<KPE>, OperationGroup<KPE>> group : result)
+            for (final UpdateTree.Entry<KPE> ignored : group.getValue())
+                groupedOps++;
+        assertEquals ("Every deletion should go to a single child", 50, groupedOps);
+        assertNull (result.get(result.ORPHAN_GROUP_KEY));
+        checkGroupsMatchKeyRanges(result);
+    }
+
+    @Test
+    public void insertionAboveAllKeys() {
+        RRDiskHilbertTree<KPE>.HilbertIndexEntry highest = null;
+        for (final IRRTreeIndexEntry<KPE> child : root.getNonLeafNodeEntries()) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry hilbertChild
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)child;
+            if ((highest == null)
+                    || (RRDiskHilbertTree.KEY_ORDER.compare(hilbertChild.highKey(), highest.highKey()) > 0))
+                highest = hilbertChild;
+        }
+        for (int i = 50; i < 100; i++) {
+            //noinspection ConstantConditions
+            if (RRDiskHilbertTree.KEY_ORDER.compare(diskTree.hilbertKey(TestData.data[i]), highest.highKey()) <= 0)
+                continue;
+            final OperationGroup<KPE> operations = new OperationGroup<>();
+            operations.add(new UpdateTree.Entry<>(TestData.data[i], OperationType.INSERTION));
+            final IndexEntryOpGroupMap<KPE> result = groupMaker.groupOperations(root, operations);
+            assertSame (highest, result.iterator().next().getKey());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresHilbertTree() {
+        final RRDiskDataTree<KPE> dataTree = new RRDiskDataTree<>();
+        groupMaker.groupOperations(dataTree.createNode(1), new OperationGroup<KPE>());
+    }
+
+    private void checkGroupsMatchKeyRanges(final IndexEntryOpGroupMap<KPE> result) {
+        for (final Map.Entry<IRRTreeIndexEntry<KPE>, OperationGroup<KPE>> group : result) {
+            final RRDiskHilbertTree<KPE>.HilbertIndexEntry child
+                    = (RRDiskHilbertTree<KPE>.HilbertIndexEntry)group.getKey();
+            for (final UpdateTree.Entry<KPE> op : group.getValue())
+                assertTrue (child.containsKey(diskTree.hilbertKey(op.getData())));
+        }
+    }
+}
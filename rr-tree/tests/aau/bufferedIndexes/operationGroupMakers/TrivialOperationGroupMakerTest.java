@@ -118,6 +118,48 @@ public class TrivialOperationGroupMakerTest extends TestCase {
         assertEquals (0, groupMaker.getDeletionSplits().size());
     }
 
+    public void testGroupMoves() {
+        final Collection<Descriptor> descriptors = new ArrayList<>();
+        descriptors.add(TestUtils.makeDescriptor(0, 0, 4, 4));
+        descriptors.add(TestUtils.makeDescriptor(10, 10, 14, 14));
+        final IRRTreeDiskNode<KPE> node = makeNode(descriptors);
+
+        // Both halves in the same child: the move stays whole
+        final UpdateTree.Entry<KPE> localMove = new UpdateTree.Entry<>(TestUtils.makeKPE(1, 2, 2, 3, 3),
+                TestUtils.makeKPE(1, 1, 1, 2, 2));
+        // The halves in different children: the move is split
+        final UpdateTree.Entry<KPE> farMove = new UpdateTree.Entry<>(TestUtils.makeKPE(2, 11, 11, 12, 12),
+                TestUtils.makeKPE(2, 0, 0, 1, 1));
+        final OperationGroup<KPE> ops = new OperationGroup<>();
+        ops.add(localMove);
+        ops.add(farMove);
+
+        groupMaker.resetStatistics();
+        final IndexEntryOpGroupMap<KPE> groupMap = groupMaker.groupOperations(node, ops);
+        assertEquals(2, groupMap.size());
+        assertEquals(1, groupMaker.getWholeMoves());
+        assertEquals(1, groupMaker.getSplitMoves().size());
+        assertSame(farMove, groupMaker.getSplitMoves().get(0));
+        for (final Map.Entry<IRRTreeIndexEntry<KPE>, OperationGroup<KPE>> gOp : groupMap) {
+            final Descriptor childDescriptor = TestUtils.getDescriptor(gOp.getKey());
+            if (childDescriptor.contains(TestUtils.getDescriptor(localMove.getData()))) {
+                assertEquals(2, gOp.getValue().size());
+                assertTrue(gOp.getValue().contains(localMove));
+                assertTrue(gOp.getValue().contains(farMove.getDeletionHalf()));
+            }
+            else {
+                assertEquals(1, gOp.getValue().size());
+                final UpdateTree.Entry<KPE> insertionHalf = gOp.getValue().iterator().next();
+                assertEquals(farMove, insertionHalf);
+                assertFalse(insertionHalf.isMove());
+            }
+        }
+
+        // The split moves are forgotten by the next grouping
+        groupMaker.groupOperations(node, new OperationGroup<KPE>());
+        assertTrue(groupMaker.getSplitMoves().isEmpty());
+    }
+
     @SuppressWarnings({"ChainOfInstanceofChecks"})
     private void checkGetGrouping(final boolean resetStatistics, final Object... opsAndDescriptors) {
         final OperationGroup<KPE> ops = new OperationGroup<>();
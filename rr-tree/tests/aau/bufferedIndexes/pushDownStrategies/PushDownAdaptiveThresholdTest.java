@@ -0,0 +1,223 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package aau.bufferedIndexes.pushDownStrategies;
+
+import aau.bufferedIndexes.IndexEntryOpGroupMap;
+import aau.bufferedIndexes.OperationGroup;
+import aau.bufferedIndexes.PushDownAndBufferGroups;
+import aau.bufferedIndexes.RRTreeStats;
+import aau.bufferedIndexes.TestUtils;
+import aau.bufferedIndexes.diskTrees.IRRDiskTree;
+import aau.bufferedIndexes.diskTrees.IRRTreeIndexEntry;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import xxl.core.spatial.KPE;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for PushDownAdaptiveThreshold class
+ */
+@RunWith(JMock.class)
+public class PushDownAdaptiveThresholdTest {
+
+    final private Mockery mockery = new JUnit4Mockery();
+
+    private IRRDiskTree<KPE> diskTree;
+
+    private final RRTreeStats<KPE> stats = new RRTreeStats<>();
+
+    private PushDownAdaptiveThreshold<KPE> strategy = null;
+
+    @Before
+    public void setUp() {
+        //noinspection unchecked
+        diskTree = mockery.mock(IRRDiskTree.class);
+        mockery.checking(new Expectations(){{
+            allowing(diskTree).height(); will(returnValue(2));
+        }});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroThreshold() {
+        new PushDownAdaptiveThreshold<>(diskTree, stats, 0, 1, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroWindow() {
+        new PushDownAdaptiveThreshold<>(diskTree, stats, 10, 0, false);
+    }
+
+    @Test
+    public void empty() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 10, 1, false);
+        final PushDownAndBufferGroups<KPE> result = strategy.choosePushDownGroups(null, 1, 0, false);
+        TestUtils.checkPushDownResults(0, 0, result);
+    }
+
+    @Test
+    public void rootSomeAboveThreshold() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 25, 1, false);
+        final IndexEntryOpGroupMap<KPE> grouping = TestUtils.makeGrouping(10, 15, 20, 25, 100, 20);
+        final PushDownAndBufferGroups<KPE> result = strategy.choosePushDownGroups(grouping, 1, 0, false);
+        TestUtils.checkPushDownResults(4, 2, result);
+        TestUtils.checkPushDownThresholds(1, 0, strategy);
+    }
+
+    @Test
+    public void rootNoneAboveThreshold() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 250, 1, false);
+        final IndexEntryOpGroupMap<KPE> grouping = TestUtils.makeGrouping(10, 15, 20, 25, 100, 20);
+        final PushDownAndBufferGroups<KPE> result = strategy.choosePushDownGroups(grouping, 1, 0, false);
+        TestUtils.checkPushDownResults(5, 1, result);
+        TestUtils.checkPushDownThresholds(0, 1, strategy);
+    }
+
+    @Test
+    public void nonRootLevel() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 25, 1, false);
+        final IndexEntryOpGroupMap<KPE> grouping = TestUtils.makeGrouping(10, 15, 20, 25, 100, 20);
+        final PushDownAndBufferGroups<KPE> result = strategy.choosePushDownGroups(grouping, 0, 0, false);
+        TestUtils.checkPushDownResults(0, 6, result);
+    }
+
+    @Test
+    public void restartGroupUpdateRoot() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 25, 1, false);
+        final IndexEntryOpGroupMap<KPE> grouping = TestUtils.makeGrouping(10, 15, 20, 25, 100, 20);
+        final PushDownAndBufferGroups<KPE> result = strategy.choosePushDownGroups(grouping, 1, 0, true);
+        TestUtils.checkPushDownResults(0, 6, result);
+    }
+
+    @Test
+    public void thresholdClimbsWhileEfficiencyGrows() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 20, 2, false);
+        // Window 1: 2 emptyings, 165 ops pushed in 4 groups each, plus the root: 330 / 10
+        emptying(10, 15, 20, 25, 100, 20);
+        emptying(10, 15, 20, 25, 100, 20);
+        assertEquals(25, strategy.getCurrentThreshold());
+        // Window 2: 100 ops pushed in 1 group each, plus the root: 200 / 4 is better, so keep climbing
+        emptying(10, 15, 20, 24, 100, 20);
+        emptying(10, 15, 20, 24, 100, 20);
+        assertEquals(31, strategy.getCurrentThreshold());
+        assertEquals(Arrays.asList(25, 31), strategy.getThresholdHistory());
+    }
+
+    @Test
+    public void thresholdTurnsWhenEfficiencyDrops() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 20, 1, false);
+        // 100 ops pushed in 1 group, plus the root: 100 / 2
+        emptying(10, 15, 19, 100);
+        assertEquals(25, strategy.getCurrentThreshold());
+        // 50 ops pushed in 2 groups, plus the root: 50 / 3 is worse, so turn back
+        emptying(10, 25, 25);
+        assertEquals(19, strategy.getCurrentThreshold());
+    }
+
+    @Test
+    public void thresholdCappedByLargestGroup() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 20, 1, false);
+        emptying(10, 15, 20);
+        assertEquals(21, strategy.getCurrentThreshold());
+        emptying(10, 15, 20);
+        assertEquals(21, strategy.getCurrentThreshold());
+    }
+
+    @Test
+    public void failedEmptyingHalvesThreshold() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 40, 1, false);
+        strategy.choosePushDownGroups(TestUtils.makeGrouping(10, 15, 20, 25, 100, 20), 1, 0, false);
+        strategy.emptyingFinished(true);
+        assertEquals(20, strategy.getCurrentThreshold());
+        // After a failure the threshold keeps going down
+        emptying(10, 15, 20, 25, 100, 20);
+        assertEquals(15, strategy.getCurrentThreshold());
+        assertEquals(Arrays.asList(20, 15), strategy.getThresholdHistory());
+    }
+
+    @Test
+    public void failedEmptyingInStatistics() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 40, 1, false);
+        strategy.choosePushDownGroups(TestUtils.makeGrouping(10, 15, 20, 25, 100, 20), 1, 0, false);
+        // A buffer of orphan operations only fails the emptying before the strategy is asked
+        stats.registerFailedEmptying();
+        strategy.emptyingFinished(false);
+        assertEquals(20, strategy.getCurrentThreshold());
+        emptying(10, 15, 20, 25, 100, 20);
+        assertEquals(15, strategy.getCurrentThreshold());
+    }
+
+    @Test
+    public void nodeIOsFromStatistics() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 20, 1, false);
+        // 100 ops pushed in 1 group, plus the root: 100 / 2
+        emptying(10, 15, 19, 100);
+        assertEquals(25, strategy.getCurrentThreshold());
+        // 100 ops pushed in 1 group, but the statistics show 2 more leaf I/Os, plus the root: 100 / 4 is worse
+        final PushDownAndBufferGroups<KPE> result
+                = strategy.choosePushDownGroups(TestUtils.makeGrouping(10, 15, 24, 100), 1, 0, false);
+        registerGroups(result);
+        stats.updateGroupUpdateStatistics(0, 5, false);
+        stats.updateGroupUpdateStatistics(0, 5, false);
+        strategy.emptyingFinished(false);
+        assertEquals(19, strategy.getCurrentThreshold());
+    }
+
+    @Test
+    public void thresholdCappedByBackToBufferGroup() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 20, 1, false);
+        // No group is pushed down, the largest one returned to the buffer caps the threshold
+        emptying(10, 19, 5);
+        assertEquals(20, strategy.getCurrentThreshold());
+    }
+
+    @Test
+    public void willEmptyBigPartOfBuffer() {
+        strategy = new PushDownAdaptiveThreshold<>(diskTree, stats, 10, 1, false);
+        assertFalse(strategy.willEmptyBigPartOfBuffer());
+        assertEquals(0, strategy.getEqualLargestGroups());
+        assertTrue(strategy.getThresholdHistory().isEmpty());
+    }
+
+    private void emptying(final int... groupSizes) {
+        registerGroups(strategy.choosePushDownGroups(TestUtils.makeGrouping(groupSizes), 1, 0, false));
+        strategy.emptyingFinished(false);
+    }
+
+    /**
+     * Registers the statistics that the RR-tree registers for the chosen groups: the pushed down groups are received
+     * by the leaves and the rest are returned to the buffer from the root.
+     */
+    private void registerGroups(final PushDownAndBufferGroups<KPE> result) {
+        for (final Map.Entry<IRRTreeIndexEntry<KPE>, OperationGroup<KPE>> group : result.getPushDownGroups())
+            stats.updateGroupUpdateStatistics(0, group.getValue().size(), false);
+        for (final Map.Entry<IRRTreeIndexEntry<KPE>, OperationGroup<KPE>> group : result.getBufferGroups())
+            stats.registerBackToBufferGroup(1, group.getValue().size());
+    }
+}
@@ -82,8 +82,8 @@ public class PushDownDivideByConstantBelowRootTest {
         // Divisor one level below root: (10 + 4)/2 = 7
         mockery.checking(new Expectations(){{
             allowing(diskTree).height(); will(returnValue(2));
-            allowing(diskTree).getMinNodeCapacity(); will(returnValue(4));
-            allowing(diskTree).getMaxNodeCapacity(); will(returnValue(10));
+            allowing(diskTree).getMinNodeCapacity(1); will(returnValue(4));
+            allowing(diskTree).getMaxNodeCapacity(1); will(returnValue(10));
         }});
         strategy = new PushDownDivideByConstantBelowRoot<>(diskTree,
                 new PushDownLargestBufGroup<>(diskTree, false), 1.0, false);
@@ -105,8 +105,8 @@ public class PushDownDivideByConstantBelowRootTest {
         // Divisor one level below root: (10 + 4)/2 * 5/7 = 5
         mockery.checking(new Expectations(){{
             allowing(diskTree).height(); will(returnValue(2));
-            allowing(diskTree).getMinNodeCapacity(); will(returnValue(4));
-            allowing(diskTree).getMaxNodeCapacity(); will(returnValue(10));
+            allowing(diskTree).getMinNodeCapacity(1); will(returnValue(4));
+            allowing(diskTree).getMaxNodeCapacity(1); will(returnValue(10));
         }});
         strategy = new PushDownDivideByConstantBelowRoot<>(diskTree,
                 new PushDownLargestBufGroup<>(diskTree, false), 5.0/7.0, false);
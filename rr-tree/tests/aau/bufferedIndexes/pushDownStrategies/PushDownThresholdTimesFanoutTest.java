@@ -51,8 +51,8 @@ public class PushDownThresholdTimesFanoutTest {
         //noinspection unchecked
         diskTree = mockery.mock(IRRDiskTree.class);
         mockery.checking(new Expectations(){{
-            allowing(diskTree).getMinNodeCapacity(); will(returnValue(2));
-            allowing(diskTree).getMaxNodeCapacity(); will(returnValue(5));
+            allowing(diskTree).getMinNodeCapacity(1); will(returnValue(2));
+            allowing(diskTree).getMaxNodeCapacity(1); will(returnValue(5));
         }});
     }
 
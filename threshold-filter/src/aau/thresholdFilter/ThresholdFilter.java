@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2009 Laurynas Biveinis
+     Copyright (C) 2009, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -18,18 +18,20 @@
 */
 package aau.thresholdFilter;
 
-import aau.workload.SpatialExtent;
-import aau.workload.WorkloadOperation;
+import aau.workload.*;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Filter a given workload by distance threshold criteria
+ * Filter a given workload by distance threshold criteria.  Optionally, in the same pass, analyze the filtered
+ * workload as the workload analyzer does and generate queries for it as the query generator does.
  */
 class ThresholdFilter {
 
@@ -37,6 +39,11 @@ class ThresholdFilter {
     private static final String OUTPUT_OPTION = "output";
     private static final String THRESHOLD_OPTION = "threshold";
     private static final String VERBOSE_OPTION = "verbose";
+    private static final String THREADS_OPTION = "threads";
+    private static final String INFO_OPTION = "info";
+    private static final String QUERY_OUTPUT_OPTION = "queryoutput";
+    private static final String QUERY_NUMBER_OPTION = "querynumber";
+    private static final String QUERY_REGION_SIZE_OPTION = "queryregionsize";
 
     private ThresholdFilter() {
     }
@@ -48,6 +55,16 @@ class ThresholdFilter {
         final OptionSpec<Integer> thresholdOption
                 = optParser.accepts(THRESHOLD_OPTION).withRequiredArg().ofType(Integer.class);
         final OptionSpec<Void> verboseOption = optParser.accepts(VERBOSE_OPTION);
+        //noinspection unchecked
+        final OptionSpec<Integer> threadsOption = optParser.accepts(THREADS_OPTION).withRequiredArg()
+                .ofType(Integer.class).defaultsTo(WorkloadPipeline.defaultPartitions());
+        final OptionSpec<Void> infoOption = optParser.accepts(INFO_OPTION);
+        final OptionSpec<String> queryOutputOption
+                = optParser.accepts(QUERY_OUTPUT_OPTION).withRequiredArg().ofType(String.class);
+        final OptionSpec<Integer> queryNumberOption
+                = optParser.accepts(QUERY_NUMBER_OPTION).withRequiredArg().ofType(Integer.class);
+        final OptionSpec<Double> queryRegionSizeOption
+                = optParser.accepts(QUERY_REGION_SIZE_OPTION).withRequiredArg().ofType(Double.class);
 
         final OptionSet options = optParser.parse(args);
 
@@ -70,15 +87,43 @@ class ThresholdFilter {
         final int threshold = options.valueOf(thresholdOption);
 
         final boolean verbose = options.has(verboseOption);
+        final int threads = options.valueOf(threadsOption);
+        final boolean writeInfo = options.has(infoOption);
+
+        final String queryOutputFileName = options.valueOf(queryOutputOption);
+        if ((queryOutputFileName != null)
+                && (!options.has(queryNumberOption) || !options.has(queryRegionSizeOption))) {
+            System.err.println("Query output specified without query number and query region size!");
+            System.exit(4);
+        }
 
         System.out.println("Threshold filter:");
         System.out.println("    Input: " + inputFileName);
         System.out.println("    Output: " + outputFileName);
         System.out.println("    Threshold: " + threshold + " meters");
         System.out.println("    Verbose: " + verbose);
+        System.out.println("    Threads: " + threads);
+        if (writeInfo)
+            System.out.println("    Info: " + WorkloadInfo.infoFileName(outputFileName));
+        if (queryOutputFileName != null)
+            System.out.println("    Queries: " + options.valueOf(queryNumberOption) + " to " + queryOutputFileName
+                    + ", region size " + options.valueOf(queryRegionSizeOption));
 
         try {
-            doFiltering(inputFileName, outputFileName, threshold, verbose);
+            final WorkloadInfo info = doFiltering(inputFileName, outputFileName, threshold, verbose, threads);
+            if (writeInfo)
+                info.write(WorkloadInfo.infoFileName(outputFileName), outputFileName);
+            if (queryOutputFileName != null) {
+                final RandomQueryGenerator rndQGen = new RandomQueryGenerator(options.valueOf(queryRegionSizeOption),
+                        info.getWorldExtent());
+                final WorkloadWriter queryOutput = new TextWorkloadWriter(queryOutputFileName);
+                try {
+                    rndQGen.writeQueries(options.valueOf(queryNumberOption), queryOutput);
+                }
+                finally {
+                    queryOutput.close();
+                }
+            }
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -86,79 +131,85 @@ class ThresholdFilter {
         }
     }
 
-    static class LastUpdateInfo {
-        final WorkloadOperation op;
+    /**
+     * The filter for one partition of the object ids.  Besides filtering, summarizes the written operations.
+     */
+    static class FilterTransform implements WorkloadTransform {
 
-        LastUpdateInfo (final WorkloadOperation op) {
-            this.op = op;
-        }
+        private final int threshold;
 
-        public boolean equals(final Object o) {
-            return o instanceof LastUpdateInfo && op.equals(((LastUpdateInfo) o).op);
-        }
-
-        public int hashCode() {
-            return op.hashCode();
-        }
-    }
-
-    private static void doFiltering(final String inputFileName, final String outputFileName, final int threshold,
-                            final boolean verbose)
-            throws IOException {
-        final BufferedReader input = new BufferedReader(new FileReader(inputFileName));
-        final PrintWriter output = new PrintWriter(outputFileName);
-        String inputLine;
+        private final Map<Integer, WorkloadOperation> lastUpdates = new HashMap<>();
 
-        final Map<Integer, LastUpdateInfo> lastUpdates = new HashMap<Integer, LastUpdateInfo>();
+        final WorkloadInfo info = new WorkloadInfo();
 
-        int totalOps = 0;
-        int writtenOps = 0;
+        FilterTransform(final int threshold) {
+            this.threshold = threshold;
+        }
 
-        while ((inputLine = input.readLine()) != null) {
-            final WorkloadOperation op = new WorkloadOperation(inputLine);
-            totalOps++;
+        public void process(final WorkloadOperation op, final long sequenceNumber,
+                            final WorkloadPipeline.Output output) {
             if (op.isInsert()) {
-                final LastUpdateInfo lastOp = lastUpdates.get(op.getId());
+                final WorkloadOperation lastOp = lastUpdates.get(op.getId());
                 if (lastOp != null) {
-                    if (op.distance(lastOp.op) > threshold) {
+                    if (op.distance(lastOp) > threshold) {
                         final WorkloadOperation delOp = new WorkloadOperation(WorkloadOperation.OperationType.DELETE,
-                                lastOp.op.getId(), lastOp.op.getSpatialExtent());
-                        writtenOps = printOp(delOp, output, writtenOps);
-                        lastUpdates.put(op.getId(), new LastUpdateInfo(op));
-                        writtenOps = printOp(op, output, writtenOps);
+                                lastOp.getId(), lastOp.getSpatialExtent());
+                        emit(delOp, output);
+                        lastUpdates.put(op.getId(), op);
+                        emit(op, output);
                     }
                 }
                 else {
-                    lastUpdates.put(op.getId(), new LastUpdateInfo(op));
-                    writtenOps = printOp(op, output, writtenOps);
+                    lastUpdates.put(op.getId(), op);
+                    emit(op, output);
                 }
             }
             else if (!op.isKindOfDelete())
-                writtenOps = printOp(op, output, writtenOps);
+                emit(op, output);
             if (op.isUpdate()) {
                 final SpatialExtent s = op.getSpatialExtent();
                 if (s.x1() < 0 || s.y1() < 0 || s.x2() < 0 || s.y2() < 0) {
-                    System.err.println("Became negative! totalOps = " + totalOps);
+                    System.err.println("Became negative! input operation = " + (sequenceNumber + 1));
                     System.err.println("op = " + op.toString());
-                    System.err.println("inputLine = " + inputLine);
                 }
             }
         }
-        input.close();
-        output.close();
+
+        private void emit(final WorkloadOperation op, final WorkloadPipeline.Output output) {
+            info.register(op);
+            output.emit(op);
+        }
+    }
+
+    private static WorkloadInfo doFiltering(final String inputFileName, final String outputFileName,
+                                            final int threshold, final boolean verbose, final int threads)
+            throws IOException {
+        final List<FilterTransform> filters = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++)
+            filters.add(new FilterTransform(threshold));
+
+        final WorkloadPipeline pipeline = new WorkloadPipeline();
+        final WorkloadWriter output = new TextWorkloadWriter(outputFileName);
+        try {
+            pipeline.run(inputFileName, filters, output);
+        }
+        finally {
+            output.close();
+        }
 
         if (verbose) {
-            final int filteredOps = totalOps - writtenOps;
+            final long totalOps = pipeline.getOperationsRead();
+            final long writtenOps = pipeline.getOperationsWritten();
+            final long filteredOps = totalOps - writtenOps;
             System.out.println("Total operations: " + totalOps);
             System.out.println("Written operations: " + writtenOps + ", " + (float)writtenOps / totalOps * 100 + '%');
             System.out.println("Filtered operations: " + filteredOps + ", "
                     + (float)filteredOps / totalOps * 100 + '%');
         }
-    }
 
-    private static int printOp(final WorkloadOperation op, final PrintWriter output, final int writtenOps) {
-        op.write(output);
-        output.println();
-        return writtenOps + 1;
+        final WorkloadInfo info = new WorkloadInfo();
+        for (final FilterTransform filter : filters)
+            info.merge(filter.info);
+        return info;
     }
 }
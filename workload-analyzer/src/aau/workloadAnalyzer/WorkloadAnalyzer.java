@@ -1,5 +1,5 @@
 /*
-     Copyright (C) 2011 Laurynas Biveinis
+     Copyright (C) 2011, 2012 Laurynas Biveinis
 
      This file is part of RR-Tree.
 
@@ -19,16 +19,17 @@
 
 package aau.workloadAnalyzer;
 
-import aau.workload.SpatialExtent;
+import aau.workload.WorkloadInfo;
 import aau.workload.WorkloadOperation;
+import aau.workload.WorkloadPipeline;
+import aau.workload.WorkloadTransform;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Reads the data file and outputs world boundaries and the maximum possible number of operations.
@@ -36,6 +37,7 @@ import java.io.PrintWriter;
 public class WorkloadAnalyzer {
 
     private static final String INPUT_OPTION = "input";
+    private static final String THREADS_OPTION = "threads";
 
     private WorkloadAnalyzer() { }
 
@@ -43,6 +45,9 @@ public class WorkloadAnalyzer {
         final OptionParser optParser = new OptionParser();
 
         final OptionSpec<String> inputOption = optParser.accepts(INPUT_OPTION).withRequiredArg().ofType(String.class);
+        //noinspection unchecked
+        final OptionSpec<Integer> threadsOption = optParser.accepts(THREADS_OPTION).withRequiredArg()
+                .ofType(Integer.class).defaultsTo(WorkloadPipeline.defaultPartitions());
 
         final OptionSet options = optParser.parse(args);
 
@@ -50,14 +55,16 @@ public class WorkloadAnalyzer {
             throw new IllegalArgumentException("Input file not specified!");
         }
         final String inputFileName = options.valueOf(inputOption);
-        final String outputFileName = inputFileName.substring(0, inputFileName.lastIndexOf('.')).concat(".info");
+        final String outputFileName = WorkloadInfo.infoFileName(inputFileName);
+        final int threads = options.valueOf(threadsOption);
 
         System.out.println("Workload Analyzer:");
         System.out.println("    input: " + inputFileName);
         System.out.println("    output: " + outputFileName);
+        System.out.println("    threads: " + threads);
         System.out.print("    postprocessing... ");
         try {
-            analyze(inputFileName, outputFileName);
+            analyze(inputFileName, threads).write(outputFileName, inputFileName);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -65,42 +72,39 @@ public class WorkloadAnalyzer {
         System.out.println("done!");
     }
 
-    private static void analyze(final String inputFileName, final String outputFileName) throws IOException {
-        PrintWriter output = null;
-        try {
-            final BufferedReader input = new BufferedReader(new FileReader(inputFileName));
-            output = new PrintWriter(outputFileName);
-
-            String s;
-            int numUpdates = 0;
-            SpatialExtent worldExtent = SpatialExtent.minimum();
-
-            while ((s = input.readLine()) != null) {
-                final WorkloadOperation op = new WorkloadOperation(s);
-                if (op.isUpdate())
-                    numUpdates++;
-
-                worldExtent = worldExtent.include(op.getSpatialExtent());
-                /* To help to clean the SPF dataset */
-                if (worldExtent.x1() < 0 || worldExtent.y1() < 0 || worldExtent.x2() < 0 || worldExtent.y2() < 0) {
-                    System.err.println("Became negative! numUpdates = " + numUpdates);
-                    System.err.println("wordExtent = " + worldExtent.toString());
-                    System.err.println("op = " + op.toString());
-                    System.err.println("s = " + s);
-                }
-            }
-            input.close();
-
-            output.println(inputFileName.substring(inputFileName.lastIndexOf('/') + 1, inputFileName.length()));
-            output.println("World extent (x1 y1 x2 y2): ");  
-            output.println("" + worldExtent.x1() + ' ' + worldExtent.y1() + ' ' + worldExtent.x2()
-                    + ' ' + worldExtent.y2());
-            output.println("Number of updates: ");
-            output.println(numUpdates);
-        }
-        finally {
-            if (output != null)
-                output.close();
+    /**
+     * Summarizes one partition of the workload
+     */
+    private static final class AnalyzeTransform implements WorkloadTransform {
+
+        final WorkloadInfo info = new WorkloadInfo();
+
+        public void process(final WorkloadOperation op, final long sequenceNumber,
+                            final WorkloadPipeline.Output output) {
+            info.register(op);
         }
     }
+
+    /**
+     * Computes the workload summary of a workload file in parallel.
+     *
+     * @param inputFileName the name of the workload file
+     * @param threads       the number of parallel partitions
+     * @return the workload summary
+     * @throws IOException on I/O error
+     */
+    private static WorkloadInfo analyze(final String inputFileName, final int threads) throws IOException {
+        final List<AnalyzeTransform> partitions = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++)
+            partitions.add(new AnalyzeTransform());
+        new WorkloadPipeline().run(inputFileName, partitions, null);
+
+        final WorkloadInfo result = new WorkloadInfo();
+        for (final AnalyzeTransform partition : partitions)
+            result.merge(partition.info);
+        /* To help to clean the SPF dataset */
+        if (result.isNegative())
+            System.err.println("Became negative! wordExtent = " + result.getWorldExtent());
+        return result;
+    }
 }
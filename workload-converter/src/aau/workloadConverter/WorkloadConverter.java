@@ -0,0 +1,110 @@
+/*
+     Copyright (C) 2012 Laurynas Biveinis
+
+     This file is part of RR-Tree.
+
+     RR-Tree is free software: you can redistribute it and/or modify
+     it under the terms of the GNU General Public License as published by
+     the Free Software Foundation, either version 3 of the License, or
+     (at your option) any later version.
+
+     RR-Tree is distributed in the hope that it will be useful,
+     but WITHOUT ANY WARRANTY; without even the implied warranty of
+     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+     GNU General Public License for more details.
+
+     You should have received a copy of the GNU General Public License
+     along with RR-Tree.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package aau.workloadConverter;
+
+import aau.workload.BinaryWorkloadWriter;
+import aau.workload.WorkloadFiles;
+import aau.workload.WorkloadOperation;
+import aau.workload.WorkloadReader;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Converts a text workload file to the binary workload format, or a binary workload file back to text.
+ */
+public class WorkloadConverter {
+
+    private static final String INPUT_OPTION = "input";
+    private static final String OUTPUT_OPTION = "output";
+
+    private WorkloadConverter() { }
+
+    public static void main(final String[] args) {
+        final OptionParser optParser = new OptionParser();
+
+        final OptionSpec<String> inputOption = optParser.accepts(INPUT_OPTION).withRequiredArg().ofType(String.class);
+        final OptionSpec<String> outputOption = optParser.accepts(OUTPUT_OPTION).withRequiredArg().ofType(String.class);
+
+        final OptionSet options = optParser.parse(args);
+
+        if (!options.has(inputOption)) {
+            throw new IllegalArgumentException("Input file not specified!");
+        }
+        final String inputFileName = options.valueOf(inputOption);
+
+        if (!options.has(outputOption)) {
+            throw new IllegalArgumentException("Output file not specified!");
+        }
+        final String outputFileName = options.valueOf(outputOption);
+
+        System.out.println("Workload Converter:");
+        System.out.println("    input: " + inputFileName);
+        System.out.println("    output: " + outputFileName);
+        try {
+            final boolean toText = WorkloadFiles.isBinary(inputFileName);
+            System.out.print("    converting to " + (toText ? "text" : "binary") + "... ");
+            final int operations = toText ? convertToText(inputFileName, outputFileName)
+                                          : convertToBinary(inputFileName, outputFileName);
+            System.out.println(operations + " operations done!");
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int convertToBinary(final String inputFileName, final String outputFileName) throws IOException {
+        final WorkloadReader input = WorkloadFiles.openReader(inputFileName);
+        BinaryWorkloadWriter output = null;
+        try {
+            output = new BinaryWorkloadWriter(outputFileName);
+            while (input.hasNextOperation())
+                output.write(input.getNextOperation());
+            return input.getOperationNumber();
+        }
+        finally {
+            input.close();
+            if (output != null)
+                output.close();
+        }
+    }
+
+    private static int convertToText(final String inputFileName, final String outputFileName) throws IOException {
+        final WorkloadReader input = WorkloadFiles.openReader(inputFileName);
+        PrintWriter output = null;
+        try {
+            output = new PrintWriter(outputFileName);
+            while (input.hasNextOperation()) {
+                final WorkloadOperation op = input.getNextOperation();
+                op.write(output);
+                output.println();
+            }
+            return input.getOperationNumber();
+        }
+        finally {
+            input.close();
+            if (output != null)
+                output.close();
+        }
+    }
+}